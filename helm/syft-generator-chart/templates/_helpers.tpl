@@ -60,3 +60,10 @@ Create the name of the service account to use
 {{- default "default" .Values.serviceAccount.name }}
 {{- end }}
 {{- end }}
+
+{{/*
+Name of the agent pool of the release: the pool label of its pods, its shared Secret and its NetworkPolicy
+*/}}
+{{- define "syft-generator-chart.agentPoolName" -}}
+{{- printf "%s-agent-pool" (include "syft-generator-chart.fullname" .) | trunc 63 | trimSuffix "-" }}
+{{- end }}
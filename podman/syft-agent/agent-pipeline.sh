@@ -0,0 +1,106 @@
+#!/usr/bin/env bash
+# Pipeline of one generation in a worker of the agent pool: the inspect, generate and upload steps of the
+# Tekton Task, run one after the other in the workspace the worker created for the job.
+#
+# Input (environment): IMAGE, VARIANT, GENERATION_ID, STORAGE_URL, TRACEPARENT, WORKSPACE, TOOLS_DIR (optional),
+#   AGENT_CACHE_DIR and AGENT_CACHE_MAX_BYTES (optional, the syft cache directory shared with the TaskRuns)
+# Output: the JSON map of uploaded filenames to their URLs, written to RESULT
+#
+# Exits with 137 when syft is killed by the OOM killer, so the generation is retried on a bigger worker.
+set -Eeuo pipefail
+
+AUTHFILE="${AUTHFILE:-/tekton/creds/.docker/config.json}"
+TOOLS_DIR="${TOOLS_DIR:-/workdir/tools}"
+
+# The cache logic of the Tasks, next to this script in the image and in the repository
+source "$(dirname "${BASH_SOURCE[0]}")/syft-cache.sh"
+
+retry() {
+  local name=$1 attempt=1 delay=${RETRY_DELAY:-1}
+  shift
+  until "$@"; do
+    if [ "$attempt" -ge "${RETRY_COUNT:-5}" ]; then
+      echo "${name} failed after ${attempt} attempts"
+      return 1
+    fi
+    echo "${name} failed, retrying in ${delay}s"
+    sleep "$delay"
+    attempt=$((attempt + 1))
+    delay=$((delay * 2 > ${RETRY_MAX_DELAY:-60} ? ${RETRY_MAX_DELAY:-60} : delay * 2))
+  done
+}
+
+authfile_args=()
+if [ -f "${AUTHFILE}" ]; then
+  authfile_args=(--authfile="${AUTHFILE}")
+fi
+
+# --- inspect ---
+echo "Inspecting ${IMAGE}"
+retry "skopeo-inspect-raw" skopeo inspect --no-tags --raw "docker://${IMAGE}" "${authfile_args[@]}" > "${WORKSPACE}/raw.json"
+retry "skopeo-inspect" skopeo inspect --no-tags "docker://${IMAGE}" "${authfile_args[@]}" > "${WORKSPACE}/image.json"
+name=$(jq -r '.Name' "${WORKSPACE}/image.json")
+
+case "$(jq -r '.mediaType // ""' "${WORKSPACE}/raw.json")" in
+  application/vnd.docker.distribution.manifest.list.v2+json|application/vnd.oci.image.index.v1+json)
+    jq -c '.manifests[] | select(.platform.os != "unknown")' "${WORKSPACE}/raw.json" | while read -r m; do
+      os=$(echo "$m" | jq -r '.platform.os')
+      arch=$(echo "$m" | jq -r 'if .platform.variant then .platform.architecture + "-" + .platform.variant else .platform.architecture end')
+      mkdir -p "${WORKSPACE}/${os}/${arch}"
+      echo "$m" | jq --arg name "$name" '{Name: $name, Digest: .digest}' > "${WORKSPACE}/${os}/${arch}/skopeo.json"
+    done
+    ;;
+  application/vnd.docker.distribution.manifest.v2+json|application/vnd.oci.image.manifest.v1+json)
+    os=$(jq -r '.Os' "${WORKSPACE}/image.json")
+    arch=$(jq -r '.Architecture' "${WORKSPACE}/image.json")
+    if [ -n "${VARIANT}" ]; then
+      arch="${arch}-${VARIANT}"
+    fi
+    mkdir -p "${WORKSPACE}/${os}/${arch}"
+    cp "${WORKSPACE}/image.json" "${WORKSPACE}/${os}/${arch}/skopeo.json"
+    ;;
+  *)
+    echo "Error: Unsupported manifest format"
+    exit 1
+    ;;
+esac
+
+# --- generate ---
+if [ -n "${AGENT_CACHE_DIR:-}" ]; then
+  cache_open "${AGENT_CACHE_DIR}"
+fi
+
+# Failures are retried like in the Task, except an OOM kill: the same worker would only be killed again
+scan() {
+  local image=$1 dir=$2 status=0
+  cache_scan "${image}" "registry:${image}" -o "cyclonedx-json@1.6=${dir}/bom.json" || status=$?
+  if [ "$status" -eq 137 ]; then
+    touch "${dir}/oom-killed"
+    return 0
+  fi
+  return "$status"
+}
+
+for manifest in "${WORKSPACE}"/*/*/skopeo.json; do
+  image=$(jq -r '(.Name + "@" + .Digest)' "$manifest")
+  dir=$(dirname "${manifest}")
+  arch=$(basename "$dir")
+  os=$(basename "$(dirname "$dir")")
+  if ! retry "syft-scan-${os}-${arch}" scan "${image}" "${dir}"; then
+    exit 1
+  fi
+  if [ -f "${dir}/oom-killed" ]; then
+    echo "syft was killed scanning ${image}, most likely out of memory"
+    exit 137
+  fi
+  java -jar "${TOOLS_DIR}/sbom-post-processor.jar" "${dir}/bom.json" --output "${dir}/bom-stats.json"
+done
+
+cache_close "${AGENT_CACHE_MAX_BYTES:-0}"
+
+# --- upload ---
+java -jar "${TOOLS_DIR}/upload-tool.jar" \
+  --url "${STORAGE_URL}/api/v1/storage/generations/${GENERATION_ID}" \
+  --workspace "${WORKSPACE}" \
+  --encoding "${UPLOAD_ENCODING:-none}" \
+  --result "${RESULT}"
@@ -4,15 +4,37 @@ set -e
 set -o pipefail
 
 SYFT_VERSION="1.27.1"
+JACKSON_VERSION="2.19.2"
+JACKSON_SHA256="aa77eaf29293a868c47372194f7c5287d77d9370b04ea25d3fffc1e4904b5880"
 
 function install_syft() {
     local version=${1}
+    local archive="syft_${version}_linux_amd64.tar.gz"
+    local download=$(mktemp -d)
+
+    # Checked against the checksums published with the release
+    curl -fsSL -o "${download}/${archive}" https://github.com/anchore/syft/releases/download/v${version}/${archive}
+    curl -fsSL -o "${download}/checksums.txt" https://github.com/anchore/syft/releases/download/v${version}/syft_${version}_checksums.txt
+    (cd "${download}" && grep " ${archive}\$" checksums.txt | sha256sum --check --strict)
 
     mkdir -p ${HOME}/syft
-    curl -s -L https://github.com/anchore/syft/releases/download/v${version}/syft_${version}_linux_amd64.tar.gz | tar xvz -C "${HOME}/syft"
+    tar xvzf "${download}/${archive}" -C "${HOME}/syft"
+    rm -rf "${download}"
+}
+
+# Libraries of the agent tools (see the Containerfile)
+function install_tool_libs() {
+    local jackson=${1}
+    local checksum=${2}
+
+    mkdir -p ${HOME}/tools/lib
+    curl -fsSL -o "${HOME}/tools/lib/jackson-core.jar" \
+        https://repo1.maven.org/maven2/com/fasterxml/jackson/core/jackson-core/${jackson}/jackson-core-${jackson}.jar
+    echo "${checksum}  ${HOME}/tools/lib/jackson-core.jar" | sha256sum --check --strict
 }
 
 install_syft "${SYFT_VERSION}"
+install_tool_libs "${JACKSON_VERSION}" "${JACKSON_SHA256}"
 
 chown -R 65532:0 "${HOME}"
 chmod -R g=u "${HOME}"
@@ -0,0 +1,117 @@
+#!/usr/bin/env bash
+# Shared syft cache of the agent, sourced by the generate steps of the Tekton Tasks and by agent-pipeline.sh.
+#
+#   cache_open DIR        keeps the cache in DIR/entries, without it the scans below run cold
+#   cache_scan IMAGE ...  runs "syft scan" with the remaining arguments, IMAGE being the scanned name@digest
+#   cache_close MAX_BYTES reports the metrics of this run and evicts once DIR holds more than MAX_BYTES
+#
+# Syft writes its entries in place, so scans never write to DIR/entries themselves: each one gets a staging
+# directory (SYFT_CACHE_DIR) with hard links to the entries syft still considers fresh, and syft only writes the
+# entries it is missing. Once the scan succeeded, those new entries are moved into DIR/entries, each with one
+# rename, so no other scan ever sees half of an entry. Eviction renames its victims aside before removing them, a
+# scan still holding their links keeps them. Concurrent evictions are kept apart by DIR/.evict.lock.
+#
+# Syft leaves no trace when it reads an entry, so reuse is measured by what the scans had to add: a scan that finds
+# everything it needs creates nothing.
+
+# Entries are linked into a scan only while they are younger than syft's TTL minus a day, so syft never rewrites
+# (truncates) a linked entry because it expired during the scan
+CACHE_TTL_DAYS=7
+export SYFT_CACHE_TTL="${CACHE_TTL_DAYS}d"
+
+CACHE_DIR=""
+CACHE_ENTRIES=""
+CACHE_CREATED=0
+CACHE_CREATED_BYTES=0
+
+cache_metric() {
+  if declare -F otel_metric > /dev/null; then
+    otel_metric "$@"
+  fi
+}
+
+cache_open() {
+  CACHE_DIR="$1"
+  CACHE_ENTRIES="${CACHE_DIR}/entries"
+  mkdir -p "${CACHE_ENTRIES}"
+  echo "Using the syft cache ${CACHE_DIR}"
+}
+
+cache_scan() {
+  local image="$1"
+  shift
+  if [ -z "${CACHE_DIR}" ]; then
+    syft scan "$@"
+    return
+  fi
+
+  local staging status=0
+  staging=$(mktemp -d "${CACHE_DIR}/staging.XXXXXX")
+  cp -al "${CACHE_ENTRIES}/." "${staging}/" 2> /dev/null || true
+  find "${staging}" -type f -mtime "+$((CACHE_TTL_DAYS - 2))" -delete
+  SYFT_CACHE_DIR="${staging}" syft scan "$@" || status=$?
+
+  # Only the entries of a scan that succeeded are complete, the links are dropped either way
+  if [ "$status" -eq 0 ]; then
+    local bytes path
+    while IFS=' ' read -r -d '' bytes path; do
+      mkdir -p "$(dirname "${CACHE_ENTRIES}/${path}")"
+      if mv -f -- "${staging}/${path}" "${CACHE_ENTRIES}/${path}"; then
+        CACHE_CREATED=$((CACHE_CREATED + 1))
+        CACHE_CREATED_BYTES=$((CACHE_CREATED_BYTES + bytes))
+      fi
+    done < <(find "${staging}" -type f -links 1 -printf '%s %P\0')
+  fi
+  rm -rf "${staging}"
+  return "$status"
+}
+
+# Bytes of the entries, directories left out so eviction can reach its target
+cache_bytes() {
+  find "${CACHE_ENTRIES}" -type f -printf '%s\n' | awk '{ s += $1 } END { print s + 0 }'
+}
+
+cache_close() {
+  local max_bytes="$1"
+  if [ -z "${CACHE_DIR}" ]; then
+    return
+  fi
+
+  echo "Syft cache: ${CACHE_CREATED} entries (${CACHE_CREATED_BYTES} bytes) added by this run"
+  cache_metric "sbomer.taskrun.cache.created.entries" "${CACHE_CREATED}"
+  cache_metric "sbomer.taskrun.cache.created.bytes" "${CACHE_CREATED_BYTES}"
+
+  (
+    # Another run is already evicting, no need to wait for it
+    if ! flock --exclusive --nonblock 9; then
+      exit 0
+    fi
+    # Left behind by scans whose pod was gone before they cleaned up
+    find "${CACHE_DIR}" -mindepth 1 -maxdepth 1 -type d -name 'staging.*' -mmin +1440 -exec rm -rf {} +
+
+    size=$(cache_bytes)
+    if [ "$size" -le "$max_bytes" ]; then
+      exit 0
+    fi
+
+    # Least recently used first (where the volume records access times, otherwise oldest first), down to 90% of
+    # the limit so the next runs do not evict right away
+    target=$((max_bytes * 9 / 10))
+    trash=$(mktemp -d "${CACHE_DIR}/evicting.XXXXXX")
+    evicted=0
+    removed=0
+    while read -r used bytes path; do
+      [ "$size" -le "$target" ] && break
+      if mv -- "$path" "${trash}/${removed}" 2> /dev/null; then
+        removed=$((removed + 1))
+        size=$((size - bytes))
+        evicted=$((evicted + bytes))
+      fi
+    done < <(find "${CACHE_ENTRIES}" -type f -printf '%A@ %s %p\n' | sort -n)
+    rm -rf "${trash}"
+    find "${CACHE_ENTRIES}" -mindepth 1 -type d -empty -delete
+    echo "Evicted ${evicted} bytes from the syft cache"
+    cache_metric "sbomer.taskrun.cache.evicted.bytes" "$evicted"
+  ) 9> "${CACHE_DIR}/.evict.lock"
+  cache_metric "sbomer.taskrun.cache.bytes" "$(cache_bytes)"
+}
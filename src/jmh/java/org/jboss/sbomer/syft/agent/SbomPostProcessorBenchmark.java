@@ -0,0 +1,97 @@
+package org.jboss.sbomer.syft.agent;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the post-processor with what the {@code generate} step ran before, {@code jq '.components | length'},
+ * on a generated SBOM of syft-like components.
+ * <p>
+ * Run with {@code ./mvnw -Pbenchmark test-compile exec:exec}, {@code jq} must be on the PATH. The memory of both
+ * is best compared with {@code -prof gc} (post-processor) and the peak RSS of the jq process.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = "-Xmx256m")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SbomPostProcessorBenchmark {
+
+    // 200000 components make an SBOM of about 200MB
+    @Param({ "20000", "200000" })
+    int components;
+
+    private Path sbom;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        sbom = Files.createTempFile("sbom-benchmark", ".json");
+        try (BufferedWriter out = Files.newBufferedWriter(sbom, StandardCharsets.UTF_8)) {
+            out.write("{\"bomFormat\":\"CycloneDX\",\"specVersion\":\"1.6\","
+                    + "\"serialNumber\":\"urn:uuid:3e671687-395b-41f5-a30f-a58921a69b79\",\"version\":1,"
+                    + "\"metadata\":{\"component\":{\"type\":\"container\",\"name\":\"quay.io/org/app\"}},\"components\":[");
+            for (int i = 0; i < components; i++) {
+                out.write(i > 0 ? "," : "");
+                out.write("{\"bom-ref\":\"pkg:rpm/redhat/lib" + i + "@1.0." + i + "?arch=x86_64\",\"type\":\"library\","
+                        + "\"name\":\"lib" + i + "\",\"version\":\"1.0." + i + "\",\"cpe\":\"cpe:2.3:a:redhat:lib" + i
+                        + ":1.0." + i + ":*:*:*:*:*:*:*\",\"purl\":\"pkg:rpm/redhat/lib" + i + "@1.0." + i + "?arch=x86_64\","
+                        + "\"licenses\":[{\"license\":{\"id\":\"Apache-2.0\"}},{\"expression\":\"GPL-2.0-or-later\"}],"
+                        + "\"properties\":[");
+                for (int p = 0; p < 10; p++) {
+                    out.write((p > 0 ? "," : "") + "{\"name\":\"syft:location:" + p + ":path\",\"value\":\"/usr/lib64/lib"
+                            + i + "/file" + p + ".so\"}");
+                }
+                out.write("]}");
+            }
+            out.write("],\"dependencies\":[");
+            for (int i = 0; i < components; i++) {
+                out.write((i > 0 ? "," : "") + "{\"ref\":\"pkg:rpm/redhat/lib" + i + "@1.0." + i + "?arch=x86_64\","
+                        + "\"dependsOn\":[\"pkg:rpm/redhat/lib" + (i + 1) % components + "@1.0." + (i + 1) % components
+                        + "?arch=x86_64\"]}");
+            }
+            out.write("]}");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(sbom);
+    }
+
+    @Benchmark
+    public SbomPostProcessor.Stats streaming() throws IOException {
+        return SbomPostProcessor.process(sbom);
+    }
+
+    @Benchmark
+    public String jq() throws IOException, InterruptedException {
+        Process process = new ProcessBuilder("jq", ".components | length", sbom.toString())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        String count = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("jq failed");
+        }
+        return count;
+    }
+}
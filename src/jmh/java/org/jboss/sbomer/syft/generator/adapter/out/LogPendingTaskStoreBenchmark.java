@@ -0,0 +1,156 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+import org.jboss.sbomer.events.common.Target;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the queue log on the local disk: acknowledged appends with concurrent producers sharing the group
+ * commit, and a restart replaying a backlog in the chunks the generator asks for.
+ * <p>
+ * Run with {@code ./mvnw -Pbenchmark test-compile exec:exec}. The temporary directory should sit on the same kind
+ * of volume as {@code sbomer.generator.queue.log.dir}, fsync costs dominate the append numbers.
+ * </p>
+ */
+@Fork(value = 1, jvmArgs = "-Xmx256m")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class LogPendingTaskStoreBenchmark {
+
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int REPLAY_BATCH = 1000;
+
+    @State(Scope.Benchmark)
+    public static class AppendState {
+        private final AtomicLong ids = new AtomicLong();
+        private Path directory;
+        LogPendingTaskStore store;
+
+        @Setup(Level.Trial)
+        public void open() throws IOException {
+            directory = Files.createTempDirectory("queue-log-benchmark");
+            store = LogPendingTaskStoreBenchmark.open(directory);
+        }
+
+        // Keeps the log from growing over the whole run, like the scheduled compaction does
+        @TearDown(Level.Iteration)
+        public void compact() {
+            store.compact();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            store.close();
+            delete(directory);
+        }
+
+        GenerationTask next() {
+            return task("G" + ids.incrementAndGet());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class BacklogState {
+        @Param({ "10000", "100000" })
+        int tasks;
+
+        private Path directory;
+
+        @Setup(Level.Trial)
+        public void write() throws IOException {
+            directory = Files.createTempDirectory("queue-log-benchmark");
+            LogPendingTaskStore store = LogPendingTaskStoreBenchmark.open(directory);
+            for (int i = 0; i < tasks; i += REPLAY_BATCH) {
+                int end = Math.min(tasks, i + REPLAY_BATCH);
+                store.appendAll(IntStream.range(i, end).mapToObj(id -> task("G" + id)).toList());
+            }
+            store.close();
+        }
+
+        @TearDown(Level.Trial)
+        public void cleanup() throws IOException {
+            LogPendingTaskStoreBenchmark.delete(directory);
+        }
+    }
+
+    /**
+     * A producer queuing a task and the dispatcher handing it over right after.
+     */
+    @Benchmark
+    @Threads(32)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void appendAndDispatch(AppendState state) {
+        GenerationTask task = state.next();
+        state.store.append(task);
+        state.store.markDispatched(task.generationId());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int replayBacklog(BacklogState state) {
+        LogPendingTaskStore store = open(state.directory);
+        try {
+            int replayed = 0;
+            List<GenerationTask> chunk;
+            while (!(chunk = store.replay(REPLAY_BATCH)).isEmpty()) {
+                replayed += chunk.size();
+            }
+            return replayed;
+        } finally {
+            store.close();
+        }
+    }
+
+    static LogPendingTaskStore open(Path directory) {
+        LogPendingTaskStore store = new LogPendingTaskStore();
+        store.directory = directory;
+        store.segmentSize = SEGMENT_SIZE;
+        store.groupCommitDelay = Duration.ZERO;
+        store.compactionRatio = 0.25;
+        store.open();
+        return store;
+    }
+
+    static GenerationTask task(String generationId) {
+        GenerationRequestSpec spec = GenerationRequestSpec.newBuilder()
+                .setGenerationId(generationId)
+                .setTarget(Target.newBuilder().setIdentifier("quay.io/org/app:" + generationId).setType("CONTAINER").build())
+                .build();
+        return new GenerationTask(generationId, spec, null);
+    }
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
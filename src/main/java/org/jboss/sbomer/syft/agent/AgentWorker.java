@@ -0,0 +1,425 @@
+package org.jboss.sbomer.syft.agent;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Long-lived worker of the agent pool: runs one generation after the other in the same pod, so a generation does not
+ * pay for the start of a pod.
+ * <p>
+ * The generator connects to the worker and talks to it with one JSON object per line:
+ * </p>
+ * <ul>
+ * <li>worker: {@code {"type":"challenge","nonce":...}} as soon as a connection is accepted, the generator answers
+ * {@code {"type":"auth","proof":...,"nonce":...}}. A connection whose proof does not match the secret of the release
+ * is closed before anything else is sent or accepted</li>
+ * <li>worker: {@code {"type":"hello","worker":...,"memory":...,"job":...,"proof":...}} once the generator proved
+ * itself, with the proof of the worker for the nonce of the generator. {@code job} is the job still running (empty
+ * if none)</li>
+ * <li>generator: {@code {"type":"ping"}}, the worker answers {@code {"type":"pong","job":...}}</li>
+ * <li>generator: {@code {"type":"run","job":...,"generation":...,"image":...,"variant":...,"storage":...,
+ * "traceparent":...}}, the worker answers {@code {"type":"accepted","job":...}}, or {@code {"type":"rejected",...}}
+ * while busy</li>
+ * <li>worker: {@code {"type":"done","job":...,"status":"FINISHED","urls":{...}}} or
+ * {@code {"type":"done","job":...,"status":"FAILED","reason":...}}, {@code OOMKilled} when the pipeline was killed
+ * for its memory</li>
+ * <li>generator: {@code {"type":"cancel","job":...}} stops the pipeline, no {@code done} follows</li>
+ * </ul>
+ * <p>
+ * Each job runs the pipeline command (inspect, scan and upload) in a fresh workspace, with the job in its
+ * environment. Its output is streamed to the log of the worker, line by line. A connection replaces the previous
+ * one, a result that could not be sent is sent after the next {@code hello}.
+ * </p>
+ * <p>
+ * Depends on the JDK only, like the upload tool it shares the JSON helpers with.
+ * </p>
+ */
+public final class AgentWorker implements AutoCloseable {
+
+    // Exit code of a process killed by SIGKILL, which is what the OOM killer sends
+    static final int OOM_EXIT_CODE = 137;
+    // A connection has this long to answer the challenge
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final ServerSocket server;
+    private final String name;
+    private final String memory;
+    private final List<String> command;
+    private final Path workRoot;
+    private final byte[] secret;
+
+    private final Object lock = new Object();
+    // Guarded by lock
+    private Writer out;
+    private String job;
+    private Process process;
+    private String unsent;
+
+    public AgentWorker(int port, String name, String memory, List<String> command, Path workRoot, byte[] secret)
+            throws IOException {
+        this.server = new ServerSocket();
+        this.server.bind(new InetSocketAddress(port));
+        this.name = name;
+        this.memory = memory;
+        this.command = List.copyOf(command);
+        this.workRoot = workRoot;
+        this.secret = secret.clone();
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Serves one connection after the other until closed.
+     */
+    public void serve() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                Thread reader = new Thread(() -> handle(socket), "agent-connection");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    log("Accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        Writer writer = null;
+        try (socket; BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            // Nothing is shared with a connection before it proved it knows the secret, it does not replace the
+            // connection of the generator either
+            String peerNonce = authenticate(socket, in, writer);
+            if (peerNonce == null) {
+                return;
+            }
+            synchronized (lock) {
+                out = writer;
+                send(message("hello", "worker", name, "memory", memory, "job", job != null ? job : "",
+                        "proof", proof(secret, "worker", peerNonce)));
+                if (unsent != null) {
+                    send(unsent);
+                    unsent = null;
+                }
+            }
+            log("Generator connected from " + socket.getRemoteSocketAddress());
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                Map<String, String> message = UploadTool.parseObject(line);
+                switch (message.getOrDefault("type", "")) {
+                    case "ping" -> {
+                        synchronized (lock) {
+                            send(message("pong", "job", job != null ? job : ""));
+                        }
+                    }
+                    case "run" -> run(message);
+                    case "cancel" -> cancel(message.get("job"));
+                    default -> log("Ignoring " + line);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log("Connection lost: " + e.getMessage());
+        } finally {
+            synchronized (lock) {
+                // A newer connection may have taken over already
+                if (out == writer) {
+                    out = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Challenges a new connection to prove it knows the secret.
+     *
+     * @return the nonce the connection sent for the proof of the worker, null when the connection failed or left.
+     */
+    private String authenticate(Socket socket, BufferedReader in, Writer writer) throws IOException {
+        String nonce = nonce();
+        String line;
+        try {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            writer.write(message("challenge", "nonce", nonce));
+            writer.write('\n');
+            writer.flush();
+            line = in.readLine();
+        } catch (SocketTimeoutException e) {
+            log("Rejected connection from " + socket.getRemoteSocketAddress() + ": no answer to the challenge");
+            return null;
+        } catch (IOException e) {
+            line = null;
+        }
+        if (line == null) {
+            // Readiness probes connect and leave
+            return null;
+        }
+        Map<String, String> auth;
+        try {
+            auth = UploadTool.parseObject(line);
+        } catch (RuntimeException e) {
+            auth = Map.of();
+        }
+        String peerNonce = auth.get("nonce");
+        if (!"auth".equals(auth.get("type")) || peerNonce == null || peerNonce.isEmpty()
+                || !matches(auth.get("proof"), proof(secret, "generator", nonce))) {
+            log("Rejected connection from " + socket.getRemoteSocketAddress() + ": handshake failed");
+            return null;
+        }
+        socket.setSoTimeout(0);
+        return peerNonce;
+    }
+
+    /**
+     * The proof that a side of the connection knows the secret: an HMAC of its role and of the nonce the other side
+     * sent. The role keeps a proof from being sent back as the proof of the other side.
+     */
+    public static String proof(byte[] secret, String role, String nonce) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            return Base64.getEncoder().encodeToString(mac.doFinal((role + ":" + nonce).getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    /**
+     * Compares two proofs in constant time.
+     */
+    public static boolean matches(String proof, String expected) {
+        return proof != null && MessageDigest.isEqual(proof.getBytes(StandardCharsets.UTF_8),
+                expected.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String nonce() {
+        byte[] nonce = new byte[32];
+        RANDOM.nextBytes(nonce);
+        return Base64.getEncoder().encodeToString(nonce);
+    }
+
+    private void run(Map<String, String> message) {
+        String id = message.get("job");
+        synchronized (lock) {
+            if (job != null) {
+                send(message("rejected", "job", id, "reason", "Busy with " + job));
+                return;
+            }
+            job = id;
+            send(message("accepted", "job", id));
+        }
+        Thread runner = new Thread(() -> {
+            String done = execute(id, message);
+            synchronized (lock) {
+                // A cancelled job reports nothing
+                if (!id.equals(job)) {
+                    return;
+                }
+                job = null;
+                process = null;
+                if (!send(done)) {
+                    unsent = done;
+                }
+            }
+        }, "agent-job");
+        runner.setDaemon(true);
+        runner.start();
+    }
+
+    private void cancel(String id) {
+        synchronized (lock) {
+            if (id == null || !id.equals(job)) {
+                return;
+            }
+            log("Cancelling " + id);
+            job = null;
+            if (process != null) {
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                process.destroyForcibly();
+                process = null;
+            }
+        }
+    }
+
+    /**
+     * Runs the pipeline of one job.
+     *
+     * @return the {@code done} message of the job.
+     */
+    private String execute(String id, Map<String, String> request) {
+        long start = System.nanoTime();
+        Path workspace = null;
+        try {
+            workspace = Files.createTempDirectory(workRoot, "job-");
+            Path result = workspace.resolve("result.json");
+
+            ProcessBuilder builder = new ProcessBuilder(command).directory(workspace.toFile()).redirectErrorStream(true);
+            Map<String, String> env = builder.environment();
+            env.put("GENERATION_ID", request.getOrDefault("generation", ""));
+            env.put("IMAGE", request.getOrDefault("image", ""));
+            env.put("VARIANT", request.getOrDefault("variant", ""));
+            env.put("STORAGE_URL", request.getOrDefault("storage", ""));
+            env.put("TRACEPARENT", request.getOrDefault("traceparent", ""));
+            env.put("WORKSPACE", workspace.toString());
+            env.put("RESULT", result.toString());
+
+            log("Starting " + id + " (" + request.get("image") + ")");
+            Process started;
+            synchronized (lock) {
+                if (!id.equals(job)) {
+                    return null;
+                }
+                started = builder.start();
+                process = started;
+            }
+            try (BufferedReader output = started.inputReader(StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = output.readLine()) != null) {
+                    log("[" + id + "] " + line);
+                }
+            }
+            int exitCode = started.waitFor();
+            log("Finished " + id + " with exit code " + exitCode + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+            if (exitCode == 0 && Files.exists(result)) {
+                // The result map is passed on as it is
+                String urls = UploadTool.toJson(UploadTool.parseObject(Files.readString(result)));
+                String done = message("done", "job", id, "status", "FINISHED");
+                return done.substring(0, done.length() - 1) + ",\"urls\":" + urls + "}";
+            }
+            String reason = exitCode == OOM_EXIT_CODE ? "OOMKilled"
+                    : exitCode == 0 ? "No result written" : "Pipeline failed with exit code " + exitCode;
+            return message("done", "job", id, "status", "FAILED", "reason", reason);
+        } catch (IOException | RuntimeException e) {
+            return message("done", "job", id, "status", "FAILED", "reason", "Pipeline could not run: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return message("done", "job", id, "status", "FAILED", "reason", "Worker interrupted");
+        } finally {
+            delete(workspace);
+        }
+    }
+
+    /**
+     * @return whether the message was written, false without a connection.
+     */
+    private boolean send(String message) {
+        if (message == null || out == null) {
+            return false;
+        }
+        try {
+            out.write(message);
+            out.write('\n');
+            out.flush();
+            return true;
+        } catch (IOException e) {
+            log("Cannot send to the generator: " + e.getMessage());
+            out = null;
+            return false;
+        }
+    }
+
+    private static String message(String type, String... keyValues) {
+        Map<String, String> message = new LinkedHashMap<>();
+        message.put("type", type);
+        for (int i = 0; i < keyValues.length; i += 2) {
+            message.put(keyValues[i], keyValues[i + 1]);
+        }
+        return UploadTool.toJson(message);
+    }
+
+    private static void delete(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            log("Cannot delete " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private static void log(String line) {
+        System.out.println(line);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        synchronized (lock) {
+            if (process != null) {
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * {@code agent-worker --port <port> --command <pipeline> --secret-file <file> [--name <name>] [--memory <limit>]
+     * [--work-dir <dir>]}
+     * <p>
+     * The name defaults to {@code HOSTNAME}, the memory to {@code AGENT_MEMORY}. The secret file holds the secret shared
+     * with the generator of the release, surrounding whitespace is ignored.
+     * </p>
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        if (!options.containsKey("--port") || !options.containsKey("--command") || !options.containsKey("--secret-file")) {
+            System.err.println("Usage: agent-worker --port <port> --command <pipeline> --secret-file <file>"
+                    + " [--name <name>] [--memory <limit>] [--work-dir <dir>]");
+            System.exit(2);
+        }
+        byte[] secret = Files.readString(Path.of(options.get("--secret-file"))).trim().getBytes(StandardCharsets.UTF_8);
+        if (secret.length == 0) {
+            System.err.println("The secret file " + options.get("--secret-file") + " is empty");
+            System.exit(2);
+        }
+        Path workRoot = Path.of(options.getOrDefault("--work-dir", System.getProperty("java.io.tmpdir")));
+        Files.createDirectories(workRoot);
+        AgentWorker worker = new AgentWorker(Integer.parseInt(options.get("--port")),
+                options.getOrDefault("--name", System.getenv().getOrDefault("HOSTNAME", "agent")),
+                options.getOrDefault("--memory", System.getenv().getOrDefault("AGENT_MEMORY", "")),
+                List.of(options.get("--command")),
+                workRoot,
+                secret);
+        log("Agent worker listening on " + worker.port());
+        worker.serve();
+    }
+}
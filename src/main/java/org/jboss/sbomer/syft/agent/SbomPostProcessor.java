@@ -0,0 +1,351 @@
+package org.jboss.sbomer.syft.agent;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+
+/**
+ * Reads a CycloneDX SBOM once, as a token stream, run by the {@code generate} step of the agent after each scan.
+ * <p>
+ * In the same pass, and with memory that does not grow with the SBOM, it counts the components (nested ones
+ * included), the dependency edges ({@code dependsOn} entries) and the licenses of the components, checks the basic
+ * structure of a CycloneDX 1.6 document, and hashes the file. Nothing that needs the whole document, like the
+ * resolution of {@code bom-ref}s, is checked.
+ * </p>
+ * <p>
+ * Depends on jackson-core only, which the agent image ships next to it.
+ * </p>
+ */
+public final class SbomPostProcessor {
+
+    /**
+     * What was found in an SBOM. {@code errors} holds the first {@link #MAX_ERRORS} structural problems.
+     */
+    public record Stats(long components, long dependencies, long licenses, String sha256, long bytes,
+            List<String> errors) {
+
+        public boolean valid() {
+            return errors.isEmpty();
+        }
+
+        public String toJson() {
+            StringBuilder json = new StringBuilder()
+                    .append("{\"components\":").append(components)
+                    .append(",\"dependencies\":").append(dependencies)
+                    .append(",\"licenses\":").append(licenses)
+                    .append(",\"sha256\":\"").append(sha256).append('"')
+                    .append(",\"bytes\":").append(bytes)
+                    .append(",\"valid\":").append(valid());
+            if (!errors.isEmpty()) {
+                json.append(",\"errors\":[");
+                for (int i = 0; i < errors.size(); i++) {
+                    json.append(i > 0 ? "," : "").append('"')
+                            .append(errors.get(i).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+                }
+                json.append(']');
+            }
+            return json.append('}').toString();
+        }
+    }
+
+    static final int MAX_ERRORS = 20;
+    static final String SPEC_VERSION = "1.6";
+
+    // Component types of the CycloneDX 1.6 schema
+    private static final Set<String> COMPONENT_TYPES = Set.of("application", "framework", "library", "container",
+            "platform", "operating-system", "device", "device-driver", "firmware", "file", "machine-learning-model",
+            "data", "cryptographic-asset");
+    private static final Pattern SERIAL_NUMBER = Pattern.compile(
+            "^urn:uuid:[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
+
+    // The stream is drained into the hash after parsing, the parser must not close it
+    private static final JsonFactory JSON = JsonFactory.builder().disable(StreamReadFeature.AUTO_CLOSE_SOURCE).build();
+
+    private long components;
+    private long dependencies;
+    private long licenses;
+    private final List<String> errors = new ArrayList<>();
+    private int errorCount;
+
+    private SbomPostProcessor() {
+    }
+
+    public static Stats process(Path sbom) throws IOException {
+        try (InputStream in = Files.newInputStream(sbom)) {
+            return process(in);
+        }
+    }
+
+    /**
+     * Reads the whole stream. A document that is not JSON at all is reported as invalid, not thrown.
+     */
+    public static Stats process(InputStream in) throws IOException {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        CountingDigestInputStream digested = new CountingDigestInputStream(new BufferedInputStream(in, 64 * 1024), sha256);
+
+        SbomPostProcessor processor = new SbomPostProcessor();
+        try (JsonParser parser = JSON.createParser(digested)) {
+            processor.document(parser);
+            if (parser.nextToken() != null) {
+                processor.error("Unexpected content after the document");
+            }
+        } catch (JsonParseException e) {
+            processor.error("Not valid JSON: " + e.getOriginalMessage());
+        }
+        // Whatever the parser did not need still belongs to the hash
+        digested.transferTo(OutputStream.nullOutputStream());
+
+        List<String> errors = List.copyOf(processor.errors);
+        if (processor.errorCount > errors.size()) {
+            List<String> capped = new ArrayList<>(errors);
+            capped.add("... and " + (processor.errorCount - errors.size()) + " more");
+            errors = List.copyOf(capped);
+        }
+        return new Stats(processor.components, processor.dependencies, processor.licenses,
+                HexFormat.of().formatHex(sha256.digest()), digested.count, errors);
+    }
+
+    private void document(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            error("The document is not a JSON object");
+            parser.skipChildren();
+            return;
+        }
+        boolean bomFormat = false;
+        boolean specVersion = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "bomFormat" -> {
+                    bomFormat = true;
+                    if (value != JsonToken.VALUE_STRING || !"CycloneDX".equals(parser.getText())) {
+                        error("bomFormat is not CycloneDX");
+                    }
+                }
+                case "specVersion" -> {
+                    specVersion = true;
+                    if (value != JsonToken.VALUE_STRING || !SPEC_VERSION.equals(parser.getText())) {
+                        error("specVersion is not " + SPEC_VERSION);
+                    }
+                }
+                case "serialNumber" -> {
+                    if (value != JsonToken.VALUE_STRING || !SERIAL_NUMBER.matcher(parser.getText()).matches()) {
+                        error("serialNumber is not a urn:uuid");
+                    }
+                }
+                case "version" -> {
+                    if (value != JsonToken.VALUE_NUMBER_INT || parser.getLongValue() < 1) {
+                        error("version is not a positive integer");
+                    }
+                }
+                case "components" -> components(parser, "components");
+                case "dependencies" -> dependencies(parser);
+                default -> {
+                }
+            }
+            // Skips the value if it is an object or array that was not read (a no-op otherwise)
+            parser.skipChildren();
+        }
+        if (!bomFormat) {
+            error("bomFormat is missing");
+        }
+        if (!specVersion) {
+            error("specVersion is missing");
+        }
+    }
+
+    private void components(JsonParser parser, String path) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            error(path + " is not an array");
+            parser.skipChildren();
+            return;
+        }
+        int index = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            String at = path + "[" + index++ + "]";
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                error(at + " is not an object");
+                parser.skipChildren();
+                continue;
+            }
+            components++;
+            boolean type = false;
+            boolean name = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "type" -> {
+                        type = true;
+                        if (value != JsonToken.VALUE_STRING || !COMPONENT_TYPES.contains(parser.getText())) {
+                            error(at + ".type is not a CycloneDX component type");
+                        }
+                    }
+                    case "name" -> {
+                        name = value == JsonToken.VALUE_STRING;
+                        if (!name) {
+                            error(at + ".name is not a string");
+                        }
+                    }
+                    case "licenses" -> licenses(parser, at + ".licenses");
+                    case "components" -> components(parser, at + ".components");
+                    default -> {
+                    }
+                }
+                parser.skipChildren();
+            }
+            if (!type) {
+                error(at + ".type is missing");
+            }
+            if (!name) {
+                error(at + ".name is missing");
+            }
+        }
+    }
+
+    private void licenses(JsonParser parser, String path) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            error(path + " is not an array");
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            // Either {"license": {...}} or {"expression": "..."}
+            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                licenses++;
+            } else {
+                error(path + " has an entry that is not an object");
+            }
+            parser.skipChildren();
+        }
+    }
+
+    private void dependencies(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            error("dependencies is not an array");
+            parser.skipChildren();
+            return;
+        }
+        int index = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            String at = "dependencies[" + index++ + "]";
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                error(at + " is not an object");
+                parser.skipChildren();
+                continue;
+            }
+            boolean ref = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals("ref")) {
+                    ref = value == JsonToken.VALUE_STRING;
+                    parser.skipChildren();
+                } else if (field.equals("dependsOn") && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        if (parser.currentToken() == JsonToken.VALUE_STRING) {
+                            dependencies++;
+                        } else {
+                            error(at + ".dependsOn has an entry that is not a string");
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (!ref) {
+                error(at + ".ref is missing");
+            }
+        }
+    }
+
+    private void error(String error) {
+        if (errorCount++ < MAX_ERRORS) {
+            errors.add(error);
+        }
+    }
+
+    /**
+     * Hashes and counts the bytes read through it.
+     */
+    private static final class CountingDigestInputStream extends DigestInputStream {
+        long count;
+
+        CountingDigestInputStream(InputStream in, MessageDigest digest) {
+            super(in, digest);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * {@code sbom-post-processor <bom.json> [--output <stats.json>]}
+     * <p>
+     * Prints the stats as one JSON object (or writes them to the output file) and exits with 1 when the SBOM is
+     * not a valid CycloneDX 1.6 document, so it is never uploaded.
+     * </p>
+     */
+    public static void main(String[] args) {
+        if (args.length != 1 && !(args.length == 3 && args[1].equals("--output"))) {
+            System.err.println("Usage: sbom-post-processor <bom.json> [--output <stats.json>]");
+            System.exit(2);
+        }
+        try {
+            Stats stats = process(Path.of(args[0]));
+            if (args.length == 3) {
+                Files.writeString(Path.of(args[2]), stats.toJson());
+            } else {
+                System.out.println(stats.toJson());
+            }
+            if (!stats.valid()) {
+                System.err.printf(Locale.ROOT, "%s is not a valid CycloneDX %s SBOM:%n", args[0], SPEC_VERSION);
+                stats.errors().forEach(error -> System.err.println("  " + error));
+                System.exit(1);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read " + args[0] + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package org.jboss.sbomer.syft.agent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Uploads the SBOMs of a TaskRun workspace to the storage service, run by the {@code upload} step of the agent.
+ * <p>
+ * The files are streamed from the workspace into one multipart request, without renamed copies: each
+ * {@code <os>/<arch>/bom.json} is sent as {@code bom-<os>-<arch>.json}, logs under their own name. The body can be
+ * compressed on the way ({@code gzip}, or {@code zstd} through the {@code zstd} binary) and is then sent with the
+ * matching {@code Content-Encoding}. The URLs the storage answers with, minus those of the logs, are written as the
+ * result map of the TaskRun.
+ * </p>
+ * <p>
+ * Depends on the JDK only, so the agent image compiles this single file.
+ * </p>
+ */
+public final class UploadTool {
+
+    public enum Encoding {
+        NONE, GZIP, ZSTD;
+
+        static Encoding parse(String value) {
+            return value == null || value.isBlank() ? NONE : valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * A file of the workspace and the name it is uploaded under.
+     */
+    public record Part(Path file, String name) {
+    }
+
+    /**
+     * What an upload took: files and their bytes read from the workspace, bytes sent over the wire.
+     */
+    public record Stats(int files, long bytes, long sentBytes, Duration duration) {
+    }
+
+    /**
+     * The URLs of the uploaded SBOMs (by name) and what the upload took.
+     */
+    public record Result(Map<String, String> urls, Stats stats) {
+    }
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final String CRLF = "\r\n";
+
+    private final HttpClient httpClient;
+    private final URI target;
+    private final Encoding encoding;
+    private final String traceParent;
+    private final Duration timeout;
+    private final Duration progressInterval;
+    private final Consumer<String> progress;
+
+    public UploadTool(URI target, Encoding encoding, String traceParent, Duration timeout, Duration progressInterval,
+            Consumer<String> progress) {
+        this.httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+        this.target = target;
+        this.encoding = encoding;
+        this.traceParent = traceParent;
+        this.timeout = timeout;
+        this.progressInterval = progressInterval;
+        this.progress = progress;
+    }
+
+    /**
+     * Collects the SBOMs of a workspace ({@code <os>/<arch>/bom.json} at any depth) plus the given extra files
+     * that exist.
+     */
+    public static List<Part> collect(Path workspace, List<Path> extras) throws IOException {
+        List<Part> parts = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(workspace)) {
+            files.filter(file -> file.getFileName().toString().equals("bom.json") && Files.isRegularFile(file))
+                    .sorted(Comparator.naturalOrder())
+                    .forEach(file -> {
+                        Path dir = workspace.relativize(file.getParent());
+                        String platform = dir.toString().replace(dir.getFileSystem().getSeparator(), "-");
+                        parts.add(new Part(file, "bom-" + platform + ".json"));
+                    });
+        }
+        for (Path extra : extras) {
+            Path file = workspace.resolve(extra);
+            if (Files.isRegularFile(file)) {
+                parts.add(new Part(file, file.getFileName().toString()));
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Sends the parts in one multipart request.
+     *
+     * @throws IOException if the request fails or the storage does not answer with 2xx.
+     */
+    public Result upload(List<Part> parts) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        String boundary = "sbomer-" + UUID.randomUUID();
+        List<byte[]> headers = new ArrayList<>();
+        long bytes = 0;
+        long length = 0;
+        for (Part part : parts) {
+            byte[] header = ("--" + boundary + CRLF
+                    + "Content-Disposition: form-data; name=\"files\"; filename=\"" + part.name() + "\"" + CRLF
+                    + "Content-Type: " + (part.name().endsWith(".json") ? "application/json" : "text/plain") + CRLF
+                    + CRLF).getBytes(StandardCharsets.UTF_8);
+            headers.add(header);
+            long size = Files.size(part.file());
+            bytes += size;
+            length += header.length + size + CRLF.length();
+        }
+        byte[] trailer = ("--" + boundary + "--" + CRLF).getBytes(StandardCharsets.UTF_8);
+        length += trailer.length;
+
+        // The body is written by a thread of its own into a pipe (or the zstd process), the request reads the other end
+        Process zstd = null;
+        InputStream body;
+        OutputStream sink;
+        if (encoding == Encoding.ZSTD) {
+            zstd = new ProcessBuilder("zstd", "-q", "-c", "-").redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            sink = zstd.getOutputStream();
+            body = zstd.getInputStream();
+        } else {
+            Pipe pipe = Pipe.open();
+            sink = Channels.newOutputStream(pipe.sink());
+            body = Channels.newInputStream(pipe.source());
+            if (encoding == Encoding.GZIP) {
+                sink = new GZIPOutputStream(sink, CHUNK_SIZE);
+            }
+        }
+        AtomicLong sent = new AtomicLong();
+        InputStream counted = new CountingInputStream(body, sent);
+
+        long total = bytes;
+        OutputStream out = sink;
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try (out) {
+                writeBody(out, parts, headers, trailer, total);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, runnable -> {
+            Thread thread = new Thread(runnable, "upload-writer");
+            thread.setDaemon(true);
+            thread.start();
+        });
+
+        HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.ofInputStream(() -> counted);
+        if (encoding == Encoding.NONE) {
+            publisher = HttpRequest.BodyPublishers.fromPublisher(publisher, length);
+        }
+        HttpRequest.Builder request = HttpRequest.newBuilder(target)
+                .timeout(timeout)
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(publisher);
+        if (encoding != Encoding.NONE) {
+            request.header("Content-Encoding", encoding.name().toLowerCase(Locale.ROOT));
+        }
+        if (traceParent != null && !traceParent.isBlank()) {
+            request.header("traceparent", traceParent);
+        }
+
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        } finally {
+            // Unblocks the writer if the request gave up before reading the whole body
+            counted.close();
+            if (zstd != null) {
+                zstd.destroy();
+            }
+        }
+        try {
+            writer.join();
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to stream the files to " + target, e.getCause() != null ? e.getCause() : e);
+        }
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("Upload to " + target + " returned " + response.statusCode() + ": " + response.body());
+        }
+
+        Stats stats = new Stats(parts.size(), bytes, sent.get(), Duration.ofNanos(System.nanoTime() - start));
+        return new Result(parseObject(response.body()), stats);
+    }
+
+    private void writeBody(OutputStream out, List<Part> parts, List<byte[]> headers, byte[] trailer, long total)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        long written = 0;
+        long lastReport = System.nanoTime();
+        for (int i = 0; i < parts.size(); i++) {
+            out.write(headers.get(i));
+            try (FileChannel channel = FileChannel.open(parts.get(i).file(), StandardOpenOption.READ)) {
+                while (channel.read(buffer.clear()) > 0) {
+                    out.write(buffer.array(), 0, buffer.position());
+                    written += buffer.position();
+                    if (System.nanoTime() - lastReport >= progressInterval.toNanos()) {
+                        report(written, total);
+                        lastReport = System.nanoTime();
+                    }
+                }
+            }
+            out.write(CRLF.getBytes(StandardCharsets.UTF_8));
+        }
+        out.write(trailer);
+        report(written, total);
+    }
+
+    private void report(long written, long total) {
+        progress.accept(String.format(Locale.ROOT, "Uploaded %s of %s (%d%%)", mebibytes(written), mebibytes(total),
+                total == 0 ? 100 : written * 100 / total));
+    }
+
+    /**
+     * Keeps the URLs of the SBOMs, logs are uploaded alongside but are not results.
+     */
+    public static Map<String, String> withoutLogs(Map<String, String> urls) {
+        Map<String, String> filtered = new LinkedHashMap<>();
+        urls.forEach((name, url) -> {
+            if (!name.contains(".log")) {
+                filtered.put(name, url);
+            }
+        });
+        return filtered;
+    }
+
+    /**
+     * Parses the flat JSON object of names to URLs the storage answers with.
+     */
+    static Map<String, String> parseObject(String json) {
+        Map<String, String> map = new LinkedHashMap<>();
+        int[] at = {skipBlanks(json, 0)};
+        expect(json, at, '{');
+        if (json.charAt(skipBlanks(json, at[0])) == '}') {
+            return map;
+        }
+        while (true) {
+            String key = parseString(json, at);
+            expect(json, at, ':');
+            map.put(key, parseString(json, at));
+            at[0] = skipBlanks(json, at[0]);
+            char next = json.charAt(at[0]++);
+            if (next == '}') {
+                return map;
+            }
+            if (next != ',') {
+                throw new IllegalArgumentException("Unexpected '" + next + "' in " + json);
+            }
+        }
+    }
+
+    private static String parseString(String json, int[] at) {
+        expect(json, at, '"');
+        StringBuilder value = new StringBuilder();
+        for (char c = json.charAt(at[0]++); c != '"'; c = json.charAt(at[0]++)) {
+            if (c == '\\') {
+                char escaped = json.charAt(at[0]++);
+                switch (escaped) {
+                    case 'n' -> value.append('\n');
+                    case 't' -> value.append('\t');
+                    case 'r' -> value.append('\r');
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'u' -> {
+                        value.append((char) Integer.parseInt(json.substring(at[0], at[0] + 4), 16));
+                        at[0] += 4;
+                    }
+                    default -> value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+
+    private static void expect(String json, int[] at, char expected) {
+        at[0] = skipBlanks(json, at[0]);
+        if (at[0] >= json.length() || json.charAt(at[0]) != expected) {
+            throw new IllegalArgumentException("Expected '" + expected + "' at " + at[0] + " of " + json);
+        }
+        at[0]++;
+    }
+
+    private static int skipBlanks(String json, int at) {
+        while (at < json.length() && Character.isWhitespace(json.charAt(at))) {
+            at++;
+        }
+        return at;
+    }
+
+    static String toJson(Map<String, String> map) {
+        StringBuilder json = new StringBuilder("{");
+        map.forEach((key, value) -> {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(quote(key)).append(':').append(quote(value));
+        });
+        return json.append('}').toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String mebibytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Counts the bytes the request reads, after compression.
+     */
+    private static final class CountingInputStream extends InputStream {
+        private final InputStream delegate;
+        private final AtomicLong count;
+
+        CountingInputStream(InputStream delegate, AtomicLong count) {
+            this.delegate = delegate;
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = delegate.read();
+            if (b >= 0) {
+                count.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = delegate.read(b, off, len);
+            if (n > 0) {
+                count.addAndGet(n);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+
+    /**
+     * {@code upload-tool --url <url> --workspace <dir> --result <file> [--stats <file>] [--include <relative path>]...
+     * [--encoding none|gzip|zstd] [--timeout <seconds>]}
+     * <p>
+     * The traceparent header is taken from {@code TRACEPARENT}. The stats file gets {@code files}, {@code bytes},
+     * {@code sent_bytes} and {@code duration_ms}, one {@code key=value} per line, for the metrics of the step.
+     * </p>
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<Path> includes = new ArrayList<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--include")) {
+                includes.add(Path.of(args[i + 1]));
+            } else {
+                options.put(args[i], args[i + 1]);
+            }
+        }
+        if (!options.containsKey("--url") || !options.containsKey("--workspace") || !options.containsKey("--result")) {
+            System.err.println("Usage: upload-tool --url <url> --workspace <dir> --result <file> [--stats <file>]"
+                    + " [--include <path>]... [--encoding none|gzip|zstd] [--timeout <seconds>]");
+            System.exit(2);
+        }
+
+        try {
+            UploadTool tool = new UploadTool(URI.create(options.get("--url")),
+                    Encoding.parse(options.get("--encoding")),
+                    System.getenv("TRACEPARENT"),
+                    Duration.ofSeconds(Long.parseLong(options.getOrDefault("--timeout", "600"))),
+                    Duration.ofSeconds(1),
+                    System.out::println);
+            List<Part> parts = collect(Path.of(options.get("--workspace")), includes);
+            parts.forEach(part -> System.out.println("Staging " + part.name() + " (" + part.file() + ")"));
+
+            Result result = tool.upload(parts);
+            Stats stats = result.stats();
+            System.out.printf(Locale.ROOT, "Uploaded %d files, %d bytes as %d bytes (%s) in %d ms%n", stats.files(),
+                    stats.bytes(), stats.sentBytes(), tool.encoding.name().toLowerCase(Locale.ROOT),
+                    stats.duration().toMillis());
+
+            String filtered = toJson(withoutLogs(result.urls()));
+            System.out.println("Filtered Response (Task Result):");
+            System.out.println(filtered);
+            Files.writeString(Path.of(options.get("--result")), filtered);
+            if (options.containsKey("--stats")) {
+                Files.writeString(Path.of(options.get("--stats")), "files=" + stats.files() + "\n"
+                        + "bytes=" + stats.bytes() + "\n"
+                        + "sent_bytes=" + stats.sentBytes() + "\n"
+                        + "duration_ms=" + stats.duration().toMillis() + "\n");
+            }
+        } catch (Exception e) {
+            System.err.println("Upload failed: " + e.getMessage());
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            System.exit(1);
+        }
+    }
+}
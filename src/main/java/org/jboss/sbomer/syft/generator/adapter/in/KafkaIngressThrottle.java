@@ -0,0 +1,58 @@
+package org.jboss.sbomer.syft.generator.adapter.in;
+
+import org.jboss.sbomer.syft.generator.core.port.spi.IngressThrottle;
+
+import io.smallrye.reactive.messaging.kafka.KafkaClientService;
+import io.smallrye.reactive.messaging.kafka.KafkaConsumer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pauses and resumes the partitions of the {@code generation-created} channel.
+ * <p>
+ * Lives next to the consumer it throttles. Offsets are only committed for records whose
+ * {@link KafkaRequestConsumer#receive} has returned, i.e. once the request is queued (or dispatched, with the
+ * {@link KafkaPendingTaskStore}), so records held back by a pause are simply consumed later.
+ * </p>
+ */
+@ApplicationScoped
+@Slf4j
+public class KafkaIngressThrottle implements IngressThrottle {
+
+    static final String CHANNEL = "generation-created";
+
+    @Inject
+    KafkaClientService kafkaClientService;
+
+    @Override
+    public void pause() {
+        KafkaConsumer<Object, Object> consumer = consumer();
+        if (consumer == null) {
+            return;
+        }
+        consumer.pause().subscribe().with(
+                partitions -> log.info("Paused {} partitions of {}", partitions.size(), CHANNEL),
+                failure -> log.warn("Failed to pause {}", CHANNEL, failure));
+    }
+
+    @Override
+    public void resume() {
+        KafkaConsumer<Object, Object> consumer = consumer();
+        if (consumer == null) {
+            return;
+        }
+        consumer.resume().subscribe().with(
+                ignored -> log.info("Resumed {}", CHANNEL),
+                failure -> log.warn("Failed to resume {}", CHANNEL, failure));
+    }
+
+    private KafkaConsumer<Object, Object> consumer() {
+        // Null when the channel is not backed by Kafka (e.g. the in-memory connector in tests)
+        KafkaConsumer<Object, Object> consumer = kafkaClientService.getConsumer(CHANNEL);
+        if (consumer == null) {
+            log.debug("No Kafka consumer for {}, nothing to throttle", CHANNEL);
+        }
+        return consumer;
+    }
+}
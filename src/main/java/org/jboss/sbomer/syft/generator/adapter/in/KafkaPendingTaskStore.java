@@ -0,0 +1,85 @@
+package org.jboss.sbomer.syft.generator.adapter.in;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.microprofile.reactive.messaging.Message;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.port.spi.PendingTaskStore;
+
+import io.quarkus.arc.properties.IfBuildProperty;
+import jakarta.enterprise.context.ApplicationScoped;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the pending queue in Kafka: the record of a queued request is only acknowledged once the request has been
+ * dispatched, so its offset is not committed while it waits.
+ * <p>
+ * Lives next to the consumer whose records it holds. When a replica dies with requests still queued, the
+ * {@code generation-created} consumer group hands its partitions to the other replicas and Kafka redelivers every
+ * record from the last committed offset on. Nothing is written locally, so there is nothing to replay either.
+ * Delivery becomes at-least-once: records behind an old queued one on the same partition, and requests still
+ * queued on a replica that merely lost its partitions in a rebalance, may be generated twice.
+ * </p>
+ * <p>
+ * Meant for sharded replicas ({@code sbomer.generator.sharding.enabled}), where the queue of a replica is
+ * otherwise lost with it.
+ * </p>
+ */
+@ApplicationScoped
+@IfBuildProperty(name = "sbomer.generator.queue.store", stringValue = "kafka")
+@Slf4j
+public class KafkaPendingTaskStore implements PendingTaskStore {
+
+    // Generation ID -> record whose request the consumer is accepting right now
+    private final Map<String, Message<?>> received = new HashMap<>();
+    // Generation ID -> record of a queued request, acknowledged once the request is dispatched
+    private final Map<String, Message<?>> queued = new HashMap<>();
+
+    /**
+     * Takes the record of a request before it is handed to the orchestrator. Called before the request can be
+     * queued, so a dispatch right after can never miss its record.
+     *
+     * @return false when a record for the same generation is already being accepted, the caller acknowledges
+     * this one itself.
+     */
+    synchronized boolean receiving(String generationId, Message<?> record) {
+        return received.putIfAbsent(generationId, record) == null;
+    }
+
+    /**
+     * Called once the orchestrator is done with the request. A request that was not queued (served from the
+     * cache, rejected, a duplicate) has its record acknowledged right away.
+     */
+    synchronized void settle(String generationId) {
+        Message<?> record = received.remove(generationId);
+        if (record != null) {
+            record.ack();
+        }
+    }
+
+    @Override
+    public synchronized void append(GenerationTask generationTask) {
+        // Retries of a dispatched generation have no record any more, their request was already committed
+        Message<?> record = received.remove(generationTask.generationId());
+        if (record != null) {
+            queued.put(generationTask.generationId(), record);
+        }
+    }
+
+    @Override
+    public synchronized void markDispatched(String generationId) {
+        Message<?> record = queued.remove(generationId);
+        if (record != null) {
+            log.debug("Generation {} dispatched, committing its request", generationId);
+            record.ack();
+        }
+    }
+
+    @Override
+    public List<GenerationTask> replay(int limit) {
+        // Kafka redelivers the records that were never acknowledged
+        return List.of();
+    }
+}
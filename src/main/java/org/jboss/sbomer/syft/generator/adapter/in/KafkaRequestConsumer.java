@@ -2,16 +2,31 @@ package org.jboss.sbomer.syft.generator.adapter.in;
 
 import static org.jboss.sbomer.syft.generator.core.ApplicationConstants.COMPONENT_NAME;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.apache.kafka.common.header.Header;
+import org.eclipse.microprofile.reactive.messaging.Acknowledgment;
 import org.eclipse.microprofile.reactive.messaging.Incoming;
 import org.jboss.sbomer.events.orchestration.GenerationCreated;
+import org.jboss.sbomer.syft.generator.core.domain.model.IncomingRequest;
 import org.jboss.sbomer.syft.generator.core.port.api.GenerationOrchestrator;
 import org.jboss.sbomer.syft.generator.core.port.spi.FailureNotifier;
 import org.jboss.sbomer.syft.generator.core.utility.FailureUtility;
+import org.jboss.sbomer.syft.generator.core.utility.TraceUtility;
 
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
 import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.smallrye.reactive.messaging.kafka.KafkaRecord;
+import io.smallrye.reactive.messaging.kafka.KafkaRecordBatch;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 
@@ -23,40 +38,109 @@ public class KafkaRequestConsumer {
     GenerationOrchestrator orchestrator;
     @Inject
     FailureNotifier failureNotifier;
+    @Inject
+    Tracer tracer;
+    // Only resolvable when built with -Dsbomer.generator.queue.store=kafka
+    @Inject
+    Instance<KafkaPendingTaskStore> kafkaQueue;
 
+    private static final String TRACEPARENT_HEADER = "traceparent";
+
+    /**
+     * Receives a whole poll at once (the channel is consumed in batch mode).
+     * <p>
+     * Every record is filtered and gets its own span and failure reporting, then all accepted requests are
+     * queued in one step. Each record is acknowledged once this is done, its offset is then committed. With the
+     * {@link KafkaPendingTaskStore}, the record of a queued request is only acknowledged once it is dispatched.
+     * </p>
+     */
     @Incoming("generation-created")
-    public void receive(GenerationCreated event) {
-        try {
-            log.debug("Received event ID: {}", event.getContext().getEventId());
+    @Acknowledgment(Acknowledgment.Strategy.MANUAL)
+    public CompletionStage<Void> receive(KafkaRecordBatch<String, GenerationCreated> batch) {
+        List<KafkaRecord<String, GenerationCreated>> records = batch.getRecords();
+        List<IncomingRequest> requests = new ArrayList<>(records.size());
+        List<Span> spans = new ArrayList<>(records.size());
+        // Records acknowledged as soon as the requests are accepted
+        List<KafkaRecord<String, GenerationCreated>> done = new ArrayList<>(records.size());
+        // Generation IDs whose record the pending task store holds until they are dispatched
+        List<String> held = new ArrayList<>();
+
+        for (KafkaRecord<String, GenerationCreated> record : records) {
+            GenerationCreated event = record.getPayload();
+            Span span = null;
+            try {
+                log.debug("Received event ID: {}", event.getContext().getEventId());
 
-            if (isMyGenerator(event)) {
-                log.info("{} received task for generation: {}", COMPONENT_NAME,
-                        event.getData().getGenerationRequest().getGenerationId());
+                if (isMyGenerator(event)) {
+                    String generationId = event.getData().getGenerationRequest().getGenerationId();
+                    log.info("{} received task for generation: {}", COMPONENT_NAME, generationId);
 
-                // Capture OTel trace context from the current span (propagated via Kafka headers)
-                String traceParent = buildTraceParent(Span.current().getSpanContext());
+                    // Each record continues its own producer trace (propagated via Kafka headers)
+                    span = TraceUtility.childSpanBuilder(tracer, "KafkaRequestConsumer.receive", traceParentOf(record), generationId)
+                            .setSpanKind(SpanKind.CONSUMER)
+                            .startSpan();
 
-                orchestrator.acceptRequest(
-                        event.getData().getGenerationRequest().getGenerationId(),
-                        event.getData().getGenerationRequest(),
-                        traceParent
-                );
+                    // Before the request is taken: a record the store could not take is reported and acknowledged
+                    // here, it must neither be accepted nor have its span ended a second time below
+                    boolean holding = kafkaQueue.isResolvable() && kafkaQueue.get().receiving(generationId, record);
+                    requests.add(new IncomingRequest(
+                            generationId,
+                            event.getData().getGenerationRequest(),
+                            buildTraceParent(span.getSpanContext())
+                    ));
+                    spans.add(span);
+                    if (holding) {
+                        held.add(generationId);
+                        continue;
+                    }
+                }
+            } catch (Exception e) {
+                // Catch exceptions so one bad record neither crashes the consumer loop nor drops the rest of the poll
+                reportFailure(event, span, e);
+                if (span != null) {
+                    span.end();
+                }
+            }
+            done.add(record);
+        }
+
+        try {
+            if (!requests.isEmpty()) {
+                orchestrator.acceptRequests(requests);
             }
         } catch (Exception e) {
-            // Catch exceptions so we don't crash the consumer loop.
-            log.error("Skipping malformed or incompatible event: {}", event, e);
-            Span span = Span.current();
-            span.recordException(e);
-            span.setStatus(StatusCode.ERROR, e.getMessage());
-            if (event != null) {
-                failureNotifier.notify(FailureUtility.buildFailureSpecFromException(e), event.getContext().getCorrelationId(), event);
-            } else {
-                failureNotifier.notify(FailureUtility.buildFailureSpecFromException(e), null, null);
+            log.error("Failed to accept a batch of {} requests", requests.size(), e);
+            for (int i = 0; i < requests.size(); i++) {
+                spans.get(i).recordException(e);
+                spans.get(i).setStatus(StatusCode.ERROR, e.getMessage());
+                failureNotifier.notify(FailureUtility.buildFailureSpecFromException(e), requests.get(i).generationId(), null);
             }
+        } finally {
+            spans.forEach(Span::end);
+            held.forEach(generationId -> kafkaQueue.get().settle(generationId));
+            done.forEach(KafkaRecord::ack);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
 
+    private void reportFailure(GenerationCreated event, Span span, Exception e) {
+        log.error("Skipping malformed or incompatible event: {}", event, e);
+        if (span != null) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR, e.getMessage());
+        }
+        if (event != null && event.getContext() != null) {
+            failureNotifier.notify(FailureUtility.buildFailureSpecFromException(e), event.getContext().getCorrelationId(), event);
+        } else {
+            failureNotifier.notify(FailureUtility.buildFailureSpecFromException(e), null, null);
         }
     }
 
+    private String traceParentOf(KafkaRecord<String, GenerationCreated> record) {
+        Header header = record.getHeaders().lastHeader(TRACEPARENT_HEADER);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+
     /**
      * Builds W3C traceparent header from current OTel SpanContext.
      * Format: 00-<traceId>-<spanId>-<traceFlags>
@@ -0,0 +1,147 @@
+package org.jboss.sbomer.syft.generator.adapter.in;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs tasks on a bounded pool, strictly one after the other per key and in parallel across keys.
+ * <p>
+ * Each key has a lane. Only one task of a lane is on the pool at a time, the next one is submitted once it is done,
+ * so a busy key never holds a thread for longer than one task and cannot starve the other keys.
+ * </p>
+ */
+@Slf4j
+final class KeyedExecutor {
+
+    private final ExecutorService pool;
+
+    // Guarded by this. Key -> tasks waiting behind the one that is running
+    private final Map<String, Deque<Runnable>> lanes = new HashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    // Notified whenever pending drops to zero
+    private final Object idle = new Object();
+
+    KeyedExecutor(int parallelism, String threadName) {
+        this.pool = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues the task behind every task of the same key that was queued before. Returns immediately.
+     */
+    void execute(String key, Runnable task) {
+        pending.incrementAndGet();
+        synchronized (this) {
+            Deque<Runnable> lane = lanes.get(key);
+            if (lane != null) {
+                // A task of this key is running, it hands over to this one when done
+                lane.add(task);
+                return;
+            }
+            lanes.put(key, new ArrayDeque<>());
+        }
+        submit(key, task);
+    }
+
+    private void run(String key, Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            log.error("Task for '{}' failed", key, e);
+        } finally {
+            done(1);
+        }
+
+        Runnable next;
+        synchronized (this) {
+            Deque<Runnable> lane = lanes.get(key);
+            next = lane.poll();
+            if (next == null) {
+                lanes.remove(key);
+                return;
+            }
+        }
+        submit(key, next);
+    }
+
+    private void submit(String key, Runnable task) {
+        try {
+            pool.execute(() -> run(key, task));
+        } catch (RejectedExecutionException e) {
+            // Shut down: neither this task nor the ones queued behind it will ever run
+            int dropped;
+            synchronized (this) {
+                Deque<Runnable> lane = lanes.remove(key);
+                dropped = 1 + (lane != null ? lane.size() : 0);
+            }
+            log.warn("Dropped {} tasks for '{}', the executor is shut down", dropped, key);
+            done(dropped);
+        }
+    }
+
+    private void done(int tasks) {
+        if (pending.addAndGet(-tasks) == 0) {
+            synchronized (idle) {
+                idle.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the tasks queued or running.
+     */
+    int pending() {
+        return pending.get();
+    }
+
+    /**
+     * Waits until every queued task ran, or the timeout is over.
+     *
+     * @return whether everything ran.
+     */
+    boolean awaitIdle(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (idle) {
+            while (pending.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(idle, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs what is queued (up to the timeout), then stops the pool.
+     */
+    void shutdown(Duration timeout) {
+        try {
+            if (!awaitIdle(timeout)) {
+                log.warn("{} tasks did not run before shutdown", pending.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.jboss.sbomer.syft.generator.adapter.in;
+
+import java.util.Map;
+
+import org.jboss.sbomer.syft.generator.core.port.api.ResultCacheManagement;
+
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Admin endpoint to invalidate cached SBOM results, e.g. after a bad generator release.
+ * <p>
+ * Requires the {@value #ADMIN_ROLE} role (HTTP basic, see {@code quarkus.security.users.embedded}).
+ * </p>
+ */
+@Path("/api/v1/result-cache")
+@RolesAllowed(ResultCacheResource.ADMIN_ROLE)
+@Produces(MediaType.APPLICATION_JSON)
+@Slf4j
+public class ResultCacheResource {
+
+    static final String ADMIN_ROLE = "result-cache-admin";
+
+    @Inject
+    ResultCacheManagement resultCache;
+
+    /**
+     * Drops the cached results of one image.
+     *
+     * @param image The image reference pinned by digest.
+     */
+    @DELETE
+    public Map<String, Object> invalidate(@QueryParam("image") String image) {
+        if (image == null || image.isBlank()) {
+            throw new BadRequestException("Query parameter 'image' is required");
+        }
+        return Map.of("image", image, "removed", resultCache.invalidate(image));
+    }
+
+    /**
+     * Drops every cached result.
+     */
+    @DELETE
+    @Path("/all")
+    public Map<String, Object> invalidateAll() {
+        resultCache.invalidateAll();
+        return Map.of("removed", "all");
+    }
+}
@@ -1,12 +1,20 @@
 package org.jboss.sbomer.syft.generator.adapter.in;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import org.jboss.sbomer.syft.generator.core.domain.GenerationStatus;
 import org.jboss.sbomer.syft.generator.core.port.api.GenerationOrchestrator;
 import org.jboss.sbomer.syft.generator.core.port.spi.FailureNotifier;
+import org.jboss.sbomer.syft.generator.core.port.spi.ShardOwnership;
 import org.jboss.sbomer.syft.generator.core.utility.FailureUtility;
 import org.jboss.sbomer.syft.generator.core.utility.TraceUtility;
 
@@ -14,18 +22,28 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.fabric8.tekton.v1beta1.TaskRun;
+import io.javaoperatorsdk.operator.api.config.informer.Informer;
 import io.javaoperatorsdk.operator.api.reconciler.Context;
 import io.javaoperatorsdk.operator.api.reconciler.ControllerConfiguration;
 import io.javaoperatorsdk.operator.api.reconciler.Reconciler;
 import io.javaoperatorsdk.operator.api.reconciler.UpdateControl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Scope;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 
-@ControllerConfiguration(name = "syft-task-reconciler", generationAwareEventProcessing = false)
+@ControllerConfiguration(name = "syft-task-reconciler", generationAwareEventProcessing = false,
+        informer = @Informer(onAddFilter = TerminalTransitionFilter.class, onUpdateFilter = TerminalTransitionFilter.class))
 @Slf4j
 public class TaskReconciler implements Reconciler<TaskRun> {
 
@@ -41,17 +59,95 @@ public class TaskReconciler implements Reconciler<TaskRun> {
     @Inject
     Tracer tracer;
 
+    @Inject
+    ShardOwnership shardOwnership;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    // Config: How many handled completions are remembered to recognize a redelivered one
+    @ConfigProperty(name = "sbomer.generator.reconciler.completion-memory", defaultValue = "10000")
+    int completionMemory;
+
+    // Config: How many generations have their updates handled at the same time
+    @ConfigProperty(name = "sbomer.generator.reconciler.update-parallelism", defaultValue = "16")
+    int updateParallelism;
+
     private static final String REASON_OOM_KILLED = "OOMKilled";
 
     private static final String GENERATION_ID_LABEL = "sbomer.jboss.org/generation-id";
     private static final String RESULT_NAME_SBOM_URL = "sbom-url";
+    private static final String RESULT_NAME_SBOM_STATS = "sbom-stats";
     private static final String TRACEPARENT_ANNOTATION = "sbomer.jboss.org/traceparent";
+    private static final String BATCH_LABEL = "sbomer.jboss.org/batch";
+    private static final String BATCH_MEMBERS_ANNOTATION = "sbomer.jboss.org/batch-members";
+    private static final String REPLICA_LABEL = "sbomer.jboss.org/replica";
+    private static final String ATTEMPT_LABEL = "sbomer.jboss.org/attempt";
+    private static final String PLATFORM_LABEL = "sbomer.jboss.org/platform";
+
+    // TaskRun UID and attempt of the completions handled so far, oldest dropped first
+    private Set<String> completed;
+
+    private Timer reconciles;
+    private Counter duplicates;
+    private DistributionSummary sbomComponents;
+    private DistributionSummary sbomDependencies;
+    private DistributionSummary sbomLicenses;
+
+    // Handling an update sends to Kafka and deletes TaskRuns. It runs off the reconciler threads, one generation
+    // after the other in order, different generations in parallel, so a slow call only holds up its own generation
+    KeyedExecutor updates;
+
+    @PostConstruct
+    void init() {
+        updates = new KeyedExecutor(updateParallelism, "generation-update-handler");
+        Gauge.builder("sbomer.generator.reconciler.pending.updates", updates, KeyedExecutor::pending)
+                .description("Generation updates found by the reconciler and not handled yet")
+                .register(meterRegistry);
+        completed = Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > completionMemory;
+            }
+        }));
+        reconciles = Timer.builder("sbomer.generator.reconciler.duration")
+                .description("Time spent reconciling a TaskRun, its count is the reconcile rate")
+                .register(meterRegistry);
+        duplicates = meterRegistry.counter("sbomer.generator.reconciler.skipped", "reason", "duplicate");
+        sbomComponents = DistributionSummary.builder("sbomer.generator.sbom.components")
+                .description("Components of a generated SBOM, as counted by the TaskRun")
+                .register(meterRegistry);
+        sbomDependencies = DistributionSummary.builder("sbomer.generator.sbom.dependencies")
+                .description("Dependency edges of a generated SBOM, as counted by the TaskRun")
+                .register(meterRegistry);
+        sbomLicenses = DistributionSummary.builder("sbomer.generator.sbom.licenses")
+                .description("Component licenses of a generated SBOM, as counted by the TaskRun")
+                .register(meterRegistry);
+        FunctionCounter.builder("sbomer.generator.reconciler.skipped", TerminalTransitionFilter.SKIPPED, LongAdder::sum)
+                .description("TaskRun events not reconciled")
+                .tag("reason", "filtered")
+                .register(meterRegistry);
+    }
 
     @Override
     public UpdateControl<TaskRun> reconcile(TaskRun taskRun, Context<TaskRun> context) {
         String taskName = taskRun.getMetadata().getName();
         String generationId = taskRun.getMetadata().getLabels().get(GENERATION_ID_LABEL);
 
+        // Every replica watches every TaskRun, but only the one that created it knows its generation
+        if (!shardOwnership.isResponsibleFor(taskRun.getMetadata().getLabels().get(REPLICA_LABEL), generationId)) {
+            log.trace("TaskRun '{}' belongs to another replica", taskName);
+            return UpdateControl.noUpdate();
+        }
+
+        // A completion is handled once per TaskRun and attempt, a redelivered event must not finish or retry it again
+        String completionKey = isSuccessful(taskRun) || isFailed(taskRun) ? completionKey(taskRun) : null;
+        if (completionKey != null && completed.contains(completionKey)) {
+            log.debug("Completion of TaskRun '{}' was already handled, skipping", taskName);
+            duplicates.increment();
+            return UpdateControl.noUpdate();
+        }
+
         // Read trace context from TaskRun annotations
         Map<String, String> annotations = taskRun.getMetadata().getAnnotations();
         String traceParent = annotations != null ? annotations.get(TRACEPARENT_ANNOTATION) : null;
@@ -66,13 +162,61 @@ public class TaskReconciler implements Reconciler<TaskRun> {
                 .setAttribute("taskrun.status", taskRunStatus)
                 .setAttribute("taskrun.reason", taskRunReason)
                 .startSpan();
+        Timer.Sample sample = Timer.start();
         try (Scope ignored = span.makeCurrent()) {
-            return doReconcile(taskRun, taskName, generationId, taskRunReason);
+            UpdateControl<TaskRun> result;
+            if ("true".equals(taskRun.getMetadata().getLabels().get(BATCH_LABEL))) {
+                result = doReconcileBatch(taskRun, taskName, annotations, taskRunReason);
+            } else {
+                result = doReconcile(taskRun, taskName, generationId, taskRunReason);
+            }
+            // Only once handled, a reconcile that threw is retried by the operator SDK
+            if (completionKey != null) {
+                completed.add(completionKey);
+            }
+            return result;
         } finally {
+            sample.stop(reconciles);
             span.end();
         }
     }
 
+    /**
+     * Hands the update over to the lane of its generation, carrying the current trace along.
+     */
+    private void update(String generationId, GenerationStatus status, String reason, List<String> resultUrls) {
+        update(generationId, null, status, reason, resultUrls);
+    }
+
+    /**
+     * Same, for the execution of a single platform when the generation was fanned out (platform not null).
+     * <p>
+     * The completion counts as handled once its updates are on their lanes. An update that fails there is logged by
+     * the lane and not handled again, the status notifier does not wait for the broker either.
+     * </p>
+     */
+    private void update(String generationId, String platform, GenerationStatus status, String reason, List<String> resultUrls) {
+        Runnable handle = platform != null
+                ? () -> orchestrator.handlePlatformUpdate(generationId, platform, status, reason, resultUrls)
+                : () -> orchestrator.handleUpdate(generationId, status, reason, resultUrls);
+        updates.execute(generationId, io.opentelemetry.context.Context.current().wrap(handle));
+    }
+
+    private void reportFailure(String generationId, Exception e) {
+        updates.execute(generationId, io.opentelemetry.context.Context.current()
+                .wrap(() -> failureNotifier.notify(FailureUtility.buildFailureSpecFromException(e), generationId, null)));
+    }
+
+    @PreDestroy
+    void drainUpdates() {
+        // Updates already taken from the TaskRuns would be lost otherwise
+        updates.shutdown(Duration.ofSeconds(30));
+    }
+
+    private static String completionKey(TaskRun taskRun) {
+        return taskRun.getMetadata().getUid() + "/" + taskRun.getMetadata().getLabels().get(ATTEMPT_LABEL);
+    }
+
     private UpdateControl<TaskRun> doReconcile(TaskRun taskRun, String taskName, String generationId, String statusReason) {
         // --- VISIBILITY LOG ---
         // This shows if the Reconciler is running, even if the task isn't done yet.
@@ -83,6 +227,8 @@ public class TaskReconciler implements Reconciler<TaskRun> {
             log.warn("TaskRun '{}' is missing generation-id label", taskName);
             return UpdateControl.noUpdate();
         }
+        // Set when the TaskRun scans one platform of a fanned out generation
+        String platform = taskRun.getMetadata().getLabels().get(PLATFORM_LABEL);
 
         // Success Case
         if (isSuccessful(taskRun)) {
@@ -96,16 +242,17 @@ public class TaskReconciler implements Reconciler<TaskRun> {
 
                 Map<String, String> urlMap = objectMapper.readValue(jsonResult, new TypeReference<>() {});
                 List<String> urls = new ArrayList<>(urlMap.values());
+                recordSbomStats(taskRun, taskName, generationId);
 
-                orchestrator.handleUpdate(generationId, GenerationStatus.FINISHED, "TaskRun Succeeded", urls);
+                update(generationId, platform, GenerationStatus.FINISHED, "TaskRun Succeeded", urls);
 
             } catch (Exception e) {
                 log.error("Failed to parse results from TaskRun '{}'", taskName, e);
                 Span span = Span.current();
                 span.recordException(e);
                 span.setStatus(StatusCode.ERROR, e.getMessage());
-                orchestrator.handleUpdate(generationId, GenerationStatus.FAILED, "Result parsing failed: " + e.getMessage(), null);
-                failureNotifier.notify(FailureUtility.buildFailureSpecFromException(e), generationId, null);
+                update(generationId, platform, GenerationStatus.FAILED, "Result parsing failed: " + e.getMessage(), null);
+                reportFailure(generationId, e);
             }
             return UpdateControl.noUpdate();
         }
@@ -123,7 +270,7 @@ public class TaskReconciler implements Reconciler<TaskRun> {
             }
             Span.current().setStatus(StatusCode.ERROR, reason);
             // Notify core with specific status or reason string
-            orchestrator.handleUpdate(generationId, GenerationStatus.FAILED, reason, null);
+            update(generationId, platform, GenerationStatus.FAILED, reason, null);
 
             return UpdateControl.noUpdate();
         }
@@ -133,6 +280,117 @@ public class TaskReconciler implements Reconciler<TaskRun> {
         return UpdateControl.noUpdate();
     }
 
+    /**
+     * A batch TaskRun reports one entry per generation in its result, so each generation gets its own outcome:
+     * {@code {"<generation-id>": {"urls": {...}}, "<generation-id>": {"error": "..."}}}.
+     * Only when the whole TaskRun fails do all its generations fail together.
+     */
+    private UpdateControl<TaskRun> doReconcileBatch(TaskRun taskRun, String taskName, Map<String, String> annotations, String statusReason) {
+        log.info("Reconciling batch TaskRun '{}' - State: {}", taskName, statusReason);
+
+        String members = annotations != null ? annotations.get(BATCH_MEMBERS_ANNOTATION) : null;
+        if (members == null || members.isBlank()) {
+            log.warn("Batch TaskRun '{}' is missing the batch-members annotation", taskName);
+            return UpdateControl.noUpdate();
+        }
+        List<String> generationIds = List.of(members.split(","));
+
+        if (isSuccessful(taskRun)) {
+            Map<String, BatchEntry> entries;
+            try {
+                String jsonResult = getTaskRunResult(taskRun, RESULT_NAME_SBOM_URL);
+                if (jsonResult == null) {
+                    throw new RuntimeException("Result '" + RESULT_NAME_SBOM_URL + "' not found in TaskRun");
+                }
+                entries = objectMapper.readValue(jsonResult, new TypeReference<>() {});
+            } catch (Exception e) {
+                log.error("Failed to parse results from batch TaskRun '{}'", taskName, e);
+                Span span = Span.current();
+                span.recordException(e);
+                span.setStatus(StatusCode.ERROR, e.getMessage());
+                for (String generationId : generationIds) {
+                    update(generationId, GenerationStatus.FAILED, "Result parsing failed: " + e.getMessage(), null);
+                    reportFailure(generationId, e);
+                }
+                return UpdateControl.noUpdate();
+            }
+
+            for (String generationId : generationIds) {
+                BatchEntry entry = entries.get(generationId);
+                if (entry == null) {
+                    update(generationId, GenerationStatus.FAILED, "Missing from batch result", null);
+                } else if (entry.error() != null || entry.urls() == null || entry.urls().isEmpty()) {
+                    String error = entry.error() != null ? entry.error() : "No SBOM produced";
+                    log.warn("Generation {} FAILED in batch TaskRun '{}': {}", generationId, taskName, error);
+                    update(generationId, GenerationStatus.FAILED, error, null);
+                } else {
+                    if (entry.stats() != null) {
+                        recordSbomStats(entry.stats(), generationId);
+                    }
+                    update(generationId, GenerationStatus.FINISHED, "TaskRun Succeeded",
+                            new ArrayList<>(entry.urls().values()));
+                }
+            }
+            return UpdateControl.noUpdate();
+        }
+
+        if (isFailed(taskRun)) {
+            // An OOM retries every generation on its own, with more memory
+            String reason = isOomKilled(taskRun) ? REASON_OOM_KILLED : "TaskRun Failed";
+            log.warn("Batch TaskRun '{}' FAILED. Reason: {}", taskName, reason);
+            Span.current().setStatus(StatusCode.ERROR, reason);
+            for (String generationId : generationIds) {
+                update(generationId, GenerationStatus.FAILED, reason, null);
+            }
+            return UpdateControl.noUpdate();
+        }
+
+        log.debug("Batch TaskRun '{}' is still running/pending...", taskName);
+        return UpdateControl.noUpdate();
+    }
+
+    /**
+     * Outcome of one generation of a batch TaskRun, with the stats of its SBOMs when it succeeded.
+     */
+    record BatchEntry(Map<String, String> urls, String error, Map<String, SbomStats> stats) {
+    }
+
+    /**
+     * What the TaskRun found in one of its SBOMs while post-processing it.
+     */
+    record SbomStats(long components, long dependencies, long licenses, String sha256) {
+    }
+
+    /**
+     * Records the stats of the SBOMs of a TaskRun. They are informational: a TaskRun without them (older Task) or
+     * with unreadable ones still succeeds.
+     */
+    private void recordSbomStats(TaskRun taskRun, String taskName, String generationId) {
+        String jsonStats = getTaskRunResult(taskRun, RESULT_NAME_SBOM_STATS);
+        if (jsonStats == null || jsonStats.isBlank()) {
+            return;
+        }
+        try {
+            Map<String, SbomStats> stats = objectMapper.readValue(jsonStats, new TypeReference<>() {});
+            recordSbomStats(stats, generationId);
+        } catch (Exception e) {
+            log.warn("Ignoring unreadable SBOM stats of TaskRun '{}'", taskName, e);
+        }
+    }
+
+    private void recordSbomStats(Map<String, SbomStats> stats, String generationId) {
+        Span span = Span.current();
+        stats.forEach((name, sbom) -> {
+            sbomComponents.record(sbom.components());
+            sbomDependencies.record(sbom.dependencies());
+            sbomLicenses.record(sbom.licenses());
+            log.info("Generation {} produced {} ({} components, {} dependencies, {} licenses, sha256 {})",
+                    generationId, name, sbom.components(), sbom.dependencies(), sbom.licenses(), sbom.sha256());
+        });
+        span.setAttribute("sbomer.sbom.count", stats.size());
+        span.setAttribute("sbomer.sbom.components", stats.values().stream().mapToLong(SbomStats::components).sum());
+    }
+
     // --- Helpers ---
 
     private String getConditionStatus(TaskRun tr) {
@@ -0,0 +1,74 @@
+package org.jboss.sbomer.syft.generator.adapter.in;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.fabric8.tekton.v1beta1.TaskRun;
+import io.javaoperatorsdk.operator.processing.event.source.filter.OnAddFilter;
+import io.javaoperatorsdk.operator.processing.event.source.filter.OnUpdateFilter;
+
+/**
+ * Lets only the TaskRun events through that the reconciler acts on.
+ * <p>
+ * A running TaskRun gets many status updates (steps starting, pod updates) that change nothing for the generation.
+ * Only these pass:
+ * </p>
+ * <ul>
+ * <li>transitions into or out of a terminal condition ({@code Succeeded} is {@code True} or {@code False}),</li>
+ * <li>a step newly terminated by an OOM,</li>
+ * <li>a change of the owning replica (a TaskRun adopted from a replica that is gone).</li>
+ * </ul>
+ * <p>
+ * An added TaskRun (created, or listed on startup) only passes when it is already terminal. Instantiated by the
+ * operator SDK, hence the static counter.
+ * </p>
+ */
+public class TerminalTransitionFilter implements OnAddFilter<TaskRun>, OnUpdateFilter<TaskRun> {
+
+    private static final String REASON_OOM_KILLED = "OOMKilled";
+    private static final String REPLICA_LABEL = "sbomer.jboss.org/replica";
+
+    static final LongAdder SKIPPED = new LongAdder();
+
+    @Override
+    public boolean accept(TaskRun taskRun) {
+        return count(isTerminal(taskRun) || isOomKilled(taskRun));
+    }
+
+    @Override
+    public boolean accept(TaskRun newTaskRun, TaskRun oldTaskRun) {
+        return count(isTerminal(newTaskRun) != isTerminal(oldTaskRun)
+                || isOomKilled(newTaskRun) && !isOomKilled(oldTaskRun)
+                || !Objects.equals(replicaOf(newTaskRun), replicaOf(oldTaskRun)));
+    }
+
+    private static boolean count(boolean accepted) {
+        if (!accepted) {
+            SKIPPED.increment();
+        }
+        return accepted;
+    }
+
+    static boolean isTerminal(TaskRun taskRun) {
+        if (taskRun.getStatus() == null || taskRun.getStatus().getConditions() == null) {
+            return false;
+        }
+        return taskRun.getStatus().getConditions().stream()
+                .anyMatch(c -> "Succeeded".equals(c.getType())
+                        && ("True".equals(c.getStatus()) || "False".equals(c.getStatus())));
+    }
+
+    private static boolean isOomKilled(TaskRun taskRun) {
+        if (taskRun.getStatus() == null || taskRun.getStatus().getSteps() == null) {
+            return false;
+        }
+        return taskRun.getStatus().getSteps().stream()
+                .anyMatch(step -> step.getTerminated() != null && REASON_OOM_KILLED.equals(step.getTerminated().getReason()));
+    }
+
+    private static String replicaOf(TaskRun taskRun) {
+        Map<String, String> labels = taskRun.getMetadata().getLabels();
+        return labels != null ? labels.get(REPLICA_LABEL) : null;
+    }
+}
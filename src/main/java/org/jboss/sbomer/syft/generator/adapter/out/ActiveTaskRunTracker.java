@@ -0,0 +1,188 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.sbomer.syft.generator.core.port.spi.ShardOwnership;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.Filterable;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.tekton.v1beta1.TaskRun;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps an in-memory count of the syft TaskRuns that are still running.
+ * <p>
+ * Backed by a shared informer, so the count is updated incrementally from watch events
+ * instead of listing every (including finished) TaskRun in the namespace on each dispatch pass.
+ * The informer is started lazily on first use, so nothing talks to the cluster until the executor needs it.
+ * </p>
+ */
+@ApplicationScoped
+@Slf4j
+public class ActiveTaskRunTracker {
+
+    @Inject
+    KubernetesClient kubernetesClient;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @Inject
+    ShardOwnership shardOwnership;
+
+    @ConfigProperty(name = "quarkus.kubernetes-client.namespace")
+    String namespace;
+
+    // Config: How often the informer replays its cache, re-confirming the count
+    @ConfigProperty(name = "sbomer.generator.active-count.resync-period", defaultValue = "5m")
+    Duration resyncPeriod;
+
+    static final String GENERATOR_TYPE_LABEL = "sbomer.jboss.org/generator-type";
+    static final String GENERATOR_TYPE_VALUE = "syft";
+    static final String REPLICA_LABEL = "sbomer.jboss.org/replica";
+
+    // UIDs of TaskRuns that are not finished yet
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Instant> lastConfirmed = new AtomicReference<>(Instant.EPOCH);
+
+    private volatile SharedIndexInformer<TaskRun> informer;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("sbomer.generator.active.executions", running, Set::size)
+                .description("Number of running syft TaskRuns, as seen by the informer")
+                .register(meterRegistry);
+        Gauge.builder("sbomer.generator.active.staleness", this, t -> t.getStaleness().toMillis())
+                .description("Milliseconds since the active execution count was last confirmed by the cluster")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the number of running TaskRuns, or -1 if the informer is not (yet) watching the cluster.
+     */
+    public int countRunning() {
+        SharedIndexInformer<TaskRun> current = ensureStarted();
+        if (current == null || !current.isWatching()) {
+            return -1;
+        }
+        return running.size();
+    }
+
+    /**
+     * @return how long ago the count was last confirmed by a watch event or a resync.
+     */
+    public Duration getStaleness() {
+        return Duration.between(lastConfirmed.get(), Instant.now());
+    }
+
+    private SharedIndexInformer<TaskRun> ensureStarted() {
+        if (informer != null) {
+            return informer;
+        }
+        synchronized (this) {
+            if (informer == null) {
+                try {
+                    informer = selectOwned(kubernetesClient.resources(TaskRun.class)
+                            .inNamespace(namespace)
+                            .withLabel(GENERATOR_TYPE_LABEL, GENERATOR_TYPE_VALUE))
+                            .inform(new Handler(), resyncPeriod.toMillis());
+                    recount();
+                    log.info("Started TaskRun informer, {} running TaskRuns", running.size());
+                } catch (Exception e) {
+                    log.warn("Failed to start TaskRun informer, will retry on next use", e);
+                }
+            }
+            return informer;
+        }
+    }
+
+    /**
+     * When sharded, narrows the selection down to the TaskRuns of this replica, {@code max-concurrent} is per replica.
+     */
+    <T extends Filterable<T>> T selectOwned(T selection) {
+        String replicaId = shardOwnership.replicaId();
+        return replicaId != null ? selection.withLabel(REPLICA_LABEL, replicaId) : selection;
+    }
+
+    /**
+     * Rebuilds the running set from the informer cache.
+     */
+    private void recount() {
+        SharedIndexInformer<TaskRun> current = informer;
+        if (current == null) {
+            return;
+        }
+        Set<String> fresh = ConcurrentHashMap.newKeySet();
+        current.getStore().list().stream()
+                .filter(tr -> !isFinished(tr))
+                .forEach(tr -> fresh.add(tr.getMetadata().getUid()));
+        running.retainAll(fresh);
+        running.addAll(fresh);
+        lastConfirmed.set(Instant.now());
+    }
+
+    private void track(TaskRun taskRun) {
+        String uid = taskRun.getMetadata().getUid();
+        if (isFinished(taskRun)) {
+            running.remove(uid);
+        } else {
+            running.add(uid);
+        }
+        lastConfirmed.set(Instant.now());
+    }
+
+    /**
+     * Helper to check Tekton Status Conditions
+     */
+    static boolean isFinished(TaskRun taskRun) {
+        if (taskRun.getStatus() == null || taskRun.getStatus().getConditions() == null) {
+            return false; // No status means it's initializing/running
+        }
+
+        // Check for "Succeeded" condition with Status "True" or "False" (False means failed, but it is still 'finished')
+        return taskRun.getStatus().getConditions().stream()
+                .anyMatch(c -> "Succeeded".equals(c.getType()) &&
+                        ("True".equals(c.getStatus()) || "False".equals(c.getStatus())));
+    }
+
+    @PreDestroy
+    void stop() {
+        if (informer != null) {
+            informer.close();
+        }
+    }
+
+    private class Handler implements ResourceEventHandler<TaskRun> {
+
+        @Override
+        public void onAdd(TaskRun taskRun) {
+            track(taskRun);
+        }
+
+        @Override
+        public void onUpdate(TaskRun oldTaskRun, TaskRun newTaskRun) {
+            // Periodic resyncs replay the whole cache through here as well, which re-confirms every entry
+            track(newTaskRun);
+        }
+
+        @Override
+        public void onDelete(TaskRun taskRun, boolean deletedFinalStateUnknown) {
+            running.remove(taskRun.getMetadata().getUid());
+            lastConfirmed.set(Instant.now());
+        }
+    }
+}
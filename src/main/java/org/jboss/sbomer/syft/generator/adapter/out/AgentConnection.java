@@ -0,0 +1,174 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.jboss.sbomer.syft.agent.AgentWorker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The connection of the generator to one worker of the agent pool: one JSON object per line each way (see
+ * {@link AgentWorker} for the messages).
+ * <p>
+ * Both sides prove they know the secret of the release before anything else is exchanged: the worker challenges the
+ * generator, and its hello carries its own proof for the nonce the generator sent back. A worker failing that is
+ * dropped, no message of it is handed over.
+ * </p>
+ * <p>
+ * Messages are read by a thread of the connection and handed over as they come. When the connection breaks, or is
+ * closed, the close callback runs once, from that thread.
+ * </p>
+ */
+@Slf4j
+class AgentConnection implements AutoCloseable {
+
+    final AgentProvisioner.Agent agent;
+
+    private final Socket socket;
+    private final Writer out;
+    private final ObjectMapper objectMapper;
+    private final byte[] secret;
+    // Sent with the answer to the challenge, the worker proves itself with it
+    private final String nonce = AgentWorker.nonce();
+
+    // Updated by the reader thread, read by the heartbeat
+    private volatile long lastSeen = System.nanoTime();
+
+    // Guarded by the executor
+    String job;
+    Instant jobStarted;
+    long idleSince = System.nanoTime();
+    boolean ready;
+
+    private AgentConnection(AgentProvisioner.Agent agent, Socket socket, ObjectMapper objectMapper, byte[] secret)
+            throws IOException {
+        this.agent = agent;
+        this.socket = socket;
+        this.objectMapper = objectMapper;
+        this.secret = secret;
+        this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Connects to the worker and starts reading its messages, the first one handed over being its hello.
+     */
+    static AgentConnection open(AgentProvisioner.Agent agent, Duration timeout, ObjectMapper objectMapper,
+            byte[] secret, BiConsumer<AgentConnection, JsonNode> onMessage, Consumer<AgentConnection> onClose) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(agent.host(), agent.port()), (int) timeout.toMillis());
+            socket.setTcpNoDelay(true);
+            AgentConnection connection = new AgentConnection(agent, socket, objectMapper, secret);
+            Thread reader = new Thread(() -> connection.read(onMessage, onClose), "agent-" + agent.name());
+            reader.setDaemon(true);
+            reader.start();
+            return connection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void read(BiConsumer<AgentConnection, JsonNode> onMessage, Consumer<AgentConnection> onClose) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            boolean authenticated = false;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lastSeen = System.nanoTime();
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode message;
+                try {
+                    message = objectMapper.readTree(line);
+                } catch (IOException e) {
+                    log.warn("Unreadable message from agent {}: {}", agent.name(), line);
+                    continue;
+                }
+                if (!authenticated) {
+                    authenticated = authenticate(message);
+                    if (!authenticated && !"challenge".equals(message.path("type").asText())) {
+                        log.warn("Agent {} failed the handshake, dropping the connection", agent.name());
+                        break;
+                    }
+                    if (!authenticated) {
+                        continue;
+                    }
+                }
+                onMessage.accept(this, message);
+            }
+        } catch (IOException e) {
+            if (!socket.isClosed()) {
+                log.warn("Connection to agent {} lost: {}", agent.name(), e.getMessage());
+            }
+        } finally {
+            close();
+            onClose.accept(this);
+        }
+    }
+
+    /**
+     * Answers the challenge of the worker, then checks the proof in its hello.
+     *
+     * @return true once the worker proved itself, the message being its hello.
+     */
+    private boolean authenticate(JsonNode message) throws IOException {
+        String type = message.path("type").asText();
+        if ("challenge".equals(type)) {
+            send(Map.of(
+                    "type", "auth",
+                    "proof", AgentWorker.proof(secret, "generator", message.path("nonce").asText()),
+                    "nonce", nonce));
+            return false;
+        }
+        return "hello".equals(type)
+                && AgentWorker.matches(message.path("proof").asText(null), AgentWorker.proof(secret, "worker", nonce));
+    }
+
+    synchronized void send(Map<String, String> message) throws IOException {
+        out.write(objectMapper.writeValueAsString(message));
+        out.write('\n');
+        out.flush();
+    }
+
+    Duration silence() {
+        return Duration.ofNanos(System.nanoTime() - lastSeen);
+    }
+
+    String name() {
+        return agent.name();
+    }
+
+    String tier() {
+        return agent.tier();
+    }
+
+    boolean isClosed() {
+        return socket.isClosed();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug("Closing the connection to agent {} failed", agent.name(), e);
+        }
+    }
+}
@@ -0,0 +1,707 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.sbomer.syft.generator.core.domain.GenerationStatus;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.port.api.GenerationOrchestrator;
+import org.jboss.sbomer.syft.generator.core.port.spi.GenerationExecutor;
+import org.jboss.sbomer.syft.generator.core.port.spi.ShardOwnership;
+import org.jboss.sbomer.syft.generator.core.service.TaskRunFactory;
+import org.jboss.sbomer.syft.generator.core.utility.TraceUtility;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the generations on a pool of long-lived agent pods instead of one TaskRun each, so a generation does not wait
+ * for a pod to be scheduled, its init containers and its steps to start. Built in with
+ * {@code -Dsbomer.generator.executor=agent-pool}.
+ * <p>
+ * Each worker ({@code org.jboss.sbomer.syft.agent.AgentWorker}) runs one generation at a time and talks to the
+ * generator over a TCP connection, one JSON object per line. The generator pings every worker each
+ * {@code heartbeat-interval}, a worker silent for {@code heartbeat-timeout} is lost and so is the generation it was
+ * running, as {@code OOMKilled} when its pod was killed for its memory in the meantime.
+ * </p>
+ * <p>
+ * Workers come in memory tiers. A generation goes to the smallest tier that fits its memory, or to an idle worker
+ * of a bigger tier, so the OOM retry of a generation (with more memory) moves up to a bigger worker. The pool
+ * follows its queue: every tier gets as many workers as it has generations waiting and running (the smallest tier
+ * keeps {@code min-workers}), up to {@code max-workers} in total. Workers idle for {@code idle-timeout} are removed.
+ * </p>
+ * <p>
+ * The queue and the assignments are kept in memory. After a restart, a worker still running a generation tells so
+ * when it connects: the generation is reported as {@code FAILED} (its ID is part of the job ID) and the worker
+ * cancels it.
+ * </p>
+ * <p>
+ * The workers only take orders from a connection proving it knows the {@code shared-secret} of the release, the
+ * generator drops workers that cannot prove it either. When sharded, the pods of replicas that left the members are
+ * removed by the remaining ones.
+ * </p>
+ */
+@ApplicationScoped
+@IfBuildProperty(name = "sbomer.generator.executor", stringValue = "agent-pool")
+@Slf4j
+public class AgentPoolGenerationExecutor implements GenerationExecutor {
+
+    @Inject
+    KubernetesClient kubernetesClient;
+
+    @Inject
+    GenerationOrchestrator orchestrator;
+
+    @Inject
+    ShardOwnership shardOwnership;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @Inject
+    Tracer tracer;
+
+    @ConfigProperty(name = "quarkus.kubernetes-client.namespace")
+    String namespace;
+
+    @ConfigProperty(name = "sbomer.generator.service-account", defaultValue = "sbomer-sa")
+    String serviceAccount;
+
+    @ConfigProperty(name = "sbomer.storage.url")
+    String storageUrl;
+
+    // Config: Memory limits of the workers, one tier each
+    @ConfigProperty(name = "sbomer.generator.agent-pool.tiers", defaultValue = "2Gi,4Gi,8Gi")
+    List<String> tiers;
+
+    // Config: Workers of the smallest tier kept running without work
+    @ConfigProperty(name = "sbomer.generator.agent-pool.min-workers", defaultValue = "1")
+    int minWorkers;
+
+    // Config: Max workers of all tiers together
+    @ConfigProperty(name = "sbomer.generator.agent-pool.max-workers", defaultValue = "20")
+    int maxWorkers;
+
+    // Config: Workers without work for this long are removed (down to min-workers)
+    @ConfigProperty(name = "sbomer.generator.agent-pool.idle-timeout", defaultValue = "5m")
+    Duration idleTimeout;
+
+    // Config: A worker that did not answer for this long is lost, and so is its generation
+    @ConfigProperty(name = "sbomer.generator.agent-pool.heartbeat-timeout", defaultValue = "20s")
+    Duration heartbeatTimeout;
+
+    // Config: Port the workers listen on
+    @ConfigProperty(name = "sbomer.generator.agent-pool.port", defaultValue = "7070")
+    int port;
+
+    // Config: The agent image the workers run
+    @ConfigProperty(name = "sbomer.generator.agent-pool.image", defaultValue = "quay.io/sbomer/syft-agent:latest")
+    String image;
+
+    // Config: Secret of type dockerconfigjson with the registry credentials of the workers
+    @ConfigProperty(name = "sbomer.generator.agent-pool.auth-secret")
+    Optional<String> authSecret;
+
+    // Config: Value of the pool label of the workers, one pool per release
+    @ConfigProperty(name = "sbomer.generator.agent-pool.name", defaultValue = "syft")
+    String poolName;
+
+    // Config: Secret shared with the workers, each side of a connection proves it knows it before anything else
+    @ConfigProperty(name = "sbomer.generator.agent-pool.shared-secret")
+    Optional<String> sharedSecret;
+
+    // Config: Secret holding the shared secret (key "secret"), mounted into the workers
+    @ConfigProperty(name = "sbomer.generator.agent-pool.shared-secret-name", defaultValue = "syft-agent-pool")
+    String sharedSecretName;
+
+    // Config: Pod of the generator, its Deployment owns the workers
+    @ConfigProperty(name = "sbomer.generator.agent-pool.owner-pod")
+    Optional<String> ownerPod;
+
+    @ConfigProperty(name = "sbomer.generator.syft-cache.enabled", defaultValue = "false")
+    boolean syftCacheEnabled;
+
+    @ConfigProperty(name = "sbomer.generator.syft-cache.claim-name", defaultValue = "syft-cache")
+    String syftCacheClaimName;
+
+    @ConfigProperty(name = "sbomer.generator.syft-cache.layout", defaultValue = "node")
+    String syftCacheLayout;
+
+    @ConfigProperty(name = "sbomer.generator.syft-cache.pool", defaultValue = "default")
+    String syftCachePool;
+
+    @ConfigProperty(name = "sbomer.generator.syft-cache.max-size", defaultValue = "10Gi")
+    String syftCacheMaxSize;
+
+    // Set by tests, the Kubernetes provisioner otherwise
+    AgentProvisioner provisioner;
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    // The pod status may lag behind the broken connection, the OOM check waits for it a little
+    private static final Duration LOST_GRACE = Duration.ofSeconds(3);
+
+    private record Job(String id, GenerationTask task, String tier) {
+    }
+
+    private record LostJob(Job job, String worker, Instant started, long lostAt) {
+    }
+
+    // Guarded by this
+    private final Map<String, Job> pending = new LinkedHashMap<>();
+    private final Map<String, Job> running = new HashMap<>();
+    private final Map<String, AgentConnection> workers = new HashMap<>();
+    private final List<LostJob> lostJobs = new ArrayList<>();
+    private boolean closed;
+
+    private final Object maintenanceLock = new Object();
+    private final AtomicBoolean maintenancePending = new AtomicBoolean();
+    private List<String> sortedTiers;
+    private byte[] secret;
+    private ExecutorService updates;
+    private ExecutorService maintenance;
+    private Counter lost;
+
+    @PostConstruct
+    void init() {
+        sortedTiers = tiers.stream().map(String::trim).sorted(Comparator.comparing(AgentPoolGenerationExecutor::bytes)).toList();
+        secret = sharedSecret.map(String::trim)
+                .filter(value -> !value.isEmpty())
+                .map(value -> value.getBytes(StandardCharsets.UTF_8))
+                .orElseThrow(() -> new IllegalStateException(
+                        "sbomer.generator.agent-pool.shared-secret is required, the workers refuse connections without it"));
+        if (provisioner == null) {
+            KubernetesAgentProvisioner.Cache cache = syftCacheEnabled
+                    ? new KubernetesAgentProvisioner.Cache(syftCacheClaimName, syftCacheLayout, syftCachePool,
+                            bytes(syftCacheMaxSize).longValue())
+                    : null;
+            provisioner = new KubernetesAgentProvisioner(kubernetesClient, namespace, poolName, image, serviceAccount,
+                    port, authSecret, sharedSecretName, ownerPod, cache, shardOwnership.replicaId());
+        }
+        updates = Executors.newFixedThreadPool(4, r -> {
+            Thread thread = new Thread(r, "agent-pool-update");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "agent-pool-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (String tier : sortedTiers) {
+            Gauge.builder("sbomer.generator.agent-pool.workers", this, executor -> executor.countWorkers(tier, false))
+                    .description("Connected workers of the agent pool")
+                    .tag("tier", tier)
+                    .register(meterRegistry);
+            Gauge.builder("sbomer.generator.agent-pool.busy", this, executor -> executor.countWorkers(tier, true))
+                    .description("Workers of the agent pool running a generation")
+                    .tag("tier", tier)
+                    .register(meterRegistry);
+        }
+        Gauge.builder("sbomer.generator.agent-pool.pending", this, AgentPoolGenerationExecutor::countPending)
+                .description("Generations waiting for a worker of the agent pool")
+                .register(meterRegistry);
+        lost = meterRegistry.counter("sbomer.generator.agent-pool.lost");
+        log.info("Agent pool executor started with tiers {}", sortedTiers);
+    }
+
+    @Override
+    public void scheduleGeneration(GenerationTask generationTask) {
+        String memory = generationTask.memoryOverride() != null ? generationTask.memoryOverride() : sortedTiers.get(0);
+        Job job = new Job(jobId(generationTask), generationTask, tierFor(memory));
+        log.info("Queueing generation {} for an agent of tier {} ({})", generationTask.generationId(), job.tier(), memory);
+        synchronized (this) {
+            pending.put(job.id(), job);
+            dispatch();
+            if (!pending.containsKey(job.id())) {
+                return;
+            }
+        }
+        // No idle worker for it, the pool may have to grow
+        requestMaintenance();
+    }
+
+    @Override
+    public synchronized void abortGeneration(String generationId) {
+        log.info("Aborting generation: {}", generationId);
+        pending.values().removeIf(job -> job.task().generationId().equals(generationId));
+        for (AgentConnection worker : workers.values()) {
+            Job job = worker.job != null ? running.get(worker.job) : null;
+            if (job != null && job.task().generationId().equals(generationId)) {
+                running.remove(job.id());
+                worker.job = null;
+                worker.idleSince = System.nanoTime();
+                sendOrClose(worker, Map.of("type", "cancel", "job", job.id()));
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Does nothing: the worker removes the workspace of every job itself, and its pod is kept for the next one.
+     */
+    @Override
+    public void cleanupGeneration(String generationId) {
+        log.debug("Nothing to clean up for generation {} on the agent pool", generationId);
+    }
+
+    /**
+     * @return the generations queued for a worker plus the ones running on a worker: the orchestrator throttles on
+     * what it handed over, whether a worker took it yet or not.
+     */
+    @Override
+    public synchronized int countActiveExecutions() {
+        return pending.size() + running.size();
+    }
+
+    /**
+     * Connects to new workers, pings the connected ones, settles lost generations and resizes the pool.
+     */
+    @Scheduled(every = "{sbomer.generator.agent-pool.heartbeat-interval:5s}")
+    void heartbeat() {
+        maintain();
+    }
+
+    void maintain() {
+        synchronized (maintenanceLock) {
+            List<AgentProvisioner.Agent> agents;
+            try {
+                agents = provisioner.list();
+            } catch (Exception e) {
+                log.warn("Cannot list the agents of the pool, will retry", e);
+                agents = null;
+            }
+            if (agents != null) {
+                connect(agents);
+            }
+            ping(agents);
+            settleLostJobs();
+            synchronized (this) {
+                dispatch();
+            }
+            if (agents != null) {
+                scale(agents);
+            }
+            deleteOrphans();
+        }
+    }
+
+    private void deleteOrphans() {
+        Set<String> replicas = shardOwnership.liveReplicas();
+        if (replicas == null) {
+            return;
+        }
+        try {
+            provisioner.deleteOrphans(replicas);
+        } catch (Exception e) {
+            log.warn("Cannot remove the agents of gone replicas, will retry", e);
+        }
+    }
+
+    private void requestMaintenance() {
+        if (maintenancePending.compareAndSet(false, true)) {
+            maintenance.execute(() -> {
+                maintenancePending.set(false);
+                try {
+                    maintain();
+                } catch (Exception e) {
+                    log.error("Agent pool maintenance failed, the heartbeat will try again", e);
+                }
+            });
+        }
+    }
+
+    private void connect(List<AgentProvisioner.Agent> agents) {
+        for (AgentProvisioner.Agent agent : agents) {
+            synchronized (this) {
+                if (!agent.ready() || agent.host() == null || workers.containsKey(agent.name()) || closed) {
+                    continue;
+                }
+            }
+            try {
+                AgentConnection connection = AgentConnection.open(agent, CONNECT_TIMEOUT, objectMapper, secret,
+                        this::onMessage, this::onClose);
+                synchronized (this) {
+                    // Broken before it was added, its close callback found nothing to remove
+                    if (connection.isClosed()) {
+                        continue;
+                    }
+                    workers.put(agent.name(), connection);
+                }
+                log.info("Connected to agent {} ({})", agent.name(), agent.tier());
+            } catch (IOException e) {
+                log.debug("Agent {} not reachable yet: {}", agent.name(), e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void ping(List<AgentProvisioner.Agent> agents) {
+        Set<String> present = new HashSet<>();
+        if (agents != null) {
+            agents.forEach(agent -> present.add(agent.name()));
+        }
+        for (AgentConnection worker : new ArrayList<>(workers.values())) {
+            if (agents != null && !present.contains(worker.name())) {
+                log.warn("Agent {} is gone", worker.name());
+                worker.close();
+            } else if (worker.silence().compareTo(heartbeatTimeout) > 0) {
+                log.warn("Agent {} did not answer for {}s", worker.name(), worker.silence().toSeconds());
+                worker.close();
+            } else {
+                sendOrClose(worker, Map.of("type", "ping"));
+            }
+        }
+    }
+
+    /**
+     * Fails the generations of lost workers, once the pod status had a moment to tell whether it was an OOM.
+     */
+    private void settleLostJobs() {
+        List<LostJob> due = new ArrayList<>();
+        synchronized (this) {
+            Iterator<LostJob> it = lostJobs.iterator();
+            while (it.hasNext()) {
+                LostJob lostJob = it.next();
+                if (System.nanoTime() - lostJob.lostAt() >= LOST_GRACE.toNanos()) {
+                    due.add(lostJob);
+                    it.remove();
+                }
+            }
+        }
+        for (LostJob lostJob : due) {
+            boolean oom;
+            try {
+                oom = provisioner.oomKilledSince(lostJob.worker(), lostJob.started());
+            } catch (Exception e) {
+                log.warn("Cannot tell why agent {} was lost", lostJob.worker(), e);
+                oom = false;
+            }
+            String reason = oom ? "OOMKilled" : "Agent " + lostJob.worker() + " lost";
+            log.warn("Generation {} failed: {}", lostJob.job().task().generationId(), reason);
+            report(lostJob.job(), lostJob.worker(), GenerationStatus.FAILED, reason, null);
+        }
+    }
+
+    private void scale(List<AgentProvisioner.Agent> agents) {
+        List<String> toCreate = new ArrayList<>();
+        List<AgentConnection> toRemove = new ArrayList<>();
+        synchronized (this) {
+            Map<String, Integer> existing = new HashMap<>();
+            agents.forEach(agent -> existing.merge(agent.tier(), 1, Integer::sum));
+            int total = agents.size();
+            for (String tier : sortedTiers) {
+                int demand = (int) pending.values().stream().filter(job -> job.tier().equals(tier)).count()
+                        + countWorkers(tier, true);
+                int desired = Math.max(demand, tier.equals(sortedTiers.get(0)) ? minWorkers : 0);
+                int have = existing.getOrDefault(tier, 0);
+                for (; have < desired && total < maxWorkers; have++, total++) {
+                    toCreate.add(tier);
+                }
+                for (AgentConnection worker : workers.values()) {
+                    if (have <= desired) {
+                        break;
+                    }
+                    if (worker.tier().equals(tier) && worker.ready && worker.job == null
+                            && System.nanoTime() - worker.idleSince > idleTimeout.toNanos()) {
+                        // Never handed work again
+                        worker.ready = false;
+                        toRemove.add(worker);
+                        have--;
+                        total--;
+                    }
+                }
+            }
+        }
+        for (String tier : toCreate) {
+            try {
+                provisioner.create(tier);
+            } catch (Exception e) {
+                log.warn("Cannot start an agent of tier {}, will retry", tier, e);
+            }
+        }
+        for (AgentConnection worker : toRemove) {
+            log.info("Removing idle agent {} ({})", worker.name(), worker.tier());
+            worker.close();
+            try {
+                provisioner.delete(worker.name());
+            } catch (Exception e) {
+                log.warn("Cannot remove agent {}", worker.name(), e);
+            }
+        }
+    }
+
+    /**
+     * Hands the waiting generations, oldest first, to idle workers of their tier or a bigger one.
+     */
+    private synchronized void dispatch() {
+        Iterator<Job> it = pending.values().iterator();
+        while (it.hasNext()) {
+            Job job = it.next();
+            AgentConnection worker = idleWorker(job.tier());
+            if (worker == null) {
+                continue;
+            }
+            if (!sendOrClose(worker, runMessage(job))) {
+                continue;
+            }
+            worker.job = job.id();
+            worker.jobStarted = Instant.now();
+            running.put(job.id(), job);
+            it.remove();
+            log.info("Generation {} runs on agent {} ({})", job.task().generationId(), worker.name(), worker.tier());
+        }
+    }
+
+    private AgentConnection idleWorker(String tier) {
+        for (String candidate : sortedTiers.subList(sortedTiers.indexOf(tier), sortedTiers.size())) {
+            for (AgentConnection worker : workers.values()) {
+                if (worker.ready && worker.job == null && worker.tier().equals(candidate)) {
+                    return worker;
+                }
+            }
+        }
+        return null;
+    }
+
+    private synchronized void onMessage(AgentConnection worker, JsonNode message) {
+        String type = message.path("type").asText();
+        String id = message.path("job").asText("");
+        switch (type) {
+            case "hello" -> {
+                worker.ready = true;
+                worker.idleSince = System.nanoTime();
+                // Still running something, e.g. for a generator from before a restart
+                if (!id.isEmpty()) {
+                    log.info("Agent {} still runs {}, cancelling it", worker.name(), id);
+                    String generationId = id.split("/", 2)[0];
+                    if (!isKnown(generationId)) {
+                        // Nobody waits for its outcome anymore, the generation would stay GENERATING
+                        reportUnknown(id, worker.name());
+                    }
+                    sendOrClose(worker, Map.of("type", "cancel", "job", id));
+                }
+                dispatch();
+            }
+            case "done" -> {
+                if (!id.equals(worker.job)) {
+                    log.debug("Ignoring the result of {} from agent {}", id, worker.name());
+                    return;
+                }
+                Job job = running.remove(id);
+                worker.job = null;
+                worker.idleSince = System.nanoTime();
+                if ("FINISHED".equals(message.path("status").asText())) {
+                    List<String> urls = new ArrayList<>();
+                    message.path("urls").forEach(url -> urls.add(url.asText()));
+                    report(job, worker.name(), GenerationStatus.FINISHED, "Generation Succeeded", urls);
+                } else {
+                    report(job, worker.name(), GenerationStatus.FAILED,
+                            message.path("reason").asText("Agent pipeline failed"), null);
+                }
+                dispatch();
+            }
+            case "rejected" -> {
+                // The worker is busy with something this generator does not know about: the job waits for another
+                // worker, the connection is dropped and the next hello tells what to cancel
+                Job job = running.remove(id);
+                if (job != null) {
+                    pending.put(job.id(), job);
+                }
+                worker.job = null;
+                worker.ready = false;
+                worker.close();
+            }
+            default -> {
+                // pong and accepted only count as signs of life
+            }
+        }
+    }
+
+    private synchronized void onClose(AgentConnection worker) {
+        if (workers.get(worker.name()) != worker) {
+            return;
+        }
+        workers.remove(worker.name());
+        if (closed || worker.job == null) {
+            return;
+        }
+        Job job = running.remove(worker.job);
+        if (job != null) {
+            lost.increment();
+            lostJobs.add(new LostJob(job, worker.name(), worker.jobStarted, System.nanoTime()));
+            requestMaintenance();
+        }
+    }
+
+    private boolean sendOrClose(AgentConnection worker, Map<String, String> message) {
+        try {
+            worker.send(message);
+            return true;
+        } catch (IOException e) {
+            log.warn("Cannot reach agent {}: {}", worker.name(), e.getMessage());
+            worker.ready = false;
+            worker.close();
+            return false;
+        }
+    }
+
+    private Map<String, String> runMessage(Job job) {
+        GenerationTask task = job.task();
+        String identifier = task.image();
+        Map<String, String> message = new LinkedHashMap<>();
+        message.put("type", "run");
+        message.put("job", job.id());
+        message.put("generation", task.generationId());
+        message.put("image", task.platform() != null ? TaskRunFactory.platformImage(identifier, task.platform().digest()) : identifier);
+        message.put("variant", task.platform() != null && task.platform().variant() != null ? task.platform().variant() : "");
+        message.put("storage", storageUrl);
+        message.put("traceparent", task.traceParent() != null ? task.traceParent() : "");
+        return message;
+    }
+
+    /**
+     * Hands the outcome over to the orchestrator, off the connection thread: a retry schedules right back into the
+     * pool.
+     */
+    private void report(Job job, String worker, GenerationStatus status, String reason, List<String> urls) {
+        GenerationTask task = job.task();
+        updates.execute(() -> {
+            Span span = TraceUtility.childSpanBuilder(tracer, "AgentPoolGenerationExecutor.complete", task.traceParent(),
+                            task.generationId())
+                    .setAttribute("agent.name", worker)
+                    .setAttribute("agent.tier", job.tier())
+                    .setAttribute("generation.status", status.name())
+                    .startSpan();
+            try (Scope ignored = span.makeCurrent()) {
+                if (task.platform() != null) {
+                    orchestrator.handlePlatformUpdate(task.generationId(), task.platform().key(), status, reason, urls);
+                } else {
+                    orchestrator.handleUpdate(task.generationId(), status, reason, urls);
+                }
+            } catch (Exception e) {
+                log.error("Cannot handle the outcome of generation {}", task.generationId(), e);
+                span.recordException(e);
+            } finally {
+                span.end();
+            }
+        });
+    }
+
+    /**
+     * Whether this generator has a job of the generation, e.g. the retry of the one a worker still runs.
+     */
+    private boolean isKnown(String generationId) {
+        return Stream.concat(Stream.concat(running.values().stream(), pending.values().stream()),
+                        lostJobs.stream().map(LostJob::job))
+                .anyMatch(job -> job.task().generationId().equals(generationId));
+    }
+
+    /**
+     * Fails a job this generator did not hand out, from its ID ({@code generationId/retry[/platform]}) alone.
+     */
+    private void reportUnknown(String jobId, String worker) {
+        String[] parts = jobId.split("/", 3);
+        String generationId = parts[0];
+        String platform = parts.length == 3 ? parts[2] : null;
+        String reason = "Agent " + worker + " was running it for a generator that restarted";
+        updates.execute(() -> {
+            try {
+                if (platform != null) {
+                    orchestrator.handlePlatformUpdate(generationId, platform, GenerationStatus.FAILED, reason, null);
+                } else {
+                    orchestrator.handleUpdate(generationId, GenerationStatus.FAILED, reason, null);
+                }
+            } catch (Exception e) {
+                log.error("Cannot fail generation {} left on agent {}", generationId, worker, e);
+            }
+        });
+    }
+
+    synchronized int countWorkers(String tier, boolean busy) {
+        return (int) workers.values().stream()
+                .filter(worker -> worker.tier().equals(tier) && worker.ready && (!busy || worker.job != null))
+                .count();
+    }
+
+    synchronized int countPending() {
+        return pending.size();
+    }
+
+    /**
+     * @return the smallest tier with at least the given memory, the biggest one when none has enough.
+     */
+    String tierFor(String memory) {
+        BigDecimal needed = bytes(memory);
+        return sortedTiers.stream()
+                .filter(tier -> bytes(tier).compareTo(needed) >= 0)
+                .findFirst()
+                .orElse(sortedTiers.get(sortedTiers.size() - 1));
+    }
+
+    private static String jobId(GenerationTask task) {
+        String id = task.generationId() + "/" + task.retryCount();
+        return task.platform() != null ? id + "/" + task.platform().key() : id;
+    }
+
+    private static BigDecimal bytes(String memory) {
+        return Quantity.getAmountInBytes(new Quantity(memory));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        List<AgentConnection> connections;
+        synchronized (this) {
+            closed = true;
+            connections = new ArrayList<>(workers.values());
+        }
+        // The workers stay up for the next generator, which fails and cancels what they are running
+        connections.forEach(AgentConnection::close);
+        maintenance.shutdownNow();
+        updates.shutdown();
+        try {
+            if (!updates.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Outcomes of the agent pool still being handled at shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
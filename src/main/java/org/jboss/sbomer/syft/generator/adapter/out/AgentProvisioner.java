@@ -0,0 +1,42 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Creates and removes the workers of the agent pool. The Kubernetes implementation runs each worker in a pod of its
+ * own, tests run them in-process.
+ */
+interface AgentProvisioner {
+
+    /**
+     * A worker of the pool, reachable at {@code host:port} once ready.
+     */
+    record Agent(String name, String tier, String host, int port, boolean ready) {
+    }
+
+    /**
+     * @return all workers of the pool, ready or still starting.
+     */
+    List<Agent> list();
+
+    /**
+     * Starts a worker with the memory of the tier.
+     */
+    void create(String tier);
+
+    void delete(String name);
+
+    /**
+     * Removes the workers left behind by replicas of the generator that are gone.
+     *
+     * @param replicas The replicas still sharing the work.
+     */
+    void deleteOrphans(Set<String> replicas);
+
+    /**
+     * @return whether the worker was killed for its memory after the given instant.
+     */
+    boolean oomKilledSince(String name, Instant since);
+}
@@ -0,0 +1,264 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.sbomer.syft.generator.core.port.spi.SlotAllocator;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.api.model.ConfigMapList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.dsl.NonNamespaceOperation;
+import io.fabric8.kubernetes.client.dsl.Resource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Shares one concurrency budget between every replica of the generator through a ConfigMap.
+ * <p>
+ * The ConfigMap holds one entry per replica: the slots it holds and until when ({@code <held>/<expires-at>}).
+ * Every change is a read-modify-write guarded by the resourceVersion of the ConfigMap, so two replicas can never
+ * both take the last free slot: the second write fails with a conflict and is retried on fresh data.
+ * </p>
+ * <p>
+ * A replica renews its entry periodically. Entries that expired are ignored and dropped by the next write, so a
+ * crashed replica gives its slots back after {@code lease-duration}. Released slots are only written back with the
+ * next acquire or renewal, which keeps the ConfigMap writes down to about one per dispatch pass.
+ * </p>
+ */
+@ApplicationScoped
+@IfBuildProperty(name = "sbomer.generator.global-budget.enabled", stringValue = "true")
+@Slf4j
+public class ConfigMapSlotAllocator implements SlotAllocator {
+
+    @Inject
+    KubernetesClient kubernetesClient;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @ConfigProperty(name = "quarkus.kubernetes-client.namespace")
+    String namespace;
+
+    // Config: Identity of this replica in the shared budget, the pod name by default
+    @ConfigProperty(name = "sbomer.generator.sharding.replica-id")
+    String replicaId;
+
+    // Config: Max executions of all replicas together
+    @ConfigProperty(name = "sbomer.generator.global-budget.max-concurrent", defaultValue = "100")
+    int budget;
+
+    // Config: Name of the ConfigMap holding the slots of every replica
+    @ConfigProperty(name = "sbomer.generator.global-budget.config-map", defaultValue = "syft-generator-slots")
+    String configMapName;
+
+    // Config: Slots of a replica that did not renew them for this long are free again
+    @ConfigProperty(name = "sbomer.generator.global-budget.lease-duration", defaultValue = "30s")
+    Duration leaseDuration;
+
+    // Config: How often a write is retried after another replica changed the budget in the meantime
+    @ConfigProperty(name = "sbomer.generator.global-budget.max-conflict-retries", defaultValue = "10")
+    int maxConflictRetries;
+
+    /**
+     * The slots of one replica, free again once expired.
+     */
+    record Holder(int held, long expiresAt) {
+
+        static Holder parse(String value) {
+            int separator = value.indexOf('/');
+            if (separator < 0) {
+                return null;
+            }
+            try {
+                return new Holder(Integer.parseInt(value.substring(0, separator)), Long.parseLong(value.substring(separator + 1)));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        String format() {
+            return held + "/" + expiresAt;
+        }
+    }
+
+    // Slots held by this replica. Lowered right away on release, written with the next acquire or renewal
+    private final AtomicInteger held = new AtomicInteger();
+    // What the ConfigMap entry of this replica says. Only changed while holding the lock
+    private int written;
+
+    private Counter conflicts;
+    private Counter denied;
+
+    @PostConstruct
+    void init() {
+        conflicts = meterRegistry.counter("sbomer.generator.slots.conflicts");
+        denied = meterRegistry.counter("sbomer.generator.slots.denied");
+        Gauge.builder("sbomer.generator.slots.held", held, AtomicInteger::get)
+                .description("Slots of the shared budget held by this replica")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public synchronized int acquire(int wanted) {
+        if (wanted <= 0) {
+            return 0;
+        }
+        try {
+            int granted = update(holders -> {
+                int inUse = held.get();
+                for (Map.Entry<String, Holder> entry : holders.entrySet()) {
+                    if (!entry.getKey().equals(replicaId)) {
+                        inUse += entry.getValue().held();
+                    }
+                }
+                int grant = Math.max(0, Math.min(wanted, budget - inUse));
+                putOwn(holders, held.get() + grant);
+                return grant;
+            });
+            held.addAndGet(granted);
+            if (granted < wanted) {
+                log.debug("Shared budget exhausted, {} of {} slots granted", granted, wanted);
+                denied.increment(wanted - granted);
+            }
+            return granted;
+        } catch (Exception e) {
+            // Better not to dispatch than to overshoot, the next pass tries again
+            log.warn("Failed to take slots from the shared budget", e);
+            return 0;
+        }
+    }
+
+    @Override
+    public void release(int count) {
+        held.updateAndGet(current -> Math.max(0, current - count));
+    }
+
+    /**
+     * Renews the slots of this replica and writes back released ones.
+     */
+    @Scheduled(every = "{sbomer.generator.global-budget.renew-interval:10s}")
+    synchronized void renew() {
+        if (held.get() == 0 && written == 0) {
+            // Nothing held and nothing to give back
+            return;
+        }
+        try {
+            update(holders -> {
+                putOwn(holders, held.get());
+                return 0;
+            });
+        } catch (Exception e) {
+            log.warn("Failed to renew the slots of replica {}, they expire in {}", replicaId, leaseDuration, e);
+        }
+    }
+
+    /**
+     * Reads the live holders, applies the change and writes them back, as long as nobody else wrote in between.
+     *
+     * @return the result of the change that was written.
+     */
+    private int update(ToIntFunction<Map<String, Holder>> change) {
+        for (int attempt = 1; ; attempt++) {
+            ConfigMap current = configMaps().withName(configMapName).get();
+            if (current == null) {
+                createConfigMap();
+                current = configMaps().withName(configMapName).get();
+            }
+
+            long now = System.currentTimeMillis();
+            Map<String, Holder> holders = new HashMap<>();
+            if (current.getData() != null) {
+                current.getData().forEach((replica, value) -> {
+                    Holder holder = Holder.parse(value);
+                    // Expired entries of crashed replicas are dropped by this write
+                    if (holder != null && holder.expiresAt() > now) {
+                        holders.put(replica, holder);
+                    }
+                });
+            }
+
+            int result = change.applyAsInt(holders);
+
+            Map<String, String> data = new TreeMap<>();
+            holders.forEach((replica, holder) -> data.put(replica, holder.format()));
+            try {
+                // The resourceVersion read above is sent along, the write fails if the ConfigMap changed since
+                configMaps().resource(new ConfigMapBuilder(current).withData(data).build()).update();
+                Holder own = holders.get(replicaId);
+                written = own != null ? own.held() : 0;
+                return result;
+            } catch (KubernetesClientException e) {
+                if (e.getCode() != HttpURLConnection.HTTP_CONFLICT || attempt >= maxConflictRetries) {
+                    throw e;
+                }
+                conflicts.increment();
+                backOff(attempt);
+            }
+        }
+    }
+
+    private void putOwn(Map<String, Holder> holders, int count) {
+        if (count > 0) {
+            holders.put(replicaId, new Holder(count, System.currentTimeMillis() + leaseDuration.toMillis()));
+        } else {
+            holders.remove(replicaId);
+        }
+    }
+
+    private void createConfigMap() {
+        try {
+            configMaps().resource(new ConfigMapBuilder()
+                    .withNewMetadata()
+                    .withName(configMapName)
+                    .addToLabels("app.kubernetes.io/managed-by", "sbomer-syft-generator")
+                    .endMetadata()
+                    .build()).create();
+            log.info("Created ConfigMap '{}' for the shared budget of {} slots", configMapName, budget);
+        } catch (KubernetesClientException e) {
+            if (e.getCode() != HttpURLConnection.HTTP_CONFLICT) {
+                throw e;
+            }
+            // Another replica was faster
+        }
+    }
+
+    /**
+     * Waits a random, growing time, so replicas that collided do not collide again right away.
+     */
+    private static void backOff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, 10L * attempt + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry", e);
+        }
+    }
+
+    private NonNamespaceOperation<ConfigMap, ConfigMapList, Resource<ConfigMap>> configMaps() {
+        return kubernetesClient.configMaps().inNamespace(namespace);
+    }
+
+    @PreDestroy
+    synchronized void giveBack() {
+        held.set(0);
+        renew();
+    }
+}
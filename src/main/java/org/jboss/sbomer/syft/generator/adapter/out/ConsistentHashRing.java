@@ -0,0 +1,55 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Maps keys onto a set of members, so that adding or removing a member only moves the keys of that member.
+ * <p>
+ * Every member is placed on the ring several times (virtual nodes), which evens out the share of each member.
+ * Every replica builds the same ring from the same members, so they all agree on the owner of a key.
+ * </p>
+ */
+final class ConsistentHashRing {
+
+    private final NavigableMap<Integer, String> ring = new TreeMap<>();
+
+    ConsistentHashRing(Collection<String> members, int virtualNodes) {
+        for (String member : members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(member + "#" + i), member);
+            }
+        }
+    }
+
+    /**
+     * @return the member owning the key, or null if the ring is empty.
+     */
+    String ownerOf(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Integer, String> entry = ring.ceilingEntry(hash(key));
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+    /**
+     * FNV-1a with a murmur3 finalizer, so similar keys (e.g. consecutive generation IDs) spread over the ring.
+     */
+    static int hash(String key) {
+        int h = 0x811c9dc5;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,182 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.nio.file.attribute.FileTime;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.sbomer.syft.generator.core.port.spi.ResultCacheStore;
+
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persistent result cache tier on a local (mounted) volume, one small file per entry.
+ * <p>
+ * File layout: the key, the storage timestamp in epoch millis, then one result URL per line.
+ * Files are written to a temporary name and moved into place, so readers never see a partial entry.
+ * </p>
+ * <p>
+ * The tier is bounded on disk: expired entries and the oldest entries beyond the configured maximum are deleted
+ * periodically, by file modification time (the time the entry was written).
+ * </p>
+ */
+@ApplicationScoped
+@IfBuildProperty(name = "sbomer.generator.cache.store", stringValue = "file")
+@Slf4j
+public class FileResultCacheStore implements ResultCacheStore {
+
+    // Config: Directory on a persistent volume holding the cache entries
+    @ConfigProperty(name = "sbomer.generator.cache.file.dir", defaultValue = "/var/lib/syft-generator/result-cache")
+    Path directory;
+
+    // Config: Entries older than this are deleted, same validity as the in-memory tier
+    @ConfigProperty(name = "sbomer.generator.cache.ttl", defaultValue = "7d")
+    Duration ttl;
+
+    // Config: Max entries kept on disk, the oldest ones beyond it are deleted
+    @ConfigProperty(name = "sbomer.generator.cache.file.max-entries", defaultValue = "100000")
+    int maxEntries;
+
+    @Override
+    public Optional<Entry> get(String key) {
+        Path file = fileFor(key);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.size() < 2 || !key.equals(lines.get(0))) {
+                return Optional.empty();
+            }
+            Instant storedAt = Instant.ofEpochMilli(Long.parseLong(lines.get(1)));
+            return Optional.of(new Entry(List.copyOf(lines.subList(2, lines.size())), storedAt));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read result cache entry {}", file, e);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void put(String key, Entry entry) {
+        List<String> lines = new ArrayList<>();
+        lines.add(key);
+        lines.add(String.valueOf(entry.storedAt().toEpochMilli()));
+        lines.addAll(entry.resultUrls());
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, "entry-", ".tmp");
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, fileFor(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to persist result cache entry for {}", key, e);
+        }
+    }
+
+    @Override
+    public void invalidate(String keyPrefix) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(f -> f.getFileName().toString().endsWith(".entry"))
+                    .filter(f -> keyPrefix.isEmpty() || firstLine(f).startsWith(keyPrefix))
+                    .forEach(this::delete);
+        } catch (IOException e) {
+            log.warn("Failed to invalidate result cache entries with prefix '{}'", keyPrefix, e);
+        }
+    }
+
+    /**
+     * Deletes expired entries, then the oldest ones beyond the max entries. Leftover temporary files of
+     * interrupted writes expire the same way.
+     */
+    @Scheduled(every = "{sbomer.generator.cache.file.eviction-interval:1h}")
+    void evict() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        FileTime expiry = FileTime.from(Instant.now().minus(ttl));
+        List<StoredFile> entries = new ArrayList<>();
+        int expired = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                FileTime modified = modifiedTime(file);
+                if (modified == null) {
+                    continue;
+                }
+                if (modified.compareTo(expiry) < 0) {
+                    delete(file);
+                    expired++;
+                } else if (file.getFileName().toString().endsWith(".entry")) {
+                    entries.add(new StoredFile(file, modified));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to list result cache entries in {}", directory, e);
+            return;
+        }
+
+        int excess = entries.size() - maxEntries;
+        if (excess > 0) {
+            entries.stream()
+                    .sorted(Comparator.comparing(StoredFile::modified))
+                    .limit(excess)
+                    .forEach(entry -> delete(entry.file()));
+        }
+        if (expired > 0 || excess > 0) {
+            log.info("Evicted {} expired and {} excess result cache entries", expired, Math.max(excess, 0));
+        }
+    }
+
+    private FileTime modifiedTime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            // Deleted concurrently
+            return null;
+        }
+    }
+
+    private String firstLine(Path file) {
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            return lines.findFirst().orElse("");
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete result cache entry {}", file, e);
+        }
+    }
+
+    private Path fileFor(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(hash) + ".entry");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record StoredFile(Path file, FileTime modified) {}
+}
@@ -2,13 +2,22 @@ package org.jboss.sbomer.syft.generator.adapter.out;
 
 import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.specific.SpecificDatumWriter;
 import org.apache.avro.specific.SpecificRecordBase;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.reactive.messaging.Channel;
 import org.eclipse.microprofile.reactive.messaging.Emitter;
 import org.jboss.sbomer.events.common.ContextSpec;
@@ -17,11 +26,27 @@ import org.jboss.sbomer.events.error.ErrorData;
 import org.jboss.sbomer.events.error.ProcessingFailed;
 import org.jboss.sbomer.syft.generator.core.ApplicationConstants;
 import org.jboss.sbomer.syft.generator.core.port.spi.FailureNotifier;
+import org.jboss.sbomer.syft.generator.core.utility.FailureUtility;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Publishes processing failures to the {@code sbomer-errors} channel.
+ * <p>
+ * When the cluster or a registry misbehaves, every generation fails for the same reason. To not flood the topic,
+ * failures are grouped by their fingerprint (exception type and the frame it was thrown from): the first
+ * occurrence is published in full, further occurrences are only counted. Once per summary interval a summary event
+ * with the count and the affected generation IDs is published for every fingerprint that repeated. A fingerprint
+ * that stayed quiet for a whole interval is forgotten, so its next occurrence is published in full again.
+ * </p>
+ */
 @ApplicationScoped
 @Slf4j
 public class KafkaFailureNotifier implements FailureNotifier {
@@ -30,6 +55,58 @@ public class KafkaFailureNotifier implements FailureNotifier {
     @Channel("sbomer-errors")
     Emitter<ProcessingFailed> emitter;
 
+    @Inject
+    MeterRegistry meterRegistry;
+
+    // Config: Group repeated failures into summary events instead of publishing each of them
+    @ConfigProperty(name = "sbomer.generator.failures.aggregation.enabled", defaultValue = "true")
+    boolean aggregationEnabled;
+
+    // Config: How often summaries of repeated failures are published
+    @ConfigProperty(name = "sbomer.generator.failures.summary-interval", defaultValue = "1m")
+    Duration summaryInterval;
+
+    // Config: Max generation IDs listed in one summary, further ones are only counted
+    @ConfigProperty(name = "sbomer.generator.failures.summary-max-ids", defaultValue = "100")
+    int summaryMaxIds;
+
+    /**
+     * Repetitions of a failure since the last summary.
+     */
+    private static final class Occurrences {
+        final FailureSpec first;
+        int count;
+        final Set<String> generationIds = new LinkedHashSet<>();
+
+        Occurrences(FailureSpec first) {
+            this.first = first;
+        }
+    }
+
+    /**
+     * Output stream and encoder of a thread, reused for every source event serialized on it.
+     */
+    private static final class Buffers {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        BinaryEncoder encoder;
+    }
+
+    // Guarded by this. Fingerprint -> repetitions since the last summary
+    private final Map<String, Occurrences> seen = new HashMap<>();
+
+    // Writers hold no per-write state, one per record type is enough
+    private final Map<Class<?>, SpecificDatumWriter<SpecificRecordBase>> writers = new ConcurrentHashMap<>();
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    private Counter published;
+    private Counter suppressed;
+
+    @PostConstruct
+    void init() {
+        published = meterRegistry.counter("sbomer.generator.failures.published");
+        suppressed = meterRegistry.counter("sbomer.generator.failures.suppressed");
+    }
+
     /**
      * Notifies of a processing failure by building and sending a ProcessingFailed event to Kafka.
      *
@@ -39,6 +116,74 @@ public class KafkaFailureNotifier implements FailureNotifier {
      */
     @Override
     public void notify(FailureSpec failure, String correlationId, Object sourceEvent) {
+        if (aggregationEnabled) {
+            String fingerprint = fingerprintOf(failure);
+            synchronized (this) {
+                Occurrences occurrences = seen.get(fingerprint);
+                if (occurrences != null) {
+                    occurrences.count++;
+                    if (correlationId != null && occurrences.generationIds.size() < summaryMaxIds) {
+                        occurrences.generationIds.add(correlationId);
+                    }
+                    suppressed.increment();
+                    log.debug("Failure '{}' with correlationId '{}' repeats, adding it to the next summary", fingerprint, correlationId);
+                    return;
+                }
+                seen.put(fingerprint, new Occurrences(failure));
+            }
+        }
+        publish(failure, correlationId, sourceEvent);
+    }
+
+    /**
+     * Publishes a summary for every failure that repeated since the last call, and forgets the ones that did not.
+     */
+    @Scheduled(every = "{sbomer.generator.failures.summary-interval:1m}")
+    void publishSummaries() {
+        Map<String, Occurrences> repeated = new LinkedHashMap<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Occurrences>> it = seen.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Occurrences> entry = it.next();
+                Occurrences occurrences = entry.getValue();
+                if (occurrences.count == 0) {
+                    it.remove();
+                    continue;
+                }
+                // Keep the fingerprint, the storm is not over yet
+                Occurrences summary = new Occurrences(occurrences.first);
+                summary.count = occurrences.count;
+                summary.generationIds.addAll(occurrences.generationIds);
+                repeated.put(entry.getKey(), summary);
+                occurrences.count = 0;
+                occurrences.generationIds.clear();
+            }
+        }
+        repeated.forEach((fingerprint, occurrences) -> publish(summaryOf(fingerprint, occurrences), null, null));
+    }
+
+    private FailureSpec summaryOf(String fingerprint, Occurrences occurrences) {
+        Map<String, String> details = new HashMap<>();
+        details.put(FailureUtility.FINGERPRINT, fingerprint);
+        details.put("occurrences", String.valueOf(occurrences.count));
+        details.put("generationIds", String.join(",", occurrences.generationIds));
+        details.put("summaryInterval", summaryInterval.toString());
+
+        FailureSpec summary = new FailureSpec();
+        summary.setReason(occurrences.first.getReason() + " (repeated " + occurrences.count + " times)");
+        summary.setErrorCode(occurrences.first.getErrorCode());
+        summary.setDetails(details);
+        return summary;
+    }
+
+    private static String fingerprintOf(FailureSpec failure) {
+        Map<String, String> details = failure.getDetails();
+        String fingerprint = details != null ? details.get(FailureUtility.FINGERPRINT) : null;
+        // Failures not built from an exception carry no fingerprint, group them by what they say
+        return fingerprint != null ? fingerprint : failure.getErrorCode() + ":" + failure.getReason();
+    }
+
+    private void publish(FailureSpec failure, String correlationId, Object sourceEvent) {
 
         // Serialize the sourceEvent to bytes, as required by the schema
         ByteBuffer sourceEventBytes = serializeSourceEvent(sourceEvent);
@@ -70,6 +215,7 @@ public class KafkaFailureNotifier implements FailureNotifier {
 
         // Send the event to the Kafka topic
         emitter.send(pf);
+        published.increment();
 
         log.error("Failure notification sent successfully to Kafka topic 'sbomer.errors'.");
     }
@@ -96,21 +242,26 @@ public class KafkaFailureNotifier implements FailureNotifier {
 
         if (sourceEvent instanceof SpecificRecordBase) {
             SpecificRecordBase record = (SpecificRecordBase) sourceEvent;
-            try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-                // Create a writer for that specific schema
-                SpecificDatumWriter<SpecificRecordBase> writer = new SpecificDatumWriter<>(record.getSchema());
+            Buffers buf = buffers.get();
+            buf.out.reset();
+            try {
+                // One writer per record type, created on first use
+                SpecificDatumWriter<SpecificRecordBase> writer = writers.computeIfAbsent(record.getClass(),
+                        type -> new SpecificDatumWriter<>(record.getSchema()));
 
-                // Create an Avro binary encoder that writes to our output stream
-                BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
-                writer.write(record, encoder);
-                encoder.flush();
+                // Reuse the encoder of this thread, pointed at its (reset) output stream
+                buf.encoder = EncoderFactory.get().binaryEncoder(buf.out, buf.encoder);
+                writer.write(record, buf.encoder);
+                buf.encoder.flush();
 
-                // Get the raw bytes and wrap them in a ByteBuffer
-                byte[] bytes = out.toByteArray();
+                // Copy the raw bytes out, the buffer is reused by the next event
+                byte[] bytes = buf.out.toByteArray();
                 log.debug("Successfully serialized Avro event '{}' to {} bytes.", record.getClass().getSimpleName(), bytes.length);
                 return ByteBuffer.wrap(bytes);
 
             } catch (Exception e) {
+                // The encoder may still buffer part of the record, do not reuse it
+                buf.encoder = null;
                 log.warn("Failed to serialize Avro SpecificRecordBase '{}' to ByteBuffer, sending null.", record.getClass().getSimpleName(), e);
                 return null;
             }
@@ -119,4 +270,10 @@ public class KafkaFailureNotifier implements FailureNotifier {
         log.warn("Source event of type '{}' is not a recognized Avro record or byte array, sending null for sourceEvent.", sourceEvent.getClass().getSimpleName());
         return null; // Default to null as allowed by schema
     }
+
+    @PreDestroy
+    void flushSummaries() {
+        // Repetitions counted since the last summary would be lost otherwise
+        publishSummaries();
+    }
 }
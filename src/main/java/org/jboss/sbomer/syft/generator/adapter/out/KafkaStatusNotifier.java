@@ -1,21 +1,47 @@
 package org.jboss.sbomer.syft.generator.adapter.out;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.reactive.messaging.Channel;
 import org.eclipse.microprofile.reactive.messaging.Emitter;
+import org.eclipse.microprofile.reactive.messaging.Message;
 import org.jboss.sbomer.events.common.ContextSpec;
 import org.jboss.sbomer.events.generator.GenerationUpdate;
 import org.jboss.sbomer.events.generator.GenerationUpdateData;
 import org.jboss.sbomer.syft.generator.core.domain.GenerationStatus;
 import org.jboss.sbomer.syft.generator.core.port.spi.StatusNotifier;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.smallrye.reactive.messaging.kafka.api.OutgoingKafkaRecordMetadata;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Publishes generation updates to the {@code generation-update} channel.
+ * <p>
+ * Records are keyed by generation ID, so all updates of a generation land on the same partition and are
+ * consumed in order. With a coalescing window, a {@code GENERATING} update is held back for that long: if the
+ * generation ends within the window (e.g. served from a coalesced scan), only the terminal update is sent. A held
+ * update is released and superseded under the same per-generation lock, so it can never follow the terminal one.
+ * </p>
+ */
 @ApplicationScoped
 @Slf4j
 public class KafkaStatusNotifier implements StatusNotifier {
@@ -24,6 +50,39 @@ public class KafkaStatusNotifier implements StatusNotifier {
     @Channel("generation-update")
     Emitter<GenerationUpdate> emitter;
 
+    @Inject
+    MeterRegistry meterRegistry;
+
+    // Config: Hold GENERATING updates this long, so a quick terminal update replaces them. Zero disables it
+    @ConfigProperty(name = "sbomer.generator.notifier.coalescing-window", defaultValue = "0s")
+    Duration coalescingWindow;
+
+    // Generation ID -> GENERATING update held back by the coalescing window
+    private final Map<String, GenerationUpdate> held = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private ScheduledExecutorService timer;
+    private Timer publishLatency;
+    private Counter coalesced;
+
+    @PostConstruct
+    void init() {
+        publishLatency = Timer.builder("sbomer.generator.notifier.publish.latency")
+                .description("Time from sending a generation update until the broker acknowledged it")
+                .register(meterRegistry);
+        coalesced = meterRegistry.counter("sbomer.generator.notifier.coalesced");
+        Gauge.builder("sbomer.generator.notifier.inflight", inFlight, AtomicInteger::get)
+                .description("Generation updates sent but not acknowledged yet")
+                .register(meterRegistry);
+        if (!coalescingWindow.isZero()) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "status-coalescer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
     @Override
     public void notifyStatus(String generationId, GenerationStatus status, String reason, List<String> resultUrls) {
 
@@ -42,15 +101,67 @@ public class KafkaStatusNotifier implements StatusNotifier {
                 .setData(data)
                 .build();
 
-        emitter.send(event).whenComplete((success, error) -> {
-            if (error != null) {
-                log.error("FAILED to send status update for generation {}", generationId, error);
-            } else {
-                log.debug("Successfully sent status update for generation {}", generationId);
+        if (timer == null) {
+            send(generationId, event);
+            return;
+        }
+
+        if (status == GenerationStatus.GENERATING) {
+            held.put(generationId, event);
+            timer.schedule(() -> release(generationId, event), coalescingWindow.toMillis(), TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        // Runs under the lock of the generation's entry, the same one release() sends under, so a held
+        // GENERATING update is either sent before this one or dropped, never published after it
+        held.compute(generationId, (id, pending) -> {
+            if (pending != null) {
+                if (status == GenerationStatus.FINISHED || status == GenerationStatus.FAILED) {
+                    // Went straight from GENERATING to done, only the outcome matters
+                    log.debug("Coalesced GENERATING into {} for generation {}", status, generationId);
+                    coalesced.increment();
+                } else {
+                    send(id, pending);
+                }
             }
+            send(id, event);
+            return null;
         });
     }
 
+    /**
+     * Sends a held GENERATING update once its window is over, unless a later update already took it.
+     */
+    private void release(String generationId, GenerationUpdate event) {
+        held.computeIfPresent(generationId, (id, pending) -> {
+            if (pending != event) {
+                return pending;
+            }
+            send(id, pending);
+            return null;
+        });
+    }
+
+    private void send(String generationId, GenerationUpdate event) {
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+
+        Message<GenerationUpdate> message = Message.of(event)
+                .addMetadata(OutgoingKafkaRecordMetadata.<String>builder().withKey(generationId).build())
+                .withAck(() -> {
+                    inFlight.decrementAndGet();
+                    publishLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    log.debug("Successfully sent status update for generation {}", generationId);
+                    return CompletableFuture.completedFuture(null);
+                })
+                .withNack(error -> {
+                    inFlight.decrementAndGet();
+                    log.error("FAILED to send status update for generation {}", generationId, error);
+                    return CompletableFuture.completedFuture(null);
+                });
+        emitter.send(message);
+    }
+
     private ContextSpec createContext() {
         return ContextSpec.newBuilder()
                 .setEventId(UUID.randomUUID().toString())
@@ -60,4 +171,14 @@ public class KafkaStatusNotifier implements StatusNotifier {
                 .setEventVersion("1.0")
                 .build();
     }
+
+    @PreDestroy
+    void flushHeld() {
+        if (timer == null) {
+            return;
+        }
+        timer.shutdownNow();
+        // Nothing may be lost on shutdown, send whatever is still held back
+        held.forEach(this::release);
+    }
 }
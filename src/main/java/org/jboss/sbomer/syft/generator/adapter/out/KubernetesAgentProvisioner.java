@@ -0,0 +1,290 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import io.fabric8.kubernetes.api.model.ContainerStateTerminated;
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.OwnerReference;
+import io.fabric8.kubernetes.api.model.OwnerReferenceBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.fabric8.kubernetes.api.model.apps.ReplicaSet;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable;
+import io.fabric8.kubernetes.client.dsl.PodResource;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs each worker of the agent pool in a pod of its own, labelled with its pool, its memory tier (and the replica
+ * of the generator owning it when sharded). A pod whose worker is OOM killed is restarted in place by Kubernetes.
+ * <p>
+ * The pods are owned by the Deployment of the generator, so they go with it. Pods of a replica that left the
+ * sharding members are removed by the remaining replicas ({@link #deleteOrphans(Set)}).
+ * </p>
+ */
+@Slf4j
+class KubernetesAgentProvisioner implements AgentProvisioner {
+
+    static final String POOL_LABEL = "sbomer.jboss.org/agent-pool";
+    static final String TIER_LABEL = "sbomer.jboss.org/agent-tier";
+    static final String REPLICA_LABEL = "sbomer.jboss.org/replica";
+
+    private static final String AUTH_DIR = "/workdir/auth";
+    private static final String SECRET_DIR = "/workdir/agent-secret";
+    private static final String CACHE_DIR = "/workdir/cache";
+    // A replica only shows up in the members of the others with its next Lease renewal, its new pods wait for that
+    private static final Duration ORPHAN_GRACE = Duration.ofMinutes(1);
+
+    /**
+     * The syft cache claim the workers mount, laid out like the one of the TaskRuns.
+     */
+    record Cache(String claimName, String layout, String pool, long maxBytes) {
+    }
+
+    private final KubernetesClient kubernetesClient;
+    private final String namespace;
+    private final String pool;
+    private final String image;
+    private final String serviceAccount;
+    private final int port;
+    private final Optional<String> authSecret;
+    private final String sharedSecretName;
+    private final Optional<String> ownerPod;
+    private final Cache cache;
+    private final String replicaId;
+
+    // Resolved with the first pod created
+    private OwnerReference ownerReference;
+    private boolean ownerResolved;
+
+    KubernetesAgentProvisioner(KubernetesClient kubernetesClient, String namespace, String pool, String image,
+            String serviceAccount, int port, Optional<String> authSecret, String sharedSecretName,
+            Optional<String> ownerPod, Cache cache, String replicaId) {
+        this.kubernetesClient = kubernetesClient;
+        this.namespace = namespace;
+        this.pool = pool;
+        this.image = image;
+        this.serviceAccount = serviceAccount;
+        this.port = port;
+        this.authSecret = authSecret;
+        this.sharedSecretName = sharedSecretName;
+        this.ownerPod = ownerPod;
+        this.cache = cache;
+        this.replicaId = replicaId;
+    }
+
+    @Override
+    public List<Agent> list() {
+        List<Agent> agents = new ArrayList<>();
+        for (Pod pod : pods().list().getItems()) {
+            String name = pod.getMetadata().getName();
+            String phase = pod.getStatus() != null ? pod.getStatus().getPhase() : null;
+            if ("Failed".equals(phase) || "Succeeded".equals(phase)) {
+                // Evicted or otherwise gone for good, the pool replaces it
+                log.info("Agent pod {} ended ({}), removing it", name, phase);
+                delete(name);
+                continue;
+            }
+            if (pod.getMetadata().getDeletionTimestamp() != null) {
+                continue;
+            }
+            agents.add(new Agent(name, pod.getMetadata().getLabels().get(TIER_LABEL),
+                    pod.getStatus() != null ? pod.getStatus().getPodIP() : null, port, isReady(pod)));
+        }
+        return agents;
+    }
+
+    @Override
+    public synchronized void create(String tier) {
+        Map<String, String> labels = new HashMap<>();
+        labels.put(POOL_LABEL, pool);
+        labels.put(TIER_LABEL, tier);
+        labels.put("app.kubernetes.io/managed-by", "sbomer-syft-generator");
+        if (replicaId != null) {
+            labels.put(REPLICA_LABEL, replicaId);
+        }
+        OwnerReference owner = resolveOwner();
+
+        PodBuilder pod = new PodBuilder()
+                .withNewMetadata()
+                .withGenerateName("syft-agent-" + tier.toLowerCase(Locale.ROOT) + "-")
+                .withLabels(labels)
+                .withOwnerReferences(owner != null ? List.of(owner) : List.of())
+                .endMetadata()
+                .withNewSpec()
+                .withServiceAccountName(serviceAccount)
+                .withRestartPolicy("Always")
+                .addNewContainer()
+                .withName("agent")
+                .withImage(image)
+                // The worker itself needs little, the memory of the tier is left to the pipeline
+                .withCommand("java", "-Xmx64m", "-jar", "/workdir/tools/agent-worker.jar",
+                        "--port", String.valueOf(port),
+                        "--command", "/workdir/tools/agent-pipeline.sh",
+                        "--memory", tier,
+                        "--work-dir", "/workspace",
+                        "--secret-file", SECRET_DIR + "/secret")
+                .addNewEnv().withName("SYFT_LOG_LEVEL").withValue("info").endEnv()
+                .addNewPort().withContainerPort(port).withName("agent").endPort()
+                .withNewReadinessProbe().withNewTcpSocket().withNewPort(port).endTcpSocket().endReadinessProbe()
+                .withNewResources()
+                .withRequests(Map.of("cpu", new Quantity("500m"), "memory", new Quantity(tier)))
+                .withLimits(Map.of("memory", new Quantity(tier)))
+                .endResources()
+                .addNewVolumeMount().withName("workspace").withMountPath("/workspace").endVolumeMount()
+                .addNewVolumeMount().withName("agent-secret").withMountPath(SECRET_DIR).withReadOnly(true).endVolumeMount()
+                .endContainer()
+                .addNewVolume().withName("workspace").withNewEmptyDir().endEmptyDir().endVolume()
+                .addNewVolume().withName("agent-secret").withNewSecret()
+                .withSecretName(sharedSecretName)
+                .addNewItem().withKey("secret").withPath("secret").endItem()
+                .endSecret().endVolume()
+                .endSpec();
+
+        authSecret.ifPresent(secret -> pod.editSpec()
+                .editFirstContainer()
+                .addNewEnv().withName("AUTHFILE").withValue(AUTH_DIR + "/config.json").endEnv()
+                .addNewVolumeMount().withName("auth").withMountPath(AUTH_DIR).withReadOnly(true).endVolumeMount()
+                .endContainer()
+                .addNewVolume().withName("auth").withNewSecret()
+                .withSecretName(secret)
+                .addNewItem().withKey(".dockerconfigjson").withPath("config.json").endItem()
+                .endSecret().endVolume()
+                .endSpec());
+
+        if (cache != null) {
+            // Same directories as the TaskRuns, so both share what they cached
+            String directory = "pool".equals(cache.layout())
+                    ? CACHE_DIR + "/pool-" + cache.pool()
+                    : CACHE_DIR + "/node-$(NODE_NAME)";
+            pod.editSpec()
+                    .editFirstContainer()
+                    .addNewEnv().withName("NODE_NAME").withNewValueFrom().withNewFieldRef()
+                    .withFieldPath("spec.nodeName").endFieldRef().endValueFrom().endEnv()
+                    .addNewEnv().withName("AGENT_CACHE_DIR").withValue(directory).endEnv()
+                    .addNewEnv().withName("AGENT_CACHE_MAX_BYTES").withValue(String.valueOf(cache.maxBytes())).endEnv()
+                    .addNewVolumeMount().withName("cache").withMountPath(CACHE_DIR).endVolumeMount()
+                    .endContainer()
+                    .addNewVolume().withName("cache").withNewPersistentVolumeClaim()
+                    .withClaimName(cache.claimName())
+                    .endPersistentVolumeClaim().endVolume()
+                    .endSpec();
+        }
+
+        Pod created = kubernetesClient.pods().inNamespace(namespace).resource(pod.build()).create();
+        log.info("Started agent pod {} ({})", created.getMetadata().getName(), tier);
+    }
+
+    @Override
+    public void delete(String name) {
+        kubernetesClient.pods().inNamespace(namespace).withName(name).delete();
+    }
+
+    @Override
+    public void deleteOrphans(Set<String> replicas) {
+        Instant grace = Instant.now().minus(ORPHAN_GRACE);
+        for (Pod pod : kubernetesClient.pods().inNamespace(namespace).withLabel(POOL_LABEL, pool).list().getItems()) {
+            ObjectMeta metadata = pod.getMetadata();
+            String replica = metadata.getLabels().get(REPLICA_LABEL);
+            if (replica == null || replicas.contains(replica) || metadata.getDeletionTimestamp() != null
+                    || metadata.getCreationTimestamp() == null
+                    || Instant.parse(metadata.getCreationTimestamp()).isAfter(grace)) {
+                continue;
+            }
+            log.info("Agent pod {} belongs to replica {} which is gone, removing it", metadata.getName(), replica);
+            delete(metadata.getName());
+        }
+    }
+
+    @Override
+    public boolean oomKilledSince(String name, Instant since) {
+        Pod pod = kubernetesClient.pods().inNamespace(namespace).withName(name).get();
+        if (pod == null || pod.getStatus() == null || pod.getStatus().getContainerStatuses() == null) {
+            return false;
+        }
+        for (ContainerStatus status : pod.getStatus().getContainerStatuses()) {
+            if (isOomKilledSince(status.getState() != null ? status.getState().getTerminated() : null, since)
+                    || isOomKilledSince(status.getLastState() != null ? status.getLastState().getTerminated() : null, since)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isOomKilledSince(ContainerStateTerminated terminated, Instant since) {
+        return terminated != null
+                && "OOMKilled".equals(terminated.getReason())
+                && (terminated.getFinishedAt() == null || !Instant.parse(terminated.getFinishedAt()).isBefore(since));
+    }
+
+    /**
+     * The Deployment of the generator (or whatever controls its pod when it has none), null when the generator does
+     * not run in a pod of its own.
+     */
+    private OwnerReference resolveOwner() {
+        if (ownerResolved || ownerPod.isEmpty()) {
+            return ownerReference;
+        }
+        try {
+            Pod generator = kubernetesClient.pods().inNamespace(namespace).withName(ownerPod.get()).get();
+            OwnerReference controller = generator != null ? controllerOf(generator.getMetadata()) : null;
+            if (controller != null && "ReplicaSet".equals(controller.getKind())) {
+                // A new ReplicaSet comes with every rollout, the pool outlives them
+                ReplicaSet replicaSet = kubernetesClient.apps().replicaSets().inNamespace(namespace)
+                        .withName(controller.getName()).get();
+                OwnerReference deployment = replicaSet != null ? controllerOf(replicaSet.getMetadata()) : null;
+                if (deployment != null) {
+                    controller = deployment;
+                }
+            }
+            if (controller != null) {
+                // Not the controller of the agents, and nothing waits for them when it is deleted
+                ownerReference = new OwnerReferenceBuilder(controller).withController(false).withBlockOwnerDeletion(false).build();
+                log.info("Agent pods are owned by {} {}", ownerReference.getKind(), ownerReference.getName());
+            } else {
+                log.warn("Pod {} has no controller, agent pods are left without owner", ownerPod.get());
+            }
+        } catch (KubernetesClientException e) {
+            // Tried again with the next pod
+            log.warn("Cannot find the owner of the agent pods: {}", e.getMessage());
+            return null;
+        }
+        ownerResolved = true;
+        return ownerReference;
+    }
+
+    private static OwnerReference controllerOf(ObjectMeta metadata) {
+        if (metadata.getOwnerReferences() == null) {
+            return null;
+        }
+        return metadata.getOwnerReferences().stream()
+                .filter(reference -> Boolean.TRUE.equals(reference.getController()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static boolean isReady(Pod pod) {
+        return pod.getStatus() != null
+                && "Running".equals(pod.getStatus().getPhase())
+                && pod.getStatus().getPodIP() != null
+                && pod.getStatus().getContainerStatuses() != null
+                && pod.getStatus().getContainerStatuses().stream().allMatch(s -> Boolean.TRUE.equals(s.getReady()));
+    }
+
+    private FilterWatchListDeletable<Pod, PodList, PodResource> pods() {
+        FilterWatchListDeletable<Pod, PodList, PodResource> pods = kubernetesClient.pods().inNamespace(namespace).withLabel(POOL_LABEL, pool);
+        return replicaId != null ? pods.withLabel(REPLICA_LABEL, replicaId) : pods;
+    }
+}
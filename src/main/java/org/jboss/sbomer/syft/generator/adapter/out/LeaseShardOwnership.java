@@ -0,0 +1,226 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.sbomer.syft.generator.core.port.spi.ShardOwnership;
+
+import io.fabric8.kubernetes.api.model.coordination.v1.Lease;
+import io.fabric8.kubernetes.api.model.coordination.v1.LeaseBuilder;
+import io.fabric8.kubernetes.api.model.coordination.v1.LeaseList;
+import io.fabric8.kubernetes.api.model.coordination.v1.LeaseSpec;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.NonNamespaceOperation;
+import io.fabric8.kubernetes.client.dsl.Resource;
+import io.fabric8.tekton.v1beta1.TaskRun;
+import io.fabric8.tekton.v1beta1.TaskRunBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Shards the executions between the replicas of the generator.
+ * <p>
+ * The {@code generation-created} consumer group already splits the incoming requests between the replicas, and each
+ * replica keeps the generations it accepted in memory. So each replica counts (for {@code max-concurrent}, which
+ * is therefore a per-replica limit) and reconciles only the TaskRuns it created, recognized by the
+ * {@code sbomer.jboss.org/replica} label. The requests a replica still had queued are only taken over with the
+ * Kafka pending task store, whose offsets are committed on dispatch.
+ * </p>
+ * <p>
+ * Every replica renews a Lease of its own. A replica whose Lease expired (or was deleted on shutdown) is gone: the
+ * live replicas place themselves on a consistent hash ring, and each one adopts the TaskRuns of the gone replicas
+ * whose generation ID falls into its part of the ring by relabelling them, checked on every Lease renewal. The
+ * relabel is a watch event, so the adopter reconciles them right away. Adopted TaskRuns are finished without the in-memory state of their
+ * generation, an OOMKilled one therefore fails instead of being retried.
+ * </p>
+ */
+@ApplicationScoped
+@IfBuildProperty(name = "sbomer.generator.sharding.enabled", stringValue = "true")
+@Slf4j
+public class LeaseShardOwnership implements ShardOwnership {
+
+    @Inject
+    KubernetesClient kubernetesClient;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @ConfigProperty(name = "quarkus.kubernetes-client.namespace")
+    String namespace;
+
+    // Config: Identity of this replica, the pod name by default
+    @ConfigProperty(name = "sbomer.generator.sharding.replica-id")
+    String replicaId;
+
+    // Config: A replica that did not renew its Lease for this long is considered gone
+    @ConfigProperty(name = "sbomer.generator.sharding.lease-duration", defaultValue = "15s")
+    Duration leaseDuration;
+
+    // Config: Places of each replica on the hash ring, more places spread the generations more evenly
+    @ConfigProperty(name = "sbomer.generator.sharding.virtual-nodes", defaultValue = "64")
+    int virtualNodes;
+
+    static final String MEMBER_LABEL = "sbomer.jboss.org/generator-replica";
+    static final String MEMBER_VALUE = "syft";
+    static final String REPLICA_LABEL = "sbomer.jboss.org/replica";
+    static final String GENERATION_ID_LABEL = "sbomer.jboss.org/generation-id";
+    static final String GENERATOR_TYPE_LABEL = "sbomer.jboss.org/generator-type";
+    static final String GENERATOR_TYPE_VALUE = "syft";
+
+    // Only changed by the heartbeat, read by the reconciler threads
+    private volatile Set<String> members = Set.of();
+    private volatile ConsistentHashRing ring;
+    private final AtomicInteger memberCount = new AtomicInteger();
+    private Counter adopted;
+
+    @PostConstruct
+    void init() {
+        ring = new ConsistentHashRing(Set.of(replicaId), virtualNodes);
+        adopted = meterRegistry.counter("sbomer.generator.sharding.adopted");
+        Gauge.builder("sbomer.generator.sharding.replicas", memberCount, AtomicInteger::get)
+                .description("Live generator replicas, as seen by this replica")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String replicaId() {
+        return replicaId;
+    }
+
+    @Override
+    public boolean isResponsibleFor(String owner, String generationId) {
+        if (owner == null) {
+            // Created before sharding was enabled, the shard owner takes it
+            return replicaId.equals(ring.ownerOf(generationId));
+        }
+        // TaskRuns of a gone replica are relabelled when adopted, until then they are not ours
+        return replicaId.equals(owner);
+    }
+
+    @Override
+    public Set<String> liveReplicas() {
+        Set<String> live = members;
+        return live.isEmpty() ? null : live;
+    }
+
+    @Scheduled(every = "{sbomer.generator.sharding.renew-interval:5s}")
+    synchronized void heartbeat() {
+        try {
+            renew();
+            refreshMembers();
+        } catch (Exception e) {
+            log.warn("Sharding heartbeat of replica {} failed, will retry", replicaId, e);
+        }
+    }
+
+    private void renew() {
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        Resource<Lease> own = leases().withName(leaseName(replicaId));
+        if (own.get() == null) {
+            own.create(new LeaseBuilder()
+                    .withNewMetadata()
+                    .withName(leaseName(replicaId))
+                    .addToLabels(MEMBER_LABEL, MEMBER_VALUE)
+                    .endMetadata()
+                    .withNewSpec()
+                    .withHolderIdentity(replicaId)
+                    .withLeaseDurationSeconds((int) leaseDuration.toSeconds())
+                    .withAcquireTime(now)
+                    .withRenewTime(now)
+                    .endSpec()
+                    .build());
+            log.info("Replica {} joined", replicaId);
+            return;
+        }
+        own.edit(lease -> new LeaseBuilder(lease).editSpec().withRenewTime(now).endSpec().build());
+    }
+
+    private void refreshMembers() {
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        Set<String> live = new TreeSet<>();
+        live.add(replicaId);
+        for (Lease lease : leases().withLabel(MEMBER_LABEL, MEMBER_VALUE).list().getItems()) {
+            if (isLive(lease.getSpec(), now)) {
+                live.add(lease.getSpec().getHolderIdentity());
+            }
+        }
+        if (!live.equals(members)) {
+            log.info("Generator replicas changed: {} -> {}", members, live);
+            members = Set.copyOf(live);
+            memberCount.set(live.size());
+            ring = new ConsistentHashRing(live, virtualNodes);
+        }
+        // Every tick, not only on a change: an adoption that failed, or a TaskRun a gone replica created just
+        // before dying, is picked up on the next one
+        adoptOrphans(live);
+    }
+
+    private static boolean isLive(LeaseSpec spec, ZonedDateTime now) {
+        if (spec == null || spec.getHolderIdentity() == null || spec.getRenewTime() == null
+                || spec.getLeaseDurationSeconds() == null) {
+            return false;
+        }
+        return spec.getRenewTime().plusSeconds(spec.getLeaseDurationSeconds()).isAfter(now);
+    }
+
+    /**
+     * Takes over the TaskRuns of replicas that are gone and whose generation falls into our part of the ring.
+     */
+    private void adoptOrphans(Set<String> live) {
+        List<TaskRun> orphans = kubernetesClient.resources(TaskRun.class)
+                .inNamespace(namespace)
+                .withLabel(GENERATOR_TYPE_LABEL, GENERATOR_TYPE_VALUE)
+                .withLabel(REPLICA_LABEL)
+                // Filtered by the API server, so a tick without orphans lists nothing
+                .withLabelNotIn(REPLICA_LABEL, live.toArray(String[]::new))
+                .list()
+                .getItems()
+                .stream()
+                .filter(tr -> replicaId.equals(ring.ownerOf(tr.getMetadata().getLabels().get(GENERATION_ID_LABEL))))
+                .toList();
+        for (TaskRun orphan : orphans) {
+            String name = orphan.getMetadata().getName();
+            try {
+                kubernetesClient.resources(TaskRun.class).inNamespace(namespace).withName(name)
+                        .edit(tr -> new TaskRunBuilder(tr).editMetadata().addToLabels(REPLICA_LABEL, replicaId).endMetadata().build());
+                adopted.increment();
+                log.info("Adopted TaskRun '{}' of gone replica {}", name, orphan.getMetadata().getLabels().get(REPLICA_LABEL));
+            } catch (Exception e) {
+                // Gone in the meantime, or adopted by another replica with a different view of the members
+                log.debug("Could not adopt TaskRun '{}'", name, e);
+            }
+        }
+    }
+
+    private NonNamespaceOperation<Lease, LeaseList, Resource<Lease>> leases() {
+        return kubernetesClient.resources(Lease.class, LeaseList.class).inNamespace(namespace);
+    }
+
+    private static String leaseName(String replicaId) {
+        return "syft-generator-" + replicaId;
+    }
+
+    @PreDestroy
+    void leave() {
+        // The others take over right away instead of waiting for the Lease to expire
+        try {
+            leases().withName(leaseName(replicaId)).delete();
+        } catch (Exception e) {
+            log.warn("Failed to delete the Lease of replica {}", replicaId, e);
+        }
+    }
+}
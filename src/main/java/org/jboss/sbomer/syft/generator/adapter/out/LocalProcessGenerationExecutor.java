@@ -0,0 +1,390 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.sbomer.syft.generator.core.domain.GenerationStatus;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.port.api.GenerationOrchestrator;
+import org.jboss.sbomer.syft.generator.core.port.spi.GenerationExecutor;
+import org.jboss.sbomer.syft.generator.core.service.TaskRunFactory;
+import org.jboss.sbomer.syft.generator.core.utility.TraceUtility;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.quarkus.arc.properties.IfBuildProperty;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the generations as child processes of the generator, without Kubernetes: for small deployments, CI, and
+ * benchmarking the scheduler against a fake pipeline. Built in with {@code -Dsbomer.generator.executor=local}.
+ * <p>
+ * Each generation runs the pipeline command (the {@code agent-pipeline.sh} of the agent image by default) in a fresh
+ * workspace, with the same environment as in a worker of the agent pool. At most {@code max-processes} run at once,
+ * the others wait in the order they were scheduled. Their output is streamed to the log, line by line.
+ * </p>
+ * <p>
+ * The memory of the generation limits the process: {@code cgroup} puts it in a cgroup v2 of its own under
+ * {@code cgroup-root} (which must be delegated to the generator), {@code ulimit} caps its data segment. A failed
+ * pipeline fails as {@code OOMKilled} when the {@code memory.events} of its cgroup count an OOM kill. Without them
+ * ({@code ulimit}, or a cgroup without the memory controller), when it exited with 137 (how the pipeline reports syft
+ * killed) or syft or a Java tool died of an out of memory error.
+ * </p>
+ * <p>
+ * The executions are kept in memory, a restart loses them.
+ * </p>
+ */
+@ApplicationScoped
+@IfBuildProperty(name = "sbomer.generator.executor", stringValue = "local")
+@Slf4j
+public class LocalProcessGenerationExecutor implements GenerationExecutor {
+
+    @Inject
+    GenerationOrchestrator orchestrator;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @Inject
+    Tracer tracer;
+
+    @ConfigProperty(name = "sbomer.storage.url")
+    String storageUrl;
+
+    @ConfigProperty(name = "sbomer.generator.default-memory", defaultValue = "1Gi")
+    String defaultMemory;
+
+    // Config: The pipeline run for each generation, with its arguments
+    @ConfigProperty(name = "sbomer.generator.local.command", defaultValue = "podman/syft-agent/agent-pipeline.sh")
+    List<String> command;
+
+    // Config: Max pipelines running at once
+    @ConfigProperty(name = "sbomer.generator.local.max-processes", defaultValue = "4")
+    int maxProcesses;
+
+    // Config: Directory the workspaces are created in, the temporary directory if not set
+    @ConfigProperty(name = "sbomer.generator.local.work-dir")
+    Optional<Path> workDir;
+
+    // Config: Directory of the agent tools (upload tool, post-processor) used by the pipeline
+    @ConfigProperty(name = "sbomer.generator.local.tools-dir")
+    Optional<String> toolsDir;
+
+    // Config: How the memory of a generation is enforced: cgroup, ulimit or none
+    @ConfigProperty(name = "sbomer.generator.local.memory-limit", defaultValue = "ulimit")
+    String memoryLimit;
+
+    // Config: Delegated cgroup v2 the pipelines get a cgroup of their own in (memory-limit=cgroup)
+    @ConfigProperty(name = "sbomer.generator.local.cgroup-root", defaultValue = "/sys/fs/cgroup/sbomer")
+    Path cgroupRoot;
+
+    // Exit code of a process killed by SIGKILL, which is what the OOM killer sends
+    private static final int OOM_EXIT_CODE = 137;
+    // How the Go runtime (syft) and the JVM (the Java tools) die when an allocation is denied, with ulimit
+    private static final Pattern OOM_OUTPUT = Pattern.compile(
+            "^fatal error: runtime: out of memory|^(Exception in thread \".*\" )?java\\.lang\\.OutOfMemoryError");
+
+    private record Outcome(GenerationStatus status, String reason, List<String> urls) {
+    }
+
+    private static class Execution {
+        final String id;
+        final GenerationTask task;
+        volatile Future<?> future;
+        volatile Process process;
+        volatile boolean aborted;
+
+        Execution(String id, GenerationTask task) {
+            this.id = id;
+            this.task = task;
+        }
+    }
+
+    // Job ID (generation, attempt and platform) -> execution, queued or running
+    private final Map<String, Execution> executions = new ConcurrentHashMap<>();
+
+    private ExecutorService pool;
+    private Counter oomKilled;
+
+    @PostConstruct
+    void init() {
+        pool = Executors.newFixedThreadPool(maxProcesses, r -> {
+            Thread thread = new Thread(r, "local-generation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("sbomer.generator.local.running", this, LocalProcessGenerationExecutor::countRunning)
+                .description("Generation pipelines running as local processes")
+                .register(meterRegistry);
+        Gauge.builder("sbomer.generator.local.queued", this, executor -> executor.executions.size() - executor.countRunning())
+                .description("Generations waiting for a local process")
+                .register(meterRegistry);
+        oomKilled = meterRegistry.counter("sbomer.generator.local.oom");
+        log.info("Local process executor started: {} with up to {} processes, memory limited by {}", command,
+                maxProcesses, memoryLimit);
+    }
+
+    @Override
+    public void scheduleGeneration(GenerationTask generationTask) {
+        Execution execution = new Execution(jobId(generationTask), generationTask);
+        log.info("Queueing generation {} for a local process", generationTask.generationId());
+        executions.put(execution.id, execution);
+        execution.future = pool.submit(() -> run(execution));
+    }
+
+    @Override
+    public void abortGeneration(String generationId) {
+        log.info("Aborting generation: {}", generationId);
+        for (Execution execution : executions.values()) {
+            if (execution.task.generationId().equals(generationId)) {
+                execution.aborted = true;
+                executions.remove(execution.id);
+                if (execution.future != null) {
+                    execution.future.cancel(false);
+                }
+                kill(execution.process);
+            }
+        }
+    }
+
+    // The workspace of every run is removed when it ends, nothing is left behind
+    @Override
+    public void cleanupGeneration(String generationId) {
+        log.debug("Nothing to clean up for generation {} on the local executor", generationId);
+    }
+
+    @Override
+    public int countActiveExecutions() {
+        return executions.size();
+    }
+
+    private void run(Execution execution) {
+        if (execution.aborted) {
+            return;
+        }
+        long start = System.nanoTime();
+        Outcome outcome = execute(execution);
+        executions.remove(execution.id);
+        if (execution.aborted) {
+            log.info("Generation {} aborted", execution.task.generationId());
+            return;
+        }
+        log.info("Generation {} {} in {} ms: {}", execution.task.generationId(), outcome.status(),
+                (System.nanoTime() - start) / 1_000_000, outcome.reason());
+        report(execution.task, outcome);
+    }
+
+    /**
+     * Runs the pipeline of one generation in a workspace of its own, removed afterwards.
+     */
+    private Outcome execute(Execution execution) {
+        GenerationTask task = execution.task;
+        String memory = task.memoryOverride() != null ? task.memoryOverride() : defaultMemory;
+        long bytes = Quantity.getAmountInBytes(new Quantity(memory)).longValue();
+        Path workspace = null;
+        Path cgroup = null;
+        try {
+            workspace = workDir.isPresent()
+                    ? Files.createTempDirectory(Files.createDirectories(workDir.get()), "generation-")
+                    : Files.createTempDirectory("generation-");
+            Path result = workspace.resolve("result.json");
+
+            List<String> processCommand = new ArrayList<>();
+            switch (memoryLimit) {
+                case "cgroup" -> {
+                    cgroup = cgroupRoot.resolve(execution.id.replaceAll("[^A-Za-z0-9_.-]", "_"));
+                    Files.createDirectories(cgroup);
+                    Files.writeString(cgroup.resolve("memory.max"), String.valueOf(bytes));
+                    // The process moves itself into its cgroup before the pipeline starts
+                    processCommand.addAll(List.of("sh", "-c", "echo $$ > \"$1/cgroup.procs\" && shift && exec \"$@\"",
+                            "sh", cgroup.toString()));
+                }
+                case "ulimit" -> processCommand.addAll(List.of("sh", "-c", "ulimit -d \"$1\" && shift && exec \"$@\"",
+                        "sh", String.valueOf(bytes / 1024)));
+                default -> {
+                    // Not limited
+                }
+            }
+            processCommand.addAll(command);
+
+            ProcessBuilder builder = new ProcessBuilder(processCommand).directory(workspace.toFile()).redirectErrorStream(true);
+            Map<String, String> env = builder.environment();
+            String identifier = task.image();
+            env.put("GENERATION_ID", task.generationId());
+            env.put("IMAGE", task.platform() != null ? TaskRunFactory.platformImage(identifier, task.platform().digest()) : identifier);
+            env.put("VARIANT", task.platform() != null && task.platform().variant() != null ? task.platform().variant() : "");
+            env.put("STORAGE_URL", storageUrl);
+            env.put("TRACEPARENT", task.traceParent() != null ? task.traceParent() : "");
+            env.put("WORKSPACE", workspace.toString());
+            env.put("RESULT", result.toString());
+            toolsDir.ifPresent(dir -> env.put("TOOLS_DIR", dir));
+
+            log.info("Starting the pipeline of generation {} ({}, {})", task.generationId(), env.get("IMAGE"), memory);
+            Process process = builder.start();
+            execution.process = process;
+            if (execution.aborted) {
+                kill(process);
+            }
+
+            boolean oomOutput = false;
+            String lastLine = "";
+            try (BufferedReader output = process.inputReader(StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = output.readLine()) != null) {
+                    log.info("[{}] {}", execution.id, line);
+                    oomOutput |= OOM_OUTPUT.matcher(line).find();
+                    if (!line.isBlank()) {
+                        lastLine = line;
+                    }
+                }
+            }
+            int exitCode = process.waitFor();
+
+            if (exitCode == 0 && Files.exists(result)) {
+                List<String> urls = new ArrayList<>();
+                objectMapper.readTree(result.toFile()).forEach(url -> urls.add(url.asText()));
+                return new Outcome(GenerationStatus.FINISHED, "Generation Succeeded", urls);
+            }
+            if (exitCode != 0 && isOomKilled(cgroup, exitCode, oomOutput)) {
+                oomKilled.increment();
+                return new Outcome(GenerationStatus.FAILED, "OOMKilled", null);
+            }
+            return new Outcome(GenerationStatus.FAILED, exitCode == 0 ? "No result written"
+                    : "Pipeline failed with exit code " + exitCode + ": " + lastLine, null);
+        } catch (IOException | RuntimeException e) {
+            log.error("Cannot run the pipeline of generation {}", task.generationId(), e);
+            return new Outcome(GenerationStatus.FAILED, "Pipeline could not run: " + e.getMessage(), null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            kill(execution.process);
+            return new Outcome(GenerationStatus.FAILED, "Executor interrupted", null);
+        } finally {
+            execution.process = null;
+            delete(workspace);
+            if (cgroup != null) {
+                try {
+                    Files.deleteIfExists(cgroup);
+                } catch (IOException e) {
+                    log.warn("Cannot remove cgroup {}", cgroup, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells whether a failed pipeline ran out of memory. The kernel counts the OOM kills of a cgroup, so its count is
+     * trusted over anything the pipeline printed or exited with.
+     */
+    private static boolean isOomKilled(Path cgroup, int exitCode, boolean oomOutput) {
+        Long kills = oomKills(cgroup);
+        if (kills != null) {
+            return kills > 0;
+        }
+        return exitCode == OOM_EXIT_CODE || oomOutput;
+    }
+
+    /**
+     * @return the number of processes the OOM killer killed in the cgroup, null without one or when it has no
+     * memory events.
+     */
+    private static Long oomKills(Path cgroup) {
+        if (cgroup == null || !Files.exists(cgroup.resolve("memory.events"))) {
+            return null;
+        }
+        try (Stream<String> lines = Files.lines(cgroup.resolve("memory.events"))) {
+            return lines.filter(line -> line.startsWith("oom_kill "))
+                    .mapToLong(line -> Long.parseLong(line.substring("oom_kill ".length()).trim()))
+                    .sum();
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Cannot read the memory events of cgroup {}", cgroup, e);
+            return null;
+        }
+    }
+
+    private void report(GenerationTask task, Outcome outcome) {
+        Span span = TraceUtility.childSpanBuilder(tracer, "LocalProcessGenerationExecutor.complete", task.traceParent(),
+                        task.generationId())
+                .setAttribute("generation.status", outcome.status().name())
+                .startSpan();
+        try (Scope ignored = span.makeCurrent()) {
+            if (task.platform() != null) {
+                orchestrator.handlePlatformUpdate(task.generationId(), task.platform().key(), outcome.status(),
+                        outcome.reason(), outcome.urls());
+            } else {
+                orchestrator.handleUpdate(task.generationId(), outcome.status(), outcome.reason(), outcome.urls());
+            }
+        } catch (Exception e) {
+            log.error("Cannot handle the outcome of generation {}", task.generationId(), e);
+            span.recordException(e);
+        } finally {
+            span.end();
+        }
+    }
+
+    int countRunning() {
+        return (int) executions.values().stream().filter(execution -> execution.process != null).count();
+    }
+
+    private static String jobId(GenerationTask task) {
+        String id = task.generationId() + "/" + task.retryCount();
+        return task.platform() != null ? id + "/" + task.platform().key() : id;
+    }
+
+    private static void kill(Process process) {
+        if (process != null) {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        }
+    }
+
+    private static void delete(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            log.warn("Cannot delete workspace {}", dir, e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+        for (Execution execution : executions.values()) {
+            execution.aborted = true;
+            kill(execution.process);
+        }
+    }
+}
@@ -0,0 +1,597 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.port.spi.PendingTaskStore;
+
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Crash-safe {@link PendingTaskStore} backed by a segmented append-only log on a local (mounted) volume.
+ * <p>
+ * Every queued task is written as an {@code ENQUEUE} record and every dispatched task as a {@code DISPATCH} record
+ * into memory-mapped segment files. Writers are acknowledged by a group commit: a single flusher thread
+ * forces all records written since its last pass in one go, so concurrent producers share the cost of an fsync.
+ * </p>
+ * <p>
+ * Segments are only ever deleted from the head of the log, once none of their tasks are still pending.
+ * Head segments that are mostly dispatched get their remaining tasks copied to the tail first (compaction).
+ * Each record carries its original sequence number, so replay restores the queue order regardless of compaction.
+ * </p>
+ * <p>
+ * Only the index (generation ID to record location) is kept in memory. On startup the backlog stays on disk and is
+ * decoded in chunks as {@link #replay(int)} is called, so a long backlog does not have to fit into the heap. The
+ * tasks handed to the in-memory queue are bounded by the caller (the ingress high-watermark and the replay batch).
+ * </p>
+ */
+@ApplicationScoped
+@IfBuildProperty(name = "sbomer.generator.queue.store", stringValue = "log")
+@Slf4j
+public class LogPendingTaskStore implements PendingTaskStore {
+
+    // Config: Directory on a persistent volume holding the segment files
+    @ConfigProperty(name = "sbomer.generator.queue.log.dir", defaultValue = "/var/lib/syft-generator/queue")
+    Path directory;
+
+    // Config: Size of one memory-mapped segment file
+    @ConfigProperty(name = "sbomer.generator.queue.log.segment-size", defaultValue = "67108864")
+    int segmentSize;
+
+    // Config: How long the flusher waits to gather more writes into one fsync
+    @ConfigProperty(name = "sbomer.generator.queue.log.group-commit-delay", defaultValue = "0ms")
+    Duration groupCommitDelay;
+
+    // Config: Head segments with fewer pending tasks than this ratio get compacted
+    @ConfigProperty(name = "sbomer.generator.queue.log.compaction-ratio", defaultValue = "0.25")
+    double compactionRatio;
+
+    private static final String SEGMENT_PREFIX = "queue-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // length (int) + crc (int)
+    private static final int HEADER_SIZE = 8;
+    private static final byte TYPE_ENQUEUE = 1;
+    private static final byte TYPE_DISPATCH = 2;
+
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+
+    // Guarded by writeLock
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Map<String, Location> index = new HashMap<>();
+    private final Set<Segment> dirty = new LinkedHashSet<>();
+    // Recovered on startup and not handed out by replay yet, in queue order
+    private final Set<String> unreplayed = new LinkedHashSet<>();
+    private Segment active;
+    private long nextSequence;
+    private long written;
+
+    // Guarded by syncLock
+    private long synced;
+    private IOException flushFailure;
+
+    private volatile boolean closed;
+    private Thread flusher;
+
+    @PostConstruct
+    void open() {
+        try {
+            Files.createDirectories(directory);
+            synchronized (writeLock) {
+                load();
+                roll();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open pending queue log in " + directory, e);
+        }
+        flusher = new Thread(this::flushLoop, "pending-queue-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Opened pending queue log in {} ({} segments, {} pending tasks)", directory, segments.size(), unreplayed.size());
+    }
+
+    @Override
+    public void append(GenerationTask generationTask) {
+        long ticket;
+        synchronized (writeLock) {
+            Location previous = index.get(generationTask.generationId());
+            // Queued again before its replay, the in-memory queue already holds it
+            unreplayed.remove(generationTask.generationId());
+            // A re-queued task (e.g. OOM retry) keeps its place in the queue order
+            long sequence = previous != null ? previous.sequence() : nextSequence++;
+            ticket = write(TYPE_ENQUEUE, encodeTask(sequence, generationTask), generationTask.generationId(), sequence);
+        }
+        awaitDurable(ticket);
+    }
+
+    @Override
+    public void appendAll(List<GenerationTask> generationTasks) {
+        long ticket = -1;
+        synchronized (writeLock) {
+            for (GenerationTask generationTask : generationTasks) {
+                Location previous = index.get(generationTask.generationId());
+                unreplayed.remove(generationTask.generationId());
+                long sequence = previous != null ? previous.sequence() : nextSequence++;
+                ticket = write(TYPE_ENQUEUE, encodeTask(sequence, generationTask), generationTask.generationId(), sequence);
+            }
+        }
+        // One sync covers the whole batch
+        if (ticket >= 0) {
+            awaitDurable(ticket);
+        }
+    }
+
+    @Override
+    public void markDispatched(String generationId) {
+        long ticket;
+        synchronized (writeLock) {
+            if (!index.containsKey(generationId)) {
+                return;
+            }
+            ticket = write(TYPE_DISPATCH, generationId.getBytes(StandardCharsets.UTF_8), generationId, -1);
+        }
+        awaitDurable(ticket);
+    }
+
+    @Override
+    public void markDispatchedAll(List<String> generationIds) {
+        long ticket = -1;
+        synchronized (writeLock) {
+            for (String generationId : generationIds) {
+                if (index.containsKey(generationId)) {
+                    ticket = write(TYPE_DISPATCH, generationId.getBytes(StandardCharsets.UTF_8), generationId, -1);
+                }
+            }
+        }
+        // One sync covers the whole batch
+        if (ticket >= 0) {
+            awaitDurable(ticket);
+        }
+    }
+
+    @Override
+    public List<GenerationTask> replay(int limit) {
+        List<GenerationTask> tasks = new ArrayList<>();
+        synchronized (writeLock) {
+            Iterator<String> ids = unreplayed.iterator();
+            while (ids.hasNext() && tasks.size() < limit) {
+                Location location = index.get(ids.next());
+                ids.remove();
+                if (location == null) {
+                    continue;
+                }
+                ByteBuffer payload = ByteBuffer.wrap(location.segment().read(location.offset()));
+                payload.getLong();
+                try {
+                    tasks.add(decodeTask(payload));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to decode a pending task from the queue log", e);
+                }
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Copies the remaining tasks of sparse head segments to the tail, then drops every head segment
+     * that has nothing pending anymore. The files are only deleted once their copies are synced.
+     */
+    @Scheduled(every = "{sbomer.generator.queue.log.compaction-interval:30s}")
+    void compact() {
+        long ticket = -1;
+        List<Segment> removed = new ArrayList<>();
+        synchronized (writeLock) {
+            while (segments.size() > 1) {
+                Segment head = segments.peekFirst();
+                if (head.live > 0 && head.live > head.enqueued * compactionRatio) {
+                    break;
+                }
+                if (head.live > 0) {
+                    ticket = relocate(head);
+                }
+                segments.pollFirst();
+                dirty.remove(head);
+                removed.add(head);
+            }
+        }
+        if (ticket >= 0) {
+            awaitDurable(ticket);
+        }
+        removed.forEach(Segment::delete);
+        if (!removed.isEmpty()) {
+            log.debug("Compacted pending queue log, removed {} segments", removed.size());
+        }
+    }
+
+    // Must hold writeLock
+    private long relocate(Segment head) {
+        long ticket = -1;
+        List<Map.Entry<String, Location>> moving = index.entrySet().stream()
+                .filter(e -> e.getValue().segment() == head)
+                .toList();
+        for (Map.Entry<String, Location> entry : moving) {
+            byte[] payload = head.read(entry.getValue().offset());
+            ticket = write(TYPE_ENQUEUE, payload, entry.getKey(), entry.getValue().sequence());
+        }
+        return ticket;
+    }
+
+    // Must hold writeLock
+    private long write(byte type, byte[] payload, String generationId, long sequence) {
+        if (closed) {
+            throw new IllegalStateException("Pending queue log is closed");
+        }
+        int recordSize = HEADER_SIZE + 1 + payload.length;
+        if (recordSize + Integer.BYTES > segmentSize) {
+            throw new IllegalArgumentException("Task " + generationId + " does not fit into a queue log segment");
+        }
+        if (active.position + recordSize + Integer.BYTES > segmentSize) {
+            roll();
+        }
+        int offset = active.append(type, payload);
+        dirty.add(active);
+
+        Location previous = type == TYPE_ENQUEUE
+                ? index.put(generationId, new Location(active, offset, sequence))
+                : index.remove(generationId);
+        if (previous != null) {
+            previous.segment().live--;
+        }
+        if (type == TYPE_ENQUEUE) {
+            active.live++;
+            active.enqueued++;
+        }
+        return ++written;
+    }
+
+    // Must hold writeLock
+    private void roll() {
+        long id = active != null ? active.id + 1 : segments.isEmpty() ? 0 : segments.peekLast().id + 1;
+        try {
+            active = Segment.open(directory.resolve(segmentName(id)), id, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create queue log segment " + id, e);
+        }
+        segments.addLast(active);
+    }
+
+    private void awaitDurable(long ticket) {
+        synchronized (syncLock) {
+            syncLock.notifyAll();
+            while (synced < ticket) {
+                if (flushFailure != null) {
+                    throw new UncheckedIOException("Failed to sync pending queue log", flushFailure);
+                }
+                if (closed) {
+                    throw new IllegalStateException("Pending queue log closed before the write was synced");
+                }
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the pending queue log to sync", e);
+                }
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            try {
+                synchronized (syncLock) {
+                    while (!closed && synced >= currentlyWritten()) {
+                        syncLock.wait(100);
+                    }
+                }
+                if (!groupCommitDelay.isZero()) {
+                    Thread.sleep(groupCommitDelay.toMillis());
+                }
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private long currentlyWritten() {
+        synchronized (writeLock) {
+            return written;
+        }
+    }
+
+    private void flush() {
+        List<Segment> toForce;
+        long target;
+        synchronized (writeLock) {
+            target = written;
+            toForce = new ArrayList<>(dirty);
+            dirty.clear();
+        }
+        try {
+            for (Segment segment : toForce) {
+                segment.force();
+            }
+            synchronized (syncLock) {
+                synced = Math.max(synced, target);
+                syncLock.notifyAll();
+            }
+        } catch (IOException e) {
+            log.error("Failed to sync pending queue log", e);
+            synchronized (syncLock) {
+                flushFailure = e;
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Reads every segment in order and rebuilds the index. Stops a segment at its first torn record.
+     * Only the generation IDs and sequences are decoded here, the tasks are decoded on replay.
+     */
+    // Must hold writeLock
+    private void load() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+
+        for (Path file : files) {
+            Segment segment = Segment.open(file, segmentId(file), segmentSize);
+            segments.addLast(segment);
+            int offset = 0;
+            Record record;
+            while ((record = segment.readRecord(offset)) != null) {
+                if (record.type() == TYPE_ENQUEUE) {
+                    ByteBuffer payload = ByteBuffer.wrap(record.payload());
+                    long sequence = payload.getLong();
+                    String generationId = getString(payload);
+                    Location previous = index.put(generationId, new Location(segment, offset, sequence));
+                    if (previous != null) {
+                        previous.segment().live--;
+                    }
+                    segment.live++;
+                    segment.enqueued++;
+                    nextSequence = Math.max(nextSequence, sequence + 1);
+                } else if (record.type() == TYPE_DISPATCH) {
+                    String generationId = new String(record.payload(), StandardCharsets.UTF_8);
+                    Location previous = index.remove(generationId);
+                    if (previous != null) {
+                        previous.segment().live--;
+                    }
+                }
+                offset += HEADER_SIZE + 1 + record.payload().length;
+            }
+            segment.position = offset;
+        }
+
+        index.entrySet().stream()
+                .sorted(Comparator.comparingLong(e -> e.getValue().sequence()))
+                .forEach(e -> unreplayed.add(e.getKey()));
+    }
+
+    @PreDestroy
+    void close() {
+        flush();
+        closed = true;
+        synchronized (syncLock) {
+            syncLock.notifyAll();
+        }
+        if (flusher != null) {
+            flusher.interrupt();
+        }
+    }
+
+    // --- Encoding ---
+
+    private static byte[] encodeTask(long sequence, GenerationTask task) {
+        byte[] id = task.generationId().getBytes(StandardCharsets.UTF_8);
+        byte[] memory = nullableBytes(task.memoryOverride());
+        byte[] trace = nullableBytes(task.traceParent());
+        byte[] resolved = nullableBytes(task.resolvedImage());
+        byte[] spec;
+        try {
+            ByteBuffer specBuffer = task.spec().toByteBuffer();
+            spec = new byte[specBuffer.remaining()];
+            specBuffer.get(spec);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize request of generation " + task.generationId(), e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES * 6 + id.length
+                + lengthOf(memory) + lengthOf(trace) + spec.length + lengthOf(resolved));
+        buffer.putLong(sequence);
+        putBytes(buffer, id);
+        buffer.putInt(task.retryCount());
+        putBytes(buffer, memory);
+        putBytes(buffer, trace);
+        putBytes(buffer, spec);
+        putBytes(buffer, resolved);
+        return buffer.array();
+    }
+
+    private static GenerationTask decodeTask(ByteBuffer buffer) throws IOException {
+        String generationId = getString(buffer);
+        int retryCount = buffer.getInt();
+        String memoryOverride = getString(buffer);
+        String traceParent = getString(buffer);
+        byte[] spec = getBytes(buffer);
+        // Logs written before the digest was kept end with the spec
+        String resolvedImage = buffer.hasRemaining() ? getString(buffer) : null;
+        return new GenerationTask(generationId, GenerationRequestSpec.fromByteBuffer(ByteBuffer.wrap(spec)),
+                retryCount, memoryOverride, traceParent, null, resolvedImage);
+    }
+
+    private static byte[] nullableBytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int lengthOf(byte[] bytes) {
+        return bytes != null ? bytes.length : 0;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = getBytes(buffer);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    private static String segmentName(long id) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX);
+    }
+
+    private static long segmentId(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // --- Internal types ---
+
+    private record Location(Segment segment, int offset, long sequence) {}
+
+    private record Record(byte type, byte[] payload) {}
+
+    /**
+     * One memory-mapped, pre-sized log file. A zero length marks the end of the written records.
+     */
+    private static final class Segment {
+        final long id;
+        final Path path;
+        // Dropped on delete: there is no public way to unmap, the mapping (and the space of the deleted file) is
+        // released once the garbage collector finds it unreachable
+        volatile MappedByteBuffer buffer;
+        int position;
+        // Tasks whose latest ENQUEUE record lives here and that have not been dispatched
+        int live;
+        int enqueued;
+
+        private Segment(long id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path path, long id, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                // The mapping stays valid after the channel is closed
+                return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        int append(byte type, byte[] payload) {
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(payload);
+
+            ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + 1 + payload.length);
+            record.putInt(1 + payload.length);
+            record.putInt((int) crc.getValue());
+            record.put(type);
+            record.put(payload);
+
+            int offset = position;
+            buffer.put(offset, record.array());
+            position += record.capacity();
+            return offset;
+        }
+
+        Record readRecord(int offset) {
+            if (offset + HEADER_SIZE > buffer.capacity()) {
+                return null;
+            }
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_SIZE + length > buffer.capacity()) {
+                return null;
+            }
+            int expectedCrc = buffer.getInt(offset + Integer.BYTES);
+            byte type = buffer.get(offset + HEADER_SIZE);
+            byte[] payload = new byte[length - 1];
+            buffer.get(offset + HEADER_SIZE + 1, payload);
+
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(payload);
+            if ((int) crc.getValue() != expectedCrc) {
+                log.warn("Torn record at offset {} of {}, ignoring the rest of the segment", offset, path);
+                return null;
+            }
+            return new Record(type, payload);
+        }
+
+        byte[] read(int offset) {
+            return readRecord(offset).payload();
+        }
+
+        void force() throws IOException {
+            MappedByteBuffer mapped = buffer;
+            if (mapped == null) {
+                // Deleted by the compaction since the flusher picked it
+                return;
+            }
+            try {
+                mapped.force();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        void delete() {
+            buffer = null;
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Failed to delete queue log segment {}", path, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.util.List;
+
+import org.jboss.sbomer.syft.generator.core.domain.model.Platform;
+import org.jboss.sbomer.syft.generator.core.port.spi.PlatformResolver;
+
+import io.quarkus.arc.DefaultBean;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Default resolver: platforms and digests are not known up front, every image is scanned as a whole by its execution
+ * and keyed by its reference as requested.
+ */
+@ApplicationScoped
+@DefaultBean
+public class NoopPlatformResolver implements PlatformResolver {
+
+    @Override
+    public List<Platform> resolvePlatforms(String image) {
+        return List.of();
+    }
+
+    @Override
+    public String resolveDigest(String image) {
+        return null;
+    }
+}
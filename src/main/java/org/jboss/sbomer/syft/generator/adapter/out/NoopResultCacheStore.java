@@ -0,0 +1,31 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.util.Optional;
+
+import org.jboss.sbomer.syft.generator.core.port.spi.ResultCacheStore;
+
+import io.quarkus.arc.DefaultBean;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Default store: there is no persistent tier, results are only cached in memory.
+ */
+@ApplicationScoped
+@DefaultBean
+public class NoopResultCacheStore implements ResultCacheStore {
+
+    @Override
+    public Optional<Entry> get(String key) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void put(String key, Entry entry) {
+        // Nothing to persist
+    }
+
+    @Override
+    public void invalidate(String keyPrefix) {
+        // Nothing to persist
+    }
+}
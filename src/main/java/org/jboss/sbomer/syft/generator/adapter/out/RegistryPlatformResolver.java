@@ -0,0 +1,412 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.sbomer.syft.generator.core.domain.model.ImageReference;
+import org.jboss.sbomer.syft.generator.core.domain.model.Platform;
+import org.jboss.sbomer.syft.generator.core.port.spi.PlatformResolver;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.arc.properties.IfBuildProperty;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resolves the platforms of an image straight from its registry, over the OCI distribution API.
+ * <p>
+ * A tag is resolved to the digest of its manifest or index. An index lists the platform manifests, each of which
+ * is fetched for the size of its layers. A single manifest has its platform in its config blob. Registries asking
+ * for a token get one from their token service, anonymously or with the credentials of {@code auth-file}.
+ * </p>
+ * <p>
+ * Two bounded LRU caches keep the registry out of the way: tag to digest, trusted for {@code tag-ttl} since a tag
+ * can move, and digest to manifest, kept until evicted since the content of a digest never changes.
+ * </p>
+ */
+@ApplicationScoped
+@IfBuildProperty(name = "sbomer.generator.manifest-resolver.enabled", stringValue = "true")
+@Slf4j
+public class RegistryPlatformResolver implements PlatformResolver {
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    // Config: Max time of one request to a registry
+    @ConfigProperty(name = "sbomer.generator.manifest-resolver.timeout", defaultValue = "10s")
+    Duration timeout;
+
+    // Config: How long a tag is trusted to point at the same digest
+    @ConfigProperty(name = "sbomer.generator.manifest-resolver.tag-ttl", defaultValue = "5m")
+    Duration tagTtl;
+
+    // Config: Max tags and max manifests cached (each)
+    @ConfigProperty(name = "sbomer.generator.manifest-resolver.max-entries", defaultValue = "5000")
+    int maxEntries;
+
+    // Config: Registries spoken to over plain HTTP (i.e. localhost:5000)
+    @ConfigProperty(name = "sbomer.generator.manifest-resolver.insecure-registries")
+    Optional<List<String>> insecureRegistries;
+
+    // Config: Docker config file with the credentials of private registries, the same the TaskRuns use
+    @ConfigProperty(name = "sbomer.generator.manifest-resolver.auth-file")
+    Optional<String> authFile;
+
+    static final String OCI_INDEX = "application/vnd.oci.image.index.v1+json";
+    static final String DOCKER_MANIFEST_LIST = "application/vnd.docker.distribution.manifest.list.v2+json";
+    static final String OCI_MANIFEST = "application/vnd.oci.image.manifest.v1+json";
+    static final String DOCKER_MANIFEST = "application/vnd.docker.distribution.manifest.v2+json";
+    private static final String ACCEPT_MANIFESTS = String.join(",", OCI_INDEX, DOCKER_MANIFEST_LIST, OCI_MANIFEST, DOCKER_MANIFEST);
+
+    private static final Pattern CHALLENGE_PARAM = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+
+    /**
+     * The digest a tag pointed at, until when it is trusted.
+     */
+    record TagEntry(String digest, long expiresAt) {
+    }
+
+    /**
+     * A registry token, until when it is valid.
+     */
+    record Token(String authorization, long expiresAt) {
+    }
+
+    // Guarded by themselves. registry/repository:tag -> digest
+    private final Map<String, TagEntry> tags = lru();
+    // registry/repository@digest -> manifest, index or (trimmed) config
+    private final Map<String, JsonNode> manifests = lru();
+    // registry/repository -> token for pulling from it
+    private final Map<String, Token> tokens = new ConcurrentHashMap<>();
+
+    private HttpClient httpClient;
+    private Map<String, String> credentials;
+
+    private Timer resolved;
+    private Timer failed;
+    private Counter tagHits;
+    private Counter tagMisses;
+    private Counter manifestHits;
+    private Counter manifestMisses;
+
+    @PostConstruct
+    void init() {
+        // Blob redirects are followed by hand, the registry token must not go to the storage behind it
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        credentials = loadCredentials();
+
+        resolved = Timer.builder("sbomer.generator.resolver.duration")
+                .description("Time to resolve the platforms of an image")
+                .tag("result", "resolved")
+                .register(meterRegistry);
+        failed = Timer.builder("sbomer.generator.resolver.duration")
+                .description("Time to resolve the platforms of an image")
+                .tag("result", "failed")
+                .register(meterRegistry);
+        tagHits = meterRegistry.counter("sbomer.generator.resolver.cache.requests", "cache", "tag", "result", "hit");
+        tagMisses = meterRegistry.counter("sbomer.generator.resolver.cache.requests", "cache", "tag", "result", "miss");
+        manifestHits = meterRegistry.counter("sbomer.generator.resolver.cache.requests", "cache", "manifest", "result", "hit");
+        manifestMisses = meterRegistry.counter("sbomer.generator.resolver.cache.requests", "cache", "manifest", "result", "miss");
+    }
+
+    @Override
+    public List<Platform> resolvePlatforms(String image) {
+        long start = System.nanoTime();
+        try {
+            ImageReference reference = ImageReference.parse(image);
+            String digest = reference.digest() != null ? reference.digest() : digestOf(reference);
+            JsonNode top = manifest(reference, digest);
+
+            List<Platform> platforms = new ArrayList<>();
+            if (top.has("manifests")) {
+                for (JsonNode entry : top.get("manifests")) {
+                    JsonNode platform = entry.get("platform");
+                    // Attestations and signatures are listed with an unknown platform, there is nothing to scan
+                    if (platform == null || "unknown".equals(platform.path("os").asText())) {
+                        continue;
+                    }
+                    String platformDigest = entry.get("digest").asText();
+                    platforms.add(new Platform(platform.path("os").asText(), platform.path("architecture").asText(),
+                            textOrNull(platform.get("variant")), platformDigest,
+                            sizeOf(manifest(reference, platformDigest))));
+                }
+            } else {
+                JsonNode config = config(reference, top.path("config").path("digest").asText());
+                platforms.add(new Platform(config.path("os").asText(), config.path("architecture").asText(),
+                        textOrNull(config.get("variant")), digest, sizeOf(top)));
+            }
+            log.debug("Resolved {} to {} ({} platforms)", image, digest, platforms.size());
+            resolved.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return platforms;
+        } catch (Exception e) {
+            // Not knowing the platforms is fine, the TaskRun finds them out itself
+            log.warn("Failed to resolve the platforms of {}", image, e);
+            failed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return List.of();
+        }
+    }
+
+    @Override
+    public String resolveDigest(String image) {
+        try {
+            ImageReference reference = ImageReference.parse(image);
+            String digest = reference.digest() != null ? reference.digest() : digestOf(reference);
+            return ImageReference.repositoryOf(image) + "@" + digest;
+        } catch (Exception e) {
+            // The reference as requested is still a valid key, it just does not match its digest
+            log.warn("Failed to resolve the digest of {}", image, e);
+            return null;
+        }
+    }
+
+    /**
+     * Resolves a tag, fetching (and caching) its manifest along the way.
+     */
+    private String digestOf(ImageReference reference) throws IOException, InterruptedException {
+        String key = reference.registry() + "/" + reference.repository() + ":" + reference.tag();
+        synchronized (tags) {
+            TagEntry entry = tags.get(key);
+            if (entry != null && entry.expiresAt() > System.currentTimeMillis()) {
+                tagHits.increment();
+                return entry.digest();
+            }
+        }
+        tagMisses.increment();
+
+        HttpResponse<byte[]> response = get(reference, "/manifests/" + reference.tag(), ACCEPT_MANIFESTS);
+        String digest = response.headers().firstValue("Docker-Content-Digest").orElseGet(() -> sha256(response.body()));
+        JsonNode manifest = objectMapper.readTree(response.body());
+        synchronized (tags) {
+            tags.put(key, new TagEntry(digest, System.currentTimeMillis() + tagTtl.toMillis()));
+        }
+        synchronized (manifests) {
+            manifests.put(reference.registry() + "/" + reference.repository() + "@" + digest, manifest);
+        }
+        return digest;
+    }
+
+    private JsonNode manifest(ImageReference reference, String digest) throws IOException, InterruptedException {
+        return cached(reference, digest, () -> objectMapper.readTree(
+                get(reference, "/manifests/" + digest, ACCEPT_MANIFESTS).body()));
+    }
+
+    /**
+     * Only the platform of the config blob is kept, its history can be large.
+     */
+    private JsonNode config(ImageReference reference, String digest) throws IOException, InterruptedException {
+        return cached(reference, digest, () -> {
+            JsonNode config = objectMapper.readTree(get(reference, "/blobs/" + digest, null).body());
+            return objectMapper.createObjectNode()
+                    .put("os", config.path("os").asText())
+                    .put("architecture", config.path("architecture").asText())
+                    .put("variant", textOrNull(config.get("variant")));
+        });
+    }
+
+    private interface Fetch {
+        JsonNode fetch() throws IOException, InterruptedException;
+    }
+
+    private JsonNode cached(ImageReference reference, String digest, Fetch fetch) throws IOException, InterruptedException {
+        String key = reference.registry() + "/" + reference.repository() + "@" + digest;
+        synchronized (manifests) {
+            JsonNode cached = manifests.get(key);
+            if (cached != null) {
+                manifestHits.increment();
+                return cached;
+            }
+        }
+        manifestMisses.increment();
+        JsonNode fetched = fetch.fetch();
+        synchronized (manifests) {
+            manifests.put(key, fetched);
+        }
+        return fetched;
+    }
+
+    /**
+     * GETs a path of the repository, answering an authentication challenge and following a redirect (blobs are
+     * often served from elsewhere) once.
+     */
+    private HttpResponse<byte[]> get(ImageReference reference, String path, String accept) throws IOException, InterruptedException {
+        URI uri = URI.create(scheme(reference) + "://" + reference.apiHost() + "/v2/" + reference.repository() + path);
+        String tokenKey = reference.registry() + "/" + reference.repository();
+
+        Token token = tokens.get(tokenKey);
+        String authorization = token != null && token.expiresAt() > System.currentTimeMillis() ? token.authorization() : null;
+        HttpResponse<byte[]> response = send(uri, accept, authorization);
+        if (response.statusCode() == 401) {
+            String challenge = response.headers().firstValue("WWW-Authenticate").orElse("");
+            token = authenticate(reference, challenge);
+            tokens.put(tokenKey, token);
+            response = send(uri, accept, token.authorization());
+        }
+        if (response.statusCode() >= 300 && response.statusCode() < 400) {
+            String location = response.headers().firstValue("Location")
+                    .orElseThrow(() -> new IOException("Redirect without location from " + uri));
+            response = send(uri.resolve(location), accept, null);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("GET " + uri + " returned " + response.statusCode());
+        }
+        return response;
+    }
+
+    private HttpResponse<byte[]> send(URI uri, String accept, String authorization) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(timeout).GET();
+        if (accept != null) {
+            request.header("Accept", accept);
+        }
+        if (authorization != null) {
+            request.header("Authorization", authorization);
+        }
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Answers a {@code WWW-Authenticate} challenge: basic credentials as they are, or a bearer token from the
+     * token service the challenge points at.
+     */
+    private Token authenticate(ImageReference reference, String challenge) throws IOException, InterruptedException {
+        String basic = credentials.get(reference.registry());
+        if (challenge.regionMatches(true, 0, "Basic", 0, 5)) {
+            if (basic == null) {
+                throw new IOException("Registry " + reference.registry() + " requires credentials");
+            }
+            return new Token("Basic " + basic, Long.MAX_VALUE);
+        }
+
+        Map<String, String> params = new LinkedHashMap<>();
+        Matcher matcher = CHALLENGE_PARAM.matcher(challenge);
+        while (matcher.find()) {
+            params.put(matcher.group(1), matcher.group(2));
+        }
+        String realm = params.get("realm");
+        if (realm == null) {
+            throw new IOException("Unsupported challenge from " + reference.registry() + ": " + challenge);
+        }
+        String scope = params.getOrDefault("scope", "repository:" + reference.repository() + ":pull");
+        StringBuilder tokenUri = new StringBuilder(realm).append(realm.contains("?") ? '&' : '?')
+                .append("scope=").append(URLEncoder.encode(scope, StandardCharsets.UTF_8));
+        if (params.containsKey("service")) {
+            tokenUri.append("&service=").append(URLEncoder.encode(params.get("service"), StandardCharsets.UTF_8));
+        }
+
+        HttpResponse<byte[]> response = send(URI.create(tokenUri.toString()), null, basic != null ? "Basic " + basic : null);
+        if (response.statusCode() != 200) {
+            throw new IOException("Token request to " + realm + " returned " + response.statusCode());
+        }
+        JsonNode body = objectMapper.readTree(response.body());
+        String token = body.hasNonNull("token") ? body.get("token").asText() : body.path("access_token").asText();
+        // Renewed a little early, so a token never expires between the check and the request
+        long expiresIn = Math.max(10, body.path("expires_in").asLong(60) - 5);
+        return new Token("Bearer " + token, System.currentTimeMillis() + expiresIn * 1000);
+    }
+
+    private String scheme(ImageReference reference) {
+        return insecureRegistries.orElse(List.of()).contains(reference.registry()) ? "http" : "https";
+    }
+
+    /**
+     * Reads the {@code auths} of a Docker config file: registry -> base64 of {@code user:password}.
+     */
+    private Map<String, String> loadCredentials() {
+        Map<String, String> loaded = new ConcurrentHashMap<>();
+        if (authFile.isEmpty() || !Files.exists(Path.of(authFile.get()))) {
+            return loaded;
+        }
+        try {
+            JsonNode auths = objectMapper.readTree(Path.of(authFile.get()).toFile()).path("auths");
+            auths.fields().forEachRemaining(entry -> {
+                if (entry.getValue().hasNonNull("auth")) {
+                    loaded.put(registryOf(entry.getKey()), entry.getValue().get("auth").asText());
+                }
+            });
+            log.info("Loaded registry credentials for {}", loaded.keySet());
+        } catch (IOException e) {
+            log.warn("Cannot read registry credentials from {}", authFile.get(), e);
+        }
+        return loaded;
+    }
+
+    /**
+     * Docker config keys may be URLs ({@code https://index.docker.io/v1/}).
+     */
+    private static String registryOf(String key) {
+        String registry = key.replaceFirst("^https?://", "");
+        int slash = registry.indexOf('/');
+        if (slash >= 0) {
+            registry = registry.substring(0, slash);
+        }
+        return registry.equals("index.docker.io") || registry.equals("registry-1.docker.io") ? ImageReference.DOCKER_HUB : registry;
+    }
+
+    /**
+     * @return the compressed size of the config and layers of a platform manifest, -1 if it lists none.
+     */
+    static long sizeOf(JsonNode manifest) {
+        if (!manifest.has("layers")) {
+            return -1;
+        }
+        long size = manifest.path("config").path("size").asLong(0);
+        for (JsonNode layer : manifest.get("layers")) {
+            size += layer.path("size").asLong(0);
+        }
+        return size;
+    }
+
+    private static String textOrNull(JsonNode node) {
+        return node == null || node.isNull() || node.asText().isBlank() ? null : node.asText();
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return "sha256:" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private <V> Map<String, V> lru() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
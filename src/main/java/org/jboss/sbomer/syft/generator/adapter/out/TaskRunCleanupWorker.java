@@ -0,0 +1,218 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable;
+import io.fabric8.tekton.v1beta1.TaskRun;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Deletes the TaskRuns of finished generations in the background.
+ * <p>
+ * Finished generations are collected and deleted in batches, with one {@code deletecollection} call per batch
+ * using a set-based label selector ({@code generation-id in (...)}). The caller (usually the reconciler thread)
+ * never waits for the API server. Failed deletes are retried with exponential backoff, and at most
+ * {@code max-in-flight} delete calls run at the same time.
+ * </p>
+ * <p>
+ * A generation is deleted together with the attempt that was running when it was enqueued, so an OOM retry
+ * created in the meantime (same generation ID, next attempt) is left alone. Deleting is idempotent: a generation
+ * enqueued twice is only deleted once, and deleting something that is already gone is not an error.
+ * </p>
+ */
+@ApplicationScoped
+@Slf4j
+public class TaskRunCleanupWorker {
+
+    @Inject
+    KubernetesClient kubernetesClient;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @ConfigProperty(name = "quarkus.kubernetes-client.namespace")
+    String namespace;
+
+    // Config: Max generations deleted by one deletecollection call
+    @ConfigProperty(name = "sbomer.generator.cleanup.batch-size", defaultValue = "50")
+    int batchSize;
+
+    // Config: How long finished generations are collected before they are deleted
+    @ConfigProperty(name = "sbomer.generator.cleanup.flush-interval", defaultValue = "1s")
+    Duration flushInterval;
+
+    // Config: Max delete calls running against the API server at the same time
+    @ConfigProperty(name = "sbomer.generator.cleanup.max-in-flight", defaultValue = "4")
+    int maxInFlight;
+
+    // Config: How many times a failed delete is tried before giving up
+    @ConfigProperty(name = "sbomer.generator.cleanup.max-attempts", defaultValue = "5")
+    int maxAttempts;
+
+    // Config: Wait before the first retry, doubled on every further retry
+    @ConfigProperty(name = "sbomer.generator.cleanup.initial-backoff", defaultValue = "1s")
+    Duration initialBackoff;
+
+    static final String GENERATION_ID_LABEL = "sbomer.jboss.org/generation-id";
+    static final String ATTEMPT_LABEL = "sbomer.jboss.org/attempt";
+
+    /**
+     * A TaskRun to delete. The attempt is null when it is unknown (e.g. the TaskRun was created before a restart),
+     * then every TaskRun of the generation is deleted.
+     */
+    record Target(String generationId, String attempt) {
+    }
+
+    /**
+     * Generations deleted by one call, all at the same attempt.
+     */
+    record Batch(String attempt, List<String> generationIds) {
+    }
+
+    // Guarded by this. Insertion ordered, so the oldest generations go first
+    private final Set<Target> pending = new LinkedHashSet<>();
+    private final AtomicInteger inProgress = new AtomicInteger();
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService deleters;
+    private Counter failures;
+
+    @PostConstruct
+    void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "taskrun-cleanup-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The pool size is the in-flight cap
+        deleters = Executors.newFixedThreadPool(maxInFlight, r -> {
+            Thread thread = new Thread(r, "taskrun-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+
+        failures = meterRegistry.counter("sbomer.generator.cleanup.failures");
+        Gauge.builder("sbomer.generator.cleanup.queue.depth", this, TaskRunCleanupWorker::depth)
+                .description("Generations whose TaskRuns are waiting to be deleted, including retries")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues the TaskRuns of a generation for deletion. Returns immediately.
+     */
+    public void enqueue(String generationId, String attempt) {
+        boolean full;
+        synchronized (this) {
+            pending.add(new Target(generationId, attempt));
+            full = pending.size() >= batchSize;
+        }
+        if (full) {
+            scheduler.execute(this::flush);
+        }
+    }
+
+    /**
+     * Hands everything queued so far over to the deleters.
+     */
+    void flush() {
+        drain().forEach(batch -> submit(batch, 1));
+    }
+
+    /**
+     * Takes everything queued, grouped by attempt (one label selector per group) and split into batches.
+     */
+    synchronized List<Batch> drain() {
+        Map<String, List<String>> byAttempt = new LinkedHashMap<>();
+        for (Target target : pending) {
+            // LinkedHashMap keys may be null
+            byAttempt.computeIfAbsent(target.attempt(), k -> new ArrayList<>()).add(target.generationId());
+        }
+        pending.clear();
+
+        List<Batch> batches = new ArrayList<>();
+        byAttempt.forEach((attempt, ids) -> {
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                batches.add(new Batch(attempt, List.copyOf(ids.subList(from, Math.min(from + batchSize, ids.size())))));
+            }
+        });
+        batches.forEach(batch -> inProgress.addAndGet(batch.generationIds().size()));
+        return batches;
+    }
+
+    private void submit(Batch batch, int attempt) {
+        deleters.execute(() -> {
+            try {
+                delete(batch);
+                inProgress.addAndGet(-batch.generationIds().size());
+            } catch (Exception e) {
+                failures.increment();
+                if (attempt >= maxAttempts) {
+                    log.error("Giving up deleting TaskRuns of {} generations after {} attempts",
+                            batch.generationIds().size(), attempt, e);
+                    inProgress.addAndGet(-batch.generationIds().size());
+                    return;
+                }
+                long backoff = initialBackoff.toMillis() << (attempt - 1);
+                log.warn("Failed to delete TaskRuns of {} generations (attempt {}/{}), retrying in {}ms",
+                        batch.generationIds().size(), attempt, maxAttempts, backoff, e);
+                scheduler.schedule(() -> submit(batch, attempt + 1), backoff, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    /**
+     * Deletes the TaskRuns of a batch with a single deletecollection call.
+     */
+    void delete(Batch batch) {
+        log.debug("Deleting TaskRuns of {} generations", batch.generationIds().size());
+        FilterWatchListDeletable<TaskRun, ?, ?> selection = kubernetesClient.resources(TaskRun.class)
+                .inNamespace(namespace)
+                .withLabelIn(GENERATION_ID_LABEL, batch.generationIds().toArray(String[]::new));
+        if (batch.attempt() != null) {
+            selection = selection.withLabel(ATTEMPT_LABEL, batch.attempt());
+        }
+        selection.delete();
+    }
+
+    int depth() {
+        synchronized (this) {
+            return pending.size() + inProgress.get();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+        // Best effort: whatever is still queued gets one try before the process goes away
+        for (Batch batch : drain()) {
+            try {
+                delete(batch);
+            } catch (Exception e) {
+                log.warn("Failed to delete TaskRuns of {} generations on shutdown", batch.generationIds().size(), e);
+            }
+        }
+        deleters.shutdown();
+    }
+}
@@ -1,5 +1,9 @@
 package org.jboss.sbomer.syft.generator.adapter.out;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
 import org.jboss.sbomer.syft.generator.core.port.spi.GenerationExecutor;
@@ -9,11 +13,17 @@ import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.tekton.v1beta1.TaskRun;
 import io.opentelemetry.instrumentation.annotations.SpanAttribute;
 import io.opentelemetry.instrumentation.annotations.WithSpan;
+import io.quarkus.arc.DefaultBean;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Runs every generation (or batch) in a TaskRun of its own. The executor unless another one is built in with
+ * {@code sbomer.generator.executor}.
+ */
 @ApplicationScoped
+@DefaultBean
 @Slf4j
 public class TektonGenerationExecutor implements GenerationExecutor {
 
@@ -23,6 +33,16 @@ public class TektonGenerationExecutor implements GenerationExecutor {
     @Inject
     TaskRunFactory taskRunFactory;
 
+    @Inject
+    ActiveTaskRunTracker activeTaskRunTracker;
+
+    @Inject
+    TaskRunCleanupWorker cleanupWorker;
+
+    // Config: Count running TaskRuns from the informer cache instead of listing them on every poll
+    @ConfigProperty(name = "sbomer.generator.active-count.informer.enabled", defaultValue = "true")
+    boolean informerEnabled;
+
     @ConfigProperty(name = "quarkus.kubernetes-client.namespace")
     String namespace;
 
@@ -30,6 +50,10 @@ public class TektonGenerationExecutor implements GenerationExecutor {
     private static final String GENERATOR_TYPE_LABEL = "sbomer.jboss.org/generator-type";
     private static final String GENERATOR_TYPE_VALUE = "syft";
 
+    // Generation ID -> attempt of the TaskRun currently created for it, so cleaning up an OOMKilled
+    // attempt never deletes the retry
+    private final Map<String, String> attempts = new ConcurrentHashMap<>();
+
     @WithSpan
     @Override
     public void scheduleGeneration(GenerationTask generationTask) {
@@ -40,53 +64,66 @@ public class TektonGenerationExecutor implements GenerationExecutor {
 
         // Execute against the cluster
         kubernetesClient.resources(TaskRun.class).inNamespace(namespace).resource(taskRun).create();
+        if (generationTask.platform() != null) {
+            // The platforms of a fanned out generation are cleaned up together, whatever attempt each one is at
+            attempts.remove(generationTask.generationId());
+        } else {
+            attempts.put(generationTask.generationId(), String.valueOf(generationTask.retryCount()));
+        }
+    }
+
+    @Override
+    public boolean supportsBatching() {
+        return true;
+    }
+
+    @WithSpan
+    @Override
+    public void scheduleBatch(@SpanAttribute("batch.id") String batchId, List<GenerationTask> generationTasks) {
+        log.info("Scheduling batch TaskRun {} for {} generations", batchId, generationTasks.size());
+
+        TaskRun taskRun = taskRunFactory.createBatchTaskRun(batchId, generationTasks);
+
+        kubernetesClient.resources(TaskRun.class).inNamespace(namespace).resource(taskRun).create();
+        attempts.put(batchId, "0");
     }
 
     @WithSpan
     @Override
     public void abortGeneration(@SpanAttribute("generation.id") String generationId) {
         log.info("Aborting generation: {}", generationId);
+        attempts.remove(generationId);
         kubernetesClient.resources(TaskRun.class)
                 .inNamespace(namespace)
                 .withLabel(GENERATION_ID_LABEL, generationId)
                 .delete();
     }
 
-    // In this specific implementation, basically same logic as abortGeneration
-    @WithSpan
+    // Unlike abortGeneration, the TaskRun is done already, nobody has to wait for it to be gone
     @Override
-    public void cleanupGeneration(@SpanAttribute("generation.id") String generationId) {
-        log.info("Cleaning up generation: {}", generationId);
-        kubernetesClient.resources(TaskRun.class)
-                .inNamespace(namespace)
-                .withLabel(GENERATION_ID_LABEL, generationId)
-                .delete();
+    public void cleanupGeneration(String generationId) {
+        log.debug("Queueing cleanup of generation: {}", generationId);
+        cleanupWorker.enqueue(generationId, attempts.remove(generationId));
     }
 
     @Override
     public int countActiveExecutions() {
+        if (informerEnabled) {
+            int running = activeTaskRunTracker.countRunning();
+            if (running >= 0) {
+                return running;
+            }
+            log.debug("TaskRun informer not watching, falling back to a full list");
+        }
+
         // Count TaskRuns for THIS generator that are NOT finished.
         // This is the input for the Throttling logic.
-        return (int) kubernetesClient.resources(TaskRun.class).inNamespace(namespace)
-                .withLabel(GENERATOR_TYPE_LABEL, GENERATOR_TYPE_VALUE)
+        return (int) activeTaskRunTracker.selectOwned(kubernetesClient.resources(TaskRun.class).inNamespace(namespace)
+                .withLabel(GENERATOR_TYPE_LABEL, GENERATOR_TYPE_VALUE))
                 .list()
                 .getItems()
                 .stream()
-                .filter(tr -> !isFinished(tr))
+                .filter(tr -> !ActiveTaskRunTracker.isFinished(tr))
                 .count();
     }
-
-    /**
-     * Helper to check Tekton Status Conditions
-     */
-    private boolean isFinished(TaskRun taskRun) {
-        if (taskRun.getStatus() == null || taskRun.getStatus().getConditions() == null) {
-            return false; // No status means it's initializing/running
-        }
-
-        // Check for "Succeeded" condition with Status "True" or "False" (False means failed, but it is still 'finished')
-        return taskRun.getStatus().getConditions().stream()
-                .anyMatch(c -> "Succeeded".equals(c.getType()) &&
-                        ("True".equals(c.getStatus()) || "False".equals(c.getStatus())));
-    }
 }
@@ -0,0 +1,24 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import org.jboss.sbomer.syft.generator.core.port.spi.SlotAllocator;
+
+import io.quarkus.arc.DefaultBean;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Default allocator: there is no shared budget, only {@code max-concurrent} of each replica applies.
+ */
+@ApplicationScoped
+@DefaultBean
+public class UnlimitedSlotAllocator implements SlotAllocator {
+
+    @Override
+    public int acquire(int wanted) {
+        return wanted;
+    }
+
+    @Override
+    public void release(int count) {
+        // Nothing is shared
+    }
+}
@@ -0,0 +1,31 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.util.Set;
+
+import org.jboss.sbomer.syft.generator.core.port.spi.ShardOwnership;
+
+import io.quarkus.arc.DefaultBean;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Default ownership: a single replica, responsible for every execution.
+ */
+@ApplicationScoped
+@DefaultBean
+public class UnshardedOwnership implements ShardOwnership {
+
+    @Override
+    public String replicaId() {
+        return null;
+    }
+
+    @Override
+    public boolean isResponsibleFor(String owner, String generationId) {
+        return true;
+    }
+
+    @Override
+    public Set<String> liveReplicas() {
+        return null;
+    }
+}
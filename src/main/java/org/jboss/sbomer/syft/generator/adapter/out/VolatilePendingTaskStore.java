@@ -0,0 +1,32 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import java.util.List;
+
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.port.spi.PendingTaskStore;
+
+import io.quarkus.arc.DefaultBean;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Default store: nothing is persisted, the pending queue only lives in memory.
+ */
+@ApplicationScoped
+@DefaultBean
+public class VolatilePendingTaskStore implements PendingTaskStore {
+
+    @Override
+    public void append(GenerationTask generationTask) {
+        // Nothing to persist
+    }
+
+    @Override
+    public void markDispatched(String generationId) {
+        // Nothing to persist
+    }
+
+    @Override
+    public List<GenerationTask> replay(int limit) {
+        return List.of();
+    }
+}
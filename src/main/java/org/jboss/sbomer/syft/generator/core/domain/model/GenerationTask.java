@@ -11,9 +11,27 @@ public record GenerationTask(
     GenerationRequestSpec spec,
     int retryCount, // NOT max retries, the number of it retries it's currently on
     String memoryOverride, // i.e. 2Gi
-    String traceParent // W3C traceparent header (00-<traceId>-<spanId>-<traceFlags>)
+    String traceParent, // W3C traceparent header (00-<traceId>-<spanId>-<traceFlags>)
+    Platform platform, // The only platform to scan when the image is fanned out, null to scan the whole image
+    String resolvedImage // The image pinned to its digest when accepted (repository@sha256:...), null if not known
 ) {
     public GenerationTask(String generationId, GenerationRequestSpec spec, String traceParent) {
         this(generationId, spec, 0, null, traceParent);
     }
-}
\ No newline at end of file
+
+    public GenerationTask(String generationId, GenerationRequestSpec spec, int retryCount, String memoryOverride, String traceParent) {
+        this(generationId, spec, retryCount, memoryOverride, traceParent, null);
+    }
+
+    public GenerationTask(String generationId, GenerationRequestSpec spec, int retryCount, String memoryOverride, String traceParent, Platform platform) {
+        this(generationId, spec, retryCount, memoryOverride, traceParent, platform, null);
+    }
+
+    /**
+     * The image to scan, also the key of its result for coalescing and the result cache: pinned to the digest
+     * resolved when the request was accepted, otherwise the reference as requested.
+     */
+    public String image() {
+        return resolvedImage != null ? resolvedImage : spec.getTarget().getIdentifier().trim();
+    }
+}
@@ -0,0 +1,79 @@
+package org.jboss.sbomer.syft.generator.core.domain.model;
+
+/**
+ * An image reference split into the parts the registry API needs.
+ * <p>
+ * Follows the rules of container runtimes: the first path segment is the registry only if it contains a dot or a
+ * colon or is {@code localhost}, otherwise the image is on Docker Hub, where single-segment names live under
+ * {@code library/}. Without tag and digest, the tag is {@code latest}.
+ * </p>
+ * <p>
+ * The one place image references are taken apart: the fair-share and sizing keys, the platform images of a
+ * fan-out and the registry lookups all go through here.
+ * </p>
+ */
+public record ImageReference(String registry, String repository, String tag, String digest) {
+
+    public static final String DOCKER_HUB = "docker.io";
+
+    public static ImageReference parse(String image) {
+        String rest = image.trim();
+        String digest = null;
+        int at = rest.indexOf('@');
+        if (at >= 0) {
+            digest = rest.substring(at + 1);
+            rest = rest.substring(0, at);
+        }
+
+        String tag = null;
+        int colon = tagSeparator(rest);
+        if (colon >= 0) {
+            tag = rest.substring(colon + 1);
+            rest = rest.substring(0, colon);
+        }
+
+        String registry = DOCKER_HUB;
+        int slash = rest.indexOf('/');
+        if (slash > 0) {
+            String first = rest.substring(0, slash);
+            if (first.contains(".") || first.contains(":") || first.equals("localhost")) {
+                registry = first;
+                rest = rest.substring(slash + 1);
+            }
+        }
+        if (registry.equals(DOCKER_HUB) && !rest.contains("/")) {
+            rest = "library/" + rest;
+        }
+        if (tag == null && digest == null) {
+            tag = "latest";
+        }
+        return new ImageReference(registry, rest, tag, digest);
+    }
+
+    /**
+     * @return the image reference as written, without its tag and digest ({@code quay.io/org/app:1.0} gives
+     * {@code quay.io/org/app}, {@code localhost:5000/app} stays as it is).
+     */
+    public static String repositoryOf(String image) {
+        String repository = image.trim();
+        int at = repository.indexOf('@');
+        if (at >= 0) {
+            repository = repository.substring(0, at);
+        }
+        int colon = tagSeparator(repository);
+        return colon >= 0 ? repository.substring(0, colon) : repository;
+    }
+
+    /**
+     * @return the host serving the registry API.
+     */
+    public String apiHost() {
+        return registry.equals(DOCKER_HUB) ? "registry-1.docker.io" : registry;
+    }
+
+    // A colon after the last slash starts the tag, one before it belongs to the registry port
+    private static int tagSeparator(String reference) {
+        int colon = reference.lastIndexOf(':');
+        return colon > reference.lastIndexOf('/') ? colon : -1;
+    }
+}
@@ -0,0 +1,13 @@
+package org.jboss.sbomer.syft.generator.core.domain.model;
+
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+
+/**
+ * A generation request as received from the outside, before it becomes a {@link GenerationTask}.
+ */
+public record IncomingRequest(
+    String generationId,
+    GenerationRequestSpec spec,
+    String traceParent // W3C traceparent header (00-<traceId>-<spanId>-<traceFlags>)
+) {
+}
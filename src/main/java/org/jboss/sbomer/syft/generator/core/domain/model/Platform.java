@@ -0,0 +1,23 @@
+package org.jboss.sbomer.syft.generator.core.domain.model;
+
+/**
+ * One platform of an image (an entry of its image index or manifest list, or the only one of a single manifest).
+ */
+public record Platform(
+    String os, // i.e. linux
+    String architecture, // i.e. arm64
+    String variant, // i.e. v8, null if the platform has none
+    String digest, // Digest of the platform manifest (sha256:...)
+    long size // Compressed size in bytes of the config and layers, -1 if unknown
+) {
+    public Platform(String os, String architecture, String variant, String digest) {
+        this(os, architecture, variant, digest, -1);
+    }
+
+    /**
+     * @return the platform as used in labels and file names, i.e. {@code linux-arm64-v8}.
+     */
+    public String key() {
+        return variant == null || variant.isBlank() ? os + "-" + architecture : os + "-" + architecture + "-" + variant;
+    }
+}
@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.jboss.sbomer.events.common.GenerationRequestSpec;
 import org.jboss.sbomer.syft.generator.core.domain.GenerationStatus;
+import org.jboss.sbomer.syft.generator.core.domain.model.IncomingRequest;
 
 /**
  * Driving Port (API) for the Generator Core Domain.
@@ -27,6 +28,17 @@ public interface GenerationOrchestrator {
      */
     void acceptRequest(String generationId, GenerationRequestSpec request, String traceParent);
 
+    /**
+     * Ingress Point: Accepts several generation requests in one step (e.g. a whole Kafka poll).
+     * <p>
+     * Requests for a generation that is already known (queued, running, or earlier in the same list) are ignored.
+     * A request that cannot be accepted is reported as FAILED on its own, the others are still queued.
+     * </p>
+     *
+     * @param requests The requests, in the order they were received.
+     */
+    void acceptRequests(List<IncomingRequest> requests);
+
     /**
      * Feedback Point: Processes a status update from the execution environment
      * (e.g., a TaskRun finished or failed).
@@ -37,4 +49,19 @@ public interface GenerationOrchestrator {
      * @param resultUrls   List of result URLs (if successful).
      */
     void handleUpdate(String generationId, GenerationStatus status, String reason, List<String> resultUrls);
+
+    /**
+     * Feedback Point: Processes a status update of one platform of a generation that was fanned out into one
+     * execution per platform.
+     * <p>
+     * The generation is only reported once all of its platforms are done. A failed platform is retried on its own.
+     * </p>
+     *
+     * @param generationId The unique ID of the generation.
+     * @param platform     The platform the execution scanned (i.e. {@code linux-arm64}).
+     * @param status       The new status detected (FINISHED / FAILED).
+     * @param reason       Human-readable reason.
+     * @param resultUrls   List of result URLs of this platform (if successful).
+     */
+    void handlePlatformUpdate(String generationId, String platform, GenerationStatus status, String reason, List<String> resultUrls);
 }
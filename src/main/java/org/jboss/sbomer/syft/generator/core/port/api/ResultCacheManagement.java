@@ -0,0 +1,20 @@
+package org.jboss.sbomer.syft.generator.core.port.api;
+
+/**
+ * Driving Port (API) for managing the SBOM result cache.
+ */
+public interface ResultCacheManagement {
+
+    /**
+     * Drops every cached result of the given image.
+     *
+     * @param imageReference The image reference pinned by digest (e.g. {@code quay.io/org/app@sha256:...}).
+     * @return the number of in-memory entries removed.
+     */
+    int invalidate(String imageReference);
+
+    /**
+     * Drops every cached result.
+     */
+    void invalidateAll();
+}
@@ -1,5 +1,8 @@
 package org.jboss.sbomer.syft.generator.core.port.spi;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
 
 /**
@@ -21,6 +24,43 @@ public interface GenerationExecutor {
      */
     void scheduleGeneration(GenerationTask generationTask);
 
+    /**
+     * Whether this executor can run several generations in a single execution.
+     *
+     * @return true if {@link #scheduleBatch(String, List)} is supported.
+     */
+    default boolean supportsBatching() {
+        return false;
+    }
+
+    /**
+     * Schedules several generations to run together in a single execution.
+     * <p>
+     * Each generation still reports its own outcome. The execution is identified by the batch ID,
+     * which is what {@link #cleanupGeneration(String)} receives once all of its generations are done.
+     * </p>
+     * <p>
+     * The default gives every generation an execution of its own. When one of them cannot be scheduled, the ones
+     * already scheduled are aborted, so the batch fails as a whole. Executors relying on the default should keep
+     * {@link #supportsBatching()} false, so the core charges and cleans up their executions one by one.
+     * </p>
+     *
+     * @param batchId The unique ID of the shared execution.
+     * @param generationTasks The generations to run.
+     */
+    default void scheduleBatch(String batchId, List<GenerationTask> generationTasks) {
+        List<GenerationTask> scheduled = new ArrayList<>();
+        try {
+            for (GenerationTask generationTask : generationTasks) {
+                scheduleGeneration(generationTask);
+                scheduled.add(generationTask);
+            }
+        } catch (RuntimeException e) {
+            scheduled.forEach(generationTask -> abortGeneration(generationTask.generationId()));
+            throw e;
+        }
+    }
+
     /**
      * Aborts resources associated with a specific generation.
      * <p>
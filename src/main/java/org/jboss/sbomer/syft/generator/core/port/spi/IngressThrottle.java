@@ -0,0 +1,24 @@
+package org.jboss.sbomer.syft.generator.core.port.spi;
+
+/**
+ * Driven Port (SPI) for slowing down the intake of new generation requests.
+ * <p>
+ * The core calls it when its pending queue gets too long, so requests stay in the source
+ * (e.g. a Kafka topic) instead of piling up on the heap.
+ * </p>
+ */
+public interface IngressThrottle {
+
+    /**
+     * Stops delivering new requests until {@link #resume()} is called.
+     * <p>
+     * Must be idempotent and must not block. Requests already on their way may still be delivered.
+     * </p>
+     */
+    void pause();
+
+    /**
+     * Starts delivering new requests again. Must be idempotent and must not block.
+     */
+    void resume();
+}
@@ -0,0 +1,67 @@
+package org.jboss.sbomer.syft.generator.core.port.spi;
+
+import java.util.List;
+
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+
+/**
+ * Driven Port (SPI) for persisting the tasks waiting in the pending queue.
+ * <p>
+ * The core keeps its own in-memory ordering; this store only makes sure queued work
+ * survives a restart (e.g. a pod being rescheduled or scaled down).
+ * </p>
+ */
+public interface PendingTaskStore {
+
+    /**
+     * Durably records a task entering the pending queue.
+     * <p>
+     * Must not return before the task would survive a crash.
+     * </p>
+     *
+     * @param generationTask The task being queued.
+     */
+    void append(GenerationTask generationTask);
+
+    /**
+     * Durably records several tasks entering the pending queue, in order.
+     * <p>
+     * Must not return before all of them would survive a crash.
+     * </p>
+     *
+     * @param generationTasks The tasks being queued.
+     */
+    default void appendAll(List<GenerationTask> generationTasks) {
+        generationTasks.forEach(this::append);
+    }
+
+    /**
+     * Records that a task has left the pending queue (it was handed over to the executor),
+     * so it is not replayed on the next start.
+     *
+     * @param generationId The unique ID of the generation.
+     */
+    void markDispatched(String generationId);
+
+    /**
+     * Records that several tasks have left the pending queue (e.g. the members of a batch).
+     *
+     * @param generationIds The unique IDs of the generations.
+     */
+    default void markDispatchedAll(List<String> generationIds) {
+        generationIds.forEach(this::markDispatched);
+    }
+
+    /**
+     * Returns the next tasks that were appended before the last start, never dispatched and not returned by an
+     * earlier call, in queue order.
+     * <p>
+     * Called at startup, then again whenever the pending queue has room, until it returns nothing. This keeps a
+     * long backlog on disk instead of loading all of it into the heap at once.
+     * </p>
+     *
+     * @param limit The maximum number of tasks to return.
+     * @return the tasks to re-queue, empty once the backlog is drained.
+     */
+    List<GenerationTask> replay(int limit);
+}
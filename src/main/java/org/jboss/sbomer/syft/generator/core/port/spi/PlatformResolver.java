@@ -0,0 +1,30 @@
+package org.jboss.sbomer.syft.generator.core.port.spi;
+
+import java.util.List;
+
+import org.jboss.sbomer.syft.generator.core.domain.model.Platform;
+
+/**
+ * Driven Port (SPI) finding out which platforms an image is built for, before it is scanned.
+ * <p>
+ * Used to fan a multi-platform image out into one execution per platform, and to hand the manifests over to the
+ * execution so it does not inspect the image again. The digest a tag points at keys the coalescing and the result
+ * cache, so a tag and its digest share one scan.
+ * </p>
+ */
+public interface PlatformResolver {
+
+    /**
+     * @param image The image reference as requested (tag or digest).
+     * @return the platforms of the image index, the only platform of a single manifest, or an empty list when the
+     * platforms are not known. The image is then scanned as a whole.
+     */
+    List<Platform> resolvePlatforms(String image);
+
+    /**
+     * @param image The image reference as requested (tag or digest).
+     * @return the image pinned to the digest it points at right now ({@code repository@sha256:...}), or null when
+     * the digest is not known.
+     */
+    String resolveDigest(String image);
+}
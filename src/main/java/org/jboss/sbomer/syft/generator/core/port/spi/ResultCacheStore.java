@@ -0,0 +1,38 @@
+package org.jboss.sbomer.syft.generator.core.port.spi;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Driven Port (SPI) for the persistent tier of the SBOM result cache.
+ * <p>
+ * The core keeps a bounded in-memory tier in front of it; this store only needs to survive restarts
+ * and may be slower.
+ * </p>
+ */
+public interface ResultCacheStore {
+
+    /**
+     * A cached result: the result URLs of a successful generation and when they were stored.
+     */
+    record Entry(List<String> resultUrls, Instant storedAt) {}
+
+    /**
+     * @param key The cache key (immutable image reference, generator version and output format).
+     * @return the stored entry, if any.
+     */
+    Optional<Entry> get(String key);
+
+    /**
+     * Stores (or replaces) the entry for the given key.
+     */
+    void put(String key, Entry entry);
+
+    /**
+     * Removes every entry whose key starts with the given prefix.
+     *
+     * @param keyPrefix The prefix to match, an empty prefix removes everything.
+     */
+    void invalidate(String keyPrefix);
+}
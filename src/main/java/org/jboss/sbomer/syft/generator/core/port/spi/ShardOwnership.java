@@ -0,0 +1,33 @@
+package org.jboss.sbomer.syft.generator.core.port.spi;
+
+import java.util.Set;
+
+/**
+ * Driven Port (SPI) deciding which replica of the generator is responsible for an execution.
+ * <p>
+ * Each replica only tracks the generations it accepted itself, so it must only count and reconcile the executions
+ * it created. Executions of a replica that is gone are taken over by the replica owning the shard of their
+ * generation ID.
+ * </p>
+ */
+public interface ShardOwnership {
+
+    /**
+     * @return the identity of this replica, recorded on every execution it creates, or null when the generator
+     * is not sharded (a single replica owns everything).
+     */
+    String replicaId();
+
+    /**
+     * @param owner The replica that created the execution, null if it was created without sharding.
+     * @param generationId The generation (or batch) ID of the execution.
+     * @return whether this replica handles the updates of the execution.
+     */
+    boolean isResponsibleFor(String owner, String generationId);
+
+    /**
+     * @return the replicas currently sharing the work, this one included, or null when they are not known (not
+     * sharded, or before the first heartbeat).
+     */
+    Set<String> liveReplicas();
+}
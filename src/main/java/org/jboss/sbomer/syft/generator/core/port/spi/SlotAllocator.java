@@ -0,0 +1,26 @@
+package org.jboss.sbomer.syft.generator.core.port.spi;
+
+/**
+ * Driven Port (SPI) for a concurrency budget shared by every replica of the generator.
+ * <p>
+ * {@code max-concurrent} only limits a single replica. On top of it, every execution takes a slot from the
+ * shared budget, and gives it back once it is done.
+ * </p>
+ */
+public interface SlotAllocator {
+
+    /**
+     * Takes up to the wanted number of slots from the shared budget.
+     * <p>
+     * May block for a round trip to the shared state, but never waits for slots to become free.
+     * </p>
+     *
+     * @return how many slots were granted, between 0 and {@code wanted}.
+     */
+    int acquire(int wanted);
+
+    /**
+     * Gives slots back to the shared budget. Must not block.
+     */
+    void release(int count);
+}
@@ -0,0 +1,89 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+
+/**
+ * Groups small tasks into batches that share one execution, and tracks which execution each batched
+ * generation belongs to so the execution is only cleaned up once all its generations are done.
+ */
+class BatchAssembler {
+
+    private final int batchSize;
+    private final long maxWaitMillis;
+
+    // Guarded by this
+    private final List<GenerationTask> buffer = new ArrayList<>();
+    private long bufferSince;
+    private final Map<String, String> batchOf = new HashMap<>();
+    private final Map<String, Integer> remaining = new HashMap<>();
+
+    BatchAssembler(int batchSize, long maxWaitMillis) {
+        this.batchSize = batchSize;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Adds a task to the batch being assembled.
+     *
+     * @return the batch, if it is full now, otherwise null.
+     */
+    synchronized List<GenerationTask> offer(GenerationTask task, long now) {
+        if (buffer.isEmpty()) {
+            bufferSince = now;
+        }
+        buffer.add(task);
+        return buffer.size() >= batchSize ? drain() : null;
+    }
+
+    /**
+     * @return the batch being assembled, if its oldest task has waited long enough, otherwise null.
+     */
+    synchronized List<GenerationTask> takeIfDue(long now) {
+        if (buffer.isEmpty() || now - bufferSince < maxWaitMillis) {
+            return null;
+        }
+        return drain();
+    }
+
+    synchronized boolean hasPending() {
+        return !buffer.isEmpty();
+    }
+
+    /**
+     * Remembers that the given generations run together in the execution identified by the batch ID.
+     */
+    synchronized void register(String batchId, List<GenerationTask> tasks) {
+        tasks.forEach(t -> batchOf.put(t.generationId(), batchId));
+        remaining.put(batchId, tasks.size());
+    }
+
+    /**
+     * Releases a generation from its execution.
+     *
+     * @return the ID of the execution that can be cleaned up now: the generation itself if it was not batched,
+     * the batch once its last generation is released, or null while other generations still use the batch.
+     */
+    synchronized String release(String generationId) {
+        String batchId = batchOf.remove(generationId);
+        if (batchId == null) {
+            return generationId;
+        }
+        int left = remaining.merge(batchId, -1, Integer::sum);
+        if (left > 0) {
+            return null;
+        }
+        remaining.remove(batchId);
+        return batchId;
+    }
+
+    private List<GenerationTask> drain() {
+        List<GenerationTask> batch = List.copyOf(buffer);
+        buffer.clear();
+        return batch;
+    }
+}
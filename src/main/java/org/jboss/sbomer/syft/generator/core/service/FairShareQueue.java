@@ -0,0 +1,231 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.domain.model.ImageReference;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The pending queue: weighted fair share across keys, priority with aging inside a key.
+ * <p>
+ * Every task is assigned a fair-share key (the image repository, i.e. the target without tag or digest),
+ * a weight and a priority. Both are looked up by the longest matching prefix in the configured rules,
+ * as the request contract does not carry them.
+ * </p>
+ * <ul>
+ *     <li>Across keys, slots are handed out by stride scheduling: a key with weight 4 gets four times as many
+ *     slots as a key with weight 1, as long as both have work waiting. A bulk re-scan of one product therefore
+ *     cannot block everybody else.</li>
+ *     <li>Inside a key, a task with priority {@code p} is ordered as if it had been queued {@code p} aging intervals
+ *     earlier. Since every task ages at the same rate, low priority work overtakes newer high priority work
+ *     once it has waited long enough, so nothing starves.</li>
+ *     <li>A task that has waited longer than {@code max-wait} is dispatched next, whatever its key.</li>
+ * </ul>
+ */
+@ApplicationScoped
+@Slf4j
+public class FairShareQueue {
+
+    // Config: "prefix=weight" rules, e.g. "quay.io/my-product=4". Unmatched keys get weight 1
+    @ConfigProperty(name = "sbomer.generator.scheduler.weights")
+    Optional<List<String>> weightRules;
+
+    // Config: "prefix=priority" rules. Unmatched tasks get priority 0, higher runs first
+    @ConfigProperty(name = "sbomer.generator.scheduler.priorities")
+    Optional<List<String>> priorityRules;
+
+    // Config: How much waiting time one priority level is worth
+    @ConfigProperty(name = "sbomer.generator.scheduler.aging-interval", defaultValue = "5m")
+    Duration agingInterval;
+
+    // Config: Tasks waiting longer than this are dispatched before anything else
+    @ConfigProperty(name = "sbomer.generator.scheduler.max-wait", defaultValue = "2h")
+    Duration maxWait;
+
+    // Config: Re-queued tasks (OOM retries) keep the position they had when first queued
+    @ConfigProperty(name = "sbomer.generator.scheduler.retry-keeps-position", defaultValue = "true")
+    boolean retryKeepsPosition;
+
+    private static final long STRIDE_BASE = 1_000_000L;
+
+    LongSupplier clock = System::currentTimeMillis;
+
+    private final Map<String, Lane> lanes = new HashMap<>();
+    // Original ordering score of tasks that left the queue but may come back (OOM retries)
+    private final Map<String, Long> admittedScores = new HashMap<>();
+    // Generation IDs currently waiting in a lane
+    private final Set<String> queued = new HashSet<>();
+    private Map<String, Integer> weights = Map.of();
+    private Map<String, Integer> priorities = Map.of();
+    private long sequence;
+    private long globalPass;
+    private int size;
+
+    @PostConstruct
+    void init() {
+        weights = parseRules(weightRules.orElse(List.of()));
+        priorities = parseRules(priorityRules.orElse(List.of()));
+    }
+
+    public synchronized void add(GenerationTask task) {
+        long now = clock.getAsLong();
+        long score = now - (long) priorityOf(task) * agingInterval.toMillis();
+        enqueue(task, score, now);
+    }
+
+    /**
+     * Re-queues a task that was already dispatched once, keeping its original place in line if configured.
+     */
+    public synchronized void requeue(GenerationTask task) {
+        Long original = admittedScores.get(task.generationId());
+        if (retryKeepsPosition && original != null) {
+            enqueue(task, original, clock.getAsLong());
+        } else {
+            add(task);
+        }
+    }
+
+    public synchronized void addAll(List<GenerationTask> tasks) {
+        tasks.forEach(this::add);
+    }
+
+    public synchronized GenerationTask poll() {
+        if (size == 0) {
+            return null;
+        }
+        long now = clock.getAsLong();
+
+        Lane chosen = null;
+        Lane starving = null;
+        for (Lane lane : lanes.values()) {
+            if (lane.entries.isEmpty()) {
+                continue;
+            }
+            Entry head = lane.entries.peek();
+            if (now - head.queuedAt() >= maxWait.toMillis()
+                    && (starving == null || head.queuedAt() < starving.entries.peek().queuedAt())) {
+                starving = lane;
+            }
+            if (chosen == null || lane.pass < chosen.pass) {
+                chosen = lane;
+            }
+        }
+        if (starving != null) {
+            chosen = starving;
+        }
+
+        Entry entry = chosen.entries.poll();
+        chosen.pass += chosen.stride;
+        globalPass = Math.max(globalPass, chosen.pass - chosen.stride);
+        size--;
+        if (chosen.entries.isEmpty()) {
+            lanes.remove(chosen.key);
+        }
+        admittedScores.put(entry.task().generationId(), entry.score());
+        queued.remove(entry.task().generationId());
+        return entry.task();
+    }
+
+    /**
+     * Drops the remembered position of a generation that will not come back to the queue.
+     */
+    public synchronized void forget(String generationId) {
+        admittedScores.remove(generationId);
+    }
+
+    public synchronized boolean contains(String generationId) {
+        return queued.contains(generationId);
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void enqueue(GenerationTask task, long score, long now) {
+        String key = keyOf(task);
+        Lane lane = lanes.computeIfAbsent(key, k -> {
+            // A newly active key starts at the current virtual time, it cannot bank credit while idle
+            Lane fresh = new Lane(k, STRIDE_BASE / Math.max(1, lookup(weights, k, 1)));
+            fresh.pass = globalPass;
+            return fresh;
+        });
+        lane.entries.add(new Entry(task, score, now, sequence++));
+        queued.add(task.generationId());
+        size++;
+    }
+
+    private int priorityOf(GenerationTask task) {
+        return lookup(priorities, task.spec().getTarget().getIdentifier(), 0);
+    }
+
+    /**
+     * The fair-share key: the image repository, without tag or digest.
+     */
+    static String keyOf(GenerationTask task) {
+        return keyOf(task.spec().getTarget().getIdentifier());
+    }
+
+    static String keyOf(String image) {
+        return ImageReference.repositoryOf(image);
+    }
+
+    private static int lookup(Map<String, Integer> rules, String value, int fallback) {
+        String best = null;
+        for (String prefix : rules.keySet()) {
+            if (value.startsWith(prefix) && (best == null || prefix.length() > best.length())) {
+                best = prefix;
+            }
+        }
+        return best != null ? rules.get(best) : fallback;
+    }
+
+    private static Map<String, Integer> parseRules(List<String> rules) {
+        Map<String, Integer> parsed = new HashMap<>();
+        for (String rule : rules) {
+            int separator = rule.lastIndexOf('=');
+            if (separator <= 0) {
+                log.warn("Ignoring malformed scheduler rule '{}', expected 'prefix=value'", rule);
+                continue;
+            }
+            try {
+                parsed.put(rule.substring(0, separator).trim(), Integer.parseInt(rule.substring(separator + 1).trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring malformed scheduler rule '{}', expected 'prefix=value'", rule);
+            }
+        }
+        return parsed;
+    }
+
+    private record Entry(GenerationTask task, long score, long queuedAt, long sequence) {}
+
+    private static final class Lane {
+        final String key;
+        final long stride;
+        final PriorityQueue<Entry> entries = new PriorityQueue<>(
+                Comparator.comparingLong(Entry::score).thenComparingLong(Entry::sequence));
+        long pass;
+
+        Lane(String key, long stride) {
+            this.key = key;
+            this.stride = Math.max(1, stride);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.domain.model.Platform;
+
+/**
+ * Bookkeeping of generations scanned as one execution per platform (fan-out).
+ * <p>
+ * Collects the results of the platforms as they finish, so the generation is reported once, with the results of
+ * all of them, when the last one is done. Also counts the executions of each generation that wait for a slot
+ * or are running, so a generation that fails can give all of them back. Generations that ended are remembered for
+ * a while, so the late updates of their platforms (e.g. executions cancelled by the cleanup) can be told apart from
+ * a fan-out whose state was lost.
+ * </p>
+ */
+class FanOutTracker {
+
+    private static final class FanOut {
+        // Platform key -> result URLs, in the order of the image index
+        final Map<String, List<String>> results = new LinkedHashMap<>();
+        final Set<String> remaining = new LinkedHashSet<>();
+        // Platform key -> its latest attempt that got an execution
+        final Map<String, GenerationTask> attempts = new HashMap<>();
+        // Platform key -> OOMs and other failures, counted separately
+        final Map<String, Integer> ooms = new HashMap<>();
+        final Map<String, Integer> errors = new HashMap<>();
+        int unscheduled;
+        int running;
+
+        FanOut(List<Platform> platforms) {
+            platforms.forEach(p -> {
+                results.put(p.key(), List.of());
+                remaining.add(p.key());
+            });
+            this.unscheduled = platforms.size();
+        }
+    }
+
+    // How many ended fan-outs are remembered, oldest dropped first
+    private static final int ENDED_MEMORY = 10_000;
+
+    // Guarded by this. Generation ID -> its platforms
+    private final Map<String, FanOut> fanOuts = new HashMap<>();
+    // Guarded by this. Generation IDs of the fan-outs that finished or were given up
+    private final Set<String> ended = Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > ENDED_MEMORY;
+        }
+    });
+
+    synchronized void start(String generationId, List<Platform> platforms) {
+        ended.remove(generationId);
+        fanOuts.put(generationId, new FanOut(platforms));
+    }
+
+    /**
+     * @return whether the generation was fanned out and has finished or was given up since.
+     */
+    synchronized boolean hasEnded(String generationId) {
+        return ended.contains(generationId);
+    }
+
+    synchronized boolean isFannedOut(String generationId) {
+        return fanOuts.containsKey(generationId);
+    }
+
+    /**
+     * @return the latest attempt of a platform that got an execution, or null if the generation is not fanned out
+     * (anymore) or the platform is not part of it.
+     */
+    synchronized GenerationTask attempt(String generationId, String platform) {
+        FanOut fanOut = fanOuts.get(generationId);
+        return fanOut != null ? fanOut.attempts.get(platform) : null;
+    }
+
+    /**
+     * @return whether the platform already finished, its execution is over and its result recorded.
+     */
+    synchronized boolean hasFinished(String generationId, String platform) {
+        FanOut fanOut = fanOuts.get(generationId);
+        return fanOut != null && fanOut.results.containsKey(platform) && !fanOut.remaining.contains(platform);
+    }
+
+    /**
+     * Records that an attempt of a platform got its execution.
+     */
+    synchronized void scheduled(GenerationTask task) {
+        FanOut fanOut = fanOuts.get(task.generationId());
+        if (fanOut == null) {
+            return;
+        }
+        fanOut.attempts.put(task.platform().key(), task);
+        fanOut.unscheduled--;
+        fanOut.running++;
+    }
+
+    /**
+     * @return whether every platform of the generation has an execution, none waits for a slot.
+     */
+    synchronized boolean allScheduled(String generationId) {
+        FanOut fanOut = fanOuts.get(generationId);
+        return fanOut != null && fanOut.unscheduled == 0;
+    }
+
+    /**
+     * Records that the execution of a platform failed and the platform waits for another attempt.
+     *
+     * @return how many attempts of this platform failed so far, counting OOMs and other failures separately.
+     */
+    synchronized int failed(String generationId, String platform, boolean oom) {
+        FanOut fanOut = fanOuts.get(generationId);
+        if (fanOut == null) {
+            return 0;
+        }
+        fanOut.running--;
+        fanOut.unscheduled++;
+        return (oom ? fanOut.ooms : fanOut.errors).merge(platform, 1, Integer::sum);
+    }
+
+    /**
+     * Records the result of a platform.
+     *
+     * @return the results of all platforms once the last one finished, otherwise null.
+     */
+    synchronized List<String> finished(String generationId, String platform, List<String> resultUrls) {
+        FanOut fanOut = fanOuts.get(generationId);
+        if (fanOut == null || !fanOut.remaining.remove(platform)) {
+            return null;
+        }
+        fanOut.running--;
+        fanOut.results.put(platform, resultUrls != null ? resultUrls : List.of());
+        if (!fanOut.remaining.isEmpty()) {
+            return null;
+        }
+        fanOuts.remove(generationId);
+        ended.add(generationId);
+        List<String> all = new ArrayList<>();
+        fanOut.results.values().forEach(all::addAll);
+        return all;
+    }
+
+    /**
+     * Forgets a generation that is given up.
+     *
+     * @return how many of its executions were still running.
+     */
+    synchronized int abandon(String generationId) {
+        FanOut fanOut = fanOuts.remove(generationId);
+        if (fanOut == null) {
+            return 0;
+        }
+        ended.add(generationId);
+        return fanOut.running;
+    }
+}
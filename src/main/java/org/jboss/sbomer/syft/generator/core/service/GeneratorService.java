@@ -1,30 +1,56 @@
 package org.jboss.sbomer.syft.generator.core.service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.sbomer.events.common.GenerationRequestSpec;
 import org.jboss.sbomer.syft.generator.core.domain.GenerationStatus;
 import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.domain.model.IncomingRequest;
+import org.jboss.sbomer.syft.generator.core.domain.model.Platform;
 import org.jboss.sbomer.syft.generator.core.port.api.GenerationOrchestrator;
 import org.jboss.sbomer.syft.generator.core.port.spi.FailureNotifier;
 import org.jboss.sbomer.syft.generator.core.port.spi.GenerationExecutor;
+import org.jboss.sbomer.syft.generator.core.port.spi.PendingTaskStore;
+import org.jboss.sbomer.syft.generator.core.port.spi.PlatformResolver;
+import org.jboss.sbomer.syft.generator.core.port.spi.SlotAllocator;
 import org.jboss.sbomer.syft.generator.core.port.spi.StatusNotifier;
 import org.jboss.sbomer.syft.generator.core.utility.FailureUtility;
 import org.jboss.sbomer.syft.generator.core.utility.TraceUtility;
 
+import com.github.f4b6a3.tsid.TsidCreator;
+
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Scope;
 import io.opentelemetry.instrumentation.annotations.SpanAttribute;
 import io.opentelemetry.instrumentation.annotations.WithSpan;
+import io.quarkus.runtime.StartupEvent;
 import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 
@@ -41,9 +67,43 @@ public class GeneratorService implements GenerationOrchestrator {
     @Inject
     FailureNotifier failureNotifier;
 
+    @Inject
+    PendingTaskStore pendingTaskStore;
+
+    // In-memory buffer, mirrored into the PendingTaskStore so it can be replayed after a restart
+    @Inject
+    FairShareQueue pendingQueue;
+
+    @Inject
+    IngressBackpressure backpressure;
+
+    // Budget shared with the other replicas, on top of maxConcurrent
+    @Inject
+    SlotAllocator slotAllocator;
+
+    @Inject
+    ResultCache resultCache;
+
+    @Inject
+    MemorySizingModel sizingModel;
+
+    @Inject
+    PlatformResolver platformResolver;
+
     @Inject
     Tracer tracer;
 
+    // Config: How many image tags are resolved to their digest at the same time when requests come in
+    @ConfigProperty(name = "sbomer.generator.digest-resolution.parallelism", defaultValue = "8")
+    int digestResolutionParallelism;
+
+    // Config: How long the requests of one poll wait for their digests, the others keep their tag
+    @ConfigProperty(name = "sbomer.generator.digest-resolution.timeout", defaultValue = "2s")
+    Duration digestResolutionTimeout;
+
+    // Registry lookups stay off the consumer thread and never take longer than the timeout together
+    private ExecutorService resolvers;
+
     @ConfigProperty(name = "sbomer.generator.max-concurrent", defaultValue = "20")
     int maxConcurrent;
 
@@ -51,23 +111,217 @@ public class GeneratorService implements GenerationOrchestrator {
     @ConfigProperty(name = "sbomer.generator.oom-retries", defaultValue = "3")
     int maxOomRetries;
 
-    // Config: Multiplier (e.g. 2.0 = double memory each time)
-    @ConfigProperty(name = "sbomer.generator.memory-multiplier", defaultValue = "1.5")
-    double memoryMultiplier;
-
     // Default memory to start multiplying from (if not defined in original request)
     @ConfigProperty(name = "sbomer.generator.default-memory", defaultValue = "1Gi")
     String defaultMemory;
 
-    // In-memory buffer (FOR NOW - SHOULD LATER BE PERSISTENT)
-    private final Queue<GenerationTask> pendingQueue = new ConcurrentLinkedQueue<>();
+    // Config: Wake the dispatcher as soon as work arrives or a slot frees up.
+    // When disabled, only the scheduled poll drains the queue.
+    @ConfigProperty(name = "sbomer.generator.dispatch.event-driven", defaultValue = "true")
+    boolean eventDrivenDispatch;
+
+    // Single dispatcher thread. Signals arriving while a pass is still pending collapse into that pass
+    private final ScheduledExecutorService dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "generation-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean dispatchPending = new AtomicBoolean(false);
+
+    // Config: How many executions are submitted to the execution environment at the same time
+    @ConfigProperty(name = "sbomer.generator.dispatch.parallelism", defaultValue = "8")
+    int dispatchParallelism;
+
+    // Bounded pool, so filling many free slots does not cost one API round trip after the other
+    private ExecutorService submitters;
+
+    // Config: Let generations for an image that is already being scanned wait for that scan instead
+    @ConfigProperty(name = "sbomer.generator.coalescing.enabled", defaultValue = "true")
+    boolean coalescingEnabled;
+
+    private final InFlightGenerations inFlight = new InFlightGenerations();
+
+    // Config: How many recovered tasks are moved from the pending task store into the queue at a time
+    @ConfigProperty(name = "sbomer.generator.queue.replay-batch", defaultValue = "1000")
+    int replayBatch;
+
+    private volatile boolean replayDrained;
+
+    // Config: Pack small images into shared TaskRuns, so they pay the pod startup only once
+    @ConfigProperty(name = "sbomer.generator.batch.enabled", defaultValue = "false")
+    boolean batchingEnabled;
+
+    // Config: Max number of images scanned by one batch
+    @ConfigProperty(name = "sbomer.generator.batch.size", defaultValue = "5")
+    int batchSize;
+
+    // Config: How long a small task may wait for the batch to fill up
+    @ConfigProperty(name = "sbomer.generator.batch.max-wait", defaultValue = "2s")
+    Duration batchMaxWait;
+
+    private BatchAssembler batches;
+
+    // Config: Scan each platform of a multi-platform image in an execution of its own
+    @ConfigProperty(name = "sbomer.generator.fan-out.enabled", defaultValue = "false")
+    boolean fanOutEnabled;
+
+    // Config: Images with fewer platforms are scanned as a whole
+    @ConfigProperty(name = "sbomer.generator.fan-out.min-platforms", defaultValue = "2")
+    int fanOutMinPlatforms;
+
+    // Config: How many times a platform that failed for another reason than OOM is retried
+    @ConfigProperty(name = "sbomer.generator.fan-out.platform-retries", defaultValue = "1")
+    int platformRetries;
+
+    private final FanOutTracker fanOuts = new FanOutTracker();
+
+    // Platforms of fanned out generations waiting for a slot. Served before new generations, so a generation
+    // that started is finished first
+    private final Deque<GenerationTask> platformTasks = new ConcurrentLinkedDeque<>();
+
     private final Map<String, GenerationTask> activeTasks = new ConcurrentHashMap<>();
 
+    @PostConstruct
+    void init() {
+        batches = new BatchAssembler(batchSize, batchMaxWait.toMillis());
+        submitters = Executors.newFixedThreadPool(Math.max(1, dispatchParallelism), r -> {
+            Thread thread = new Thread(r, "generation-submitter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        resolvers = Executors.newFixedThreadPool(Math.max(1, digestResolutionParallelism), r -> {
+            Thread thread = new Thread(r, "digest-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     @Override
     public void acceptRequest(String generationId, GenerationRequestSpec request, String traceParent) {
-        log.info("Accepted request for generation: {}", generationId);
-        // We don't execute immediately, we queue it to respect the throttling limit
-        pendingQueue.add(new GenerationTask(generationId, request, traceParent));
+        acceptRequests(List.of(new IncomingRequest(generationId, request, traceParent)));
+    }
+
+    @Override
+    public void acceptRequests(List<IncomingRequest> requests) {
+        // Resolved once, so the cache, the coalescing and the TaskRun all agree on what is scanned
+        Map<String, String> digests = resolveDigests(requests);
+        List<GenerationTask> tasks = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (IncomingRequest request : requests) {
+            String generationId = request.generationId();
+            // Redelivered events (e.g. after a consumer rebalance) must not start a second execution
+            if (!seen.add(generationId) || activeTasks.containsKey(generationId) || pendingQueue.contains(generationId)) {
+                log.info("Ignoring duplicate request for generation: {}", generationId);
+                continue;
+            }
+            log.info("Accepted request for generation: {}", generationId);
+
+            try {
+                String resolvedImage = digests.get(request.spec().getTarget().getIdentifier());
+
+                // The very same image has been scanned before, answer straight away without a TaskRun
+                Optional<List<String>> cached = resultCache.lookup(resolvedImage != null
+                        ? resolvedImage
+                        : request.spec().getTarget().getIdentifier());
+                if (cached.isPresent()) {
+                    log.info("Generation {} served from the result cache", generationId);
+                    notifier.notifyStatus(generationId, GenerationStatus.FINISHED, "Served from result cache", cached.get());
+                    continue;
+                }
+
+                // We don't execute immediately, we queue it to respect the throttling limit
+                tasks.add(new GenerationTask(generationId, request.spec(), 0, null, request.traceParent(), null, resolvedImage));
+            } catch (Exception e) {
+                // One bad request fails on its own, the rest of the poll is still queued
+                log.error("Failed to accept request for generation {}", generationId, e);
+                notifier.notifyStatus(generationId, GenerationStatus.FAILED, "Request rejected: " + e.getMessage(), null);
+                failureNotifier.notify(FailureUtility.buildFailureSpecFromException(e), generationId, null);
+            }
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        // One durable write and one dispatch signal for the whole batch
+        pendingTaskStore.appendAll(tasks);
+        pendingQueue.addAll(tasks);
+        backpressure.onEnqueued();
+        requestDispatch();
+    }
+
+    /**
+     * Resolves the images of a poll to their digest, all at once. Whatever is not resolved within the timeout (e.g.
+     * a registry that does not answer) is scanned and cached under its reference as it came.
+     *
+     * @return image reference -> pinned image, for the references that could be resolved.
+     */
+    private Map<String, String> resolveDigests(List<IncomingRequest> requests) {
+        Set<String> images = new LinkedHashSet<>();
+        requests.forEach(request -> images.add(request.spec().getTarget().getIdentifier()));
+        List<String> references = new ArrayList<>(images);
+        List<Callable<String>> lookups = references.stream()
+                .<Callable<String>>map(image -> () -> platformResolver.resolveDigest(image))
+                .toList();
+
+        Map<String, String> digests = new HashMap<>();
+        List<Future<String>> futures;
+        try {
+            futures = resolvers.invokeAll(lookups, digestResolutionTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return digests;
+        }
+        int unresolved = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<String> future = futures.get(i);
+            if (future.isCancelled()) {
+                unresolved++;
+                continue;
+            }
+            try {
+                String digest = future.get();
+                if (digest != null) {
+                    digests.put(references.get(i), digest);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return digests;
+            } catch (ExecutionException e) {
+                log.warn("Cannot resolve the digest of {}", references.get(i), e.getCause());
+            }
+        }
+        if (unresolved > 0) {
+            log.warn("{} of {} images not resolved to their digest within {}, they keep their reference", unresolved,
+                    references.size(), digestResolutionTimeout);
+        }
+        return digests;
+    }
+
+    void restorePendingQueue(@Observes StartupEvent event) {
+        if (refillFromStore()) {
+            requestDispatch();
+        }
+    }
+
+    /**
+     * Moves the next chunk of the backlog recovered by the pending task store into the queue, once the queue
+     * runs low. The rest of the backlog stays on disk.
+     *
+     * @return whether tasks were added to the queue.
+     */
+    private boolean refillFromStore() {
+        if (replayDrained || pendingQueue.size() >= replayBatch) {
+            return false;
+        }
+        List<GenerationTask> recovered = pendingTaskStore.replay(replayBatch);
+        if (recovered.isEmpty()) {
+            replayDrained = true;
+            return false;
+        }
+        log.info("Restored {} pending generations from the pending task store", recovered.size());
+        pendingQueue.addAll(recovered);
+        backpressure.onEnqueued();
+        return true;
     }
 
     @WithSpan
@@ -77,74 +331,440 @@ public class GeneratorService implements GenerationOrchestrator {
 
         // If we hit OOM, we retry with more resources
         if (status == GenerationStatus.FAILED && "OOMKilled".equals(reason)) {
-            executor.cleanupGeneration(generationId);
             handleOomRetry(generationId);
             return; // Stop here. Method will do its own notification if needed
         }
 
+        // Remember successful results, so the same image is not scanned again
+        GenerationTask task = activeTasks.get(generationId);
+        if (status == GenerationStatus.FINISHED && task != null) {
+            resultCache.store(task.image(), resultUrls);
+            sizingModel.recordSuccess(task, memoryOf(task));
+        }
+
         // Notify the status (sbom-service will listen to this)
         notifier.notifyStatus(generationId, status, reason, resultUrls);
+        notifyWaiters(generationId, status, reason, resultUrls);
 
         // If it was a running job that finished, trigger a cleanup
         // via the executor (e.g. delete the TaskRun)
         doCleanupIfFinished(generationId, status);
     }
 
+    @WithSpan
+    @Override
+    public void handlePlatformUpdate(@SpanAttribute("generation.id") String generationId, @SpanAttribute("platform") String platform,
+            GenerationStatus status, String reason, List<String> resultUrls) {
+        log.info("Handling update for platform {} of generation {}: {}", platform, generationId, status);
+
+        GenerationTask attempt = fanOuts.attempt(generationId, platform);
+        if (attempt == null && fanOuts.hasEnded(generationId)) {
+            // A platform still running when the generation ended (e.g. cancelled by its cleanup), already reported
+            log.debug("Ignoring late update of platform {} of ended generation {}", platform, generationId);
+            return;
+        }
+        if (attempt == null) {
+            // The other platforms are unknown (e.g. after a restart), the results cannot be put together
+            log.warn("Cannot collect platform {} of {}, fan-out state lost.", platform, generationId);
+            finishFanOut(generationId, GenerationStatus.FAILED, "Fan-out state lost (platform " + platform + ")", null);
+            return;
+        }
+        if (fanOuts.hasFinished(generationId, platform)) {
+            // Redelivered, its execution was over and its slot given back the first time
+            log.debug("Ignoring repeated update of finished platform {} of {}", platform, generationId);
+            return;
+        }
+        // The execution of this platform is over either way
+        slotAllocator.release(1);
+
+        if (status == GenerationStatus.FINISHED) {
+            sizingModel.recordSuccess(attempt, memoryOf(attempt));
+            List<String> allUrls = fanOuts.finished(generationId, platform, resultUrls);
+            if (allUrls != null) {
+                log.info("All platforms of generation {} finished", generationId);
+                resultCache.store(attempt.image(), allUrls);
+                finishFanOut(generationId, GenerationStatus.FINISHED, reason, allUrls);
+            }
+            return;
+        }
+
+        // Only the platform that failed is tried again, the others keep what they have
+        boolean oom = "OOMKilled".equals(reason);
+        int failures = fanOuts.failed(generationId, platform, oom);
+        if (failures > (oom ? maxOomRetries : platformRetries)) {
+            log.warn("Platform {} of {} failed {} times. Giving up.", platform, generationId, failures);
+            failFanOut(generationId, platform + ": " + reason + " (Max retries exceeded)");
+            return;
+        }
+
+        String memory = memoryOf(attempt);
+        if (oom) {
+            sizingModel.recordOom(attempt, memory);
+            memory = sizingModel.escalate(memory);
+        }
+        log.info("Retrying platform {} of {} ({}). Attempt {}, memory: {}", platform, generationId, reason,
+                attempt.retryCount() + 1, memory);
+        platformTasks.addFirst(new GenerationTask(generationId, attempt.spec(), attempt.retryCount() + 1, memory,
+                attempt.traceParent(), attempt.platform(), attempt.resolvedImage()));
+        requestDispatch();
+    }
+
+    /**
+     * Gives up a fanned out generation: platforms still waiting for a slot are dropped, running ones are removed
+     * together with the generation.
+     */
+    private void failFanOut(String generationId, String reason) {
+        int running = fanOuts.abandon(generationId);
+        platformTasks.removeIf(task -> task.generationId().equals(generationId));
+        slotAllocator.release(running);
+        finishFanOut(generationId, GenerationStatus.FAILED, reason, null);
+    }
+
+    private void finishFanOut(String generationId, GenerationStatus status, String reason, List<String> resultUrls) {
+        notifier.notifyStatus(generationId, status, reason, resultUrls);
+        notifyWaiters(generationId, status, reason, resultUrls);
+        activeTasks.remove(generationId);
+        pendingQueue.forget(generationId);
+        // Platforms that never got an execution kept it replayable
+        pendingTaskStore.markDispatched(generationId);
+        // Removes the executions of every platform and attempt at once
+        executor.cleanupGeneration(generationId);
+        requestDispatch();
+    }
+
+    /**
+     * Wakes the dispatcher so the queue is drained right away instead of on the next poll.
+     * <p>
+     * Only one pass is ever pending: a storm of signals (e.g. a burst of requests or completions)
+     * results in a single {@link #processQueue()} run, which sees all of them.
+     * </p>
+     */
+    void requestDispatch() {
+        if (!eventDrivenDispatch) {
+            return;
+        }
+        if (dispatchPending.compareAndSet(false, true)) {
+            dispatcher.execute(() -> {
+                // Clear before running, so signals raised during this pass schedule a follow-up pass
+                dispatchPending.set(false);
+                try {
+                    processQueue();
+                } catch (Exception e) {
+                    log.error("Event-driven dispatch pass failed, the scheduled poll will pick up the queue", e);
+                }
+            });
+        }
+    }
+
+    // Safety net: catches anything an event-driven signal may have missed (e.g. a failed pass)
     @Scheduled(every = "{sbomer.generator.poll-interval:10s}")
-    public void processQueue() {
-        if (pendingQueue.isEmpty()) {
+    public synchronized void processQueue() {
+        refillFromStore();
+        if (pendingQueue.isEmpty() && platformTasks.isEmpty() && !batches.hasPending()) {
             return;
         }
 
         int activeCount = executor.countActiveExecutions();
-        int slots = maxConcurrent - activeCount;
+        int free = maxConcurrent - activeCount;
 
-        if (slots <= 0) {
+        if (free <= 0) {
             log.debug("Cluster at capacity ({}/{})", activeCount, maxConcurrent);
             return;
         }
 
+        // Never ask the shared budget for more than there is to do, a pending batch needs one more
+        int slots = slotAllocator.acquire(Math.min(free,
+                platformTasks.size() + pendingQueue.size() + (batches.hasPending() ? 1 : 0)));
+        if (slots <= 0) {
+            log.debug("Shared budget exhausted, {} local slots stay unused", free);
+            return;
+        }
+
         log.info("Cluster has capacity. Scheduling {} tasks...", slots);
 
-        for (int i = 0; i < slots; i++) {
+        // Slots are handed out here, one by one. The submissions then run concurrently
+        List<Runnable> submissions = new ArrayList<>();
+        int scheduled = 0;
+        while (scheduled < slots) {
+            GenerationTask platformTask = platformTasks.poll();
+            if (platformTask != null) {
+                scheduled++;
+                submissions.add(() -> dispatchPlatform(platformTask));
+                continue;
+            }
+
             GenerationTask task = pendingQueue.poll();
             if (task == null) {
                 break;
             }
 
-            // Create child span under original Kafka consumer trace so outgoing
-            // Kafka messages (notifyStatus) carry trace context
-            Span span = TraceUtility.childSpanBuilder(tracer,"GeneratorService.processQueue", task.traceParent(), task.generationId())
-                    .setAttribute("target.image", task.spec().getTarget().getIdentifier())
-                    .setAttribute("retry.count", task.retryCount())
-                    .setAttribute("memory.override", task.memoryOverride() != null ? task.memoryOverride() : defaultMemory)
-                    .startSpan();
-            try (Scope ignored = span.makeCurrent()) {
-                try {
-                    // Put into active tasks
-                    activeTasks.put(task.generationId(), task);
+            // Coalesced tasks ride along with a running execution and don't take a slot
+            if (coalesceWithRunning(task)) {
+                continue;
+            }
+
+            // First attempt: start with the memory that previous scans of this image suggest
+            if (task.memoryOverride() == null) {
+                task = new GenerationTask(task.generationId(), task.spec(), task.retryCount(),
+                        sizingModel.initialMemory(task), task.traceParent(), task.platform(), task.resolvedImage());
+            }
+
+            // Claimed before the next poll, so later tasks for the same image in this pass coalesce with it
+            activeTasks.put(task.generationId(), task);
+            if (coalescingEnabled) {
+                inFlight.lead(task);
+            }
+
+            // Small tasks wait for a batch, which takes a single slot once it is full
+            if (isBatchable(task)) {
+                List<GenerationTask> batch = batches.offer(task, System.currentTimeMillis());
+                if (batch != null) {
+                    scheduled++;
+                    submissions.add(() -> dispatchBatch(batch));
+                }
+                continue;
+            }
 
+            scheduled++;
+            GenerationTask dispatched = task;
+            submissions.add(() -> dispatch(dispatched));
+        }
+
+        // A batch that did not fill up in time goes as it is
+        if (scheduled < slots) {
+            List<GenerationTask> batch = batches.takeIfDue(System.currentTimeMillis());
+            if (batch != null) {
+                submissions.add(() -> dispatchBatch(batch));
+            }
+        }
+        // Slots of the shared budget that found no work (e.g. small tasks waiting for their batch)
+        slotAllocator.release(slots - submissions.size());
+        submitAll(submissions);
+        backpressure.onDrained();
+
+        if (batches.hasPending() && eventDrivenDispatch) {
+            dispatcher.schedule(this::requestDispatch, batchMaxWait.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Runs the submissions concurrently and waits for all of them, so the next pass counts every execution
+     * created by this one. Each submission handles its own failure: a failed create only fails its own
+     * generations and frees their slot, which triggers another pass.
+     */
+    private void submitAll(List<Runnable> submissions) {
+        if (submissions.size() <= 1) {
+            submissions.forEach(Runnable::run);
+            return;
+        }
+        List<Future<?>> futures = submissions.stream().<Future<?>>map(submitters::submit).toList();
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                log.error("Unexpected error while submitting a generation", e.getCause());
+            }
+        }
+    }
+
+    private void dispatch(GenerationTask task) {
+        // Create child span under original Kafka consumer trace so outgoing
+        // Kafka messages (notifyStatus) carry trace context
+        Span span = TraceUtility.childSpanBuilder(tracer,"GeneratorService.processQueue", task.traceParent(), task.generationId())
+                .setAttribute("target.image", task.spec().getTarget().getIdentifier())
+                .setAttribute("retry.count", task.retryCount())
+                .setAttribute("memory.override", memoryOf(task))
+                .startSpan();
+        try (Scope ignored = span.makeCurrent()) {
+            try {
+                if (!fanOut(task)) {
                     executor.scheduleGeneration(task);
+                }
 
-                    // Send an event out to declare it has started generating
-                    notifier.notifyStatus(
-                            task.generationId(),
-                            GenerationStatus.GENERATING,
-                            "Scheduled in execution environment",
-                            null
-                    );
+                // Send an event out to declare it has started generating
+                notifier.notifyStatus(
+                        task.generationId(),
+                        GenerationStatus.GENERATING,
+                        "Scheduled in execution environment",
+                        null
+                );
+
+            } catch (Exception e) {
+                log.error("Failed to schedule generation {}", task.generationId(), e);
+                span.recordException(e);
+                span.setStatus(StatusCode.ERROR, e.getMessage());
+                failScheduling(task, e);
+            } finally {
+                // Either handed over to the executor or failed, it must not be replayed. A fanned out generation
+                // stays replayable until each of its platforms got an execution
+                if (!fanOuts.isFannedOut(task.generationId())) {
+                    pendingTaskStore.markDispatched(task.generationId());
+                }
+            }
+        } finally {
+            span.end();
+        }
+    }
 
-                } catch (Exception e) {
-                    log.error("Failed to schedule generation {}", task.generationId(), e);
-                    span.recordException(e);
-                    span.setStatus(StatusCode.ERROR, e.getMessage());
-                    notifier.notifyStatus(task.generationId(), GenerationStatus.FAILED, e.getMessage(), null);
-                    failureNotifier.notify(FailureUtility.buildFailureSpecFromException(e), task.generationId(), null);
-                    doCleanupIfFinished(task.generationId(), GenerationStatus.FAILED);
+    /**
+     * Splits a multi-platform image into one execution per platform, each sized on its own. The first platform
+     * takes the slot of the generation, the others queue up for slots of their own.
+     *
+     * @return whether the generation was fanned out, otherwise it is scanned as a whole.
+     */
+    private boolean fanOut(GenerationTask task) {
+        if (!fanOutEnabled || task.platform() != null) {
+            return false;
+        }
+        List<Platform> platforms;
+        try {
+            platforms = platformResolver.resolvePlatforms(task.image());
+        } catch (Exception e) {
+            log.warn("Cannot resolve the platforms of {}, scanning it as a whole", task.image(), e);
+            return false;
+        }
+        if (platforms.size() < fanOutMinPlatforms) {
+            return false;
+        }
+
+        log.info("Generation {} fans out into {} platforms", task.generationId(), platforms.size());
+        List<GenerationTask> perPlatform = new ArrayList<>();
+        for (Platform platform : platforms) {
+            GenerationTask unsized = new GenerationTask(task.generationId(), task.spec(), 0, null, task.traceParent(), platform);
+            perPlatform.add(new GenerationTask(task.generationId(), task.spec(), 0, sizingModel.initialMemory(unsized),
+                    task.traceParent(), platform, task.resolvedImage()));
+        }
+        fanOuts.start(task.generationId(), platforms);
+        try {
+            schedulePlatform(perPlatform.get(0));
+        } catch (RuntimeException e) {
+            fanOuts.abandon(task.generationId());
+            throw e;
+        }
+        platformTasks.addAll(perPlatform.subList(1, perPlatform.size()));
+        requestDispatch();
+        return true;
+    }
+
+    private void dispatchPlatform(GenerationTask task) {
+        String platform = task.platform().key();
+        // The generation failed on another platform in the meantime
+        if (!fanOuts.isFannedOut(task.generationId())) {
+            slotAllocator.release(1);
+            return;
+        }
+        Span span = TraceUtility.childSpanBuilder(tracer, "GeneratorService.processPlatform", task.traceParent(), task.generationId())
+                .setAttribute("target.image", task.spec().getTarget().getIdentifier())
+                .setAttribute("target.platform", platform)
+                .setAttribute("retry.count", task.retryCount())
+                .setAttribute("memory.override", memoryOf(task))
+                .startSpan();
+        try (Scope ignored = span.makeCurrent()) {
+            schedulePlatform(task);
+        } catch (Exception e) {
+            log.error("Failed to schedule platform {} of generation {}", platform, task.generationId(), e);
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR, e.getMessage());
+            slotAllocator.release(1);
+            failureNotifier.notify(FailureUtility.buildFailureSpecFromException(e), task.generationId(), null);
+            failFanOut(task.generationId(), platform + ": " + e.getMessage());
+        } finally {
+            span.end();
+        }
+    }
+
+    private void schedulePlatform(GenerationTask task) {
+        executor.scheduleGeneration(task);
+        fanOuts.scheduled(task);
+        if (fanOuts.allScheduled(task.generationId())) {
+            // Every platform has an execution now, nothing is left to replay
+            pendingTaskStore.markDispatched(task.generationId());
+        }
+    }
+
+    private void dispatchBatch(List<GenerationTask> batch) {
+        // Nothing to share the execution with
+        if (batch.size() == 1) {
+            dispatch(batch.get(0));
+            return;
+        }
+
+        String batchId = "batch-" + TsidCreator.getTsid().toLowerCase();
+        GenerationTask first = batch.get(0);
+        Span span = TraceUtility.childSpanBuilder(tracer, "GeneratorService.processBatch", first.traceParent(), first.generationId())
+                .setAttribute("batch.id", batchId)
+                .setAttribute("batch.size", batch.size())
+                .startSpan();
+        try (Scope ignored = span.makeCurrent()) {
+            batches.register(batchId, batch);
+            try {
+                executor.scheduleBatch(batchId, batch);
+                for (GenerationTask task : batch) {
+                    notifier.notifyStatus(task.generationId(), GenerationStatus.GENERATING,
+                            "Scheduled in execution environment (batch " + batchId + ")", null);
                 }
+            } catch (Exception e) {
+                log.error("Failed to schedule batch {}", batchId, e);
+                span.recordException(e);
+                span.setStatus(StatusCode.ERROR, e.getMessage());
+                batch.forEach(task -> failScheduling(task, e));
             } finally {
-                span.end();
+                pendingTaskStore.markDispatchedAll(batch.stream().map(GenerationTask::generationId).toList());
             }
+        } finally {
+            span.end();
+        }
+    }
+
+    private void failScheduling(GenerationTask task, Exception e) {
+        notifier.notifyStatus(task.generationId(), GenerationStatus.FAILED, e.getMessage(), null);
+        notifyWaiters(task.generationId(), GenerationStatus.FAILED, e.getMessage(), null);
+        failureNotifier.notify(FailureUtility.buildFailureSpecFromException(e), task.generationId(), null);
+        doCleanupIfFinished(task.generationId(), GenerationStatus.FAILED);
+    }
+
+    /**
+     * Only first attempts at the default memory are batched. Anything known to be large, or retried after an OOM,
+     * gets a TaskRun of its own.
+     */
+    private boolean isBatchable(GenerationTask task) {
+        return batchingEnabled
+                && executor.supportsBatching()
+                && task.retryCount() == 0
+                && MemorySizingModel.bytes(memoryOf(task)).compareTo(MemorySizingModel.bytes(defaultMemory)) <= 0;
+    }
+
+    private boolean coalesceWithRunning(GenerationTask task) {
+        if (!coalescingEnabled) {
+            return false;
+        }
+        String leader = inFlight.join(task);
+        if (leader == null) {
+            return false;
+        }
+        log.info("Generation {} joins running generation {} for image {}", task.generationId(), leader,
+                task.spec().getTarget().getIdentifier());
+        activeTasks.put(task.generationId(), task);
+        notifier.notifyStatus(task.generationId(), GenerationStatus.GENERATING, "Coalesced with generation " + leader, null);
+        pendingTaskStore.markDispatched(task.generationId());
+        return true;
+    }
+
+    /**
+     * Passes a terminal update of a leading generation on to every generation that joined it.
+     * An OOM retry of the leader is not terminal, its waiters simply keep waiting for the retry.
+     */
+    private void notifyWaiters(String generationId, GenerationStatus status, String reason, List<String> resultUrls) {
+        if (status != GenerationStatus.FINISHED && status != GenerationStatus.FAILED) {
+            return;
+        }
+        for (GenerationTask waiter : inFlight.complete(generationId)) {
+            notifier.notifyStatus(waiter.generationId(), status, reason, resultUrls);
+            activeTasks.remove(waiter.generationId());
+            pendingQueue.forget(waiter.generationId());
         }
     }
 
@@ -153,22 +773,26 @@ public class GeneratorService implements GenerationOrchestrator {
         if (task == null) {
             log.warn("Cannot retry OOM for {}, task state lost.", generationId);
             notifier.notifyStatus(generationId, GenerationStatus.FAILED, "OOMKilled (Retry failed - state lost)", null);
+            notifyWaiters(generationId, GenerationStatus.FAILED, "OOMKilled (Retry failed - state lost)", null);
             doCleanupIfFinished(generationId, GenerationStatus.FAILED);
             return;
         }
 
+        String currentMemory = memoryOf(task);
+        sizingModel.recordOom(task, currentMemory);
+
         if (task.retryCount() >= maxOomRetries) {
             log.warn("Max OOM retries reached for {}. Giving up.", generationId);
             // We fail the task, notify it failed, and do cleanup
             GenerationStatus newStatus = GenerationStatus.FAILED;
             notifier.notifyStatus(generationId, newStatus, "OOMKilled (Max retries exceeded)", null);
+            notifyWaiters(generationId, newStatus, "OOMKilled (Max retries exceeded)", null);
             doCleanupIfFinished(generationId, newStatus);
             return;
         }
 
         // Calculate new memory
-        String currentMemory = task.memoryOverride() != null ? task.memoryOverride() : defaultMemory;
-        String newMemory = calculateNewMemory(currentMemory);
+        String newMemory = sizingModel.escalate(currentMemory);
 
         log.info("Retrying {} due to OOM. Attempt {}/{}. Increasing memory: {} -> {}",
                 generationId, task.retryCount() + 1, maxOomRetries, currentMemory, newMemory);
@@ -179,36 +803,51 @@ public class GeneratorService implements GenerationOrchestrator {
                 task.spec(),
                 task.retryCount() + 1,
                 newMemory,
-                task.traceParent()
+                task.traceParent(),
+                task.platform(),
+                task.resolvedImage()
         );
 
+        // The OOMKilled attempt is done, the retry gets an execution of its own
+        releaseExecution(generationId);
+
         // Update state and re-queue
         activeTasks.put(generationId, retryTask);
-        pendingQueue.add(retryTask);
+        pendingTaskStore.append(retryTask);
+        pendingQueue.requeue(retryTask);
+        requestDispatch();
     }
 
-    private String calculateNewMemory(String current) {
-        // Simple parser assuming "Gi" or "Mi"
-        // For robust parsing, use Fabric8 Quantity class or regex
-        // Logic: 1Gi -> 2Gi
-        try {
-            // Quick hack for PoC: assume Gi
-            double val = Double.parseDouble(current.replace("Gi", "").replace("Mi", ""));
-            // If Mi, convert to Gi for simplicity or just multiply
-            if (current.endsWith("Mi")) val = val / 1024.0;
-
-            double newVal = val * memoryMultiplier;
-            return (int)Math.ceil(newVal) + "Gi";
-        } catch (Exception e) {
-            return "2Gi"; // Fallback
-        }
+    private String memoryOf(GenerationTask task) {
+        return task.memoryOverride() != null ? task.memoryOverride() : defaultMemory;
     }
 
     private void doCleanupIfFinished(String generationId, GenerationStatus status) {
         if (status == GenerationStatus.FINISHED || status == GenerationStatus.FAILED) {
             activeTasks.remove(generationId);
-            executor.cleanupGeneration(generationId);
+            pendingQueue.forget(generationId);
+            releaseExecution(generationId);
+            // A slot has been freed up
+            requestDispatch();
         }
     }
 
+    /**
+     * Cleans up the execution of a generation, unless other generations of its batch still run in it.
+     */
+    private void releaseExecution(String generationId) {
+        String executionId = batches.release(generationId);
+        if (executionId != null) {
+            executor.cleanupGeneration(executionId);
+            slotAllocator.release(1);
+        }
+    }
+
+    @PreDestroy
+    void shutdownDispatcher() {
+        dispatcher.shutdownNow();
+        submitters.shutdownNow();
+        resolvers.shutdownNow();
+    }
+
 }
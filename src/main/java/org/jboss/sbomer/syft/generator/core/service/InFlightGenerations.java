@@ -0,0 +1,72 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+
+/**
+ * Single-flight bookkeeping: which generation is currently scanning which image,
+ * and which other generations are waiting for that same result.
+ * <p>
+ * The first generation dispatched for an image becomes the leader and gets an execution. Generations for the
+ * same image dispatched while the leader is still running join it instead of starting their own execution.
+ * </p>
+ */
+class InFlightGenerations {
+
+    // image -> leader generation ID
+    private final Map<String, String> leaders = new HashMap<>();
+    // leader generation ID -> image
+    private final Map<String, String> images = new HashMap<>();
+    // leader generation ID -> generations waiting for its result
+    private final Map<String, List<GenerationTask>> waiters = new HashMap<>();
+
+    /**
+     * Attaches the task to the leader already running for its image.
+     *
+     * @return the leader's generation ID, or null if there is none and the caller should lead.
+     */
+    synchronized String join(GenerationTask task) {
+        String image = imageOf(task);
+        String leader = leaders.get(image);
+        if (leader == null || leader.equals(task.generationId())) {
+            return null;
+        }
+        waiters.computeIfAbsent(leader, k -> new ArrayList<>()).add(task);
+        return leader;
+    }
+
+    /**
+     * Registers the task as the one executing its image. An OOM retry of the leader simply re-registers.
+     */
+    synchronized void lead(GenerationTask task) {
+        String image = imageOf(task);
+        leaders.put(image, task.generationId());
+        images.put(task.generationId(), image);
+    }
+
+    /**
+     * Releases the image of a finished leader.
+     *
+     * @return the generations that were waiting for it (empty for non-leaders).
+     */
+    synchronized List<GenerationTask> complete(String generationId) {
+        String image = images.remove(generationId);
+        if (image != null) {
+            leaders.remove(image, generationId);
+        }
+        List<GenerationTask> joined = waiters.remove(generationId);
+        return joined != null ? joined : List.of();
+    }
+
+    /**
+     * The single-flight key. A tag resolved when the request was accepted coalesces with the digest it points to,
+     * an unresolved one only with the very same reference.
+     */
+    static String imageOf(GenerationTask task) {
+        return task.image();
+    }
+}
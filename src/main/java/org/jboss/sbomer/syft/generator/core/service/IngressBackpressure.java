@@ -0,0 +1,115 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.sbomer.syft.generator.core.port.spi.IngressThrottle;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the pending queue bounded by pausing the intake of requests between two watermarks.
+ * <p>
+ * Once the queue reaches the high watermark the intake is paused, and it is only resumed when dispatching
+ * has drained the queue down to the low watermark. The gap avoids flapping between the two states.
+ * </p>
+ */
+@ApplicationScoped
+@Slf4j
+public class IngressBackpressure {
+
+    @Inject
+    IngressThrottle throttle;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @Inject
+    FairShareQueue pendingQueue;
+
+    // Config: Pause the intake once this many tasks are pending
+    @ConfigProperty(name = "sbomer.generator.queue.high-watermark", defaultValue = "10000")
+    int highWatermark;
+
+    // Config: Resume the intake once the pending tasks are down to this many
+    @ConfigProperty(name = "sbomer.generator.queue.low-watermark", defaultValue = "5000")
+    int lowWatermark;
+
+    // Guarded by this
+    private boolean paused;
+    private long pausedSince;
+    private long pausedNanos;
+    private long lastPauseRequest;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("sbomer.generator.queue.occupancy", pendingQueue, FairShareQueue::size)
+                .description("Number of generations waiting in the pending queue")
+                .register(meterRegistry);
+        Gauge.builder("sbomer.generator.ingress.paused", this, b -> b.isPaused() ? 1 : 0)
+                .description("Whether the intake of new requests is paused")
+                .register(meterRegistry);
+        FunctionCounter.builder("sbomer.generator.ingress.paused.time", this, b -> b.totalPausedSeconds())
+                .description("Total time the intake of new requests has been paused")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Called after a request has been queued.
+     */
+    public void onEnqueued() {
+        int size = pendingQueue.size();
+        synchronized (this) {
+            if (paused) {
+                // Requests arriving while paused are either already fetched, or come from a partition that was
+                // (re)assigned unpaused after a rebalance. Pause again, at most once a second
+                long now = System.nanoTime();
+                if (now - lastPauseRequest >= TimeUnit.SECONDS.toNanos(1)) {
+                    lastPauseRequest = now;
+                    throttle.pause();
+                }
+                return;
+            }
+            if (size < highWatermark) {
+                return;
+            }
+            paused = true;
+            pausedSince = System.nanoTime();
+            lastPauseRequest = pausedSince;
+        }
+        log.warn("Pending queue reached {} tasks (high watermark {}), pausing the intake", size, highWatermark);
+        throttle.pause();
+    }
+
+    /**
+     * Called after tasks have left the queue.
+     */
+    public void onDrained() {
+        int size = pendingQueue.size();
+        synchronized (this) {
+            if (!paused || size > lowWatermark) {
+                return;
+            }
+            paused = false;
+            pausedNanos += System.nanoTime() - pausedSince;
+        }
+        log.info("Pending queue down to {} tasks (low watermark {}), resuming the intake", size, lowWatermark);
+        throttle.resume();
+    }
+
+    synchronized boolean isPaused() {
+        return paused;
+    }
+
+    private synchronized double totalPausedSeconds() {
+        long total = pausedNanos + (paused ? System.nanoTime() - pausedSince : 0);
+        return total / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
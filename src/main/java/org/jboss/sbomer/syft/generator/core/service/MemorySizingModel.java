@@ -0,0 +1,283 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.domain.model.ImageReference;
+
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Learns how much memory scans need from their outcomes, and picks the starting memory of new tasks.
+ * <p>
+ * For every image repository it remembers the memory limit of the last successful scan and the highest limit
+ * that got OOMKilled. A known-large image then starts right at the size that worked last time instead of burning
+ * its OOM retries. Repositories without history fall back to the smallest size that ever worked in their registry,
+ * never below the default.
+ * </p>
+ * <p>
+ * A repository that keeps succeeding at the same size is tried one step smaller, down to the configured floor,
+ * unless that step got OOMKilled recently. Observations older than the window are forgotten, so an image that
+ * shrank or grew is re-learned.
+ * </p>
+ */
+@ApplicationScoped
+@Slf4j
+public class MemorySizingModel {
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    // Config: Learn the starting memory from previous scans
+    @ConfigProperty(name = "sbomer.generator.sizing.enabled", defaultValue = "true")
+    boolean enabled;
+
+    // Default memory to start multiplying from (if not defined in original request)
+    @ConfigProperty(name = "sbomer.generator.default-memory", defaultValue = "1Gi")
+    String defaultMemory;
+
+    // Config: Multiplier (e.g. 2.0 = double memory each time)
+    @ConfigProperty(name = "sbomer.generator.memory-multiplier", defaultValue = "1.5")
+    double memoryMultiplier;
+
+    // Config: Never start above this, whatever was learned
+    @ConfigProperty(name = "sbomer.generator.sizing.max-memory", defaultValue = "16Gi")
+    String maxMemory;
+
+    // Config: Never start below this, however small an image proved to be
+    @ConfigProperty(name = "sbomer.generator.sizing.min-memory", defaultValue = "512Mi")
+    String minMemory;
+
+    // Config: Successes in a row at the same size before one step smaller is tried
+    @ConfigProperty(name = "sbomer.generator.sizing.shrink-after", defaultValue = "3")
+    int shrinkAfter;
+
+    // Config: Observations older than this are forgotten
+    @ConfigProperty(name = "sbomer.generator.sizing.window", defaultValue = "14d")
+    Duration window;
+
+    // Config: How many repositories/registries to remember
+    @ConfigProperty(name = "sbomer.generator.sizing.max-entries", defaultValue = "5000")
+    int maxEntries;
+
+    private static final BigDecimal GI = BigDecimal.valueOf(1024L * 1024 * 1024);
+    // Granularity of a smaller step
+    private static final BigDecimal SHRINK_STEP = BigDecimal.valueOf(256L * 1024 * 1024);
+
+    private final Map<String, Observation> observations = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Observation> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private Counter wastedAttempts;
+    private DistributionSummary startingMemory;
+
+    @PostConstruct
+    void registerMetrics() {
+        wastedAttempts = meterRegistry.counter("sbomer.generator.sizing.oom.attempts");
+        startingMemory = DistributionSummary.builder("sbomer.generator.sizing.starting.memory")
+                .description("Memory limit chosen for the first attempt of a generation")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Picks the memory of a task's first attempt.
+     *
+     * @return the memory to start with, as a Kubernetes quantity string.
+     */
+    public String initialMemory(GenerationTask task) {
+        String image = task.spec().getTarget().getIdentifier();
+        BigDecimal chosen = bytes(defaultMemory);
+        String source = "default";
+
+        if (enabled) {
+            Instant now = Instant.now();
+            synchronized (observations) {
+                Observation repository = observations.get(repositoryKey(task));
+                if (repository == null && task.platform() != null) {
+                    // A platform scanned on its own for the first time: the whole image needed at least as much
+                    repository = observations.get(repositoryKey(image));
+                }
+                Observation registry = observations.get(registryKey(image));
+                BigDecimal suggested = repository != null ? repository.suggest(this, now) : null;
+                BigDecimal smallestInRegistry = registry != null ? registry.smallestSuccess(this, now) : null;
+                if (suggested != null) {
+                    // Only what the repository itself proved may go below the default
+                    chosen = suggested;
+                    source = "repository";
+                } else if (smallestInRegistry != null) {
+                    // Unknown repository: only trust what every image of the registry needed so far,
+                    // so one huge image does not inflate all the small ones
+                    chosen = smallestInRegistry.max(chosen);
+                    source = "registry";
+                }
+            }
+        }
+
+        chosen = chosen.max(bytes(minMemory)).min(bytes(maxMemory));
+        meterRegistry.counter("sbomer.generator.sizing.predictions", "source", source).increment();
+        startingMemory.record(chosen.doubleValue());
+        String memory = format(chosen);
+        log.debug("Starting memory for {}: {} (from {})", image, memory, source);
+        return memory;
+    }
+
+    /**
+     * Records that a scan finished successfully with the given memory limit.
+     */
+    public void recordSuccess(GenerationTask task, String memory) {
+        BigDecimal amount = bytes(memory);
+        String image = task.spec().getTarget().getIdentifier();
+        Instant now = Instant.now();
+        synchronized (observations) {
+            observations.computeIfAbsent(repositoryKey(task), k -> new Observation()).success(amount, now, this);
+            observations.computeIfAbsent(registryKey(image), k -> new Observation()).success(amount, now, this);
+        }
+    }
+
+    /**
+     * Records that a scan got OOMKilled with the given memory limit.
+     */
+    public void recordOom(GenerationTask task, String memory) {
+        wastedAttempts.increment();
+        BigDecimal amount = bytes(memory);
+        String image = task.spec().getTarget().getIdentifier();
+        Instant now = Instant.now();
+        synchronized (observations) {
+            observations.computeIfAbsent(repositoryKey(task), k -> new Observation()).oom(amount, now, this);
+            observations.computeIfAbsent(registryKey(image), k -> new Observation()).oom(amount, now, this);
+        }
+    }
+
+    /**
+     * Multiplies the memory by the configured multiplier, rounded up to the next whole Gi.
+     */
+    public String escalate(String memory) {
+        return format(escalate(bytes(memory)));
+    }
+
+    private BigDecimal escalate(BigDecimal amount) {
+        BigDecimal next = amount.multiply(BigDecimal.valueOf(memoryMultiplier));
+        return next.divide(GI, 0, RoundingMode.CEILING).multiply(GI);
+    }
+
+    /**
+     * Divides the memory by the configured multiplier, rounded up to the next 256Mi and not below the floor.
+     */
+    private BigDecimal shrink(BigDecimal amount) {
+        BigDecimal next = amount.divide(BigDecimal.valueOf(memoryMultiplier), 0, RoundingMode.CEILING);
+        return next.divide(SHRINK_STEP, 0, RoundingMode.CEILING).multiply(SHRINK_STEP).max(bytes(minMemory));
+    }
+
+    private boolean expired(Instant observedAt, Instant now) {
+        return !observedAt.plus(window).isAfter(now);
+    }
+
+    static BigDecimal bytes(String memory) {
+        return Quantity.getAmountInBytes(new Quantity(memory));
+    }
+
+    static String format(BigDecimal amount) {
+        if (amount.remainder(GI).signum() == 0) {
+            return amount.divide(GI, 0, RoundingMode.UNNECESSARY).toPlainString() + "Gi";
+        }
+        BigDecimal mi = BigDecimal.valueOf(1024L * 1024);
+        return amount.divide(mi, 0, RoundingMode.CEILING).toPlainString() + "Mi";
+    }
+
+    static String repositoryKey(String image) {
+        return "repo:" + FairShareQueue.keyOf(image);
+    }
+
+    /**
+     * Platforms of a fanned out image are learned separately, an arm64 scan may need less than the amd64 one.
+     */
+    static String repositoryKey(GenerationTask task) {
+        String key = repositoryKey(task.spec().getTarget().getIdentifier());
+        return task.platform() != null ? key + "@" + task.platform().key() : key;
+    }
+
+    static String registryKey(String image) {
+        return "registry:" + ImageReference.parse(image).registry();
+    }
+
+    /**
+     * What is known about one repository or registry, each value with the time it was last confirmed.
+     */
+    private static final class Observation {
+        BigDecimal lastSuccess;
+        Instant lastSuccessAt;
+        // Successes in a row at lastSuccess, without an OOM in between
+        int successStreak;
+        BigDecimal smallestSuccess;
+        Instant smallestSuccessAt;
+        BigDecimal highestOom;
+        Instant highestOomAt;
+
+        void success(BigDecimal amount, Instant now, MemorySizingModel model) {
+            boolean sameAsLast = lastSuccess != null && !model.expired(lastSuccessAt, now) && lastSuccess.compareTo(amount) == 0;
+            successStreak = sameAsLast ? successStreak + 1 : 1;
+            lastSuccess = amount;
+            lastSuccessAt = now;
+            if (smallestSuccess(model, now) == null || amount.compareTo(smallestSuccess) <= 0) {
+                smallestSuccess = amount;
+                smallestSuccessAt = now;
+            }
+            // Newer evidence: the image fits into what once got OOMKilled
+            if (highestOom != null && amount.compareTo(highestOom) <= 0) {
+                highestOom = null;
+            }
+        }
+
+        void oom(BigDecimal amount, Instant now, MemorySizingModel model) {
+            successStreak = 0;
+            if (highestOom(model, now) == null || amount.compareTo(highestOom) >= 0) {
+                highestOom = amount;
+                highestOomAt = now;
+            }
+        }
+
+        BigDecimal smallestSuccess(MemorySizingModel model, Instant now) {
+            return smallestSuccess != null && !model.expired(smallestSuccessAt, now) ? smallestSuccess : null;
+        }
+
+        BigDecimal highestOom(MemorySizingModel model, Instant now) {
+            return highestOom != null && !model.expired(highestOomAt, now) ? highestOom : null;
+        }
+
+        /**
+         * @return the memory to start with, null when nothing recent is known.
+         */
+        BigDecimal suggest(MemorySizingModel model, Instant now) {
+            BigDecimal success = lastSuccess != null && !model.expired(lastSuccessAt, now) ? lastSuccess : null;
+            BigDecimal oom = highestOom(model, now);
+            if (success != null && (oom == null || success.compareTo(oom) > 0)) {
+                if (successStreak >= model.shrinkAfter) {
+                    BigDecimal smaller = model.shrink(success);
+                    if (smaller.compareTo(success) < 0 && (oom == null || smaller.compareTo(oom) > 0)) {
+                        return smaller;
+                    }
+                }
+                return success;
+            }
+            // Only failures known (or the image grew): start one step above the largest failure
+            return oom != null ? model.escalate(oom) : null;
+        }
+    }
+}
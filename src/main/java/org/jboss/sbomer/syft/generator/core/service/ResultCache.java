@@ -0,0 +1,202 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.sbomer.syft.generator.core.port.api.ResultCacheManagement;
+import org.jboss.sbomer.syft.generator.core.port.spi.ResultCacheStore;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache of SBOM result URLs for images that have already been scanned successfully.
+ * <p>
+ * Only image references pinned by digest are cacheable: a tag can move, so it is looked up by the digest it was
+ * resolved to when the request was accepted. An unresolved tag never hits the cache.
+ * The key also includes the generator version (the agent image) and output format, so upgrading syft or changing
+ * the format naturally starts from a cold cache. Without a generator version, the cache stays off.
+ * </p>
+ * <p>
+ * Two tiers: a bounded in-memory LRU with a TTL, in front of the (optional) persistent {@link ResultCacheStore}.
+ * </p>
+ */
+@ApplicationScoped
+@Slf4j
+public class ResultCache implements ResultCacheManagement {
+
+    @Inject
+    ResultCacheStore store;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    // Config: Turns the result cache on or off
+    @ConfigProperty(name = "sbomer.generator.cache.enabled", defaultValue = "true")
+    boolean enabled;
+
+    // Config: Max entries kept in memory
+    @ConfigProperty(name = "sbomer.generator.cache.max-entries", defaultValue = "10000")
+    int maxEntries;
+
+    // Config: How long a cached result stays valid
+    @ConfigProperty(name = "sbomer.generator.cache.ttl", defaultValue = "7d")
+    Duration ttl;
+
+    // Config: Version of the generator producing the SBOMs, the chart sets the agent image (with its tag). The cache
+    // stays off while it is unknown
+    @ConfigProperty(name = "sbomer.generator.cache.generator-version", defaultValue = UNKNOWN_VERSION)
+    String generatorVersion;
+
+    // Config: Output format produced by the generator
+    @ConfigProperty(name = "sbomer.generator.cache.output-format", defaultValue = "cyclonedx-json")
+    String outputFormat;
+
+    // Config: Images matching any of these prefixes always bypass the cache
+    @ConfigProperty(name = "sbomer.generator.cache.bypass-prefixes")
+    Optional<List<String>> bypassPrefixes;
+
+    private static final String UNKNOWN_VERSION = "unknown";
+
+    private static final Pattern DIGEST_REFERENCE = Pattern.compile(".+@sha(256|384|512):[a-f0-9]{64,128}$");
+
+    private final Map<String, ResultCacheStore.Entry> memory = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ResultCacheStore.Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private Counter hits;
+    private Counter misses;
+    private Counter bypassed;
+
+    @PostConstruct
+    void registerMetrics() {
+        if (enabled && (generatorVersion.isBlank() || UNKNOWN_VERSION.equals(generatorVersion))) {
+            // Results of an older syft would be served forever after an upgrade of the agent
+            log.warn("Result cache disabled, sbomer.generator.cache.generator-version is not set");
+            enabled = false;
+        }
+        hits = meterRegistry.counter("sbomer.generator.cache.requests", "result", "hit");
+        misses = meterRegistry.counter("sbomer.generator.cache.requests", "result", "miss");
+        bypassed = meterRegistry.counter("sbomer.generator.cache.requests", "result", "bypass");
+        Gauge.builder("sbomer.generator.cache.entries", this, ResultCache::size)
+                .description("Number of SBOM results cached in memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Looks up the result URLs of a previous successful scan of the exact same image.
+     *
+     * @param imageReference The requested image reference.
+     * @return the cached URLs, empty for a miss or a non-cacheable reference.
+     */
+    public Optional<List<String>> lookup(String imageReference) {
+        if (!isCacheable(imageReference)) {
+            bypassed.increment();
+            return Optional.empty();
+        }
+        String key = keyOf(imageReference);
+
+        ResultCacheStore.Entry entry;
+        synchronized (memory) {
+            entry = memory.get(key);
+        }
+        if (entry == null) {
+            entry = store.get(key).orElse(null);
+            if (entry != null && !isExpired(entry)) {
+                synchronized (memory) {
+                    memory.put(key, entry);
+                }
+            }
+        }
+        if (entry != null && isExpired(entry)) {
+            synchronized (memory) {
+                memory.remove(key);
+            }
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        log.debug("Result cache hit for {}", imageReference);
+        return Optional.of(entry.resultUrls());
+    }
+
+    /**
+     * Records the result of a successful scan. Non-cacheable references are ignored.
+     */
+    public void store(String imageReference, List<String> resultUrls) {
+        if (!isCacheable(imageReference) || resultUrls == null || resultUrls.isEmpty()) {
+            return;
+        }
+        String key = keyOf(imageReference);
+        ResultCacheStore.Entry entry = new ResultCacheStore.Entry(List.copyOf(resultUrls), Instant.now());
+        synchronized (memory) {
+            memory.put(key, entry);
+        }
+        store.put(key, entry);
+    }
+
+    @Override
+    public int invalidate(String imageReference) {
+        String prefix = imageReference.trim() + "|";
+        int removed;
+        synchronized (memory) {
+            int before = memory.size();
+            memory.keySet().removeIf(k -> k.startsWith(prefix));
+            removed = before - memory.size();
+        }
+        store.invalidate(prefix);
+        log.info("Invalidated {} cached results for {}", removed, imageReference);
+        return removed;
+    }
+
+    @Override
+    public void invalidateAll() {
+        synchronized (memory) {
+            memory.clear();
+        }
+        store.invalidate("");
+        log.info("Invalidated all cached results");
+    }
+
+    boolean isCacheable(String imageReference) {
+        if (!enabled || imageReference == null) {
+            return false;
+        }
+        String reference = imageReference.trim();
+        if (!DIGEST_REFERENCE.matcher(reference).matches()) {
+            return false;
+        }
+        return bypassPrefixes.orElse(List.of()).stream().noneMatch(reference::startsWith);
+    }
+
+    private String keyOf(String imageReference) {
+        return imageReference.trim() + "|" + generatorVersion + "|" + outputFormat;
+    }
+
+    private boolean isExpired(ResultCacheStore.Entry entry) {
+        return entry.storedAt().plus(ttl).isBefore(Instant.now());
+    }
+
+    private int size() {
+        synchronized (memory) {
+            return memory.size();
+        }
+    }
+}
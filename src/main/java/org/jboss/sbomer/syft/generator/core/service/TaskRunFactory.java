@@ -2,25 +2,44 @@ package org.jboss.sbomer.syft.generator.core.service;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.jboss.sbomer.events.common.GenerationRequestSpec;
 import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.domain.model.ImageReference;
+import org.jboss.sbomer.syft.generator.core.domain.model.Platform;
+import org.jboss.sbomer.syft.generator.core.port.spi.PlatformResolver;
+import org.jboss.sbomer.syft.generator.core.port.spi.ShardOwnership;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.fabric8.kubernetes.api.model.EmptyDirVolumeSource;
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaimVolumeSource;
 import io.fabric8.kubernetes.api.model.Quantity;
 import io.fabric8.tekton.v1beta1.*;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
 
 @ApplicationScoped
+@Slf4j
 public class TaskRunFactory {
 
     // The name of the Tekton Task applied in the cluster (e.g., "generator-syft")
     @ConfigProperty(name = "sbomer.generator.syft.task-name", defaultValue = "generator-syft")
     String taskName;
 
+    // The name of the Tekton Task scanning several images in one TaskRun (see batching)
+    @ConfigProperty(name = "sbomer.generator.syft.batch-task-name", defaultValue = "generator-syft-batch")
+    String batchTaskName;
+
     // The Service Account that has permissions to run the pod
     @ConfigProperty(name = "sbomer.generator.service-account", defaultValue = "sbomer-sa")
     String serviceAccount;
@@ -30,31 +49,84 @@ public class TaskRunFactory {
     @ConfigProperty(name = "sbomer.storage.url")
     String storageUrl;
 
+    // Binds a shared PersistentVolumeClaim as the syft cache of the TaskRuns (the "cache" workspace)
+    @ConfigProperty(name = "sbomer.generator.syft-cache.enabled", defaultValue = "false")
+    boolean syftCacheEnabled;
+
+    // The claim holding the cache. ReadWriteMany unless all TaskRuns run on one node
+    @ConfigProperty(name = "sbomer.generator.syft-cache.claim-name", defaultValue = "syft-cache")
+    String syftCacheClaimName;
+
+    // "node" keeps one cache directory per node, "pool" one directory shared by every node of the pool
+    @ConfigProperty(name = "sbomer.generator.syft-cache.layout", defaultValue = "node")
+    String syftCacheLayout;
+
+    // The name of the pool directory (layout "pool"), generators sharing a claim can keep their caches apart
+    @ConfigProperty(name = "sbomer.generator.syft-cache.pool", defaultValue = "default")
+    String syftCachePool;
+
+    // Size of one cache directory above which the least recently used entries are evicted
+    @ConfigProperty(name = "sbomer.generator.syft-cache.max-size", defaultValue = "10Gi")
+    String syftCacheMaxSize;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    ShardOwnership shardOwnership;
+
+    @Inject
+    PlatformResolver platformResolver;
+
     private static final String LABEL_GENERATION_ID = "sbomer.jboss.org/generation-id";
     private static final String LABEL_GENERATOR_TYPE = "sbomer.jboss.org/generator-type";
     private static final String GENERATOR_TYPE_VALUE = "syft";
     private static final String ANNOTATION_RETRY_COUNT = "sbomer.jboss.org/retry-count";
     private static final String ANNOTATION_TRACEPARENT = "sbomer.jboss.org/traceparent";
+    private static final String LABEL_ATTEMPT = "sbomer.jboss.org/attempt";
+    private static final String LABEL_BATCH = "sbomer.jboss.org/batch";
+    private static final String ANNOTATION_BATCH_MEMBERS = "sbomer.jboss.org/batch-members";
+    private static final String LABEL_REPLICA = "sbomer.jboss.org/replica";
+    private static final String LABEL_PLATFORM = "sbomer.jboss.org/platform";
 
     public TaskRun createTaskRun(GenerationTask generationTask) {
         String generationId = generationTask.generationId();
-        GenerationRequestSpec request = generationTask.spec();
 
-        // 1. Prepare Parameters
+        // 1. Prepare Parameters. A fanned out generation scans only the manifest of its platform
+        String image = generationTask.platform() != null
+                ? platformImage(generationTask.image(), generationTask.platform().digest())
+                : generationTask.image();
         List<Param> params = new ArrayList<>();
-        params.add(new ParamBuilder().withName("image").withNewValue(request.getTarget().getIdentifier()).build());
+        params.add(new ParamBuilder().withName("image").withNewValue(image).build());
+        if (generationTask.platform() != null && generationTask.platform().variant() != null) {
+            params.add(new ParamBuilder().withName("variant").withNewValue(generationTask.platform().variant()).build());
+        }
         params.add(new ParamBuilder().withName("generation-id").withNewValue(generationId).build());
         params.add(new ParamBuilder().withName("storage-service-url").withNewValue(storageUrl).build());
         if (generationTask.traceParent() != null) {
             params.add(new ParamBuilder().withName("trace-parent").withNewValue(generationTask.traceParent()).build());
         }
+        // Manifests resolved here spare the TaskRun from inspecting the image itself
+        List<Platform> platforms = generationTask.platform() != null
+                ? List.of(generationTask.platform())
+                : resolvePlatforms(image);
+        if (!platforms.isEmpty()) {
+            params.add(new ParamBuilder().withName("platforms").withNewValue(platformsParam(image, platforms)).build());
+        }
+        if (syftCacheEnabled) {
+            params.addAll(cacheParams());
+        }
 
         // 2. Prepare Labels
-        Map<String, String> labels = Map.of(
+        Map<String, String> labels = ownedLabels(
                 LABEL_GENERATION_ID, generationId,
                 LABEL_GENERATOR_TYPE, GENERATOR_TYPE_VALUE,
+                LABEL_ATTEMPT, String.valueOf(generationTask.retryCount()),
                 "app.kubernetes.io/managed-by", "sbomer-syft-generator"
         );
+        if (generationTask.platform() != null) {
+            labels.put(LABEL_PLATFORM, generationTask.platform().key());
+        }
 
         // 3. Build the SPEC separately (This fixes the fluent chain issues)
         TaskRunSpecBuilder specBuilder = new TaskRunSpecBuilder()
@@ -69,6 +141,7 @@ public class TaskRunFactory {
                                         .build()
                         )
                 );
+        bindCache(specBuilder);
 
         // 4. Handle Memory Override (Conditional Logic)
         if (generationTask.memoryOverride() != null) {
@@ -92,9 +165,13 @@ public class TaskRunFactory {
         }
 
         // 6. Combine into Final TaskRun
+        String namePrefix = "syft-gen-" + shortenId(generationId) + "-";
+        if (generationTask.platform() != null) {
+            namePrefix += generationTask.platform().key().toLowerCase() + "-";
+        }
         return new TaskRunBuilder()
                 .withNewMetadata()
-                .withGenerateName("syft-gen-" + shortenId(generationId) + "-")
+                .withGenerateName(namePrefix)
                 .withLabels(labels)
                 .withAnnotations(annotations)
                 .endMetadata()
@@ -102,6 +179,184 @@ public class TaskRunFactory {
                 .build();
     }
 
+    /**
+     * Creates a single TaskRun scanning the images of several generations one after the other.
+     * <p>
+     * The TaskRun is labelled with the batch ID as its generation ID, so it is cleaned up as one unit.
+     * Its memory is the largest one any of its generations asks for.
+     * </p>
+     */
+    public TaskRun createBatchTaskRun(String batchId, List<GenerationTask> generationTasks) {
+        // 1. Prepare Parameters: one entry per generation
+        List<Map<String, String>> members = new ArrayList<>();
+        for (GenerationTask task : generationTasks) {
+            Map<String, String> member = new LinkedHashMap<>();
+            member.put("generation-id", task.generationId());
+            member.put("image", task.image());
+            members.add(member);
+        }
+        String batch;
+        try {
+            batch = objectMapper.writeValueAsString(members);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize batch " + batchId, e);
+        }
+
+        // Only one trace can be continued, follow the first generation
+        String traceParent = generationTasks.get(0).traceParent();
+
+        List<Param> params = new ArrayList<>();
+        params.add(new ParamBuilder().withName("batch").withNewValue(batch).build());
+        params.add(new ParamBuilder().withName("batch-id").withNewValue(batchId).build());
+        params.add(new ParamBuilder().withName("storage-service-url").withNewValue(storageUrl).build());
+        if (traceParent != null) {
+            params.add(new ParamBuilder().withName("trace-parent").withNewValue(traceParent).build());
+        }
+        if (syftCacheEnabled) {
+            params.addAll(cacheParams());
+        }
+
+        // 2. Prepare Labels
+        Map<String, String> labels = ownedLabels(
+                LABEL_GENERATION_ID, batchId,
+                LABEL_GENERATOR_TYPE, GENERATOR_TYPE_VALUE,
+                LABEL_ATTEMPT, "0",
+                LABEL_BATCH, "true",
+                "app.kubernetes.io/managed-by", "sbomer-syft-generator"
+        );
+
+        // 3. Build the SPEC
+        TaskRunSpecBuilder specBuilder = new TaskRunSpecBuilder()
+                .withServiceAccountName(serviceAccount)
+                .withParams(params)
+                .withTaskRef(new TaskRefBuilder().withName(batchTaskName).build())
+                .withWorkspaces(
+                        Collections.singletonList(
+                                new WorkspaceBindingBuilder()
+                                        .withName("data")
+                                        .withEmptyDir(new EmptyDirVolumeSource())
+                                        .build()
+                        )
+                );
+        bindCache(specBuilder);
+
+        // 4. Images are scanned one at a time, so the largest memory fits them all
+        generationTasks.stream()
+                .map(GenerationTask::memoryOverride)
+                .filter(Objects::nonNull)
+                .max(Comparator.comparing(MemorySizingModel::bytes))
+                .ifPresent(memory -> specBuilder.addToStepOverrides(
+                        new TaskRunStepOverrideBuilder()
+                                .withName("generate")
+                                .withNewResources()
+                                .withRequests(Map.of("memory", new Quantity(memory)))
+                                .withLimits(Map.of("memory", new Quantity(memory)))
+                                .endResources()
+                                .build()
+                ));
+
+        // 5. Build annotations map
+        Map<String, String> annotations = new java.util.HashMap<>();
+        annotations.put(ANNOTATION_RETRY_COUNT, "0");
+        annotations.put(ANNOTATION_BATCH_MEMBERS, generationTasks.stream()
+                .map(GenerationTask::generationId)
+                .collect(Collectors.joining(",")));
+        if (traceParent != null) {
+            annotations.put(ANNOTATION_TRACEPARENT, traceParent);
+        }
+
+        // 6. Combine into Final TaskRun
+        return new TaskRunBuilder()
+                .withNewMetadata()
+                .withGenerateName("syft-batch-" + shortenId(batchId) + "-")
+                .withLabels(labels)
+                .withAnnotations(annotations)
+                .endMetadata()
+                .withSpec(specBuilder.build())
+                .build();
+    }
+
+    /**
+     * Builds the labels from key/value pairs, plus the replica creating the TaskRun when sharded.
+     */
+    private Map<String, String> ownedLabels(String... keyValues) {
+        Map<String, String> labels = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            labels.put(keyValues[i], keyValues[i + 1]);
+        }
+        String replicaId = shardOwnership.replicaId();
+        if (replicaId != null) {
+            labels.put(LABEL_REPLICA, replicaId);
+        }
+        return labels;
+    }
+
+    /**
+     * Both Tasks declare the cache workspace optional, left unbound every run starts cold.
+     */
+    private void bindCache(TaskRunSpecBuilder specBuilder) {
+        if (syftCacheEnabled) {
+            specBuilder.addToWorkspaces(new WorkspaceBindingBuilder()
+                    .withName("cache")
+                    .withPersistentVolumeClaim(new PersistentVolumeClaimVolumeSource(syftCacheClaimName, false))
+                    .build());
+        }
+    }
+
+    /**
+     * Tells the Task which directory of the cache claim to use and when to evict from it.
+     */
+    private List<Param> cacheParams() {
+        String layout = "pool".equals(syftCacheLayout) ? "pool" : "node";
+        return List.of(
+                new ParamBuilder().withName("cache-layout").withNewValue(layout).build(),
+                new ParamBuilder().withName("cache-pool").withNewValue(syftCachePool).build(),
+                new ParamBuilder().withName("cache-max-bytes")
+                        .withNewValue(MemorySizingModel.bytes(syftCacheMaxSize).toBigInteger().toString())
+                        .build());
+    }
+
+    private List<Platform> resolvePlatforms(String image) {
+        try {
+            return platformResolver.resolvePlatforms(image);
+        } catch (Exception e) {
+            log.warn("Cannot resolve the platforms of {}, the TaskRun inspects the image itself", image, e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Describes the platforms the way the Task lays out its inspection results: one entry per platform, with the
+     * repository and the digest of its manifest.
+     */
+    private String platformsParam(String image, List<Platform> platforms) {
+        String repository = ImageReference.repositoryOf(image);
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (Platform platform : platforms) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("os", platform.os());
+            entry.put("architecture", platform.architecture());
+            entry.put("variant", platform.variant() != null ? platform.variant() : "");
+            entry.put("name", repository);
+            entry.put("digest", platform.digest());
+            entry.put("size", platform.size());
+            entries.add(entry);
+        }
+        try {
+            return objectMapper.writeValueAsString(entries);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize the platforms of " + image, e);
+        }
+    }
+
+    /**
+     * Points the image reference at the manifest of one platform: {@code quay.io/org/app:1.0} becomes
+     * {@code quay.io/org/app@sha256:...}.
+     */
+    public static String platformImage(String image, String digest) {
+        return ImageReference.repositoryOf(image) + "@" + digest;
+    }
+
     /**
      * Helper to shorten UUIDs for K8s resource naming limits (63 chars)
      */
@@ -1,9 +1,10 @@
 package org.jboss.sbomer.syft.generator.core.utility;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.jboss.sbomer.events.common.FailureSpec;
 
@@ -11,6 +12,12 @@ public class FailureUtility {
 
     private FailureUtility() {}
 
+    // Longer stack traces are cut, a failure event should stay well below the Kafka message size limit
+    public static final int MAX_STACK_TRACE_LENGTH = 8192;
+
+    // Details key of the fingerprint grouping failures with the same cause
+    public static final String FINGERPRINT = "fingerprint";
+
     /**
      * Utility method to build a FailureSpec object from a Java Exception.
      *
@@ -23,19 +30,58 @@ public class FailureUtility {
         failure.setReason(e.getMessage());
         failure.setErrorCode(e.getClass().getSimpleName());
 
-        // Capture the full stack trace
-        StringWriter sw = new StringWriter();
-        e.printStackTrace(new PrintWriter(sw));
-        String stackTrace = sw.toString();
-
-        // Add the stack trace to the details map.
+        // Add the (capped) stack trace and the fingerprint to the details map.
         Map<String, String> details = new HashMap<>();
-        details.put("stackTrace", stackTrace);
+        details.put("stackTrace", renderStackTrace(e, MAX_STACK_TRACE_LENGTH));
+        details.put(FINGERPRINT, fingerprint(e));
         failure.setDetails(details);
 
         return failure;
     }
 
+    /**
+     * Identifies the cause of a failure independently of the generation it hit:
+     * the exception type and the frame it was thrown from.
+     */
+    public static String fingerprint(Throwable e) {
+        StackTraceElement[] frames = e.getStackTrace();
+        String origin = frames.length > 0 ? frames[0].getClassName() + "." + frames[0].getMethodName() : "unknown";
+        return e.getClass().getName() + "@" + origin;
+    }
+
+    /**
+     * Renders the stack trace like {@link Throwable#printStackTrace()}, but stops once the limit is reached
+     * instead of rendering everything and cutting afterwards.
+     */
+    static String renderStackTrace(Throwable e, int maxLength) {
+        StringBuilder out = new StringBuilder(Math.min(maxLength, 2048));
+        Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Throwable current = e;
+        String prefix = "";
+        while (current != null && seen.add(current)) {
+            if (!append(out, prefix + current + "\n", maxLength)) {
+                return out.toString();
+            }
+            for (StackTraceElement frame : current.getStackTrace()) {
+                if (!append(out, "\tat " + frame + "\n", maxLength)) {
+                    return out.toString();
+                }
+            }
+            current = current.getCause();
+            prefix = "Caused by: ";
+        }
+        return out.toString();
+    }
+
+    private static boolean append(StringBuilder out, String line, int maxLength) {
+        if (out.length() + line.length() > maxLength) {
+            out.append("\t... (truncated)\n");
+            return false;
+        }
+        out.append(line);
+        return true;
+    }
+
     // TODO buildFailureSpecFromGenerationFailure
 
 
@@ -0,0 +1,108 @@
+package org.jboss.sbomer.syft.agent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.jboss.sbomer.syft.agent.SbomPostProcessor.Stats;
+import org.junit.jupiter.api.Test;
+
+class SbomPostProcessorTest {
+
+    private static final String SBOM = """
+            {
+              "$schema": "http://cyclonedx.org/schema/bom-1.6.schema.json",
+              "bomFormat": "CycloneDX",
+              "specVersion": "1.6",
+              "serialNumber": "urn:uuid:3e671687-395b-41f5-a30f-a58921a69b79",
+              "version": 1,
+              "metadata": {"component": {"type": "container", "name": "quay.io/org/app"}, "licenses": [{"expression": "MIT"}]},
+              "components": [
+                {"type": "library", "name": "openssl", "bom-ref": "pkg:rpm/openssl",
+                 "licenses": [{"license": {"id": "Apache-2.0"}}, {"expression": "OpenSSL OR MIT"}],
+                 "properties": [{"name": "syft:package:type", "value": "rpm"}]},
+                {"type": "application", "name": "server", "bom-ref": "pkg:maven/server",
+                 "components": [{"type": "library", "name": "netty", "licenses": [{"license": {"name": "Apache"}}]}]},
+                {"type": "operating-system", "name": "rhel"}
+              ],
+              "dependencies": [
+                {"ref": "pkg:maven/server", "dependsOn": ["pkg:rpm/openssl", "pkg:maven/netty"]},
+                {"ref": "pkg:rpm/openssl", "dependsOn": []},
+                {"ref": "pkg:maven/netty"}
+              ]
+            }
+            """;
+
+    @Test
+    void testCountsComponentsDependenciesAndLicenses() throws Exception {
+        Stats stats = process(SBOM);
+
+        assertTrue(stats.valid(), stats.errors().toString());
+        // Nested components count too, the metadata component does not
+        assertEquals(4, stats.components());
+        assertEquals(2, stats.dependencies());
+        assertEquals(3, stats.licenses());
+        assertEquals(SBOM.getBytes(StandardCharsets.UTF_8).length, stats.bytes());
+    }
+
+    @Test
+    void testHashCoversTheWholeFile() throws Exception {
+        byte[] content = (SBOM + "\n\n\n").getBytes(StandardCharsets.UTF_8);
+
+        Stats stats = SbomPostProcessor.process(new ByteArrayInputStream(content));
+
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)), stats.sha256());
+    }
+
+    @Test
+    void testStructuralProblemsAreReported() throws Exception {
+        Stats stats = process("""
+                {"bomFormat": "CycloneDX", "specVersion": "1.5", "version": 0,
+                 "components": [{"type": "library"}, {"type": "gadget", "name": "x"}, "oops"],
+                 "dependencies": [{"dependsOn": ["a"]}]}
+                """);
+
+        assertFalse(stats.valid());
+        assertEquals(List.of(
+                "specVersion is not 1.6",
+                "version is not a positive integer",
+                "components[0].name is missing",
+                "components[1].type is not a CycloneDX component type",
+                "components[2] is not an object",
+                "dependencies[0].ref is missing"), stats.errors());
+        assertEquals(2, stats.components());
+    }
+
+    @Test
+    void testMissingFormatAndBrokenJsonAreInvalid() throws Exception {
+        assertEquals(List.of("bomFormat is missing", "specVersion is missing"), process("{\"components\": []}").errors());
+        assertEquals(List.of("The document is not a JSON object"), process("[]").errors());
+
+        Stats truncated = process(SBOM.substring(0, SBOM.length() / 2));
+        assertFalse(truncated.valid());
+        assertTrue(truncated.errors().get(0).startsWith("Not valid JSON"), truncated.errors().toString());
+    }
+
+    @Test
+    void testErrorsAreCapped() throws Exception {
+        StringBuilder sbom = new StringBuilder("{\"bomFormat\": \"CycloneDX\", \"specVersion\": \"1.6\", \"components\": [");
+        for (int i = 0; i < 100; i++) {
+            sbom.append(i > 0 ? "," : "").append("{\"name\": \"c").append(i).append("\"}");
+        }
+        Stats stats = process(sbom.append("]}").toString());
+
+        assertEquals(SbomPostProcessor.MAX_ERRORS + 1, stats.errors().size());
+        assertEquals("... and 80 more", stats.errors().get(SbomPostProcessor.MAX_ERRORS));
+        assertTrue(stats.toJson().startsWith("{\"components\":100,\"dependencies\":0,\"licenses\":0,\"sha256\":\""));
+    }
+
+    private static Stats process(String sbom) throws Exception {
+        return SbomPostProcessor.process(new ByteArrayInputStream(sbom.getBytes(StandardCharsets.UTF_8)));
+    }
+}
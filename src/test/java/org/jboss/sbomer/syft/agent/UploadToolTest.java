@@ -0,0 +1,256 @@
+package org.jboss.sbomer.syft.agent;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.jboss.sbomer.syft.agent.UploadTool.Encoding;
+import org.jboss.sbomer.syft.agent.UploadTool.Part;
+import org.jboss.sbomer.syft.agent.UploadTool.Result;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+class UploadToolTest {
+
+    @TempDir
+    Path workspace;
+
+    private HttpServer storage;
+    private URI target;
+    private volatile int status = 200;
+    // Name -> content of the parts the storage received
+    private final Map<String, byte[]> received = new LinkedHashMap<>();
+    private final List<String> encodings = new CopyOnWriteArrayList<>();
+    private final List<String> lengths = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void startStorage() throws IOException {
+        storage = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        storage.createContext("/api/v1/storage/generations/", this::store);
+        storage.start();
+        target = URI.create("http://localhost:" + storage.getAddress().getPort() + "/api/v1/storage/generations/G1");
+    }
+
+    @AfterEach
+    void stopStorage() {
+        storage.stop(0);
+    }
+
+    @Test
+    void testFilesAreSentUnderTheirPlatformNames() throws Exception {
+        byte[] amd64 = writeSbom("linux/amd64", 2000);
+        byte[] arm64 = writeSbom("linux/arm64-v8", 1000);
+        Files.createDirectories(workspace.resolve("logs"));
+        Files.writeString(workspace.resolve("logs/generate.log"), "scanning...\n");
+
+        List<Part> parts = UploadTool.collect(workspace, List.of(Path.of("logs/generate.log"), Path.of("logs/missing.log")));
+        Result result = tool(Encoding.NONE).upload(parts);
+
+        assertEquals(List.of("bom-linux-amd64.json", "bom-linux-arm64-v8.json", "generate.log"), List.copyOf(received.keySet()));
+        assertArrayEquals(amd64, received.get("bom-linux-amd64.json"));
+        assertArrayEquals(arm64, received.get("bom-linux-arm64-v8.json"));
+        // Without compression the length is known up front, no chunked encoding
+        assertNotNull(lengths.get(0));
+        assertEquals(List.of(""), encodings);
+
+        assertEquals(3, result.stats().files());
+        assertEquals(amd64.length + arm64.length + 12, result.stats().bytes());
+        assertEquals(Long.parseLong(lengths.get(0)), result.stats().sentBytes());
+        assertEquals(Map.of("bom-linux-amd64.json", "http://storage/G1/bom-linux-amd64.json",
+                "bom-linux-arm64-v8.json", "http://storage/G1/bom-linux-arm64-v8.json"), UploadTool.withoutLogs(result.urls()));
+    }
+
+    @Test
+    void testGzipSendsFewerBytes() throws Exception {
+        byte[] sbom = writeSbom("linux/amd64", 20000);
+        List<Part> parts = UploadTool.collect(workspace, List.of());
+
+        Result plain = tool(Encoding.NONE).upload(parts);
+        received.clear();
+        Result gzip = tool(Encoding.GZIP).upload(parts);
+
+        assertArrayEquals(sbom, received.get("bom-linux-amd64.json"));
+        assertEquals("gzip", encodings.get(1));
+        assertEquals(plain.stats().bytes(), gzip.stats().bytes());
+        // SBOMs are repetitive JSON, they compress well
+        assertTrue(gzip.stats().sentBytes() * 5 < plain.stats().sentBytes(),
+                "gzip sent " + gzip.stats().sentBytes() + " bytes, plain " + plain.stats().sentBytes());
+    }
+
+    @Test
+    void testZstdIsDecodedByTheStorage() throws Exception {
+        Assumptions.assumeTrue(zstdAvailable(), "zstd is not installed");
+        byte[] sbom = writeSbom("linux/s390x", 5000);
+
+        Result result = tool(Encoding.ZSTD).upload(UploadTool.collect(workspace, List.of()));
+
+        assertArrayEquals(sbom, received.get("bom-linux-s390x.json"));
+        assertEquals(List.of("zstd"), encodings);
+        assertTrue(result.stats().sentBytes() < result.stats().bytes());
+    }
+
+    @Test
+    void testProgressIsReported() throws Exception {
+        writeSbom("linux/amd64", 50000);
+        List<String> reports = new ArrayList<>();
+
+        new UploadTool(target, Encoding.NONE, null, Duration.ofSeconds(30), Duration.ZERO, reports::add)
+                .upload(UploadTool.collect(workspace, List.of()));
+
+        assertTrue(reports.size() > 1, "Reported " + reports);
+        assertTrue(reports.get(reports.size() - 1).endsWith("(100%)"), reports.get(reports.size() - 1));
+    }
+
+    @Test
+    void testFailedUploadIsReported() throws Exception {
+        writeSbom("linux/amd64", 10);
+        status = 503;
+
+        IOException e = assertThrows(IOException.class, () -> tool(Encoding.GZIP).upload(UploadTool.collect(workspace, List.of())));
+        assertTrue(e.getMessage().contains("503"), e.getMessage());
+    }
+
+    @Test
+    void testResultMapRoundTrip() {
+        Map<String, String> urls = UploadTool.parseObject(" { \"a.json\" : \"http://x/a?b=\\\"c\\\"\", \"generate.log\":\"http://x/l\" } ");
+
+        assertEquals("http://x/a?b=\"c\"", urls.get("a.json"));
+        assertEquals("{\"a.json\":\"http://x/a?b=\\\"c\\\"\"}", UploadTool.toJson(UploadTool.withoutLogs(urls)));
+        assertEquals(Map.of(), UploadTool.parseObject("{}"));
+    }
+
+    private UploadTool tool(Encoding encoding) {
+        return new UploadTool(target, encoding, "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01",
+                Duration.ofSeconds(30), Duration.ofSeconds(1), message -> {
+                });
+    }
+
+    private byte[] writeSbom(String platform, int components) throws IOException {
+        String sbom = "{\"bomFormat\":\"CycloneDX\",\"specVersion\":\"1.6\",\"components\":["
+                + java.util.stream.IntStream.range(0, components)
+                        .mapToObj(i -> "{\"type\":\"library\",\"name\":\"lib" + i + "\",\"version\":\"1.0." + i
+                                + "\",\"purl\":\"pkg:rpm/redhat/lib" + i + "@1.0." + i + "\"}")
+                        .collect(Collectors.joining(","))
+                + "]}";
+        Path file = workspace.resolve(platform).resolve("bom.json");
+        Files.createDirectories(file.getParent());
+        byte[] content = sbom.getBytes(StandardCharsets.UTF_8);
+        Files.write(file, content);
+        return content;
+    }
+
+    /**
+     * Decodes the body as the storage service would, and answers with a URL per file.
+     */
+    private void store(HttpExchange exchange) throws IOException {
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        encodings.add(encoding != null ? encoding : "");
+        lengths.add(exchange.getRequestHeaders().getFirst("Content-Length"));
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readAllBytes();
+        }
+        if ("gzip".equals(encoding)) {
+            body = new GZIPInputStream(new java.io.ByteArrayInputStream(body)).readAllBytes();
+        } else if ("zstd".equals(encoding)) {
+            body = zstdDecode(body);
+        }
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+        received.putAll(parseMultipart(body, boundary));
+
+        String response = received.keySet().stream()
+                .map(name -> "\"" + name + "\": \"http://storage/G1/" + name + "\"")
+                .collect(Collectors.joining(", ", "{", "}"));
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static Map<String, byte[]> parseMultipart(byte[] body, String boundary) {
+        Map<String, byte[]> parts = new LinkedHashMap<>();
+        byte[] delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        // The first delimiter has no leading CRLF
+        int at = indexOf(body, Arrays.copyOfRange(delimiter, 2, delimiter.length), 0) + delimiter.length - 2;
+        while (body[at] != '-') {
+            int headersEnd = indexOf(body, "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1), at);
+            String headers = new String(body, at, headersEnd - at, StandardCharsets.ISO_8859_1);
+            String name = headers.substring(headers.indexOf("filename=\"") + 10);
+            name = name.substring(0, name.indexOf('"'));
+            int next = indexOf(body, delimiter, headersEnd + 4);
+            parts.put(name, Arrays.copyOfRange(body, headersEnd + 4, next));
+            at = next + delimiter.length;
+        }
+        return parts;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new IllegalStateException("Malformed multipart body");
+    }
+
+    private static boolean zstdAvailable() {
+        try {
+            return new ProcessBuilder("zstd", "--version").start().waitFor() == 0;
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+
+    private static byte[] zstdDecode(byte[] data) throws IOException {
+        Process process = new ProcessBuilder("zstd", "-d", "-q", "-c", "-").start();
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        Thread reader = new Thread(() -> {
+            try {
+                process.getInputStream().transferTo(decoded);
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        });
+        reader.start();
+        try (var stdin = process.getOutputStream()) {
+            stdin.write(data);
+        }
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return decoded.toByteArray();
+    }
+}
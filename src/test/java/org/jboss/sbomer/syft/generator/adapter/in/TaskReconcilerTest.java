@@ -0,0 +1,257 @@
+package org.jboss.sbomer.syft.generator.adapter.in;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.sbomer.syft.generator.adapter.out.UnshardedOwnership;
+import org.jboss.sbomer.syft.generator.core.domain.GenerationStatus;
+import org.jboss.sbomer.syft.generator.core.port.api.GenerationOrchestrator;
+import org.jboss.sbomer.syft.generator.core.port.spi.FailureNotifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.fabric8.tekton.v1beta1.TaskRun;
+import io.fabric8.tekton.v1beta1.TaskRunBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.api.OpenTelemetry;
+
+class TaskReconcilerTest {
+
+    private GenerationOrchestrator orchestrator;
+    private TaskReconciler reconciler;
+
+    @BeforeEach
+    void setup() {
+        orchestrator = Mockito.mock(GenerationOrchestrator.class);
+        reconciler = new TaskReconciler();
+        reconciler.orchestrator = orchestrator;
+        reconciler.failureNotifier = Mockito.mock(FailureNotifier.class);
+        reconciler.objectMapper = new ObjectMapper();
+        reconciler.tracer = OpenTelemetry.noop().getTracer("test");
+        reconciler.shardOwnership = new UnshardedOwnership();
+        reconciler.meterRegistry = new SimpleMeterRegistry();
+        reconciler.completionMemory = 100;
+        reconciler.updateParallelism = 16;
+        reconciler.init();
+    }
+
+    @Test
+    void testRedeliveredCompletionIsHandledOnce() {
+        TaskRun finished = taskRun("uid-1", "0", "True", null);
+
+        reconciler.reconcile(finished, null);
+        reconciler.reconcile(finished, null);
+        reconciler.drainUpdates();
+
+        Mockito.verify(orchestrator, Mockito.times(1))
+                .handleUpdate("G1", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/g1"));
+    }
+
+    @Test
+    void testRedeliveredOomStartsOneRetry() {
+        TaskRun oom = taskRun("uid-2", "0", "False", "OOMKilled");
+
+        reconciler.reconcile(oom, null);
+        reconciler.reconcile(oom, null);
+        reconciler.drainUpdates();
+
+        Mockito.verify(orchestrator, Mockito.times(1)).handleUpdate("G1", GenerationStatus.FAILED, "OOMKilled", null);
+    }
+
+    @Test
+    void testSbomStatsAreRecorded() {
+        TaskRun finished = new TaskRunBuilder(taskRun("uid-6", "0", "True", null))
+                .editStatus()
+                .addNewTaskResult()
+                .withName("sbom-stats")
+                .withNewValue("{\"bom-linux-amd64.json\": {\"components\": 120, \"dependencies\": 300, \"licenses\": 80, \"sha256\": \"abc\"},"
+                        + " \"bom-linux-arm64.json\": {\"components\": 100, \"dependencies\": 250, \"licenses\": 70, \"sha256\": \"def\"}}")
+                .endTaskResult()
+                .endStatus()
+                .build();
+
+        reconciler.reconcile(finished, null);
+        reconciler.drainUpdates();
+
+        Mockito.verify(orchestrator).handleUpdate("G1", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/g1"));
+        assertEquals(2, reconciler.meterRegistry.get("sbomer.generator.sbom.components").summary().count());
+        assertEquals(220.0, reconciler.meterRegistry.get("sbomer.generator.sbom.components").summary().totalAmount());
+        assertEquals(550.0, reconciler.meterRegistry.get("sbomer.generator.sbom.dependencies").summary().totalAmount());
+    }
+
+    @Test
+    void testUnreadableSbomStatsDoNotFailTheGeneration() {
+        TaskRun finished = new TaskRunBuilder(taskRun("uid-7", "0", "True", null))
+                .editStatus()
+                .addNewTaskResult()
+                .withName("sbom-stats")
+                .withNewValue("not json")
+                .endTaskResult()
+                .endStatus()
+                .build();
+
+        reconciler.reconcile(finished, null);
+        reconciler.drainUpdates();
+
+        Mockito.verify(orchestrator).handleUpdate("G1", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/g1"));
+    }
+
+    @Test
+    void testBatchSbomStatsAreRecordedPerGeneration() {
+        TaskRun batch = new TaskRunBuilder()
+                .withNewMetadata()
+                .withName("syft-batch-1")
+                .withUid("uid-8")
+                .withLabels(Map.of("sbomer.jboss.org/batch", "true"))
+                .withAnnotations(Map.of("sbomer.jboss.org/batch-members", "G1,G2"))
+                .endMetadata()
+                .withNewStatus()
+                .addNewCondition()
+                .withType("Succeeded")
+                .withStatus("True")
+                .withReason("Succeeded")
+                .endCondition()
+                .addNewTaskResult()
+                .withName("sbom-url")
+                .withNewValue("{\"G1\": {\"urls\": {\"bom-linux-amd64.json\": \"http://storage/g1\"},"
+                        + " \"stats\": {\"bom-linux-amd64.json\": {\"components\": 120, \"dependencies\": 300, \"licenses\": 80, \"sha256\": \"abc\"}}},"
+                        + " \"G2\": {\"error\": \"OOMKilled\"}}")
+                .endTaskResult()
+                .endStatus()
+                .build();
+
+        reconciler.reconcile(batch, null);
+        reconciler.drainUpdates();
+
+        Mockito.verify(orchestrator).handleUpdate("G1", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/g1"));
+        Mockito.verify(orchestrator).handleUpdate("G2", GenerationStatus.FAILED, "OOMKilled", null);
+        assertEquals(1, reconciler.meterRegistry.get("sbomer.generator.sbom.components").summary().count());
+        assertEquals(120.0, reconciler.meterRegistry.get("sbomer.generator.sbom.components").summary().totalAmount());
+    }
+
+    @Test
+    void testRetryAttemptIsHandledAgain() {
+        reconciler.reconcile(taskRun("uid-3", "0", "False", "OOMKilled"), null);
+        reconciler.reconcile(taskRun("uid-4", "1", "False", "OOMKilled"), null);
+        reconciler.drainUpdates();
+
+        Mockito.verify(orchestrator, Mockito.times(2)).handleUpdate("G1", GenerationStatus.FAILED, "OOMKilled", null);
+    }
+
+    @Test
+    void testFilterOnlyPassesTerminalTransitions() {
+        TerminalTransitionFilter filter = new TerminalTransitionFilter();
+        TaskRun running = taskRun("uid-5", "0", "Unknown", null);
+        TaskRun stillRunning = taskRun("uid-5", "0", "Unknown", null);
+        TaskRun failed = taskRun("uid-5", "0", "False", null);
+
+        assertFalse(filter.accept(running));
+        assertFalse(filter.accept(stillRunning, running));
+        assertTrue(filter.accept(failed, running));
+        assertTrue(filter.accept(taskRun("uid-5", "0", "Unknown", "OOMKilled"), running));
+        assertTrue(filter.accept(failed));
+    }
+
+    @Test
+    void testBurstOfCompletionsDrainsInParallelAndInOrder() throws Exception {
+        int completions = 1000;
+        int attempts = 4;
+        int generations = completions / attempts;
+        int lanes = 4;
+
+        // The first updates only return once several lanes run at the same time, which they never would one after
+        // the other. The peak of updates running at once is recorded throughout
+        CountDownLatch together = new CountDownLatch(lanes);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        Map<String, List<String>> seen = new ConcurrentHashMap<>();
+        Mockito.doAnswer(invocation -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            together.countDown();
+            together.await(10, TimeUnit.SECONDS);
+            seen.computeIfAbsent(invocation.getArgument(0), k -> new CopyOnWriteArrayList<>()).add(invocation.getArgument(2));
+            running.decrementAndGet();
+            return null;
+        }).when(orchestrator).handleUpdate(Mockito.anyString(), Mockito.any(), Mockito.anyString(), Mockito.any());
+
+        // Every generation went through four attempts, all OOMKilled but the last. Each wave of attempts completes
+        // at the same time and is reconciled by several threads at once, before the updates of the previous wave
+        // are handled
+        ExecutorService reconcilerThreads = Executors.newFixedThreadPool(8);
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            boolean last = attempt == attempts - 1;
+            List<Future<?>> wave = new ArrayList<>();
+            for (int g = 0; g < generations; g++) {
+                TaskRun taskRun = taskRun("G" + g, "uid-" + g + "-" + attempt, String.valueOf(attempt),
+                        last ? "True" : "False", last ? null : "OOMKilled");
+                wave.add(reconcilerThreads.submit(() -> reconciler.reconcile(taskRun, null)));
+            }
+            for (Future<?> reconciled : wave) {
+                reconciled.get();
+            }
+        }
+        reconcilerThreads.shutdown();
+        assertTrue(reconciler.updates.awaitIdle(Duration.ofSeconds(30)));
+        reconciler.drainUpdates();
+
+        assertEquals(generations, seen.size());
+        seen.values().forEach(reasons -> assertEquals(
+                List.of("OOMKilled", "OOMKilled", "OOMKilled", "TaskRun Succeeded"), reasons));
+        assertEquals(0, together.getCount(), "Updates of different generations never ran at the same time");
+        assertTrue(peak.get() >= lanes, "At most " + peak.get() + " updates ran at the same time");
+        assertTrue(peak.get() <= reconciler.updateParallelism, "More updates than lanes ran at the same time");
+    }
+
+    private static TaskRun taskRun(String uid, String attempt, String succeeded, String stepTermination) {
+        return taskRun("G1", uid, attempt, succeeded, stepTermination);
+    }
+
+    private static TaskRun taskRun(String generationId, String uid, String attempt, String succeeded, String stepTermination) {
+        TaskRunBuilder builder = new TaskRunBuilder()
+                .withNewMetadata()
+                .withName("syft-gen-" + uid)
+                .withUid(uid)
+                .withLabels(Map.of("sbomer.jboss.org/generation-id", generationId, "sbomer.jboss.org/attempt", attempt))
+                .endMetadata()
+                .withNewStatus()
+                .addNewCondition()
+                .withType("Succeeded")
+                .withStatus(succeeded)
+                .withReason(succeeded)
+                .endCondition()
+                .addNewTaskResult()
+                .withName("sbom-url")
+                .withNewValue("{\"sbom\": \"http://storage/g1\"}")
+                .endTaskResult()
+                .endStatus();
+        if (stepTermination != null) {
+            builder.editStatus()
+                    .addNewStep()
+                    .withName("generate")
+                    .withNewTerminated()
+                    .withReason(stepTermination)
+                    .withExitCode(137)
+                    .endTerminated()
+                    .endStep()
+                    .endStatus();
+        }
+        return builder.build();
+    }
+}
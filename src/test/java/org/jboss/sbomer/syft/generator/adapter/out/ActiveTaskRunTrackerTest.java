@@ -0,0 +1,149 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import org.jboss.sbomer.syft.generator.core.port.spi.ShardOwnership;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import io.fabric8.tekton.v1beta1.TaskRun;
+import io.fabric8.tekton.v1beta1.TaskRunBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@EnableKubernetesMockClient(crud = true)
+class ActiveTaskRunTrackerTest {
+
+    private static final String NAMESPACE = "test";
+
+    static KubernetesClient client;
+
+    private ActiveTaskRunTracker tracker;
+
+    @BeforeEach
+    void cleanup() {
+        client.resources(TaskRun.class).inNamespace(NAMESPACE).delete();
+    }
+
+    @AfterEach
+    void stop() {
+        if (tracker != null) {
+            tracker.stop();
+        }
+    }
+
+    @Test
+    void testCountsRunningTaskRunsOnly() {
+        create(taskRun("tr-1", null, null));
+        create(taskRun("tr-2", null, "True"));
+        create(taskRun("tr-3", null, "False"));
+        tracker = createTracker(null);
+
+        await(() -> tracker.countRunning() == 1);
+
+        create(taskRun("tr-4", null, null));
+        await(() -> tracker.countRunning() == 2);
+
+        // Finishing and deleting both leave the count
+        client.resources(TaskRun.class).inNamespace(NAMESPACE).withName("tr-1")
+                .edit(tr -> new TaskRunBuilder(tr).withStatus(taskRun("tr-1", null, "True").getStatus()).build());
+        client.resources(TaskRun.class).inNamespace(NAMESPACE).withName("tr-4").delete();
+        await(() -> tracker.countRunning() == 0);
+    }
+
+    @Test
+    void testShardedReplicaOnlyCountsItsOwnTaskRuns() {
+        create(taskRun("tr-1", "replica-a", null));
+        create(taskRun("tr-2", "replica-b", null));
+        create(taskRun("tr-3", null, null));
+        tracker = createTracker("replica-a");
+
+        await(() -> tracker.countRunning() == 1);
+    }
+
+    @Test
+    void testUnknownCountWhenTheInformerCannotWatch() {
+        tracker = createTracker(null);
+        tracker.kubernetesClient = mock(KubernetesClient.class);
+
+        assertEquals(-1, tracker.countRunning());
+    }
+
+    private static ActiveTaskRunTracker createTracker(String replicaId) {
+        ActiveTaskRunTracker tracker = new ActiveTaskRunTracker();
+        tracker.kubernetesClient = client;
+        tracker.meterRegistry = new SimpleMeterRegistry();
+        tracker.namespace = NAMESPACE;
+        tracker.resyncPeriod = Duration.ofMinutes(5);
+        tracker.shardOwnership = new ShardOwnership() {
+            @Override
+            public String replicaId() {
+                return replicaId;
+            }
+
+            @Override
+            public boolean isResponsibleFor(String owner, String generationId) {
+                return true;
+            }
+
+            @Override
+            public Set<String> liveReplicas() {
+                return null;
+            }
+        };
+        tracker.registerMetrics();
+        return tracker;
+    }
+
+    private static void create(TaskRun taskRun) {
+        client.resources(TaskRun.class).inNamespace(NAMESPACE).resource(taskRun).create();
+    }
+
+    private static TaskRun taskRun(String name, String replica, String succeeded) {
+        Map<String, String> labels = new HashMap<>();
+        labels.put(ActiveTaskRunTracker.GENERATOR_TYPE_LABEL, ActiveTaskRunTracker.GENERATOR_TYPE_VALUE);
+        if (replica != null) {
+            labels.put(ActiveTaskRunTracker.REPLICA_LABEL, replica);
+        }
+        TaskRunBuilder builder = new TaskRunBuilder()
+                .withNewMetadata()
+                .withName(name)
+                .withNamespace(NAMESPACE)
+                .withLabels(labels)
+                .endMetadata();
+        if (succeeded != null) {
+            builder.withNewStatus()
+                    .addNewCondition()
+                    .withType("Succeeded")
+                    .withStatus(succeeded)
+                    .endCondition()
+                    .endStatus();
+        }
+        return builder.build();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met in time");
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+import org.jboss.sbomer.events.common.Target;
+import org.jboss.sbomer.syft.agent.AgentWorker;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.port.api.GenerationOrchestrator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.api.OpenTelemetry;
+
+/**
+ * Runs the pool against real workers listening on localhost, with a pipeline script standing in for syft.
+ */
+class AgentPoolGenerationExecutorTest {
+
+    // Fails "big" images on the smallest tier as syft killed for its memory, hangs on "slow" ones
+    private static final String PIPELINE = """
+            #!/bin/sh
+            echo "scanning ${IMAGE} on $1"
+            case "${IMAGE}" in
+              *big*) [ "$1" = "2Gi" ] && exit 137 ;;
+              *slow*) sleep 30 ;;
+            esac
+            printf '{"bom.json":"%s/sboms/%s"}' "${STORAGE_URL}" "${GENERATION_ID}" > "${RESULT}"
+            """;
+
+    private static final String SECRET = "secret-of-the-release";
+
+    @TempDir
+    Path tempDir;
+
+    private LocalProvisioner provisioner;
+    private GenerationOrchestrator orchestrator;
+    private SimpleMeterRegistry meterRegistry;
+    private final List<String> updates = new CopyOnWriteArrayList<>();
+    private AgentPoolGenerationExecutor executor;
+
+    @BeforeEach
+    void setup() throws IOException {
+        Path script = tempDir.resolve("pipeline.sh");
+        Files.writeString(script, PIPELINE);
+        Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwx------"));
+        provisioner = new LocalProvisioner(script, tempDir, SECRET);
+        orchestrator = mock(GenerationOrchestrator.class);
+        doAnswer(invocation -> updates.add(invocation.getArgument(0) + " " + invocation.getArgument(1) + " "
+                + invocation.getArgument(2) + " " + invocation.getArgument(3)))
+                .when(orchestrator).handleUpdate(anyString(), any(), any(), any());
+        meterRegistry = new SimpleMeterRegistry();
+        executor = newExecutor();
+    }
+
+    private AgentPoolGenerationExecutor newExecutor() {
+        AgentPoolGenerationExecutor executor = new AgentPoolGenerationExecutor();
+        executor.provisioner = provisioner;
+        executor.orchestrator = orchestrator;
+        executor.shardOwnership = new UnshardedOwnership();
+        executor.objectMapper = new ObjectMapper();
+        executor.meterRegistry = meterRegistry;
+        executor.tracer = OpenTelemetry.noop().getTracer("test");
+        executor.storageUrl = "http://storage";
+        executor.tiers = List.of("4Gi", "2Gi");
+        executor.minWorkers = 1;
+        executor.maxWorkers = 3;
+        executor.idleTimeout = Duration.ofMinutes(5);
+        executor.heartbeatTimeout = Duration.ofSeconds(20);
+        executor.authSecret = Optional.empty();
+        executor.sharedSecret = Optional.of(SECRET);
+        executor.init();
+        return executor;
+    }
+
+    @AfterEach
+    void cleanup() {
+        executor.shutdown();
+        provisioner.closeAll();
+    }
+
+    @Test
+    void testGenerationFinishesWithItsUrls() {
+        executor.scheduleGeneration(task("G-1", "quay.io/org/app:1.0", 0, null));
+
+        awaitUntil(() -> updates.contains("G-1 FINISHED Generation Succeeded [http://storage/sboms/G-1]"));
+        assertEquals(0, executor.countActiveExecutions());
+        assertEquals(List.of("2Gi"), provisioner.created);
+    }
+
+    @Test
+    void testOomRetryMovesUpATier() {
+        executor.scheduleGeneration(task("G-1", "quay.io/org/big:1.0", 0, null));
+        awaitUntil(() -> updates.contains("G-1 FAILED OOMKilled null"));
+
+        // The retry of the orchestrator comes with more memory
+        executor.scheduleGeneration(task("G-1", "quay.io/org/big:1.0", 1, "3Gi"));
+
+        awaitUntil(() -> updates.contains("G-1 FINISHED Generation Succeeded [http://storage/sboms/G-1]"));
+        assertEquals(List.of("2Gi", "4Gi"), provisioner.created);
+    }
+
+    @Test
+    void testPoolGrowsWithTheQueueAndShrinksWhenIdle() {
+        for (int i = 1; i <= 4; i++) {
+            executor.scheduleGeneration(task("G-" + i, "quay.io/org/slow:1.0", 0, null));
+        }
+        awaitUntil(() -> executor.countWorkers("2Gi", true) == 3);
+
+        // Capped by max-workers, the fourth one waits
+        assertEquals(3, provisioner.created.size());
+        assertEquals(4, executor.countActiveExecutions());
+        assertEquals(1, executor.countPending());
+
+        executor.idleTimeout = Duration.ZERO;
+        for (int i = 1; i <= 4; i++) {
+            executor.abortGeneration("G-" + i);
+        }
+        awaitUntil(() -> provisioner.list().size() == 1);
+
+        assertEquals(0, executor.countActiveExecutions());
+    }
+
+    @Test
+    void testLostWorkerFailsItsGenerationAsOomWhenItWasKilled() {
+        executor.scheduleGeneration(task("G-1", "quay.io/org/slow:1.0", 0, null));
+        awaitUntil(() -> executor.countWorkers("2Gi", true) == 1);
+
+        // The pod disappears, killed for its memory
+        provisioner.kill(provisioner.list().get(0).name());
+
+        awaitUntil(() -> updates.contains("G-1 FAILED OOMKilled null"));
+        assertEquals(1, meterRegistry.counter("sbomer.generator.agent-pool.lost").count());
+        assertEquals(0, executor.countActiveExecutions());
+    }
+
+    @Test
+    void testGenerationLeftOnAWorkerFailsAfterARestart() {
+        executor.scheduleGeneration(task("G-1", "quay.io/org/slow:1.0", 0, null));
+        awaitUntil(() -> executor.countWorkers("2Gi", true) == 1);
+
+        // The next generator knows nothing about G-1, the worker tells it with its hello
+        executor.shutdown();
+        executor = newExecutor();
+
+        awaitUntil(() -> updates.contains(
+                "G-1 FAILED Agent agent-1 was running it for a generator that restarted null"));
+        awaitUntil(() -> executor.countWorkers("2Gi", false) == 1 && executor.countWorkers("2Gi", true) == 0);
+        assertEquals(List.of("2Gi"), provisioner.created);
+    }
+
+    @Test
+    void testWorkerOfAnotherSecretIsNeverUsed() {
+        provisioner.secret = "secret-of-another-release";
+        executor.scheduleGeneration(task("G-1", "quay.io/org/app:1.0", 0, null));
+
+        for (int i = 0; i < 10; i++) {
+            executor.maintain();
+        }
+
+        assertEquals(1, provisioner.created.size());
+        assertEquals(0, executor.countWorkers("2Gi", false));
+        assertEquals(1, executor.countPending());
+        assertTrue(updates.isEmpty());
+    }
+
+    @Test
+    void testWorkerRejectsAConnectionWithoutTheSecret() throws IOException {
+        provisioner.create("2Gi");
+        int port = provisioner.list().get(0).port();
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        try (Socket socket = new Socket("localhost", port)) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            JsonNode challenge = objectMapper.readTree(in.readLine());
+            assertEquals("challenge", challenge.path("type").asText());
+
+            String proof = AgentWorker.proof("guessed".getBytes(StandardCharsets.UTF_8), "generator",
+                    challenge.path("nonce").asText());
+            out.write(objectMapper.writeValueAsString(Map.of("type", "auth", "proof", proof, "nonce", "n")) + "\n");
+            out.write(objectMapper.writeValueAsString(Map.of("type", "run", "job", "G-1/0", "image", "x")) + "\n");
+            out.flush();
+
+            // Closed without a hello, the run was never read
+            assertNull(in.readLine());
+        }
+    }
+
+    /**
+     * Runs the heartbeat until the condition holds, as the scheduler would.
+     */
+    private void awaitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(20).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met in time");
+            }
+            executor.maintain();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+
+    private static GenerationTask task(String generationId, String image, int retryCount, String memory) {
+        GenerationRequestSpec spec = GenerationRequestSpec.newBuilder()
+                .setGenerationId(generationId)
+                .setTarget(Target.newBuilder().setIdentifier(image).setType("CONTAINER").build())
+                .build();
+        return new GenerationTask(generationId, spec, retryCount, memory, null);
+    }
+
+    /**
+     * Starts the workers in this JVM, each with the pipeline script run with its tier as argument.
+     */
+    private static class LocalProvisioner implements AgentProvisioner {
+
+        private final Path script;
+        private final Path workRoot;
+        private final Map<String, AgentWorker> workers = new LinkedHashMap<>();
+        private final Map<String, Agent> agents = new LinkedHashMap<>();
+        private final Set<String> oomKilled = new HashSet<>();
+        final List<String> created = new ArrayList<>();
+        String secret;
+
+        LocalProvisioner(Path script, Path workRoot, String secret) {
+            this.script = script;
+            this.workRoot = workRoot;
+            this.secret = secret;
+        }
+
+        @Override
+        public synchronized List<Agent> list() {
+            return new ArrayList<>(agents.values());
+        }
+
+        @Override
+        public synchronized void create(String tier) {
+            String name = "agent-" + (created.size() + 1);
+            try {
+                AgentWorker worker = new AgentWorker(0, name, tier, List.of(script.toString(), tier), workRoot,
+                        secret.getBytes(StandardCharsets.UTF_8));
+                Thread thread = new Thread(worker::serve, name);
+                thread.setDaemon(true);
+                thread.start();
+                workers.put(name, worker);
+                agents.put(name, new Agent(name, tier, "localhost", worker.port(), true));
+                created.add(tier);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public synchronized void delete(String name) {
+            agents.remove(name);
+            close(workers.remove(name));
+        }
+
+        @Override
+        public void deleteOrphans(Set<String> replicas) {
+            // Not sharded
+        }
+
+        @Override
+        public synchronized boolean oomKilledSince(String name, Instant since) {
+            return oomKilled.contains(name);
+        }
+
+        /**
+         * The pod is gone for the API, its connection lingers until the generator notices.
+         */
+        synchronized void kill(String name) {
+            oomKilled.add(name);
+            agents.remove(name);
+        }
+
+        synchronized void closeAll() {
+            workers.values().forEach(LocalProvisioner::close);
+            workers.clear();
+            agents.clear();
+        }
+
+        private static void close(AgentWorker worker) {
+            try {
+                if (worker != null) {
+                    worker.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@EnableKubernetesMockClient(crud = true)
+class ConfigMapSlotAllocatorTest {
+
+    private static final String NAMESPACE = "test";
+    private static final String CONFIG_MAP = "syft-generator-slots";
+
+    static KubernetesClient client;
+
+    @BeforeEach
+    void cleanup() {
+        client.configMaps().inNamespace(NAMESPACE).withName(CONFIG_MAP).delete();
+    }
+
+    @Test
+    void testConcurrentReplicasNeverOvershootTheBudget() throws Exception {
+        int replicas = 4;
+        List<ConfigMapSlotAllocator> allocators = new ArrayList<>();
+        for (int i = 0; i < replicas; i++) {
+            allocators.add(createAllocator("replica-" + i, 10, Duration.ofMinutes(1)));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(replicas);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (ConfigMapSlotAllocator allocator : allocators) {
+            Callable<Integer> grab = () -> {
+                start.await();
+                int granted = 0;
+                // Everyone keeps asking, one slot at a time, long after the budget is gone
+                for (int i = 0; i < 8; i++) {
+                    granted += allocator.acquire(1);
+                }
+                return granted;
+            };
+            results.add(pool.submit(grab));
+        }
+        start.countDown();
+
+        int total = 0;
+        for (Future<Integer> result : results) {
+            total += result.get();
+        }
+        pool.shutdown();
+
+        assertEquals(10, total);
+        assertEquals(10, heldInConfigMap());
+    }
+
+    @Test
+    void testReleasedSlotsAreWrittenBackOnRenewal() {
+        ConfigMapSlotAllocator first = createAllocator("replica-a", 3, Duration.ofMinutes(1));
+        ConfigMapSlotAllocator second = createAllocator("replica-b", 3, Duration.ofMinutes(1));
+
+        assertEquals(3, first.acquire(5));
+        assertEquals(0, second.acquire(1));
+
+        first.release(2);
+        first.renew();
+
+        assertEquals(2, second.acquire(5));
+        assertEquals(3, heldInConfigMap());
+    }
+
+    @Test
+    void testSlotsOfACrashedReplicaExpire() throws InterruptedException {
+        ConfigMapSlotAllocator crashed = createAllocator("replica-a", 3, Duration.ofMillis(200));
+        ConfigMapSlotAllocator survivor = createAllocator("replica-b", 3, Duration.ofMinutes(1));
+
+        assertEquals(3, crashed.acquire(3));
+        assertEquals(0, survivor.acquire(1));
+
+        // No renewal from the crashed replica anymore
+        Thread.sleep(300);
+
+        assertEquals(3, survivor.acquire(3));
+        assertEquals(3, heldInConfigMap());
+    }
+
+    private int heldInConfigMap() {
+        return client.configMaps().inNamespace(NAMESPACE).withName(CONFIG_MAP).get().getData().values().stream()
+                .mapToInt(value -> ConfigMapSlotAllocator.Holder.parse(value).held())
+                .sum();
+    }
+
+    private static ConfigMapSlotAllocator createAllocator(String replicaId, int budget, Duration leaseDuration) {
+        ConfigMapSlotAllocator allocator = new ConfigMapSlotAllocator();
+        allocator.kubernetesClient = client;
+        allocator.meterRegistry = new SimpleMeterRegistry();
+        allocator.namespace = NAMESPACE;
+        allocator.replicaId = replicaId;
+        allocator.budget = budget;
+        allocator.configMapName = CONFIG_MAP;
+        allocator.leaseDuration = leaseDuration;
+        allocator.maxConflictRetries = 100;
+        allocator.init();
+        return allocator;
+    }
+}
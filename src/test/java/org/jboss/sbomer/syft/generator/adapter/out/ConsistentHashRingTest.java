@@ -0,0 +1,53 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 10_000;
+
+    @Test
+    void testGenerationsAreSpreadEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c", "d"), 64);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.ownerOf("generation-" + i), 1, Integer::sum);
+        }
+
+        assertEquals(4, counts.size());
+        // A fair share is 25%, allow for the randomness of 64 places per replica
+        counts.values().forEach(count -> assertTrue(count > KEYS * 0.15 && count < KEYS * 0.35, "Uneven share: " + counts));
+    }
+
+    @Test
+    void testNewReplicaOnlyTakesGenerationsFromOthers() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c", "d"), 64);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b", "c", "d", "e"), 64);
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "generation-" + i;
+            String owner = after.ownerOf(key);
+            if (!owner.equals(before.ownerOf(key))) {
+                assertEquals("e", owner);
+                moved++;
+            }
+        }
+        // Roughly a fifth moves, nothing is shuffled between the existing replicas
+        assertTrue(moved > KEYS * 0.1 && moved < KEYS * 0.3, "Moved: " + moved);
+    }
+
+    @Test
+    void testEmptyRingHasNoOwner() {
+        assertNull(new ConsistentHashRing(List.of(), 64).ownerOf("generation-1"));
+    }
+}
@@ -0,0 +1,77 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.jboss.sbomer.syft.generator.core.port.spi.ResultCacheStore.Entry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileResultCacheStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private FileResultCacheStore store;
+
+    @BeforeEach
+    void setup() {
+        store = new FileResultCacheStore();
+        store.directory = directory;
+        store.ttl = Duration.ofDays(7);
+        store.maxEntries = 100;
+    }
+
+    @Test
+    void testEvictionDropsExpiredEntries() throws Exception {
+        store.put("img@sha256:old", entry());
+        store.put("img@sha256:new", entry());
+        age("img@sha256:old", Duration.ofDays(8));
+        Path leftover = Files.createTempFile(directory, "entry-", ".tmp");
+        Files.setLastModifiedTime(leftover, FileTime.from(Instant.now().minus(Duration.ofDays(8))));
+
+        store.evict();
+
+        assertFalse(store.get("img@sha256:old").isPresent());
+        assertTrue(store.get("img@sha256:new").isPresent());
+        assertFalse(Files.exists(leftover));
+    }
+
+    @Test
+    void testEvictionKeepsTheNewestEntriesWithinTheBound() throws Exception {
+        store.maxEntries = 2;
+        for (int i = 0; i < 4; i++) {
+            store.put("img@sha256:" + i, entry());
+            age("img@sha256:" + i, Duration.ofHours(4 - i));
+        }
+
+        store.evict();
+
+        assertFalse(store.get("img@sha256:0").isPresent());
+        assertFalse(store.get("img@sha256:1").isPresent());
+        assertTrue(store.get("img@sha256:2").isPresent());
+        assertTrue(store.get("img@sha256:3").isPresent());
+    }
+
+    private void age(String key, Duration age) throws Exception {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                if (Files.readAllLines(file).get(0).equals(key)) {
+                    Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(age)));
+                }
+            }
+        }
+    }
+
+    private static Entry entry() {
+        return new Entry(List.of("http://storage/sboms/G-1"), Instant.now());
+    }
+}
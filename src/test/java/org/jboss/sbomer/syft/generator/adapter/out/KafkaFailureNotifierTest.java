@@ -0,0 +1,114 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.microprofile.reactive.messaging.Emitter;
+import org.jboss.sbomer.events.common.FailureSpec;
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+import org.jboss.sbomer.events.common.Target;
+import org.jboss.sbomer.events.error.ProcessingFailed;
+import org.jboss.sbomer.syft.generator.core.utility.FailureUtility;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class KafkaFailureNotifierTest {
+
+    private final List<ProcessingFailed> sent = new CopyOnWriteArrayList<>();
+    private KafkaFailureNotifier notifier;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        Emitter<ProcessingFailed> emitter = Mockito.mock(Emitter.class);
+        Mockito.doAnswer(invocation -> sent.add(invocation.getArgument(0)))
+                .when(emitter).send(Mockito.any(ProcessingFailed.class));
+
+        notifier = new KafkaFailureNotifier();
+        notifier.emitter = emitter;
+        notifier.meterRegistry = new SimpleMeterRegistry();
+        notifier.aggregationEnabled = true;
+        notifier.summaryInterval = Duration.ofMinutes(1);
+        notifier.summaryMaxIds = 2;
+        notifier.init();
+    }
+
+    @Test
+    void testRepeatedFailuresAreSummarized() {
+        for (int i = 1; i <= 4; i++) {
+            notifier.notify(registryDown(), "G" + i, createSpec());
+        }
+
+        // Only the first one goes out in full, with its source event
+        assertEquals(1, sent.size());
+        assertEquals("G1", sent.get(0).getContext().getCorrelationId());
+        assertNotNull(sent.get(0).getErrorData().getSourceEvent());
+        assertEquals(3.0, notifier.meterRegistry.counter("sbomer.generator.failures.suppressed").count());
+
+        notifier.publishSummaries();
+
+        assertEquals(2, sent.size());
+        Map<String, String> details = sent.get(1).getErrorData().getFailure().getDetails();
+        assertEquals("3", details.get("occurrences"));
+        assertEquals("G2,G3", details.get("generationIds"));
+
+        // Quiet for a whole interval, so the next occurrence is published in full again
+        notifier.publishSummaries();
+        assertEquals(2, sent.size());
+        notifier.notify(registryDown(), "G5", null);
+        assertEquals(3, sent.size());
+        assertEquals("G5", sent.get(2).getContext().getCorrelationId());
+    }
+
+    @Test
+    void testDifferentCausesArePublishedSeparately() {
+        notifier.notify(registryDown(), "G1", null);
+        notifier.notify(FailureUtility.buildFailureSpecFromException(new IllegalArgumentException("bad image")), "G2", null);
+
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    void testSourceEventsSerializeTheSameWithReusedEncoders() {
+        notifier.aggregationEnabled = false;
+        notifier.notify(registryDown(), "G1", createSpec());
+        notifier.notify(registryDown(), "G2", createSpec());
+
+        assertEquals(sent.get(0).getErrorData().getSourceEvent(), sent.get(1).getErrorData().getSourceEvent());
+    }
+
+    @Test
+    void testStackTraceIsCapped() {
+        Exception deep = new IllegalStateException("deep");
+        for (int i = 0; i < 200; i++) {
+            deep = new IllegalStateException("wrapper " + i, deep);
+        }
+
+        FailureSpec failure = FailureUtility.buildFailureSpecFromException(deep);
+
+        String stackTrace = failure.getDetails().get("stackTrace");
+        assertTrue(stackTrace.length() <= FailureUtility.MAX_STACK_TRACE_LENGTH + 20);
+        assertTrue(stackTrace.endsWith("(truncated)\n"));
+    }
+
+    private static FailureSpec registryDown() {
+        // Same throw site every time, like a failing registry hit by every generation
+        return FailureUtility.buildFailureSpecFromException(new IllegalStateException("registry unavailable"));
+    }
+
+    private static GenerationRequestSpec createSpec() {
+        return GenerationRequestSpec.newBuilder()
+                .setGenerationId("G")
+                .setTarget(Target.newBuilder().setIdentifier("quay.io/org/image:1").setType("CONTAINER").build())
+                .build();
+    }
+}
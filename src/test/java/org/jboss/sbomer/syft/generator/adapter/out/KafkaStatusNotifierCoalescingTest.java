@@ -0,0 +1,101 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.reactive.messaging.Emitter;
+import org.eclipse.microprofile.reactive.messaging.Message;
+import org.jboss.sbomer.events.generator.GenerationUpdate;
+import org.jboss.sbomer.syft.generator.core.domain.GenerationStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.reactive.messaging.kafka.api.OutgoingKafkaRecordMetadata;
+
+class KafkaStatusNotifierCoalescingTest {
+
+    private final List<Message<GenerationUpdate>> sent = new CopyOnWriteArrayList<>();
+    private final CountDownLatch releasing = new CountDownLatch(1);
+    private KafkaStatusNotifier notifier;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        Emitter<GenerationUpdate> emitter = Mockito.mock(Emitter.class);
+        Mockito.doAnswer(invocation -> {
+            Message<GenerationUpdate> message = invocation.getArgument(0);
+            if (Thread.currentThread().getName().equals("status-coalescer")) {
+                // Slow release, so a terminal update can race it
+                releasing.countDown();
+                Thread.sleep(300);
+            }
+            return sent.add(message);
+        }).when(emitter).send(Mockito.<Message<GenerationUpdate>>any());
+
+        notifier = new KafkaStatusNotifier();
+        notifier.emitter = emitter;
+        notifier.meterRegistry = new SimpleMeterRegistry();
+        notifier.coalescingWindow = Duration.ofMillis(200);
+        notifier.init();
+    }
+
+    @AfterEach
+    void shutdown() {
+        notifier.flushHeld();
+    }
+
+    @Test
+    void testGeneratingFollowedByFinishedCollapses() {
+        notifier.notifyStatus("G1", GenerationStatus.GENERATING, "Scheduled", null);
+        notifier.notifyStatus("G1", GenerationStatus.FINISHED, "Done", List.of("http://url"));
+
+        assertEquals(List.of("FINISHED"), statuses());
+        assertEquals("G1", keyOf(sent.get(0)));
+        assertEquals(1.0, notifier.meterRegistry.counter("sbomer.generator.notifier.coalesced").count());
+    }
+
+    @Test
+    void testGeneratingIsSentAfterTheWindow() throws InterruptedException {
+        notifier.notifyStatus("G2", GenerationStatus.GENERATING, "Scheduled", null);
+        assertEquals(List.of(), statuses());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("GENERATING"), statuses());
+
+        // The terminal update still follows, as a second record with the same key
+        notifier.notifyStatus("G2", GenerationStatus.FINISHED, "Done", List.of("http://url"));
+        assertEquals(List.of("GENERATING", "FINISHED"), statuses());
+        assertEquals("G2", keyOf(sent.get(1)));
+    }
+
+    @Test
+    void testTerminalUpdateRacingTheReleaseIsSentLast() throws InterruptedException {
+        notifier.notifyStatus("G3", GenerationStatus.GENERATING, "Scheduled", null);
+        assertTrue(releasing.await(5, TimeUnit.SECONDS));
+
+        // The release is sending right now, the terminal update has to wait for it
+        notifier.notifyStatus("G3", GenerationStatus.FINISHED, "Done", List.of("http://url"));
+
+        assertEquals(List.of("GENERATING", "FINISHED"), statuses());
+    }
+
+    private List<String> statuses() {
+        return sent.stream().map(m -> m.getPayload().getData().getStatus()).toList();
+    }
+
+    private static String keyOf(Message<GenerationUpdate> message) {
+        return (String) message.getMetadata(OutgoingKafkaRecordMetadata.class).orElseThrow().getKey();
+    }
+}
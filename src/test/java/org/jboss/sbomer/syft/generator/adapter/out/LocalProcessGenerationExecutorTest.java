@@ -0,0 +1,187 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+import org.jboss.sbomer.events.common.Target;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.port.api.GenerationOrchestrator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.api.OpenTelemetry;
+
+/**
+ * Runs the executor with a fake pipeline standing in for skopeo, syft and the upload.
+ */
+class LocalProcessGenerationExecutorTest {
+
+    // Reports its data segment limit as the SBOM URL, fails "big" images the ways syft does when out of memory,
+    // "noisy" ones for another reason after mentioning memory, hangs on "slow" ones
+    private static final String PIPELINE = """
+            #!/bin/sh
+            echo "scanning ${IMAGE}"
+            case "${IMAGE}" in
+              *killed*) exit 137 ;;
+              *big*) echo "fatal error: runtime: out of memory" >&2; exit 2 ;;
+              *broken*) echo "registry unreachable"; exit 1 ;;
+              *noisy*) echo "layer skipped, out of memory budget"; echo "registry unreachable"; exit 1 ;;
+              *slow*) sleep 30 ;;
+            esac
+            printf '{"bom.json":"%s/sboms/%s","limit":"%s"}' "${STORAGE_URL}" "${GENERATION_ID}" "$(ulimit -d)" > "${RESULT}"
+            """;
+
+    @TempDir
+    Path tempDir;
+
+    private final List<String> updates = new CopyOnWriteArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+    private LocalProcessGenerationExecutor executor;
+
+    @BeforeEach
+    void setup() throws IOException {
+        Path script = tempDir.resolve("pipeline.sh");
+        Files.writeString(script, PIPELINE);
+        Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwx------"));
+        GenerationOrchestrator orchestrator = mock(GenerationOrchestrator.class);
+        doAnswer(invocation -> updates.add(invocation.getArgument(0) + " " + invocation.getArgument(1) + " "
+                + invocation.getArgument(2) + " " + invocation.getArgument(3)))
+                .when(orchestrator).handleUpdate(anyString(), any(), any(), any());
+        meterRegistry = new SimpleMeterRegistry();
+
+        executor = new LocalProcessGenerationExecutor();
+        executor.orchestrator = orchestrator;
+        executor.objectMapper = new ObjectMapper();
+        executor.meterRegistry = meterRegistry;
+        executor.tracer = OpenTelemetry.noop().getTracer("test");
+        executor.storageUrl = "http://storage";
+        executor.defaultMemory = "1Gi";
+        executor.command = List.of(script.toString());
+        executor.maxProcesses = 1;
+        executor.workDir = Optional.of(tempDir.resolve("work"));
+        executor.toolsDir = Optional.empty();
+        executor.memoryLimit = "ulimit";
+        executor.cgroupRoot = tempDir.resolve("cgroup");
+    }
+
+    @AfterEach
+    void cleanup() {
+        executor.shutdown();
+    }
+
+    @Test
+    void testFinishedPipelineReportsItsUrlsWithinItsMemory() throws IOException {
+        executor.init();
+        executor.scheduleGeneration(task("G-1", "quay.io/org/app:1.0", "2Gi"));
+
+        // 2Gi in KiB
+        awaitUntil(() -> updates.contains("G-1 FINISHED Generation Succeeded [http://storage/sboms/G-1, 2097152]"));
+        assertEquals(0, executor.countActiveExecutions());
+        try (var workspaces = Files.list(tempDir.resolve("work"))) {
+            assertEquals(0, workspaces.count());
+        }
+    }
+
+    @Test
+    void testOutOfMemoryFailsAsOomKilled() {
+        executor.init();
+        executor.scheduleGeneration(task("G-1", "quay.io/org/killed:1.0", null));
+        executor.scheduleGeneration(task("G-2", "quay.io/org/big:1.0", null));
+        executor.scheduleGeneration(task("G-3", "quay.io/org/broken:1.0", null));
+        executor.scheduleGeneration(task("G-4", "quay.io/org/noisy:1.0", null));
+
+        awaitUntil(() -> updates.size() == 4);
+        assertTrue(updates.contains("G-1 FAILED OOMKilled null"));
+        assertTrue(updates.contains("G-2 FAILED OOMKilled null"));
+        assertTrue(updates.contains("G-3 FAILED Pipeline failed with exit code 1: registry unreachable null"));
+        assertTrue(updates.contains("G-4 FAILED Pipeline failed with exit code 1: registry unreachable null"));
+        assertEquals(2, meterRegistry.counter("sbomer.generator.local.oom").count());
+    }
+
+    @Test
+    void testCgroupMemoryEventsDecideOnOomKilled() throws IOException {
+        executor.memoryLimit = "cgroup";
+        // The cgroups of the generations as the kernel would have left them, with the OOM kills it counted
+        memoryEvents("G-1_0", 1);
+        memoryEvents("G-2_0", 0);
+        memoryEvents("G-3_0", 0);
+        executor.init();
+        executor.scheduleGeneration(task("G-1", "quay.io/org/killed:1.0", null));
+        executor.scheduleGeneration(task("G-2", "quay.io/org/killed:1.0", null));
+        executor.scheduleGeneration(task("G-3", "quay.io/org/big:1.0", "2Gi"));
+
+        awaitUntil(() -> updates.size() == 3);
+        assertTrue(updates.contains("G-1 FAILED OOMKilled null"));
+        assertTrue(updates.contains("G-2 FAILED Pipeline failed with exit code 137: scanning quay.io/org/killed:1.0 null"));
+        assertTrue(updates.contains("G-3 FAILED Pipeline failed with exit code 2: fatal error: runtime: out of memory null"));
+        assertEquals(1, meterRegistry.counter("sbomer.generator.local.oom").count());
+        // Unlike the cgroup filesystem, the fake one keeps the files of a removed cgroup
+        assertEquals("2147483648", Files.readString(tempDir.resolve("cgroup/G-3_0/memory.max")));
+    }
+
+    @Test
+    void testPoolIsBoundedAndAbortStopsThePipeline() {
+        executor.init();
+        executor.scheduleGeneration(task("G-1", "quay.io/org/slow:1.0", null));
+        executor.scheduleGeneration(task("G-2", "quay.io/org/app:1.0", null));
+        awaitUntil(() -> executor.countRunning() == 1);
+
+        // The second one waits for the only process slot
+        assertEquals(2, executor.countActiveExecutions());
+
+        executor.abortGeneration("G-1");
+
+        awaitUntil(() -> updates.contains("G-2 FINISHED Generation Succeeded [http://storage/sboms/G-2, 1048576]"));
+        assertEquals(1, updates.size());
+        assertEquals(0, executor.countActiveExecutions());
+    }
+
+    private void memoryEvents(String cgroup, int oomKills) throws IOException {
+        Path dir = Files.createDirectories(tempDir.resolve("cgroup").resolve(cgroup));
+        Files.writeString(dir.resolve("memory.events"), "low 0\nhigh 0\nmax 3\noom 1\noom_kill " + oomKills + "\n");
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(15).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met in time");
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+
+    private static GenerationTask task(String generationId, String image, String memory) {
+        GenerationRequestSpec spec = GenerationRequestSpec.newBuilder()
+                .setGenerationId(generationId)
+                .setTarget(Target.newBuilder().setIdentifier(image).setType("CONTAINER").build())
+                .build();
+        return new GenerationTask(generationId, spec, 0, memory, null);
+    }
+}
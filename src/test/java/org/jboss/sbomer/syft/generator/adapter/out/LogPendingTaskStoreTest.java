@@ -0,0 +1,204 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+import org.jboss.sbomer.events.common.Target;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogPendingTaskStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private LogPendingTaskStore store;
+
+    @AfterEach
+    void closeStore() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void testReplayRestoresUndispatchedTasksInOrder() {
+        store = open(1024 * 1024);
+        store.append(task("G1"));
+        store.append(task("G2"));
+        store.append(task("G3"));
+        store.markDispatched("G2");
+
+        List<GenerationTask> replayed = reopen(1024 * 1024).replay(Integer.MAX_VALUE);
+
+        assertEquals(List.of("G1", "G3"), replayed.stream().map(GenerationTask::generationId).toList());
+        assertEquals("img:G1", replayed.get(0).spec().getTarget().getIdentifier());
+    }
+
+    @Test
+    void testRequeuedTaskKeepsItsPosition() {
+        store = open(1024 * 1024);
+        store.append(task("G1"));
+        store.append(task("G2"));
+        // OOM retry of G1 re-queues it with more memory
+        store.append(new GenerationTask("G1", spec("G1"), 1, "2Gi", null));
+
+        List<GenerationTask> replayed = reopen(1024 * 1024).replay(Integer.MAX_VALUE);
+
+        assertEquals(List.of("G1", "G2"), replayed.stream().map(GenerationTask::generationId).toList());
+        assertEquals(1, replayed.get(0).retryCount());
+        assertEquals("2Gi", replayed.get(0).memoryOverride());
+    }
+
+    @Test
+    void testAppendAllIsReplayedInOrder() {
+        store = open(1024 * 1024);
+        store.append(task("G1"));
+        store.appendAll(List.of(task("G2"), task("G3"), task("G4")));
+        store.markDispatched("G3");
+
+        List<GenerationTask> replayed = reopen(1024 * 1024).replay(Integer.MAX_VALUE);
+
+        assertEquals(List.of("G1", "G2", "G4"), replayed.stream().map(GenerationTask::generationId).toList());
+    }
+
+    @Test
+    void testMarkDispatchedAllSkipsTheUnknownOnes() {
+        store = open(1024 * 1024);
+        store.appendAll(List.of(task("G1"), task("G2"), task("G3")));
+        // A batch may hold generations that never were in this log
+        store.markDispatchedAll(List.of("G1", "G-UNKNOWN", "G3"));
+
+        List<GenerationTask> replayed = reopen(1024 * 1024).replay(Integer.MAX_VALUE);
+
+        assertEquals(List.of("G2"), replayed.stream().map(GenerationTask::generationId).toList());
+    }
+
+    @Test
+    void testTornTailIsIgnored() throws IOException {
+        store = open(1024 * 1024);
+        store.append(task("G1"));
+        store.append(task("G2"));
+        store.close();
+        store = null;
+
+        // Corrupt the last byte of the second record, as if the pod died mid-write
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            channel.read(header, 0);
+            int secondRecord = 8 + header.flip().getInt();
+            header.clear();
+            channel.read(header, secondRecord);
+            int end = secondRecord + 8 + header.flip().getInt();
+            channel.write(ByteBuffer.wrap(new byte[] { 0x7f }), end - 1);
+        }
+
+        store = open(1024 * 1024);
+        List<GenerationTask> replayed = store.replay(Integer.MAX_VALUE);
+
+        assertEquals(List.of("G1"), replayed.stream().map(GenerationTask::generationId).toList());
+    }
+
+    @Test
+    void testCompactionDropsDispatchedSegments() throws IOException {
+        store = open(4096);
+        for (int i = 0; i < 200; i++) {
+            store.append(task("G" + i));
+        }
+        for (int i = 0; i < 199; i++) {
+            store.markDispatched("G" + i);
+        }
+        int before = segments().size();
+
+        store.compact();
+
+        assertTrue(segments().size() < before, "Expected compaction to remove segments");
+        assertEquals(List.of("G199"), reopen(4096).replay(Integer.MAX_VALUE).stream().map(GenerationTask::generationId).toList());
+    }
+
+    @Test
+    void testCompactionKeepsRelocatedTasksInOrder() throws IOException {
+        store = open(4096);
+        for (int i = 0; i < 100; i++) {
+            store.append(task("G" + i));
+        }
+        // A few early tasks are still pending when their segments get compacted
+        for (int i = 0; i < 100; i++) {
+            if (i != 1 && i != 7 && i != 99) {
+                store.markDispatched("G" + i);
+            }
+        }
+        List<Path> before = segments();
+
+        store.compact();
+
+        assertTrue(segments().stream().noneMatch(before.get(0)::equals), "Expected the head segment to be deleted");
+        assertEquals(List.of("G1", "G7", "G99"), ids(reopen(4096).replay(Integer.MAX_VALUE)));
+    }
+
+    @Test
+    void testReplayHandsOutTheBacklogInChunks() {
+        store = open(1024 * 1024);
+        for (int i = 0; i < 5; i++) {
+            store.append(task("G" + i));
+        }
+
+        reopen(1024 * 1024);
+        assertEquals(List.of("G0", "G1"), ids(store.replay(2)));
+        // Queued again by a redelivered request before its turn, it must not be handed out twice
+        store.append(task("G3"));
+        assertEquals(List.of("G2", "G4"), ids(store.replay(2)));
+        assertEquals(List.of(), store.replay(2));
+    }
+
+    private LogPendingTaskStore reopen(int segmentSize) {
+        store.close();
+        store = open(segmentSize);
+        return store;
+    }
+
+    private LogPendingTaskStore open(int segmentSize) {
+        LogPendingTaskStore logStore = new LogPendingTaskStore();
+        logStore.directory = directory;
+        logStore.segmentSize = segmentSize;
+        logStore.groupCommitDelay = Duration.ZERO;
+        logStore.compactionRatio = 0.25;
+        logStore.open();
+        return logStore;
+    }
+
+    private static List<String> ids(List<GenerationTask> tasks) {
+        return tasks.stream().map(GenerationTask::generationId).toList();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private GenerationTask task(String generationId) {
+        return new GenerationTask(generationId, spec(generationId), null);
+    }
+
+    private GenerationRequestSpec spec(String generationId) {
+        return GenerationRequestSpec.newBuilder()
+                .setGenerationId(generationId)
+                .setTarget(Target.newBuilder().setIdentifier("img:" + generationId).setType("CONTAINER").build())
+                .build();
+    }
+}
@@ -0,0 +1,183 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.sbomer.syft.generator.core.domain.model.Platform;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class RegistryPlatformResolverTest {
+
+    private static final String INDEX = """
+            {"schemaVersion": 2, "mediaType": "application/vnd.oci.image.index.v1+json", "manifests": [
+              {"digest": "sha256:amd", "platform": {"os": "linux", "architecture": "amd64"}},
+              {"digest": "sha256:arm", "platform": {"os": "linux", "architecture": "arm64", "variant": "v8"}},
+              {"digest": "sha256:att", "platform": {"os": "unknown", "architecture": "unknown"}}
+            ]}""";
+    private static final String AMD_MANIFEST = """
+            {"schemaVersion": 2, "config": {"digest": "sha256:cfg-amd", "size": 100},
+             "layers": [{"digest": "sha256:l1", "size": 1000}, {"digest": "sha256:l2", "size": 2000}]}""";
+    private static final String ARM_MANIFEST = """
+            {"schemaVersion": 2, "config": {"digest": "sha256:cfg-arm", "size": 50},
+             "layers": [{"digest": "sha256:l3", "size": 500}]}""";
+    private static final String SINGLE_MANIFEST = """
+            {"schemaVersion": 2, "mediaType": "application/vnd.oci.image.manifest.v1+json",
+             "config": {"digest": "sha256:cfg-single", "size": 10}, "layers": [{"digest": "sha256:l4", "size": 90}]}""";
+    private static final String SINGLE_CONFIG = """
+            {"os": "linux", "architecture": "arm", "variant": "v7", "history": [{"created_by": "RUN make"}]}""";
+
+    private HttpServer registry;
+    private String host;
+    // Path -> requests the registry served
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private volatile String requiredToken;
+    private RegistryPlatformResolver resolver;
+
+    @BeforeEach
+    void startRegistry() throws IOException {
+        registry = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        host = "localhost:" + registry.getAddress().getPort();
+        registry.createContext("/token", exchange -> respond(exchange, 200, "{\"token\": \"t0k3n\", \"expires_in\": 300}", null));
+        registry.createContext("/v2/", this::serve);
+        registry.createContext("/storage/", exchange -> respond(exchange, 200, SINGLE_CONFIG, null));
+        registry.start();
+
+        resolver = new RegistryPlatformResolver();
+        resolver.objectMapper = new ObjectMapper();
+        resolver.meterRegistry = new SimpleMeterRegistry();
+        resolver.timeout = Duration.ofSeconds(5);
+        resolver.tagTtl = Duration.ofMinutes(5);
+        resolver.maxEntries = 100;
+        resolver.insecureRegistries = Optional.of(List.of(host));
+        resolver.authFile = Optional.empty();
+        resolver.init();
+    }
+
+    @AfterEach
+    void stopRegistry() {
+        registry.stop(0);
+    }
+
+    @Test
+    void testIndexIsResolvedToItsPlatformsWithTheirSizes() {
+        List<Platform> platforms = resolver.resolvePlatforms(host + "/org/multi:1.0");
+
+        // The attestation entry is not a platform
+        assertEquals(List.of(
+                new Platform("linux", "amd64", null, "sha256:amd", 3100),
+                new Platform("linux", "arm64", "v8", "sha256:arm", 550)), platforms);
+    }
+
+    @Test
+    void testSecondResolutionIsServedFromTheCaches() {
+        resolver.resolvePlatforms(host + "/org/multi:1.0");
+        int served = totalRequests();
+
+        List<Platform> platforms = resolver.resolvePlatforms(host + "/org/multi:1.0");
+        // Pinned to the digest of the index, which is cached since the tag was resolved
+        resolver.resolvePlatforms(host + "/org/multi@sha256:index");
+
+        assertEquals(2, platforms.size());
+        assertEquals(served, totalRequests());
+        assertEquals(1.0, resolver.meterRegistry.get("sbomer.generator.resolver.cache.requests")
+                .tags("cache", "tag", "result", "miss").counter().count());
+        assertEquals(1.0, resolver.meterRegistry.get("sbomer.generator.resolver.cache.requests")
+                .tags("cache", "tag", "result", "hit").counter().count());
+    }
+
+    @Test
+    void testSingleManifestTakesItsPlatformFromTheConfig() {
+        List<Platform> platforms = resolver.resolvePlatforms(host + "/org/single:2");
+
+        assertEquals(List.of(new Platform("linux", "arm", "v7", "sha256:single", 100)), platforms);
+        // The config blob was redirected to the storage behind the registry
+        assertEquals(1, requests.get("/storage/cfg-single").get());
+    }
+
+    @Test
+    void testBearerTokenIsRequestedOnceAndReused() {
+        requiredToken = "Bearer t0k3n";
+
+        assertEquals(2, resolver.resolvePlatforms(host + "/org/multi:1.0").size());
+        assertEquals(1, resolver.resolvePlatforms(host + "/org/single:2").size());
+
+        assertEquals(2, requests.get("/token").get());
+    }
+
+    @Test
+    void testTagIsPinnedToTheDigestOfItsManifest() {
+        assertEquals(host + "/org/multi@sha256:index", resolver.resolveDigest(host + "/org/multi:1.0"));
+        assertEquals(host + "/org/multi@sha256:index", resolver.resolveDigest(host + "/org/multi:1.0@sha256:index"));
+        assertNull(resolver.resolveDigest(host + "/org/missing:1"));
+    }
+
+    @Test
+    void testUnknownImageResolvesToNoPlatform() {
+        assertTrue(resolver.resolvePlatforms(host + "/org/missing:1").isEmpty());
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        count(path);
+        if (requiredToken != null && !requiredToken.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            String repository = path.substring("/v2/".length(), path.indexOf("/", "/v2/org/".length()));
+            exchange.getResponseHeaders().add("WWW-Authenticate", "Bearer realm=\"http://" + host
+                    + "/token\",service=\"stand-in\",scope=\"repository:" + repository + ":pull\"");
+            respond(exchange, 401, "{}", null);
+            return;
+        }
+        switch (path) {
+            case "/v2/org/multi/manifests/1.0", "/v2/org/multi/manifests/sha256:index" -> respond(exchange, 200, INDEX, "sha256:index");
+            case "/v2/org/multi/manifests/sha256:amd" -> respond(exchange, 200, AMD_MANIFEST, null);
+            case "/v2/org/multi/manifests/sha256:arm" -> respond(exchange, 200, ARM_MANIFEST, null);
+            case "/v2/org/single/manifests/2" -> respond(exchange, 200, SINGLE_MANIFEST, "sha256:single");
+            case "/v2/org/single/blobs/sha256:cfg-single" -> {
+                exchange.getResponseHeaders().add("Location", "http://" + host + "/storage/cfg-single");
+                respond(exchange, 307, "", null);
+            }
+            default -> respond(exchange, 404, "{}", null);
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body, String digest) throws IOException {
+        if (!exchange.getRequestURI().getPath().startsWith("/v2/")) {
+            count(exchange.getRequestURI().getPath());
+        }
+        if (digest != null) {
+            exchange.getResponseHeaders().add("Docker-Content-Digest", digest);
+        }
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, content.length == 0 ? -1 : content.length);
+        if (content.length > 0) {
+            exchange.getResponseBody().write(content);
+        }
+        exchange.close();
+    }
+
+    private void count(String path) {
+        requests.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private int totalRequests() {
+        return requests.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+}
@@ -0,0 +1,103 @@
+package org.jboss.sbomer.syft.generator.adapter.out;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TaskRunCleanupWorkerTest {
+
+    private final List<TaskRunCleanupWorker.Batch> deleted = new CopyOnWriteArrayList<>();
+    private final AtomicInteger failuresToInject = new AtomicInteger();
+    private TaskRunCleanupWorker worker;
+
+    @BeforeEach
+    void setup() {
+        worker = new TaskRunCleanupWorker() {
+            @Override
+            void delete(Batch batch) {
+                if (failuresToInject.getAndDecrement() > 0) {
+                    throw new IllegalStateException("API server unavailable");
+                }
+                deleted.add(batch);
+            }
+        };
+        worker.meterRegistry = new SimpleMeterRegistry();
+        worker.batchSize = 2;
+        worker.flushInterval = Duration.ofHours(1);
+        worker.maxInFlight = 2;
+        worker.maxAttempts = 3;
+        worker.initialBackoff = Duration.ofMillis(10);
+        worker.init();
+    }
+
+    @AfterEach
+    void shutdown() {
+        worker.shutdown();
+    }
+
+    @Test
+    void testDrainGroupsByAttemptAndDeduplicates() {
+        worker.batchSize = 100;
+        worker.enqueue("A", "0");
+        worker.enqueue("A", "0");
+        worker.enqueue("B", "0");
+        worker.enqueue("C", "1");
+        worker.enqueue("D", null);
+
+        List<TaskRunCleanupWorker.Batch> batches = worker.drain();
+
+        assertEquals(List.of(
+                new TaskRunCleanupWorker.Batch("0", List.of("A", "B")),
+                new TaskRunCleanupWorker.Batch("1", List.of("C")),
+                new TaskRunCleanupWorker.Batch(null, List.of("D"))), batches);
+        assertEquals(4, worker.depth());
+    }
+
+    @Test
+    void testFullBatchIsDeletedWithoutWaitingForTheInterval() {
+        worker.enqueue("A", "0");
+        worker.enqueue("B", "0");
+
+        await(() -> !deleted.isEmpty());
+        assertEquals(new TaskRunCleanupWorker.Batch("0", List.of("A", "B")), deleted.get(0));
+        await(() -> worker.depth() == 0);
+    }
+
+    @Test
+    void testFailedDeleteIsRetried() {
+        failuresToInject.set(2);
+        worker.enqueue("A", "0");
+        worker.flush();
+
+        await(() -> !deleted.isEmpty());
+        Set<String> ids = deleted.stream().flatMap(b -> b.generationIds().stream()).collect(Collectors.toSet());
+        assertEquals(Set.of("A"), ids);
+        assertEquals(2.0, worker.meterRegistry.counter("sbomer.generator.cleanup.failures").count());
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met in time");
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
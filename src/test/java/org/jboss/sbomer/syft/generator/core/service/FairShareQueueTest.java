@@ -0,0 +1,106 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+import org.jboss.sbomer.events.common.Target;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FairShareQueueTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private FairShareQueue queue;
+
+    @BeforeEach
+    void setup() {
+        queue = new FairShareQueue();
+        queue.weightRules = Optional.of(List.of("quay.io/interactive=3"));
+        queue.priorityRules = Optional.of(List.of("quay.io/bulk/app:urgent=2"));
+        queue.agingInterval = Duration.ofMinutes(5);
+        queue.maxWait = Duration.ofHours(2);
+        queue.retryKeepsPosition = true;
+        queue.clock = now::get;
+        queue.init();
+    }
+
+    @Test
+    void testBulkKeyDoesNotBlockOtherKeys() {
+        for (int i = 0; i < 100; i++) {
+            queue.add(task("B" + i, "quay.io/bulk/app:" + i));
+        }
+        queue.add(task("I1", "quay.io/other/app:1"));
+
+        // The single task of the other key is served right after the first bulk one, not after all 100
+        List<String> firstTwo = List.of(queue.poll().generationId(), queue.poll().generationId());
+        assertTrue(firstTwo.contains("I1"));
+    }
+
+    @Test
+    void testSlotsAreSplitByWeight() {
+        for (int i = 0; i < 40; i++) {
+            queue.add(task("B" + i, "quay.io/bulk/app:" + i));
+            queue.add(task("I" + i, "quay.io/interactive/app:" + i));
+        }
+
+        List<String> served = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            served.add(queue.poll().generationId());
+        }
+
+        long interactive = served.stream().filter(id -> id.startsWith("I")).count();
+        assertEquals(30, interactive);
+    }
+
+    @Test
+    void testPriorityAndAgingWithinKey() {
+        queue.add(task("OLD", "quay.io/bulk/app:old"));
+        now.addAndGet(Duration.ofMinutes(1).toMillis());
+        // Priority 2 is worth 10 minutes of waiting, so it overtakes a task queued one minute earlier
+        queue.add(task("URGENT", "quay.io/bulk/app:urgent-1"));
+        now.addAndGet(Duration.ofMinutes(20).toMillis());
+        // ... but not one that has been waiting for 20 minutes longer
+        queue.add(task("URGENT-LATE", "quay.io/bulk/app:urgent-2"));
+
+        assertEquals("URGENT", queue.poll().generationId());
+        assertEquals("OLD", queue.poll().generationId());
+        assertEquals("URGENT-LATE", queue.poll().generationId());
+    }
+
+    @Test
+    void testRequeueKeepsOriginalPosition() {
+        queue.add(task("FIRST", "quay.io/bulk/app:1"));
+        GenerationTask first = queue.poll();
+        now.addAndGet(1000);
+        queue.add(task("SECOND", "quay.io/bulk/app:2"));
+
+        // FIRST got OOMKilled and comes back with more memory
+        queue.requeue(new GenerationTask(first.generationId(), first.spec(), 1, "2Gi", null));
+
+        assertEquals("FIRST", queue.poll().generationId());
+        assertEquals("SECOND", queue.poll().generationId());
+    }
+
+    @Test
+    void testKeyIgnoresTagAndDigest() {
+        assertEquals("quay.io/org/app", FairShareQueue.keyOf(task("A", "quay.io/org/app:1.0")));
+        assertEquals("quay.io/org/app", FairShareQueue.keyOf(task("B", "quay.io/org/app@sha256:abc")));
+        assertEquals("localhost:5000/app", FairShareQueue.keyOf(task("C", "localhost:5000/app")));
+    }
+
+    private GenerationTask task(String generationId, String image) {
+        GenerationRequestSpec spec = GenerationRequestSpec.newBuilder()
+                .setGenerationId(generationId)
+                .setTarget(Target.newBuilder().setIdentifier(image).setType("CONTAINER").build())
+                .build();
+        return new GenerationTask(generationId, spec, null);
+    }
+}
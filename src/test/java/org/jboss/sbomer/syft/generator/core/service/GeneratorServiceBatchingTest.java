@@ -0,0 +1,105 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+import org.jboss.sbomer.events.common.Target;
+import org.jboss.sbomer.syft.generator.core.domain.GenerationStatus;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.port.spi.FailureNotifier;
+import org.jboss.sbomer.syft.generator.core.port.spi.GenerationExecutor;
+import org.jboss.sbomer.syft.generator.core.port.spi.StatusNotifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+@TestProfile(GeneratorServiceBatchingTest.BatchingProfile.class)
+class GeneratorServiceBatchingTest {
+
+    public static class BatchingProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "sbomer.generator.batch.enabled", "true",
+                    "sbomer.generator.batch.size", "3",
+                    "sbomer.generator.batch.max-wait", "1h");
+        }
+    }
+
+    @Inject
+    GeneratorService generatorService;
+
+    @InjectMock
+    GenerationExecutor executor;
+
+    @InjectMock
+    StatusNotifier notifier;
+
+    @InjectMock
+    FailureNotifier failureNotifier;
+
+    @BeforeEach
+    void setup() {
+        Mockito.when(executor.countActiveExecutions()).thenReturn(0);
+        Mockito.when(executor.supportsBatching()).thenReturn(true);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSmallImagesShareOneExecution() {
+        generatorService.acceptRequest("B-1", createSpec("quay.io/small/a:1"), null);
+        generatorService.acceptRequest("B-2", createSpec("quay.io/small/b:1"), null);
+        generatorService.acceptRequest("B-3", createSpec("quay.io/small/c:1"), null);
+        generatorService.processQueue();
+
+        ArgumentCaptor<String> batchId = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<List<GenerationTask>> members = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(executor).scheduleBatch(batchId.capture(), members.capture());
+        Mockito.verify(executor, Mockito.never()).scheduleGeneration(ArgumentMatchers.any());
+        assertEquals(List.of("B-1", "B-2", "B-3"), members.getValue().stream().map(GenerationTask::generationId).toList());
+
+        // One image failing does not fail the others, and the execution stays until all are done
+        generatorService.handleUpdate("B-1", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/b-1"));
+        generatorService.handleUpdate("B-2", GenerationStatus.FAILED, "Inspection failed", null);
+        Mockito.verify(executor, Mockito.never()).cleanupGeneration(ArgumentMatchers.any());
+
+        generatorService.handleUpdate("B-3", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/b-3"));
+        Mockito.verify(executor).cleanupGeneration(batchId.getValue());
+        Mockito.verify(notifier).notifyStatus("B-1", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/b-1"));
+        Mockito.verify(notifier).notifyStatus("B-2", GenerationStatus.FAILED, "Inspection failed", null);
+    }
+
+    @Test
+    void testOomKilledMemberRetriesAlone() {
+        generatorService.acceptRequest("O-1", createSpec("quay.io/oom/a:1"), null);
+        generatorService.acceptRequest("O-2", createSpec("quay.io/oom/b:1"), null);
+        generatorService.acceptRequest("O-3", createSpec("quay.io/oom/c:1"), null);
+        generatorService.processQueue();
+
+        generatorService.handleUpdate("O-2", GenerationStatus.FAILED, "OOMKilled", null);
+        generatorService.processQueue();
+
+        // The retry has more memory than the default, so it is not small anymore
+        Mockito.verify(executor).scheduleGeneration(ArgumentMatchers.argThat(task ->
+                task.generationId().equals("O-2") && task.retryCount() == 1 && "2Gi".equals(task.memoryOverride())));
+    }
+
+    private GenerationRequestSpec createSpec(String image) {
+        return GenerationRequestSpec.newBuilder()
+                .setGenerationId("ignored-here")
+                .setTarget(Target.newBuilder().setIdentifier(image).setType("CONTAINER").build())
+                .build();
+    }
+}
@@ -0,0 +1,160 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+import org.jboss.sbomer.events.common.Target;
+import org.jboss.sbomer.syft.generator.core.domain.GenerationStatus;
+import org.jboss.sbomer.syft.generator.core.domain.model.IncomingRequest;
+import org.jboss.sbomer.syft.generator.core.port.spi.FailureNotifier;
+import org.jboss.sbomer.syft.generator.core.port.spi.GenerationExecutor;
+import org.jboss.sbomer.syft.generator.core.port.spi.PlatformResolver;
+import org.jboss.sbomer.syft.generator.core.port.spi.StatusNotifier;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+@TestProfile(GeneratorServiceCoalescingTest.CoalescingProfile.class)
+class GeneratorServiceCoalescingTest {
+
+    public static class CoalescingProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "sbomer.generator.coalescing.enabled", "true",
+                    "sbomer.generator.digest-resolution.timeout", "500ms",
+                    "sbomer.generator.cache.generator-version", "quay.io/sbomer/syft-agent:test");
+        }
+    }
+
+    @Inject
+    GeneratorService generatorService;
+
+    @InjectMock
+    GenerationExecutor executor;
+
+    @InjectMock
+    StatusNotifier notifier;
+
+    @InjectMock
+    FailureNotifier failureNotifier;
+
+    @InjectMock
+    PlatformResolver platformResolver;
+
+    @BeforeEach
+    void setup() {
+        Mockito.when(executor.countActiveExecutions()).thenReturn(0);
+    }
+
+    @Test
+    void testSameImageRunsOnceAndAllWaitersFinish() {
+        String image = "quay.io/org/shared:1.0";
+        generatorService.acceptRequest("G-LEAD", createSpec(image), null);
+        generatorService.acceptRequest("G-JOIN-1", createSpec(image), null);
+        generatorService.acceptRequest("G-JOIN-2", createSpec(image), null);
+        generatorService.processQueue();
+
+        // Only one execution for the image
+        Mockito.verify(executor, Mockito.times(1)).scheduleGeneration(ArgumentMatchers.argThat(task ->
+                task.spec().getTarget().getIdentifier().equals(image)));
+        Mockito.verify(notifier).notifyStatus(ArgumentMatchers.eq("G-JOIN-1"), ArgumentMatchers.eq(GenerationStatus.GENERATING),
+                ArgumentMatchers.any(), ArgumentMatchers.isNull());
+
+        // An OOM retry of the leader is invisible to the waiters
+        generatorService.handleUpdate("G-LEAD", GenerationStatus.FAILED, "OOMKilled", null);
+        generatorService.processQueue();
+        Mockito.verify(notifier, Mockito.never()).notifyStatus(ArgumentMatchers.any(), ArgumentMatchers.eq(GenerationStatus.FAILED),
+                ArgumentMatchers.any(), ArgumentMatchers.any());
+
+        List<String> urls = List.of("http://storage/sbom-1");
+        generatorService.handleUpdate("G-LEAD", GenerationStatus.FINISHED, "TaskRun Succeeded", urls);
+
+        for (String id : List.of("G-LEAD", "G-JOIN-1", "G-JOIN-2")) {
+            Mockito.verify(notifier).notifyStatus(ArgumentMatchers.eq(id), ArgumentMatchers.eq(GenerationStatus.FINISHED),
+                    ArgumentMatchers.any(), ArgumentMatchers.eq(urls));
+        }
+    }
+
+    @Test
+    void testLeaderFailureReachesWaiters() {
+        String image = "quay.io/org/broken:1.0";
+        generatorService.acceptRequest("G-FAIL-LEAD", createSpec(image), null);
+        generatorService.acceptRequest("G-FAIL-JOIN", createSpec(image), null);
+        generatorService.processQueue();
+
+        generatorService.handleUpdate("G-FAIL-LEAD", GenerationStatus.FAILED, "TaskRun Failed", null);
+
+        Mockito.verify(notifier).notifyStatus(ArgumentMatchers.eq("G-FAIL-JOIN"), ArgumentMatchers.eq(GenerationStatus.FAILED),
+                ArgumentMatchers.eq("TaskRun Failed"), ArgumentMatchers.isNull());
+    }
+
+    @Test
+    void testTagCoalescesWithTheDigestItPointsTo() {
+        String pinned = "quay.io/org/pinned@sha256:" + "a".repeat(64);
+        Mockito.when(platformResolver.resolveDigest("quay.io/org/pinned:1.0")).thenReturn(pinned);
+        Mockito.when(platformResolver.resolveDigest(pinned)).thenReturn(pinned);
+
+        generatorService.acceptRequest("G-TAG", createSpec("quay.io/org/pinned:1.0"), null);
+        generatorService.acceptRequest("G-DIGEST", createSpec(pinned), null);
+        generatorService.processQueue();
+
+        // One execution, of the digest the tag was resolved to
+        Mockito.verify(executor, Mockito.times(1)).scheduleGeneration(ArgumentMatchers.argThat(task ->
+                task.image().equals(pinned)));
+        Mockito.verify(notifier).notifyStatus(ArgumentMatchers.eq("G-DIGEST"), ArgumentMatchers.eq(GenerationStatus.GENERATING),
+                ArgumentMatchers.any(), ArgumentMatchers.isNull());
+
+        List<String> urls = List.of("http://storage/sbom-pinned");
+        generatorService.handleUpdate("G-TAG", GenerationStatus.FINISHED, "TaskRun Succeeded", urls);
+        Mockito.verify(notifier).notifyStatus(ArgumentMatchers.eq("G-DIGEST"), ArgumentMatchers.eq(GenerationStatus.FINISHED),
+                ArgumentMatchers.any(), ArgumentMatchers.eq(urls));
+
+        // The result is cached under the digest, the tag is served from it while it points there
+        generatorService.acceptRequest("G-TAG-AGAIN", createSpec("quay.io/org/pinned:1.0"), null);
+        Mockito.verify(notifier).notifyStatus(ArgumentMatchers.eq("G-TAG-AGAIN"), ArgumentMatchers.eq(GenerationStatus.FINISHED),
+                ArgumentMatchers.eq("Served from result cache"), ArgumentMatchers.eq(urls));
+    }
+
+    @Test
+    void testUnresponsiveRegistryDoesNotHoldUpThePoll() {
+        String pinned = "quay.io/org/fast@sha256:" + "b".repeat(64);
+        Mockito.when(platformResolver.resolveDigest("quay.io/org/fast:1.0")).thenReturn(pinned);
+        Mockito.when(platformResolver.resolveDigest(ArgumentMatchers.startsWith("quay.io/org/hanging:"))).thenAnswer(invocation -> {
+            Thread.sleep(30_000);
+            return null;
+        });
+
+        long start = System.nanoTime();
+        generatorService.acceptRequests(List.of(
+                new IncomingRequest("G-HANG-1", createSpec("quay.io/org/hanging:1.0"), null),
+                new IncomingRequest("G-HANG-2", createSpec("quay.io/org/hanging:2.0"), null),
+                new IncomingRequest("G-FAST", createSpec("quay.io/org/fast:1.0"), null)));
+
+        // The lookups share one deadline
+        Assertions.assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(5)) < 0);
+        generatorService.processQueue();
+        Mockito.verify(executor).scheduleGeneration(ArgumentMatchers.argThat(task ->
+                task.generationId().equals("G-HANG-1") && task.image().equals("quay.io/org/hanging:1.0")));
+        Mockito.verify(executor).scheduleGeneration(ArgumentMatchers.argThat(task ->
+                task.generationId().equals("G-FAST") && task.image().equals(pinned)));
+    }
+
+    private GenerationRequestSpec createSpec(String image) {
+        return GenerationRequestSpec.newBuilder()
+                .setGenerationId("ignored-here")
+                .setTarget(Target.newBuilder().setIdentifier(image).setType("CONTAINER").build())
+                .build();
+    }
+}
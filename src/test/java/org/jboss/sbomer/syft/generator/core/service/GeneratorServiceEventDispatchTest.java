@@ -0,0 +1,85 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import java.util.Map;
+
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+import org.jboss.sbomer.events.common.Target;
+import org.jboss.sbomer.syft.generator.core.domain.GenerationStatus;
+import org.jboss.sbomer.syft.generator.core.port.spi.FailureNotifier;
+import org.jboss.sbomer.syft.generator.core.port.spi.GenerationExecutor;
+import org.jboss.sbomer.syft.generator.core.port.spi.StatusNotifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+@TestProfile(GeneratorServiceEventDispatchTest.EventDrivenProfile.class)
+class GeneratorServiceEventDispatchTest {
+
+    public static class EventDrivenProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            // Push the safety-net poll out of the way so only signals can dispatch
+            return Map.of(
+                    "sbomer.generator.dispatch.event-driven", "true",
+                    "sbomer.generator.poll-interval", "1h");
+        }
+    }
+
+    @Inject
+    GeneratorService generatorService;
+
+    @InjectMock
+    GenerationExecutor executor;
+
+    @InjectMock
+    StatusNotifier notifier;
+
+    @InjectMock
+    FailureNotifier failureNotifier;
+
+    @BeforeEach
+    void setup() {
+        Mockito.when(executor.countActiveExecutions()).thenReturn(0);
+    }
+
+    @Test
+    void testAcceptRequestDispatchesWithoutPoll() {
+        generatorService.acceptRequest("G-EVT", createDummySpec(), null);
+
+        // No manual processQueue() call: the request itself must wake the dispatcher
+        Mockito.verify(executor, Mockito.timeout(5000)).scheduleGeneration(ArgumentMatchers.argThat(task ->
+                task.generationId().equals("G-EVT")));
+        Mockito.verify(notifier, Mockito.timeout(5000)).notifyStatus(ArgumentMatchers.eq("G-EVT"),
+                ArgumentMatchers.eq(GenerationStatus.GENERATING), ArgumentMatchers.any(), ArgumentMatchers.isNull());
+    }
+
+    @Test
+    void testFreedSlotDispatchesWaitingTask() {
+        // Cluster is full, the request has to wait
+        Mockito.when(executor.countActiveExecutions()).thenReturn(20);
+        generatorService.acceptRequest("G-WAIT", createDummySpec(), null);
+        Mockito.verify(executor, Mockito.after(500).never()).scheduleGeneration(ArgumentMatchers.any());
+
+        // A running generation finishes and frees a slot
+        Mockito.when(executor.countActiveExecutions()).thenReturn(19);
+        generatorService.handleUpdate("G-DONE", GenerationStatus.FINISHED, "TaskRun Succeeded", null);
+
+        Mockito.verify(executor, Mockito.timeout(5000)).scheduleGeneration(ArgumentMatchers.argThat(task ->
+                task.generationId().equals("G-WAIT")));
+    }
+
+    private GenerationRequestSpec createDummySpec() {
+        return GenerationRequestSpec.newBuilder()
+                .setGenerationId("ignored-here")
+                .setTarget(Target.newBuilder().setIdentifier("img:tag").setType("CONTAINER").build())
+                .build();
+    }
+}
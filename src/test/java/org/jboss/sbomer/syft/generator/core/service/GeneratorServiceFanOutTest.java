@@ -0,0 +1,179 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+import org.jboss.sbomer.events.common.Target;
+import org.jboss.sbomer.syft.generator.core.domain.GenerationStatus;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.domain.model.Platform;
+import org.jboss.sbomer.syft.generator.core.port.spi.FailureNotifier;
+import org.jboss.sbomer.syft.generator.core.port.spi.GenerationExecutor;
+import org.jboss.sbomer.syft.generator.core.port.spi.PlatformResolver;
+import org.jboss.sbomer.syft.generator.core.port.spi.SlotAllocator;
+import org.jboss.sbomer.syft.generator.core.port.spi.StatusNotifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+@TestProfile(GeneratorServiceFanOutTest.FanOutProfile.class)
+class GeneratorServiceFanOutTest {
+
+    public static class FanOutProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("sbomer.generator.fan-out.enabled", "true");
+        }
+    }
+
+    private static final List<Platform> PLATFORMS = List.of(
+            new Platform("linux", "amd64", null, "sha256:aaa"),
+            new Platform("linux", "arm64", "v8", "sha256:bbb"),
+            new Platform("linux", "s390x", null, "sha256:ccc"));
+
+    @Inject
+    GeneratorService generatorService;
+
+    @InjectMock
+    GenerationExecutor executor;
+
+    @InjectMock
+    StatusNotifier notifier;
+
+    @InjectMock
+    FailureNotifier failureNotifier;
+
+    @InjectMock
+    PlatformResolver platformResolver;
+
+    @InjectMock
+    SlotAllocator slotAllocator;
+
+    @BeforeEach
+    void setup() {
+        Mockito.when(slotAllocator.acquire(ArgumentMatchers.anyInt())).thenAnswer(invocation -> invocation.getArgument(0));
+        Mockito.when(executor.countActiveExecutions()).thenReturn(0);
+        Mockito.when(platformResolver.resolvePlatforms(ArgumentMatchers.anyString())).thenReturn(PLATFORMS);
+    }
+
+    @Test
+    void testEachPlatformIsScannedOnItsOwnAndReportedOnce() {
+        generatorService.acceptRequest("F-1", createSpec("quay.io/multi/a:1"), null);
+        generatorService.processQueue();
+        // The other platforms got queued behind the first one
+        generatorService.processQueue();
+
+        ArgumentCaptor<GenerationTask> scheduled = ArgumentCaptor.forClass(GenerationTask.class);
+        Mockito.verify(executor, Mockito.times(3)).scheduleGeneration(scheduled.capture());
+        assertEquals(List.of("linux-amd64", "linux-arm64-v8", "linux-s390x"),
+                scheduled.getAllValues().stream().map(task -> task.platform().key()).sorted().toList());
+
+        // Results arrive in any order, the generation is only finished by the last one
+        generatorService.handlePlatformUpdate("F-1", "linux-s390x", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/s390x"));
+        generatorService.handlePlatformUpdate("F-1", "linux-amd64", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/amd64"));
+        Mockito.verify(notifier, Mockito.never()).notifyStatus(ArgumentMatchers.eq("F-1"), ArgumentMatchers.eq(GenerationStatus.FINISHED),
+                ArgumentMatchers.any(), ArgumentMatchers.any());
+
+        generatorService.handlePlatformUpdate("F-1", "linux-arm64-v8", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/arm64"));
+        Mockito.verify(notifier).notifyStatus("F-1", GenerationStatus.FINISHED, "TaskRun Succeeded",
+                List.of("http://storage/amd64", "http://storage/arm64", "http://storage/s390x"));
+        Mockito.verify(executor).cleanupGeneration("F-1");
+    }
+
+    @Test
+    void testOnlyTheFailedPlatformIsRetried() {
+        generatorService.acceptRequest("F-2", createSpec("quay.io/multi/b:1"), null);
+        generatorService.processQueue();
+        generatorService.processQueue();
+        Mockito.clearInvocations(executor);
+
+        generatorService.handlePlatformUpdate("F-2", "linux-amd64", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/amd64"));
+        generatorService.handlePlatformUpdate("F-2", "linux-arm64-v8", GenerationStatus.FAILED, "OOMKilled", null);
+        generatorService.processQueue();
+
+        ArgumentCaptor<GenerationTask> retried = ArgumentCaptor.forClass(GenerationTask.class);
+        Mockito.verify(executor).scheduleGeneration(retried.capture());
+        assertEquals("linux-arm64-v8", retried.getValue().platform().key());
+        assertEquals(1, retried.getValue().retryCount());
+        assertEquals("2Gi", retried.getValue().memoryOverride());
+
+        generatorService.handlePlatformUpdate("F-2", "linux-arm64-v8", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/arm64"));
+        generatorService.handlePlatformUpdate("F-2", "linux-s390x", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/s390x"));
+        Mockito.verify(notifier).notifyStatus("F-2", GenerationStatus.FINISHED, "TaskRun Succeeded",
+                List.of("http://storage/amd64", "http://storage/arm64", "http://storage/s390x"));
+    }
+
+    @Test
+    void testPlatformThatKeepsFailingFailsTheGeneration() {
+        generatorService.acceptRequest("F-3", createSpec("quay.io/multi/c:1"), null);
+        generatorService.processQueue();
+        generatorService.processQueue();
+
+        generatorService.handlePlatformUpdate("F-3", "linux-s390x", GenerationStatus.FAILED, "TaskRun Failed", null);
+        generatorService.processQueue();
+        generatorService.handlePlatformUpdate("F-3", "linux-s390x", GenerationStatus.FAILED, "TaskRun Failed", null);
+
+        Mockito.verify(notifier).notifyStatus("F-3", GenerationStatus.FAILED, "linux-s390x: TaskRun Failed (Max retries exceeded)", null);
+        Mockito.verify(executor).cleanupGeneration("F-3");
+
+        // The platforms still running were cancelled by the cleanup, their updates must not fail it a second time
+        generatorService.handlePlatformUpdate("F-3", "linux-amd64", GenerationStatus.FAILED, "TaskRun Failed", null);
+        generatorService.handlePlatformUpdate("F-3", "linux-arm64-v8", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/arm64"));
+        Mockito.verify(notifier, Mockito.times(1)).notifyStatus(ArgumentMatchers.eq("F-3"), ArgumentMatchers.eq(GenerationStatus.FAILED),
+                ArgumentMatchers.any(), ArgumentMatchers.any());
+        Mockito.verify(notifier, Mockito.never()).notifyStatus(ArgumentMatchers.eq("F-3"), ArgumentMatchers.eq(GenerationStatus.FINISHED),
+                ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    @Test
+    void testRedeliveredPlatformResultGivesItsSlotBackOnce() {
+        generatorService.acceptRequest("F-5", createSpec("quay.io/multi/e:1"), null);
+        generatorService.processQueue();
+        generatorService.processQueue();
+        Mockito.clearInvocations(slotAllocator);
+
+        generatorService.handlePlatformUpdate("F-5", "linux-amd64", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/amd64"));
+        generatorService.handlePlatformUpdate("F-5", "linux-amd64", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/amd64"));
+        Mockito.verify(slotAllocator, Mockito.times(1)).release(1);
+
+        generatorService.handlePlatformUpdate("F-5", "linux-arm64-v8", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/arm64"));
+        generatorService.handlePlatformUpdate("F-5", "linux-s390x", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/s390x"));
+        Mockito.verify(slotAllocator, Mockito.times(3)).release(1);
+        Mockito.verify(notifier).notifyStatus("F-5", GenerationStatus.FINISHED, "TaskRun Succeeded",
+                List.of("http://storage/amd64", "http://storage/arm64", "http://storage/s390x"));
+    }
+
+    @Test
+    void testUpdateOfAnUnknownFanOutFailsIt() {
+        // E.g. after a restart, the other platforms are unknown
+        generatorService.handlePlatformUpdate("F-4", "linux-amd64", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/amd64"));
+
+        Mockito.verify(notifier).notifyStatus("F-4", GenerationStatus.FAILED, "Fan-out state lost (platform linux-amd64)", null);
+    }
+
+    @Test
+    void testPlatformImageReference() {
+        assertEquals("quay.io/org/app@sha256:bbb", TaskRunFactory.platformImage("quay.io/org/app:1.0", "sha256:bbb"));
+        assertEquals("localhost:5000/app@sha256:bbb", TaskRunFactory.platformImage("localhost:5000/app", "sha256:bbb"));
+        assertEquals("quay.io/org/app@sha256:bbb", TaskRunFactory.platformImage("quay.io/org/app@sha256:aaa", "sha256:bbb"));
+    }
+
+    private GenerationRequestSpec createSpec(String image) {
+        return GenerationRequestSpec.newBuilder()
+                .setGenerationId("ignored-here")
+                .setTarget(Target.newBuilder().setIdentifier(image).setType("CONTAINER").build())
+                .build();
+    }
+}
@@ -1,8 +1,11 @@
 package org.jboss.sbomer.syft.generator.core.service;
 
+import java.util.List;
+
 import org.jboss.sbomer.events.common.GenerationRequestSpec;
 import org.jboss.sbomer.events.common.Target;
 import org.jboss.sbomer.syft.generator.core.domain.GenerationStatus;
+import org.jboss.sbomer.syft.generator.core.domain.model.IncomingRequest;
 import org.jboss.sbomer.syft.generator.core.port.spi.FailureNotifier;
 import org.jboss.sbomer.syft.generator.core.port.spi.GenerationExecutor;
 import org.jboss.sbomer.syft.generator.core.port.spi.StatusNotifier;
@@ -59,6 +62,22 @@ class GeneratorServiceTest {
         Mockito.verify(notifier).notifyStatus(ArgumentMatchers.eq(genId), ArgumentMatchers.eq(GenerationStatus.GENERATING), ArgumentMatchers.any(), ArgumentMatchers.isNull());
     }
 
+    @Test
+    void testBadRequestFailsAloneAndTheRestOfThePollIsQueued() {
+        // No target: fails before it can be queued
+        GenerationRequestSpec broken = new GenerationRequestSpec();
+
+        generatorService.acceptRequests(List.of(
+                new IncomingRequest("G-BAD", broken, null),
+                new IncomingRequest("G-GOOD", createSpec("img:good"), null)));
+        generatorService.processQueue();
+
+        Mockito.verify(notifier).notifyStatus(ArgumentMatchers.eq("G-BAD"), ArgumentMatchers.eq(GenerationStatus.FAILED),
+                ArgumentMatchers.any(), ArgumentMatchers.isNull());
+        Mockito.verify(failureNotifier).notify(ArgumentMatchers.any(), ArgumentMatchers.eq("G-BAD"), ArgumentMatchers.isNull());
+        Mockito.verify(executor).scheduleGeneration(ArgumentMatchers.argThat(task -> task.generationId().equals("G-GOOD")));
+    }
+
     @Test
     void testThrottling() {
         // Simulate cluster is FULL (Max is 20 by default)
@@ -108,10 +127,105 @@ class GeneratorServiceTest {
         Assertions.assertEquals("2Gi", retryTask.memoryOverride());
     }
 
+    @Test
+    void testOomGiveUpCleansUpOnce() {
+        String genId = "G-OOM-GIVE-UP";
+        generatorService.acceptRequest(genId, createDummySpec(), null);
+        generatorService.processQueue();
+
+        // Burn all retries
+        for (int i = 0; i < 3; i++) {
+            generatorService.handleUpdate(genId, GenerationStatus.FAILED, "OOMKilled", null);
+            generatorService.processQueue();
+        }
+        Mockito.clearInvocations(executor);
+
+        generatorService.handleUpdate(genId, GenerationStatus.FAILED, "OOMKilled", null);
+
+        Mockito.verify(executor, Mockito.times(1)).cleanupGeneration(genId);
+        Mockito.verify(notifier).notifyStatus(genId, GenerationStatus.FAILED, "OOMKilled (Max retries exceeded)", null);
+    }
+
+    @Test
+    void testDigestResultIsServedFromCache() {
+        String image = "quay.io/org/cached@sha256:" + "a".repeat(64);
+        List<String> urls = List.of("http://storage/cached-sbom");
+
+        generatorService.acceptRequest("G-CACHE-1", createSpec(image), null);
+        generatorService.processQueue();
+        generatorService.handleUpdate("G-CACHE-1", GenerationStatus.FINISHED, "TaskRun Succeeded", urls);
+
+        // Same digest again: answered from the cache, no new TaskRun
+        generatorService.acceptRequest("G-CACHE-2", createSpec(image), null);
+        generatorService.processQueue();
+
+        Mockito.verify(notifier).notifyStatus(ArgumentMatchers.eq("G-CACHE-2"), ArgumentMatchers.eq(GenerationStatus.FINISHED),
+                ArgumentMatchers.any(), ArgumentMatchers.eq(urls));
+        Mockito.verify(executor, Mockito.never()).scheduleGeneration(ArgumentMatchers.argThat(task ->
+                task.generationId().equals("G-CACHE-2")));
+    }
+
+    @Test
+    void testTagNeverHitsCache() {
+        String image = "quay.io/org/cached-tag:latest";
+
+        generatorService.acceptRequest("G-TAG-1", createSpec(image), null);
+        generatorService.processQueue();
+        generatorService.handleUpdate("G-TAG-1", GenerationStatus.FINISHED, "TaskRun Succeeded", List.of("http://storage/tag-sbom"));
+
+        generatorService.acceptRequest("G-TAG-2", createSpec(image), null);
+        generatorService.processQueue();
+
+        Mockito.verify(executor).scheduleGeneration(ArgumentMatchers.argThat(task ->
+                task.generationId().equals("G-TAG-2")));
+    }
+
+    @Test
+    void testFailedSubmissionOnlyFailsItsOwnGeneration() {
+        Mockito.doThrow(new RuntimeException("API server rejected the TaskRun"))
+                .when(executor).scheduleGeneration(ArgumentMatchers.argThat(task -> task.generationId().equals("G-PAR-2")));
+
+        for (int i = 1; i <= 4; i++) {
+            generatorService.acceptRequest("G-PAR-" + i, createSpec("quay.io/org/parallel-" + i + ":1"), null);
+        }
+        generatorService.processQueue();
+
+        Mockito.verify(notifier).notifyStatus(ArgumentMatchers.eq("G-PAR-2"), ArgumentMatchers.eq(GenerationStatus.FAILED),
+                ArgumentMatchers.eq("API server rejected the TaskRun"), ArgumentMatchers.isNull());
+        Mockito.verify(failureNotifier).notify(ArgumentMatchers.any(), ArgumentMatchers.eq("G-PAR-2"), ArgumentMatchers.isNull());
+        for (String id : List.of("G-PAR-1", "G-PAR-3", "G-PAR-4")) {
+            Mockito.verify(notifier).notifyStatus(ArgumentMatchers.eq(id), ArgumentMatchers.eq(GenerationStatus.GENERATING),
+                    ArgumentMatchers.any(), ArgumentMatchers.isNull());
+        }
+        // The failed generation released its slot
+        Mockito.verify(executor).cleanupGeneration("G-PAR-2");
+    }
+
+    @Test
+    void testBulkAcceptIgnoresDuplicates() {
+        generatorService.acceptRequest("G-BULK-1", createSpec("quay.io/org/bulk-1:1"), null);
+
+        // A redelivered poll: G-BULK-1 is already queued, G-BULK-2 appears twice
+        generatorService.acceptRequests(List.of(
+                new IncomingRequest("G-BULK-1", createSpec("quay.io/org/bulk-1:1"), null),
+                new IncomingRequest("G-BULK-2", createSpec("quay.io/org/bulk-2:1"), null),
+                new IncomingRequest("G-BULK-2", createSpec("quay.io/org/bulk-2:1"), null)));
+        generatorService.processQueue();
+
+        Mockito.verify(executor, Mockito.times(1)).scheduleGeneration(ArgumentMatchers.argThat(task ->
+                task.generationId().equals("G-BULK-1")));
+        Mockito.verify(executor, Mockito.times(1)).scheduleGeneration(ArgumentMatchers.argThat(task ->
+                task.generationId().equals("G-BULK-2")));
+    }
+
     private GenerationRequestSpec createDummySpec() {
+        return createSpec("img:tag");
+    }
+
+    private GenerationRequestSpec createSpec(String image) {
         return GenerationRequestSpec.newBuilder()
                 .setGenerationId("ignored-here")
-                .setTarget(Target.newBuilder().setIdentifier("img:tag").setType("CONTAINER").build())
+                .setTarget(Target.newBuilder().setIdentifier(image).setType("CONTAINER").build())
                 .build();
     }
 }
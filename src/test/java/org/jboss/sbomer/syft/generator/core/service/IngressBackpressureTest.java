@@ -0,0 +1,76 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+import org.jboss.sbomer.events.common.Target;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.jboss.sbomer.syft.generator.core.port.spi.IngressThrottle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class IngressBackpressureTest {
+
+    private FairShareQueue queue;
+    private IngressThrottle throttle;
+    private IngressBackpressure backpressure;
+
+    @BeforeEach
+    void setup() {
+        queue = new FairShareQueue();
+        queue.weightRules = Optional.empty();
+        queue.priorityRules = Optional.empty();
+        queue.agingInterval = Duration.ofMinutes(5);
+        queue.maxWait = Duration.ofHours(2);
+        queue.retryKeepsPosition = true;
+        queue.clock = System::currentTimeMillis;
+        queue.init();
+
+        throttle = Mockito.mock(IngressThrottle.class);
+        backpressure = new IngressBackpressure();
+        backpressure.throttle = throttle;
+        backpressure.pendingQueue = queue;
+        backpressure.meterRegistry = new SimpleMeterRegistry();
+        backpressure.highWatermark = 4;
+        backpressure.lowWatermark = 2;
+        backpressure.registerMetrics();
+    }
+
+    @Test
+    void testPausesAtHighAndResumesAtLowWatermark() {
+        for (int i = 0; i < 3; i++) {
+            enqueue("G" + i);
+        }
+        Mockito.verify(throttle, Mockito.never()).pause();
+
+        enqueue("G3");
+        Mockito.verify(throttle).pause();
+        assertTrue(backpressure.isPaused());
+
+        // Still above the low watermark
+        queue.poll();
+        backpressure.onDrained();
+        Mockito.verify(throttle, Mockito.never()).resume();
+
+        queue.poll();
+        backpressure.onDrained();
+        Mockito.verify(throttle).resume();
+        assertFalse(backpressure.isPaused());
+    }
+
+    private void enqueue(String generationId) {
+        GenerationRequestSpec spec = GenerationRequestSpec.newBuilder()
+                .setGenerationId(generationId)
+                .setTarget(Target.newBuilder().setIdentifier("quay.io/org/app:" + generationId).setType("CONTAINER").build())
+                .build();
+        queue.add(new GenerationTask(generationId, spec, null));
+        backpressure.onEnqueued();
+    }
+}
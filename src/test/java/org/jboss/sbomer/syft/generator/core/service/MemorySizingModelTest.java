@@ -0,0 +1,126 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+import org.jboss.sbomer.events.common.Target;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MemorySizingModelTest {
+
+    private MemorySizingModel model;
+
+    @BeforeEach
+    void setup() {
+        model = new MemorySizingModel();
+        model.meterRegistry = new SimpleMeterRegistry();
+        model.enabled = true;
+        model.defaultMemory = "1Gi";
+        model.memoryMultiplier = 1.5;
+        model.maxMemory = "16Gi";
+        model.minMemory = "512Mi";
+        model.shrinkAfter = 3;
+        model.window = Duration.ofDays(14);
+        model.maxEntries = 100;
+        model.registerMetrics();
+    }
+
+    @Test
+    void testEscalationUsesQuantityArithmetic() {
+        assertEquals("2Gi", model.escalate("1Gi"));
+        assertEquals("1Gi", model.escalate("512Mi"));
+        assertEquals("5Gi", model.escalate("3Gi"));
+        // Decimal units are not the same as binary ones: 2G * 1.5 = 3e9 bytes, which needs 3Gi
+        assertEquals("3Gi", model.escalate("2G"));
+    }
+
+    @Test
+    void testKnownLargeImageStartsAtLearnedSize() {
+        GenerationTask large = task("quay.io/org/huge:1");
+        model.recordOom(large, "1Gi");
+        model.recordOom(large, "2Gi");
+        model.recordSuccess(large, "3Gi");
+
+        assertEquals("3Gi", model.initialMemory(task("quay.io/org/huge:2")));
+    }
+
+    @Test
+    void testOnlyFailuresStartAboveLargestFailure() {
+        model.recordOom(task("quay.io/org/growing:1"), "2Gi");
+
+        assertEquals("3Gi", model.initialMemory(task("quay.io/org/growing:2")));
+    }
+
+    @Test
+    void testLargeImageDoesNotInflateOthers() {
+        model.recordSuccess(task("quay.io/org/small:1"), "1Gi");
+        model.recordSuccess(task("quay.io/org/huge:1"), "8Gi");
+
+        assertEquals("1Gi", model.initialMemory(task("quay.io/org/unknown:1")));
+        assertEquals("1Gi", model.initialMemory(task("quay.io/org/small:2")));
+    }
+
+    @Test
+    void testStartingMemoryIsCapped() {
+        model.recordSuccess(task("quay.io/org/enormous:1"), "64Gi");
+
+        assertEquals("16Gi", model.initialMemory(task("quay.io/org/enormous:2")));
+    }
+
+    @Test
+    void testSmallImageShrinksBelowTheDefaultDownToTheFloor() {
+        GenerationTask small = task("quay.io/org/tiny:1");
+        succeed(small, "1Gi", 3);
+        // 1Gi / 1.5, rounded up to 256Mi
+        assertEquals("768Mi", model.initialMemory(small));
+
+        succeed(small, "768Mi", 3);
+        assertEquals("512Mi", model.initialMemory(small));
+
+        succeed(small, "512Mi", 3);
+        assertEquals("512Mi", model.initialMemory(small));
+        // Other images of the registry still start at the default
+        assertEquals("1Gi", model.initialMemory(task("quay.io/org/unknown:1")));
+    }
+
+    @Test
+    void testOomAtTheSmallerStepStopsShrinking() {
+        GenerationTask image = task("quay.io/org/app:1");
+        succeed(image, "2Gi", 3);
+        assertEquals("1536Mi", model.initialMemory(image));
+
+        model.recordOom(image, "1536Mi");
+        assertEquals("2Gi", model.initialMemory(image));
+
+        succeed(image, "2Gi", 3);
+        assertEquals("2Gi", model.initialMemory(image));
+    }
+
+    @Test
+    void testOldObservationsAreForgotten() {
+        model.window = Duration.ZERO;
+        model.recordSuccess(task("quay.io/org/huge:1"), "8Gi");
+
+        assertEquals("1Gi", model.initialMemory(task("quay.io/org/huge:2")));
+    }
+
+    private void succeed(GenerationTask task, String memory, int times) {
+        for (int i = 0; i < times; i++) {
+            model.recordSuccess(task, memory);
+        }
+    }
+
+    private GenerationTask task(String image) {
+        GenerationRequestSpec spec = GenerationRequestSpec.newBuilder()
+                .setGenerationId("G")
+                .setTarget(Target.newBuilder().setIdentifier(image).setType("CONTAINER").build())
+                .build();
+        return new GenerationTask("G", spec, null);
+    }
+}
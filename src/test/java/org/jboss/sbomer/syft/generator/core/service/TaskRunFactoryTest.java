@@ -0,0 +1,100 @@
+package org.jboss.sbomer.syft.generator.core.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.jboss.sbomer.events.common.GenerationRequestSpec;
+import org.jboss.sbomer.events.common.Target;
+import org.jboss.sbomer.syft.generator.adapter.out.NoopPlatformResolver;
+import org.jboss.sbomer.syft.generator.adapter.out.UnshardedOwnership;
+import org.jboss.sbomer.syft.generator.core.domain.model.GenerationTask;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.fabric8.tekton.v1beta1.Param;
+import io.fabric8.tekton.v1beta1.TaskRun;
+import io.fabric8.tekton.v1beta1.WorkspaceBinding;
+
+class TaskRunFactoryTest {
+
+    private TaskRunFactory factory;
+
+    @BeforeEach
+    void setup() {
+        factory = new TaskRunFactory();
+        factory.taskName = "generator-syft";
+        factory.serviceAccount = "sbomer-sa";
+        factory.storageUrl = "http://storage";
+        factory.objectMapper = new ObjectMapper();
+        factory.shardOwnership = new UnshardedOwnership();
+        factory.platformResolver = new NoopPlatformResolver();
+        factory.syftCacheClaimName = "syft-cache";
+        factory.syftCacheLayout = "node";
+        factory.syftCachePool = "default";
+        factory.syftCacheMaxSize = "10Gi";
+    }
+
+    @Test
+    void testRunsStartColdWithoutTheCache() {
+        TaskRun taskRun = factory.createTaskRun(task());
+
+        assertEquals(List.of("data"), taskRun.getSpec().getWorkspaces().stream().map(WorkspaceBinding::getName).toList());
+        assertNull(params(taskRun).get("cache-layout"));
+    }
+
+    @Test
+    void testCacheClaimIsBoundWithItsLayout() {
+        factory.syftCacheEnabled = true;
+        factory.syftCacheLayout = "pool";
+        factory.syftCachePool = "team-a";
+
+        TaskRun taskRun = factory.createTaskRun(task());
+
+        WorkspaceBinding cache = taskRun.getSpec().getWorkspaces().get(1);
+        assertEquals("cache", cache.getName());
+        assertEquals("syft-cache", cache.getPersistentVolumeClaim().getClaimName());
+        // The data workspace stays private to the run
+        assertEquals("data", taskRun.getSpec().getWorkspaces().get(0).getName());
+        Map<String, String> params = params(taskRun);
+        assertEquals("pool", params.get("cache-layout"));
+        assertEquals("team-a", params.get("cache-pool"));
+        assertEquals("10737418240", params.get("cache-max-bytes"));
+    }
+
+    @Test
+    void testUnknownLayoutKeepsOneCachePerNode() {
+        factory.syftCacheEnabled = true;
+        factory.syftCacheLayout = "cluster";
+
+        assertEquals("node", params(factory.createTaskRun(task())).get("cache-layout"));
+    }
+
+    @Test
+    void testBatchRunsShareTheCache() {
+        factory.syftCacheEnabled = true;
+
+        TaskRun taskRun = factory.createBatchTaskRun("B-1", List.of(task()));
+
+        assertEquals(List.of("data", "cache"), taskRun.getSpec().getWorkspaces().stream().map(WorkspaceBinding::getName).toList());
+        assertEquals("node", params(taskRun).get("cache-layout"));
+    }
+
+    private static Map<String, String> params(TaskRun taskRun) {
+        return taskRun.getSpec().getParams().stream()
+                .collect(Collectors.toMap(Param::getName, param -> param.getValue().getStringVal()));
+    }
+
+    private static GenerationTask task() {
+        GenerationRequestSpec spec = GenerationRequestSpec.newBuilder()
+                .setGenerationId("G-1")
+                .setTarget(Target.newBuilder().setIdentifier("quay.io/org/app:1.0").setType("CONTAINER").build())
+                .build();
+        return new GenerationTask("G-1", spec, null);
+    }
+}